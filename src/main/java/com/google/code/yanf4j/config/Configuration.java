@@ -24,6 +24,13 @@ public class Configuration {
 	 */
 	private int sessionReadBufferSize = 32 * 1024;
 
+	/**
+	 * Whether sessions read into a direct buffer shared by all sessions of a
+	 * reactor,only a session with a partially decoded message keeps a private
+	 * buffer then
+	 */
+	private boolean sharedReadBuffer = false;
+
 	/**
 	 * Socket SO_TIMEOUT option
 	 */
@@ -168,6 +175,26 @@ public class Configuration {
 		this.readThreadCount = readThreadCount;
 	}
 
+	/**
+	 * @see setSharedReadBuffer
+	 * @return
+	 */
+	public final boolean isSharedReadBuffer() {
+		return this.sharedReadBuffer;
+	}
+
+	/**
+	 * Read into a direct buffer shared by all sessions of a reactor instead
+	 * of a heap buffer per session.It saves the copy from a temporary direct
+	 * buffer on every read,and the memory of idle sessions' buffers.It only
+	 * takes effect when the reactors read,that is readThreadCount is zero.
+	 * 
+	 * @param sharedReadBuffer
+	 */
+	public final void setSharedReadBuffer(boolean sharedReadBuffer) {
+		this.sharedReadBuffer = sharedReadBuffer;
+	}
+
 	public void setCheckSessionTimeoutInterval(long checkSessionTimeoutInterval) {
 		this.checkSessionTimeoutInterval = checkSessionTimeoutInterval;
 	}
@@ -26,6 +26,7 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 
 import com.google.code.yanf4j.statistics.Statistics;
+import com.google.code.yanf4j.util.HashedWheelTimer;
 
 /**
  * Networking Controller
@@ -101,4 +102,12 @@ public interface Controller {
 
 	public <T> void setSocketOption(SocketOption<T> socketOption, T value);
 
+	/**
+	 * Returns the timer shared by the controller and it's users,it is null
+	 * before the controller is started.
+	 * 
+	 * @return
+	 */
+	public HashedWheelTimer getTimer();
+
 }
\ No newline at end of file
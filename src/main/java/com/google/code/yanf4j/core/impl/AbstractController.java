@@ -33,6 +33,7 @@ import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,6 +52,7 @@ import com.google.code.yanf4j.statistics.Statistics;
 import com.google.code.yanf4j.statistics.impl.DefaultStatistics;
 import com.google.code.yanf4j.statistics.impl.SimpleStatistics;
 import com.google.code.yanf4j.util.DispatcherFactory;
+import com.google.code.yanf4j.util.HashedWheelTimer;
 import com.google.code.yanf4j.util.LinkedTransferQueue;
 
 /**
@@ -99,6 +101,10 @@ public abstract class AbstractController implements Controller,
 			writeEventDispatcher;
 	protected long sessionTimeout;
 	protected volatile boolean handleReadWriteConcurrently = true;
+	/**
+	 * Shared timer for session idle checks and users' timeouts
+	 */
+	protected volatile HashedWheelTimer timer;
 
 	protected int soTimeout;
 
@@ -352,6 +358,8 @@ public abstract class AbstractController implements Controller,
 				getDispatchMessageThreadCount(),
 				new ThreadPoolExecutor.CallerRunsPolicy(),
 				"xmemcached-dispatch-thread"));
+		this.timer = new HashedWheelTimer("xmemcached-timer", 10,
+				TimeUnit.MILLISECONDS, 512);
 		startStatistics();
 		start0();
 		notifyStarted();
@@ -448,12 +456,61 @@ public abstract class AbstractController implements Controller,
 	public final synchronized void registerSession(Session session) {
 		if (started) {
 			sessionSet.add(session);
+			scheduleIdleCheck(session, session.getSessionIdleTimeout());
 		} else {
 			session.close();
 		}
 
 	}
 
+	public final HashedWheelTimer getTimer() {
+		return timer;
+	}
+
+	private final void scheduleIdleCheck(Session session, long delay) {
+		final HashedWheelTimer timer = this.timer;
+		if (timer != null && session.getSessionIdleTimeout() > 0
+				&& session instanceof AbstractSession) {
+			try {
+				timer.newTimeout(new SessionIdleChecker(
+						(AbstractSession) session), delay,
+						TimeUnit.MILLISECONDS);
+			} catch (IllegalStateException e) {
+				// timer was stopped
+			}
+		}
+	}
+
+	/**
+	 * Check if a session is idle and schedule the next check at the time it
+	 * would be idle,so that the reactors don't scan all the keys for idle.
+	 * 
+	 * @author dennis
+	 * 
+	 */
+	private final class SessionIdleChecker implements Runnable {
+		private final AbstractSession session;
+
+		SessionIdleChecker(AbstractSession session) {
+			this.session = session;
+		}
+
+		public void run() {
+			if (!isStarted() || session.isClosed()) {
+				return;
+			}
+			long idleTimeout = session.getSessionIdleTimeout();
+			long idle = System.currentTimeMillis()
+					- session.getLastOperationTimeStamp();
+			if (idle > idleTimeout) {
+				// it updates the last operation timestamp
+				session.onIdle();
+				idle = 0;
+			}
+			scheduleIdleCheck(session, idleTimeout - idle + 1);
+		}
+	}
+
 	public synchronized void stop() throws IOException {
 		if (!isStarted()) {
 			return;
@@ -468,6 +525,9 @@ public abstract class AbstractController implements Controller,
 		notifyStopped();
 		clearStateListeners();
 		stop0();
+		if (timer != null) {
+			timer.stop();
+		}
 		log.info("Controller has been stopped.");
 
 	}
@@ -230,28 +230,12 @@ public abstract class AbstractSession implements Session {
 
 	protected void dispatchReceivedMessage(final Object message) {
 		if (dispatchMessageDispatcher == null) {
-			long start = -1;
-			if (statistics != null && statistics.isStatistics()) {
-				start = System.currentTimeMillis();
-			}
-			onMessage(message, this);
-			if (start != -1) {
-				statistics
-						.statisticsProcess(System.currentTimeMillis() - start);
-			}
+			processMessage(message);
 		} else {
 
 			dispatchMessageDispatcher.dispatch(new Runnable() {
 				public void run() {
-					long start = -1;
-					if (statistics != null && statistics.isStatistics()) {
-						start = System.currentTimeMillis();
-					}
-					onMessage(message, AbstractSession.this);
-					if (start != -1) {
-						statistics.statisticsProcess(System.currentTimeMillis()
-								- start);
-					}
+					processMessage(message);
 				}
 
 			});
@@ -259,6 +243,33 @@ public abstract class AbstractSession implements Session {
 
 	}
 
+	/**
+	 * Dispatch messages decoded in one read pass to the dispatcher as one
+	 * task,they are handled in order
+	 * 
+	 * @param messages
+	 */
+	protected void dispatchReceivedMessages(final Object[] messages) {
+		dispatchMessageDispatcher.dispatch(new Runnable() {
+			public void run() {
+				for (Object message : messages) {
+					processMessage(message);
+				}
+			}
+		});
+	}
+
+	private void processMessage(final Object message) {
+		long start = -1;
+		if (statistics != null && statistics.isStatistics()) {
+			start = System.currentTimeMillis();
+		}
+		onMessage(message, this);
+		if (start != -1) {
+			statistics.statisticsProcess(System.currentTimeMillis() - start);
+		}
+	}
+
 	private void onMessage(final Object message, Session session) {
 		try {
 			handler.onMessageReceived(session, message);
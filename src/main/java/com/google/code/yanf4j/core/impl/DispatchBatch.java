@@ -0,0 +1,164 @@
+/**
+ *Copyright [2009-2010] [dennis zhuang(killme2008@gmail.com)]
+ *Licensed under the Apache License, Version 2.0 (the "License");
+ *you may not use this file except in compliance with the License.
+ *You may obtain a copy of the License at
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *Unless required by applicable law or agreed to in writing,
+ *software distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ *either express or implied. See the License for the specific language governing permissions and limitations under the License
+ */
+package com.google.code.yanf4j.core.impl;
+
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.code.yanf4j.core.Dispatcher;
+
+/**
+ * Batch of tasks dispatched by current thread.Sessions open a batch while
+ * decoding a read pass,tasks dispatched through dispatch() in the meantime
+ * are gathered and handed to every dispatcher as one task when the batch is
+ * closed,so the queue and executor overhead is paid once per read pass
+ * instead of once per response.Tasks of a batch run in order.
+ * 
+ * @author dennis
+ * 
+ */
+public final class DispatchBatch {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(DispatchBatch.class);
+
+	private static final ThreadLocal<DispatchBatch> LOCAL = new ThreadLocal<DispatchBatch>() {
+		@Override
+		protected DispatchBatch initialValue() {
+			return new DispatchBatch();
+		}
+	};
+
+	private boolean open;
+	// tasks of dispatchers[i] are tasks[i][0..counts[i])
+	private Dispatcher[] dispatchers = new Dispatcher[2];
+	private Runnable[][] tasks = new Runnable[2][];
+	private int[] counts = new int[2];
+	private int size;
+
+	private DispatchBatch() {
+	}
+
+	/**
+	 * Open a batch on current thread
+	 * 
+	 * @return the batch,the caller must close it by end(),or null if a batch
+	 *         is open already
+	 */
+	public static DispatchBatch begin() {
+		DispatchBatch batch = LOCAL.get();
+		if (batch.open) {
+			return null;
+		}
+		batch.open = true;
+		return batch;
+	}
+
+	/**
+	 * Dispatch the task,it is added to current thread's batch if there is an
+	 * open one
+	 * 
+	 * @param dispatcher
+	 * @param task
+	 */
+	public static void dispatch(Dispatcher dispatcher, Runnable task) {
+		DispatchBatch batch = LOCAL.get();
+		if (batch.open) {
+			batch.add(dispatcher, task);
+		} else {
+			dispatcher.dispatch(task);
+		}
+	}
+
+	private void add(Dispatcher dispatcher, Runnable task) {
+		int index = 0;
+		while (index < this.size && this.dispatchers[index] != dispatcher) {
+			index++;
+		}
+		if (index == this.size) {
+			if (index == this.dispatchers.length) {
+				this.grow();
+			}
+			this.dispatchers[index] = dispatcher;
+			if (this.tasks[index] == null) {
+				this.tasks[index] = new Runnable[16];
+			}
+			this.size++;
+		}
+		Runnable[] list = this.tasks[index];
+		int count = this.counts[index];
+		if (count == list.length) {
+			list = new Runnable[count << 1];
+			System.arraycopy(this.tasks[index], 0, list, 0, count);
+			this.tasks[index] = list;
+		}
+		list[count] = task;
+		this.counts[index] = count + 1;
+	}
+
+	private void grow() {
+		int capacity = this.dispatchers.length << 1;
+		Dispatcher[] newDispatchers = new Dispatcher[capacity];
+		System.arraycopy(this.dispatchers, 0, newDispatchers, 0, this.size);
+		this.dispatchers = newDispatchers;
+		Runnable[][] newTasks = new Runnable[capacity][];
+		System.arraycopy(this.tasks, 0, newTasks, 0, this.size);
+		this.tasks = newTasks;
+		int[] newCounts = new int[capacity];
+		System.arraycopy(this.counts, 0, newCounts, 0, this.size);
+		this.counts = newCounts;
+	}
+
+	/**
+	 * Close the batch and dispatch it's tasks,one task per dispatcher.If a
+	 * dispatcher rejects them,they are run in current thread.
+	 */
+	public void end() {
+		this.open = false;
+		for (int i = 0; i < this.size; i++) {
+			final Dispatcher dispatcher = this.dispatchers[i];
+			final int count = this.counts[i];
+			final Runnable[] list = this.tasks[i];
+			Runnable task;
+			if (count == 1) {
+				task = list[0];
+			} else {
+				final Runnable[] batch = new Runnable[count];
+				System.arraycopy(list, 0, batch, 0, count);
+				task = new Runnable() {
+					public void run() {
+						for (Runnable r : batch) {
+							try {
+								r.run();
+							} catch (Throwable e) {
+								log.error("Run batched task error", e);
+							}
+						}
+					}
+				};
+			}
+			for (int j = 0; j < count; j++) {
+				list[j] = null;
+			}
+			this.counts[i] = 0;
+			this.dispatchers[i] = null;
+			try {
+				dispatcher.dispatch(task);
+			} catch (RejectedExecutionException e) {
+				task.run();
+			}
+		}
+		this.size = 0;
+	}
+}
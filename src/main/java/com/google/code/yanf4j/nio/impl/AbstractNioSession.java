@@ -97,7 +97,8 @@ public abstract class AbstractNioSession extends AbstractSession implements
 		isLockedByMe = true;
 		WriteMessage currentMessage = null;
 		// make read/write fail, write/read=3/2
-		final long maxWritten = readBuffer.capacity() + readBuffer.capacity() >>> 1;
+		final int readBufferCapacity = getReadBufferCapacity();
+		final long maxWritten = readBufferCapacity + readBufferCapacity >>> 1;
 		try {
 			long written = 0;
 			while (this.currentMessage.get() != null) {
@@ -200,6 +201,16 @@ public abstract class AbstractNioSession extends AbstractSession implements
 
 	protected abstract void readFromBuffer();
 
+	/**
+	 * Returns capacity of the read buffer,bytes written in one round are
+	 * limited by it
+	 * 
+	 * @return
+	 */
+	protected int getReadBufferCapacity() {
+		return readBuffer.capacity();
+	}
+
 	@Override
 	protected void closeChannel() throws IOException {
 		flush0();
@@ -26,6 +26,7 @@ import com.google.code.yanf4j.buffer.IoBuffer;
 import com.google.code.yanf4j.config.Configuration;
 import com.google.code.yanf4j.core.EventType;
 import com.google.code.yanf4j.core.WriteMessage;
+import com.google.code.yanf4j.core.impl.DispatchBatch;
 import com.google.code.yanf4j.core.impl.FutureImpl;
 import com.google.code.yanf4j.core.impl.WriteMessageImpl;
 import com.google.code.yanf4j.nio.NioSessionConfig;
@@ -40,6 +41,18 @@ import com.google.code.yanf4j.util.SelectorFactory;
  */
 public class NioTCPSession extends AbstractNioSession {
 	private InetSocketAddress remoteAddress;
+	private final int readBufferSize;
+	/**
+	 * Whether to read into the reactor's shared buffer,the private read
+	 * buffer is null when there is no partially decoded message then
+	 */
+	private final boolean sharedReadBuffer;
+	/**
+	 * Messages decoded in current read pass,they are dispatched in one task
+	 * when there is a message dispatcher
+	 */
+	private Object[] decodedMessages;
+	private int decodedCount;
 
 	@Override
 	public final boolean isExpired() {
@@ -58,7 +71,12 @@ public class NioTCPSession extends AbstractNioSession {
 			this.loopback = this.getRemoteSocketAddress().getAddress()
 					.isLoopbackAddress();
 		}
-		this.setReadBuffer(IoBuffer.allocate(readRecvBufferSize));
+		this.readBufferSize = readRecvBufferSize;
+		this.sharedReadBuffer = this.selectorManager != null
+				&& this.selectorManager.isSharedReadBuffer();
+		if (!this.sharedReadBuffer) {
+			this.setReadBuffer(IoBuffer.allocate(readRecvBufferSize));
+		}
 		this.onCreated();
 	}
 
@@ -179,8 +197,24 @@ public class NioTCPSession extends AbstractNioSession {
 		return message;
 	}
 
+	@Override
+	protected int getReadBufferCapacity() {
+		final IoBuffer readBuffer = this.readBuffer;
+		return readBuffer == null ? this.readBufferSize : readBuffer
+				.capacity();
+	}
+
 	@Override
 	protected void readFromBuffer() {
+		if (this.readBuffer == null) {
+			IoBuffer shared = this.getSharedReadBuffer();
+			if (shared != null) {
+				this.readToSharedBuffer(shared);
+				return;
+			}
+			// read by a read thread,keep a private buffer
+			this.setReadBuffer(IoBuffer.allocate(this.readBufferSize));
+		}
 		if (!this.readBuffer.hasRemaining()) {
 			if (this.readBuffer.capacity() < Configuration.MAX_READ_BUFFER_SIZE) {
 				this.readBuffer = IoBuffer.wrap(ByteBufferUtils
@@ -204,6 +238,12 @@ public class NioTCPSession extends AbstractNioSession {
 				this.readBuffer.flip();
 				this.decode();
 				this.readBuffer.compact();
+				if (this.readBuffer.position() == 0
+						&& this.getSharedReadBuffer() != null) {
+					// the partial message is decoded,release the spill
+					// buffer
+					this.readBuffer = null;
+				}
 			} else if (readCount == 0
 					&& !((SocketChannel) this.selectableChannel).socket()
 							.isInputShutdown() && this.useBlockingRead) {
@@ -229,6 +269,72 @@ public class NioTCPSession extends AbstractNioSession {
 		}
 	}
 
+	/**
+	 * Returns the shared read buffer of current reactor,null if it is
+	 * disabled or it is not called in a reactor
+	 * 
+	 * @return
+	 */
+	private IoBuffer getSharedReadBuffer() {
+		if (this.sharedReadBuffer) {
+			Thread thread = Thread.currentThread();
+			if (thread instanceof Reactor) {
+				return ((Reactor) thread).getSharedReadBuffer();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Read into the reactor's shared buffer and decode it,the bytes of a
+	 * partial message are copied to a private spill buffer,which is used
+	 * until the message is decoded.
+	 * 
+	 * @param shared
+	 */
+	private void readToSharedBuffer(IoBuffer shared) {
+		if (this.closed) {
+			return;
+		}
+		int n = -1;
+		int readCount = 0;
+		shared.clear();
+		try {
+			while ((n = ((ReadableByteChannel) this.selectableChannel)
+					.read(shared.buf())) > 0) {
+				readCount += n;
+			}
+			if (readCount > 0) {
+				shared.flip();
+				this.readBuffer = shared;
+				try {
+					this.decode();
+				} finally {
+					this.readBuffer = null;
+				}
+				if (shared.hasRemaining() && !this.closed) {
+					IoBuffer spill = IoBuffer.allocate(this.readBufferSize);
+					spill.put(shared.buf());
+					this.readBuffer = spill;
+				}
+			}
+			if (n < 0) { // Connection closed
+				this.close();
+			} else {
+				this.selectorManager.registerSession(this, EventType.ENABLE_READ);
+			}
+			if (log.isDebugEnabled()) {
+				log.debug("read " + readCount + " bytes from channel");
+			}
+		} catch (ClosedChannelException e) {
+			// ignore exception
+			this.close();
+		} catch (Throwable e) {
+			this.onException(e);
+			this.close();
+		}
+	}
+
 	/**
 	 * Blocking read using temp selector
 	 * 
@@ -283,26 +389,72 @@ public class NioTCPSession extends AbstractNioSession {
 	public void decode() {
 		Object message;
 		int size = this.readBuffer.remaining();
-		while (this.readBuffer.hasRemaining()) {
-			try {
-				message = this.decoder.decode(this.readBuffer, this);
-				if (message == null) {
-					break;
-				} else {
-					if (this.statistics.isStatistics()) {
-						this.statistics
-								.statisticsRead(size - this.readBuffer.remaining());
-						size = this.readBuffer.remaining();
+		// tasks dispatched while decoding are batched
+		final DispatchBatch batch = DispatchBatch.begin();
+		try {
+			while (this.readBuffer.hasRemaining()) {
+				try {
+					message = this.decoder.decode(this.readBuffer, this);
+					if (message == null) {
+						break;
+					} else {
+						if (this.statistics.isStatistics()) {
+							this.statistics.statisticsRead(size
+									- this.readBuffer.remaining());
+							size = this.readBuffer.remaining();
+						}
+					}
+					if (this.dispatchMessageDispatcher == null) {
+						this.dispatchReceivedMessage(message);
+					} else {
+						this.addDecodedMessage(message);
 					}
+				} catch (Exception e) {
+					this.onException(e);
+					log.error("Decode error", e);
+					super.close();
+					break;
 				}
-				this.dispatchReceivedMessage(message);
-			} catch (Exception e) {
-				this.onException(e);
-				log.error("Decode error", e);
-				super.close();
-				break;
 			}
+			this.dispatchDecodedMessages();
+		} finally {
+			if (batch != null) {
+				batch.end();
+			}
+		}
+	}
+
+	private void addDecodedMessage(Object message) {
+		if (this.decodedMessages == null) {
+			this.decodedMessages = new Object[16];
+		} else if (this.decodedCount == this.decodedMessages.length) {
+			Object[] messages = new Object[this.decodedCount << 1];
+			System.arraycopy(this.decodedMessages, 0, messages, 0,
+					this.decodedCount);
+			this.decodedMessages = messages;
+		}
+		this.decodedMessages[this.decodedCount++] = message;
+	}
+
+	/**
+	 * Dispatch messages decoded in this read pass in one task
+	 */
+	private void dispatchDecodedMessages() {
+		final int count = this.decodedCount;
+		if (count == 0) {
+			return;
+		}
+		if (count == 1) {
+			this.dispatchReceivedMessage(this.decodedMessages[0]);
+		} else {
+			Object[] messages = new Object[count];
+			System.arraycopy(this.decodedMessages, 0, messages, 0, count);
+			this.dispatchReceivedMessages(messages);
+		}
+		for (int i = 0; i < count; i++) {
+			this.decodedMessages[i] = null;
 		}
+		this.decodedCount = 0;
 	}
 
 	public Socket socket() {
@@ -24,6 +24,7 @@ import java.util.concurrent.locks.ReentrantLock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.code.yanf4j.buffer.IoBuffer;
 import com.google.code.yanf4j.config.Configuration;
 import com.google.code.yanf4j.core.EventType;
 import com.google.code.yanf4j.core.Session;
@@ -76,6 +77,12 @@ public final class Reactor extends Thread {
 
 	private long nextTimeout = 0;
 
+	/**
+	 * Direct read buffer shared by sessions of this reactor,null if it is
+	 * disabled
+	 */
+	private final IoBuffer sharedReadBuffer;
+
 	Reactor(SelectorManager selectorManager, Configuration configuration,
 			int index) throws IOException {
 		super();
@@ -84,9 +91,25 @@ public final class Reactor extends Thread {
 		controller = selectorManager.getController();
 		selector = SystemUtils.openSelector();
 		this.configuration = configuration;
+		if (configuration.isSharedReadBuffer()) {
+			sharedReadBuffer = IoBuffer.allocate(configuration
+					.getSessionReadBufferSize(), true);
+		} else {
+			sharedReadBuffer = null;
+		}
 		setName("Xmemcached-Reactor-" + index);
 	}
 
+	/**
+	 * Returns the shared read buffer,it must only be used in this reactor's
+	 * thread
+	 * 
+	 * @return
+	 */
+	final IoBuffer getSharedReadBuffer() {
+		return sharedReadBuffer;
+	}
+
 	public final Selector getSelector() {
 		return selector;
 	}
@@ -438,7 +461,7 @@ public final class Reactor extends Thread {
 	public final void postSelect(Set<SelectionKey> selectedKeys,
 			Set<SelectionKey> allKeys) {
 		if (controller.getSessionTimeout() > 0
-				|| controller.getSessionIdleTimeout() > 0) {
+				|| isIdleCheckedByReactor()) {
 			for (SelectionKey key : allKeys) {
 
 				if (!selectedKeys.contains(key)) {
@@ -460,13 +483,23 @@ public final class Reactor extends Thread {
 			expired = checkExpired(key, session);
 			nextTimeout = controller.getSessionTimeout();
 		}
-		if (controller.getSessionIdleTimeout() > 0 && !expired) {
+		if (isIdleCheckedByReactor() && !expired) {
 			checkIdle(session);
 			nextTimeout = controller.getSessionIdleTimeout();
 		}
 		return nextTimeout;
 	}
 
+	/**
+	 * Session idle is checked by the controller's timer when it is available
+	 * 
+	 * @return
+	 */
+	private final boolean isIdleCheckedByReactor() {
+		return controller.getSessionIdleTimeout() > 0
+				&& controller.getTimer() == null;
+	}
+
 	private final void checkIdle(Session session) {
 		if (controller.getSessionIdleTimeout() > 0) {
 			if (session.isIdle()) {
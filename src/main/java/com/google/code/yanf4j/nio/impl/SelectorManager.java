@@ -23,6 +23,7 @@ public class SelectorManager {
 	private final AtomicInteger sets = new AtomicInteger(0);
 	private final NioController controller;
 	private final int dividend;
+	private final boolean sharedReadBuffer;
 
 	/**
 	 * Reactor count which are ready
@@ -41,6 +42,16 @@ public class SelectorManager {
 			reactorSet[i] = new Reactor(this, conf, i);
 		}
 		dividend = reactorSet.length - 1;
+		sharedReadBuffer = conf.isSharedReadBuffer();
+	}
+
+	/**
+	 * Whether sessions read into their reactor's shared read buffer
+	 * 
+	 * @return
+	 */
+	public boolean isSharedReadBuffer() {
+		return sharedReadBuffer;
 	}
 
 	private volatile boolean started;
@@ -0,0 +1,391 @@
+/**
+ *Copyright [2009-2010] [dennis zhuang(killme2008@gmail.com)]
+ *Licensed under the Apache License, Version 2.0 (the "License");
+ *you may not use this file except in compliance with the License.
+ *You may obtain a copy of the License at
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *Unless required by applicable law or agreed to in writing,
+ *software distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ *either express or implied. See the License for the specific language governing permissions and limitations under the License
+ */
+package com.google.code.yanf4j.util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hashed wheel timer,it is designed for a large number of short timeouts
+ * which are cancelled mostly,such as operation deadlines.Scheduling and
+ * cancelling a timeout are O(1) and lock free,the timeouts are expired by a
+ * single worker thread with the precision of one tick.When the timer is
+ * stopped,pending timeouts are expired at once,so nobody waits for a deadline
+ * which would never come.
+ *
+ * @author dennis
+ *
+ */
+public class HashedWheelTimer {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(HashedWheelTimer.class);
+
+	private static final int STATE_STARTED = 0;
+	private static final int STATE_STOPPED = 1;
+
+	/**
+	 * Max timeouts moved into the wheel in one tick,so that the worker is not
+	 * starved by a flood of new timeouts
+	 */
+	private static final int MAX_TRANSFER_PER_TICK = 100000;
+
+	private final long tickDuration;
+	private final Bucket[] wheel;
+	private final int mask;
+	private final long startTime;
+	private final Thread workerThread;
+	private final Queue<Timeout> newTimeouts = new ConcurrentLinkedQueue<Timeout>();
+	private final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<Timeout>();
+	private final AtomicLong pendingTimeouts = new AtomicLong();
+	private volatile int state = STATE_STARTED;
+	private long tick;
+
+	/**
+	 * Create a timer and start it's worker thread
+	 *
+	 * @param name
+	 *            worker thread name
+	 * @param tickDuration
+	 *            the duration of a tick
+	 * @param unit
+	 * @param ticksPerWheel
+	 *            the wheel size,it is rounded up to a power of two
+	 */
+	public HashedWheelTimer(String name, long tickDuration, TimeUnit unit,
+			int ticksPerWheel) {
+		if (tickDuration <= 0) {
+			throw new IllegalArgumentException("tickDuration<=0");
+		}
+		if (ticksPerWheel <= 0 || ticksPerWheel > 1 << 30) {
+			throw new IllegalArgumentException("Invalid ticksPerWheel:"
+					+ ticksPerWheel);
+		}
+		int size = 1;
+		while (size < ticksPerWheel) {
+			size <<= 1;
+		}
+		this.wheel = new Bucket[size];
+		for (int i = 0; i < size; i++) {
+			this.wheel[i] = new Bucket();
+		}
+		this.mask = size - 1;
+		this.tickDuration = unit.toNanos(tickDuration);
+		this.startTime = System.nanoTime();
+		this.workerThread = new Thread(new Worker(), name);
+		this.workerThread.setDaemon(true);
+		this.workerThread.start();
+	}
+
+	/**
+	 * Schedule a task which will be run by the worker thread after the delay,
+	 * the task must be short and non-blocking.
+	 *
+	 * @param task
+	 * @param delay
+	 * @param unit
+	 * @return the handle to cancel the task
+	 */
+	public Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+		if (task == null) {
+			throw new NullPointerException("Null task");
+		}
+		if (this.state == STATE_STOPPED) {
+			throw new IllegalStateException("Timer has been stopped");
+		}
+		long deadline = System.nanoTime() - this.startTime
+				+ unit.toNanos(Math.max(delay, 0));
+		Timeout timeout = new Timeout(this, task, deadline);
+		this.pendingTimeouts.incrementAndGet();
+		this.newTimeouts.offer(timeout);
+		// stopped concurrently,the worker may miss it
+		if (this.state == STATE_STOPPED && this.newTimeouts.remove(timeout)) {
+			this.pendingTimeouts.decrementAndGet();
+			throw new IllegalStateException("Timer has been stopped");
+		}
+		return timeout;
+	}
+
+	/**
+	 * Returns the number of timeouts which are neither expired nor cancelled
+	 * and removed from the wheel
+	 *
+	 * @return
+	 */
+	public long getPendingTimeouts() {
+		return this.pendingTimeouts.get();
+	}
+
+	public long getTickDuration(TimeUnit unit) {
+		return unit.convert(this.tickDuration, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Whether current thread is the worker thread,tasks must not block it
+	 *
+	 * @return
+	 */
+	public boolean isWorkerThread() {
+		return Thread.currentThread() == this.workerThread;
+	}
+
+	public boolean isStopped() {
+		return this.state == STATE_STOPPED;
+	}
+
+	/**
+	 * Stop the worker thread,pending timeouts are expired by the worker before
+	 * it exits.
+	 */
+	public void stop() {
+		if (this.state == STATE_STOPPED) {
+			return;
+		}
+		this.state = STATE_STOPPED;
+		if (Thread.currentThread() != this.workerThread) {
+			this.workerThread.interrupt();
+		}
+	}
+
+	private final class Worker implements Runnable {
+		public void run() {
+			while (HashedWheelTimer.this.state == STATE_STARTED) {
+				long deadline = this.waitForNextTick();
+				if (deadline < 0) {
+					break;
+				}
+				this.removeCancelledTimeouts();
+				this.transferTimeoutsToBuckets();
+				HashedWheelTimer.this.wheel[(int) (HashedWheelTimer.this.tick & HashedWheelTimer.this.mask)]
+						.expireTimeouts(deadline);
+				HashedWheelTimer.this.tick++;
+			}
+			this.expireAll();
+		}
+
+		private void expireAll() {
+			HashedWheelTimer.this.cancelledTimeouts.clear();
+			for (Bucket bucket : HashedWheelTimer.this.wheel) {
+				bucket.expireAll();
+			}
+			Timeout timeout;
+			while ((timeout = HashedWheelTimer.this.newTimeouts.poll()) != null) {
+				HashedWheelTimer.this.pendingTimeouts.decrementAndGet();
+				timeout.expire();
+			}
+		}
+
+		/**
+		 * Sleep until the next tick
+		 *
+		 * @return current time relative to the start time,or -1 if the timer
+		 *         was stopped
+		 */
+		private long waitForNextTick() {
+			long deadline = HashedWheelTimer.this.tickDuration
+					* (HashedWheelTimer.this.tick + 1);
+			for (;;) {
+				long currentTime = System.nanoTime()
+						- HashedWheelTimer.this.startTime;
+				long sleepMs = (deadline - currentTime + 999999) / 1000000;
+				if (sleepMs <= 0) {
+					return currentTime;
+				}
+				try {
+					Thread.sleep(sleepMs);
+				} catch (InterruptedException e) {
+					if (HashedWheelTimer.this.state == STATE_STOPPED) {
+						return -1;
+					}
+				}
+			}
+		}
+
+		private void transferTimeoutsToBuckets() {
+			for (int i = 0; i < MAX_TRANSFER_PER_TICK; i++) {
+				Timeout timeout = HashedWheelTimer.this.newTimeouts.poll();
+				if (timeout == null) {
+					break;
+				}
+				if (timeout.state != Timeout.ST_INIT) {
+					// cancelled before it is added to the wheel
+					HashedWheelTimer.this.pendingTimeouts.decrementAndGet();
+					continue;
+				}
+				long calculated = timeout.deadline
+						/ HashedWheelTimer.this.tickDuration;
+				timeout.remainingRounds = (calculated - HashedWheelTimer.this.tick)
+						/ HashedWheelTimer.this.wheel.length;
+				// expire it in current tick if it is already late
+				long ticks = Math.max(calculated, HashedWheelTimer.this.tick);
+				HashedWheelTimer.this.wheel[(int) (ticks & HashedWheelTimer.this.mask)]
+						.add(timeout);
+			}
+		}
+
+		private void removeCancelledTimeouts() {
+			Timeout timeout;
+			while ((timeout = HashedWheelTimer.this.cancelledTimeouts.poll()) != null) {
+				if (timeout.bucket != null) {
+					timeout.bucket.remove(timeout);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Doubly linked timeouts in one slot of the wheel,it is only accessed by
+	 * the worker thread.
+	 *
+	 * @author dennis
+	 *
+	 */
+	private final class Bucket {
+		private Timeout head;
+		private Timeout tail;
+
+		void add(Timeout timeout) {
+			timeout.bucket = this;
+			if (this.head == null) {
+				this.head = this.tail = timeout;
+			} else {
+				this.tail.next = timeout;
+				timeout.prev = this.tail;
+				this.tail = timeout;
+			}
+		}
+
+		void expireTimeouts(long deadline) {
+			Timeout timeout = this.head;
+			while (timeout != null) {
+				Timeout next = timeout.next;
+				if (timeout.state != Timeout.ST_INIT) {
+					this.remove(timeout);
+				} else if (timeout.remainingRounds <= 0) {
+					this.remove(timeout);
+					if (timeout.deadline <= deadline) {
+						timeout.expire();
+					} else {
+						// should never happen,reschedule it
+						HashedWheelTimer.this.pendingTimeouts.incrementAndGet();
+						HashedWheelTimer.this.newTimeouts.offer(timeout);
+					}
+				} else {
+					timeout.remainingRounds--;
+				}
+				timeout = next;
+			}
+		}
+
+		void expireAll() {
+			Timeout timeout;
+			while ((timeout = this.head) != null) {
+				this.remove(timeout);
+				timeout.expire();
+			}
+		}
+
+		void remove(Timeout timeout) {
+			Timeout next = timeout.next;
+			if (timeout.prev != null) {
+				timeout.prev.next = next;
+			}
+			if (next != null) {
+				next.prev = timeout.prev;
+			}
+			if (timeout == this.head) {
+				this.head = next;
+			}
+			if (timeout == this.tail) {
+				this.tail = timeout.prev;
+			}
+			timeout.prev = null;
+			timeout.next = null;
+			timeout.bucket = null;
+			HashedWheelTimer.this.pendingTimeouts.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Handle of a scheduled task
+	 *
+	 * @author dennis
+	 *
+	 */
+	public static final class Timeout {
+		private static final int ST_INIT = 0;
+		private static final int ST_CANCELLED = 1;
+		private static final int ST_EXPIRED = 2;
+
+		private static final AtomicIntegerFieldUpdater<Timeout> STATE_UPDATER = AtomicIntegerFieldUpdater
+				.newUpdater(Timeout.class, "state");
+
+		private final HashedWheelTimer timer;
+		private final Runnable task;
+		private final long deadline;
+		private volatile int state = ST_INIT;
+
+		// accessed only by the worker thread
+		long remainingRounds;
+		Timeout next;
+		Timeout prev;
+		Bucket bucket;
+
+		Timeout(HashedWheelTimer timer, Runnable task, long deadline) {
+			this.timer = timer;
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		public Runnable getTask() {
+			return this.task;
+		}
+
+		/**
+		 * Cancel the task if it is not expired
+		 *
+		 * @return true if it is cancelled by this call
+		 */
+		public boolean cancel() {
+			if (!STATE_UPDATER.compareAndSet(this, ST_INIT, ST_CANCELLED)) {
+				return false;
+			}
+			this.timer.cancelledTimeouts.offer(this);
+			return true;
+		}
+
+		public boolean isCancelled() {
+			return this.state == ST_CANCELLED;
+		}
+
+		public boolean isExpired() {
+			return this.state == ST_EXPIRED;
+		}
+
+		void expire() {
+			if (!STATE_UPDATER.compareAndSet(this, ST_INIT, ST_EXPIRED)) {
+				return;
+			}
+			try {
+				this.task.run();
+			} catch (Throwable e) {
+				log.warn("Timer task " + this.task + " threw an exception", e);
+			}
+		}
+	}
+}
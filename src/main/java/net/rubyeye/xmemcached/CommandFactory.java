@@ -109,6 +109,36 @@ public interface CommandFactory {
 	public <T> Command createGetMultiCommand(Collection<String> keys,
 			CountDownLatch latch, CommandType cmdType, Transcoder<T> transcoder);
 
+	/**
+	 * Create a multi-get command of the keys
+	 * keys[indexes[offset]]...keys[indexes[offset+count-1]],the keys are
+	 * encoded straight into the command's buffer.
+	 * 
+	 * @param <T>
+	 * @param keys
+	 * @param indexes
+	 * @param offset
+	 * @param count
+	 * @param latch
+	 * @param cmdType
+	 * @param transcoder
+	 * @return
+	 */
+	public <T> Command createGetMultiCommand(String[] keys, int[] indexes,
+			int offset, int count, CountDownLatch latch, CommandType cmdType,
+			Transcoder<T> transcoder);
+
+	/**
+	 * Create a get command which streams the value to the handler
+	 * 
+	 * @param key
+	 * @param keyBytes
+	 * @param handler
+	 * @return
+	 */
+	public Command createGetStreamCommand(final String key,
+			final byte[] keyBytes, ValueChunkHandler handler);
+
 	/**
 	 * create a incr/decr command
 	 * 
@@ -261,6 +291,13 @@ public interface CommandFactory {
 	 */
 	public Command createQuitCommand();
 
+	/**
+	 * create a noop command
+	 * 
+	 * @return
+	 */
+	public Command createNoopCommand();
+
 	/**
 	 * Get this client's protocol version
 	 * 
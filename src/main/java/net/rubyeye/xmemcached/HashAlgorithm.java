@@ -1,6 +1,7 @@
 package net.rubyeye.xmemcached;
 
 import java.io.UnsupportedEncodingException;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.zip.CRC32;
@@ -79,6 +80,38 @@ public enum HashAlgorithm {
 	private static final long FNV_32_INIT = 2166136261L;
 	private static final long FNV_32_PRIME = 16777619;
 
+	/**
+	 * Thread confined hashing state,so that hashing bytes allocates nothing
+	 */
+	private static final class HashContext {
+		final MessageDigest md5;
+		final CRC32 crc32 = new CRC32();
+		final byte[] digest = new byte[16];
+		byte[] buffer = new byte[256];
+
+		HashContext() {
+			try {
+				this.md5 = MessageDigest.getInstance("MD5");
+			} catch (NoSuchAlgorithmException e) {
+				throw new RuntimeException("MD5 not supported", e);
+			}
+		}
+
+		byte[] buffer(int size) {
+			if (this.buffer.length < size) {
+				this.buffer = new byte[Math.max(size, this.buffer.length * 2)];
+			}
+			return this.buffer;
+		}
+	}
+
+	private static final ThreadLocal<HashContext> HASH_CONTEXT = new ThreadLocal<HashContext>() {
+		@Override
+		protected HashContext initialValue() {
+			return new HashContext();
+		}
+	};
+
 	/**
 	 * Compute the hash for the given key.
 	 * 
@@ -195,21 +228,215 @@ public enum HashAlgorithm {
 		return rv & 0xffffffffL; /* Truncate to 32-bits */
 	}
 
+	/**
+	 * Compute the hash for the given key bytes,the key is encoded in
+	 * utf-8.The hash equals to hash(String) of the key,but nothing is
+	 * allocated unless the key contains non-ascii bytes for the algorithms
+	 * which hash chars.
+	 * 
+	 * @param k
+	 * @param offset
+	 * @param length
+	 * @return a positive integer hash
+	 */
+	public long hash(final byte[] k, final int offset, final int length) {
+		long rv = 0;
+		final int end = offset + length;
+		switch (this) {
+		case NATIVE_HASH:
+		case FNV1_64_HASH:
+		case FNV1A_64_HASH:
+		case FNV1_32_HASH:
+		case FNV1A_32_HASH:
+		case MYSQL_HASH:
+		case ELF_HASH:
+		case RS_HASH:
+			// bytes are chars only if they are ascii
+			for (int i = offset; i < end; i++) {
+				if (k[i] < 0) {
+					try {
+						return this.hash(new String(k, offset, length,
+								ByteUtils.DEFAULT_CHARSET_NAME));
+					} catch (UnsupportedEncodingException e) {
+						throw new IllegalStateException("Hash function error",
+								e);
+					}
+				}
+			}
+			break;
+		default:
+			break;
+		}
+		switch (this) {
+		case NATIVE_HASH: {
+			int h = 0;
+			for (int i = offset; i < end; i++) {
+				h = 31 * h + k[i];
+			}
+			rv = h;
+		}
+			break;
+		case CRC32_HASH:
+			CRC32 crc32 = HASH_CONTEXT.get().crc32;
+			crc32.reset();
+			crc32.update(k, offset, length);
+			rv = crc32.getValue() >> 16 & 0x7fff;
+			break;
+		case FNV1_64_HASH:
+			rv = FNV_64_INIT;
+			for (int i = offset; i < end; i++) {
+				rv *= FNV_64_PRIME;
+				rv ^= k[i];
+			}
+			break;
+		case FNV1A_64_HASH:
+			rv = FNV_64_INIT;
+			for (int i = offset; i < end; i++) {
+				rv ^= k[i];
+				rv *= FNV_64_PRIME;
+			}
+			break;
+		case FNV1_32_HASH:
+			rv = FNV_32_INIT;
+			for (int i = offset; i < end; i++) {
+				rv *= FNV_32_PRIME;
+				rv ^= k[i];
+			}
+			break;
+		case FNV1A_32_HASH:
+			rv = FNV_32_INIT;
+			for (int i = offset; i < end; i++) {
+				rv ^= k[i];
+				rv *= FNV_32_PRIME;
+			}
+			break;
+		case ELECTION_HASH:
+		case KETAMA_HASH:
+			byte[] bKey = computeMd5(k, offset, length);
+			rv = (long) (bKey[3] & 0xFF) << 24 | (long) (bKey[2] & 0xFF) << 16
+					| (long) (bKey[1] & 0xFF) << 8 | bKey[0] & 0xFF;
+			break;
+		case MYSQL_HASH:
+			int nr2 = 4;
+			for (int i = offset; i < end; i++) {
+				rv ^= ((rv & 63) + nr2) * k[i] + (rv << 8);
+				nr2 += 3;
+			}
+			break;
+		case ELF_HASH:
+			long x = 0;
+			for (int i = offset; i < end; i++) {
+				rv = (rv << 4) + k[i];
+				if ((x = rv & 0xF0000000L) != 0) {
+					rv ^= x >> 24;
+					rv &= ~x;
+				}
+			}
+			rv = rv & 0x7FFFFFFF;
+			break;
+		case RS_HASH:
+			long b = 378551;
+			long a = 63689;
+			for (int i = offset; i < end; i++) {
+				rv = rv * a + k[i];
+				a *= b;
+			}
+			rv = rv & 0x7FFFFFFF;
+			break;
+		case LUA_HASH:
+			// hash(String) falls through to ONE_AT_A_TIME
+		case ONE_AT_A_TIME:
+			int hash = 0;
+			for (int i = offset; i < end; i++) {
+				hash += (k[i] & 0xFF);
+				hash += (hash << 10);
+				hash ^= (hash >>> 6);
+			}
+			hash += (hash << 3);
+			hash ^= (hash >>> 11);
+			hash += (hash << 15);
+			return hash;
+		default:
+			assert false;
+		}
+
+		return rv & 0xffffffffL; /* Truncate to 32-bits */
+	}
+
+	public long hash(final byte[] k) {
+		return this.hash(k, 0, k.length);
+	}
+
+	/**
+	 * Compute the hash of the prefix followed by the key,it equals to
+	 * hash(prefix+key) without concatenating strings.
+	 * 
+	 * @param prefix
+	 * @param k
+	 * @return
+	 */
+	public long hash(final byte[] prefix, final byte[] k) {
+		HashContext context = HASH_CONTEXT.get();
+		int length = prefix.length + k.length;
+		byte[] buffer = context.buffer(length);
+		System.arraycopy(prefix, 0, buffer, 0, prefix.length);
+		System.arraycopy(k, 0, buffer, prefix.length, k.length);
+		return this.hash(buffer, 0, length);
+	}
+
+	/**
+	 * Compute the hash of the decimal number followed by the key,it equals to
+	 * hash(number+key) without concatenating strings.
+	 * 
+	 * @param number
+	 *            a non-negative number
+	 * @param k
+	 * @return
+	 */
+	public long hash(final int number, final byte[] k) {
+		HashContext context = HASH_CONTEXT.get();
+		int digits = 1;
+		for (int n = number; n >= 10; n /= 10) {
+			digits++;
+		}
+		int length = digits + k.length;
+		byte[] buffer = context.buffer(length);
+		int n = number;
+		for (int i = digits - 1; i >= 0; i--) {
+			buffer[i] = (byte) ('0' + n % 10);
+			n /= 10;
+		}
+		System.arraycopy(k, 0, buffer, digits, k.length);
+		return this.hash(buffer, 0, length);
+	}
+
 	/**
 	 * Get the md5 of the given key.
 	 */
 	public static byte[] computeMd5(String k) {
-		MessageDigest md5;
-		try {
-			md5 = MessageDigest.getInstance("MD5");
-		} catch (NoSuchAlgorithmException e) {
-			throw new RuntimeException("MD5 not supported", e);
-		}
+		MessageDigest md5 = HASH_CONTEXT.get().md5;
 		md5.reset();
 		md5.update(ByteUtils.getBytes(k));
 		return md5.digest();
 	}
 
+	/**
+	 * Get the md5 of the given key bytes,the returned array is thread
+	 * confined and reused by the next call in the same thread.
+	 */
+	private static byte[] computeMd5(byte[] k, int offset, int length) {
+		HashContext context = HASH_CONTEXT.get();
+		MessageDigest md5 = context.md5;
+		md5.reset();
+		md5.update(k, offset, length);
+		try {
+			md5.digest(context.digest, 0, context.digest.length);
+		} catch (DigestException e) {
+			throw new RuntimeException("MD5 digest error", e);
+		}
+		return context.digest;
+	}
+
 	// public static void main(String[] args) {
 	// HashAlgorithm alg=HashAlgorithm.CRC32_HASH;
 	// long h=0;
@@ -6,6 +6,7 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeoutException;
 
 import net.rubyeye.xmemcached.auth.AuthInfo;
@@ -78,6 +79,11 @@ public interface MemcachedClient {
 	 */
 	public static final int DEFAULT_SESSION_IDLE_TIMEOUT = 5000;
 
+	/**
+	 * Default max number of pending operations with listener
+	 */
+	public static final int DEFAULT_MAX_PENDING_LISTENERS = 10000;
+
 	/**
 	 * Set the merge factor,this factor determins how many 'get' commands would
 	 * be merge to one multi-get command.default is 150
@@ -125,6 +131,69 @@ public interface MemcachedClient {
 	public abstract void setOptimizeMergeBuffer(
 			final boolean optimizeMergeBuffer);
 
+	/**
+	 * Enable/Disable pipelining consecutive storage and delete commands with
+	 * their quiet opcodes,only failed commands are responded.It only works
+	 * with binary protocol.Default is false,enable it only if the servers and
+	 * proxies between support quiet opcodes.
+	 * 
+	 * @param optimizeQuietPipeline
+	 */
+	public abstract void setOptimizeQuietPipeline(
+			final boolean optimizeQuietPipeline);
+
+	/**
+	 * Set the max number of timed out commands which are still waiting for
+	 * responses on a connection,when it is reached,the connection is closed
+	 * and reconnected,so that new operations are not queued behind a slow
+	 * server's backlog.Zero means never,it is the default value.
+	 * 
+	 * @param timeoutBacklogThreshold
+	 */
+	public abstract void setTimeoutBacklogThreshold(
+			final int timeoutBacklogThreshold);
+
+	/**
+	 * Set the max number of commands waiting for responses on a
+	 * connection,when it is exceeded,new commands are handled by the overflow
+	 * policy.Zero means unbounded,it is the default value.
+	 * 
+	 * @param maxInFlightCommands
+	 */
+	public abstract void setMaxInFlightCommands(final int maxInFlightCommands);
+
+	/**
+	 * Set the max bytes of commands which are queued on a connection but not
+	 * sent yet,when it is exceeded,new commands are handled by the overflow
+	 * policy.Zero means unbounded,it is the default value.
+	 * 
+	 * @param maxQueuedBytes
+	 */
+	public abstract void setMaxQueuedBytes(final long maxQueuedBytes);
+
+	/**
+	 * Set the policy when a connection's bounds are exceeded,default is
+	 * FAIL_FAST.With BLOCK policy,the caller is blocked at most the operation
+	 * timeout.
+	 * 
+	 * @see OverflowPolicy
+	 * @param overflowPolicy
+	 */
+	public abstract void setOverflowPolicy(final OverflowPolicy overflowPolicy);
+
+	/**
+	 * Set the number of replicas of hot keys.Sends are sampled to find the
+	 * keys which take a large share of the traffic,a hot key is written to
+	 * it's replica servers too and reads of it are spread across them.It
+	 * only works with consistent hash(ketama),zero disables it and is the
+	 * default value.Replicas are refreshed only by writes of this client,so
+	 * replicated reads are consistent only if this client is the only writer
+	 * of the hot keys,writes of other clients reach the primary only.
+	 * 
+	 * @param hotKeyReplicas
+	 */
+	public abstract void setHotKeyReplicas(final int hotKeyReplicas);
+
 	/**
 	 * @return
 	 */
@@ -214,6 +283,35 @@ public interface MemcachedClient {
 	public abstract <T> T get(final String key) throws TimeoutException,
 			InterruptedException, MemcachedException;
 
+	/**
+	 * Get value by key and stream it to the handler in chunks as it is
+	 * read,the value is never materialized in the client,so large values can
+	 * be read with heap bounded by the read buffer.The value is passed to the
+	 * handler as raw bytes without transcoding.
+	 * 
+	 * @param key
+	 *            Key
+	 * @param timeout
+	 *            Operation timeout,if the method is not returned in this
+	 *            time,throw TimeoutException and the handler is not called any
+	 *            more
+	 * @param handler
+	 *            handler of the value chunks,it is called in the reactor
+	 *            thread
+	 * @return true if the value was found
+	 * @throws TimeoutException
+	 * @throws InterruptedException
+	 * @throws MemcachedException
+	 *             if the handler threw an exception
+	 */
+	public abstract boolean getStream(final String key, final long timeout,
+			final ValueChunkHandler handler) throws TimeoutException,
+			InterruptedException, MemcachedException;
+
+	public abstract boolean getStream(final String key,
+			final ValueChunkHandler handler) throws TimeoutException,
+			InterruptedException, MemcachedException;
+
 	/**
 	 * Just like get,But it return a GetsResponse,include cas value for cas
 	 * update.
@@ -1122,6 +1220,17 @@ public interface MemcachedClient {
 	 */
 	public void setEnableHeartBeat(boolean enableHeartBeat);
 
+	/**
+	 * Whether to wait for data on a temporary selector when a read returns
+	 * nothing.It blocks the reactor thread up to 500ms,so every connection
+	 * of the reactor stalls.
+	 * 
+	 * @param useBlockingRead
+	 *            if true,then read blocking as old versions,false by
+	 *            default,the reactor just waits for the next readable event
+	 */
+	public void setUseBlockingRead(boolean useBlockingRead);
+
 	/**
 	 * Enables/disables sanitizing keys by URLEncoding.
 	 * 
@@ -1271,4 +1380,437 @@ public interface MemcachedClient {
 	 */
 	public boolean isFailureMode();
 
-}
\ No newline at end of file
+	/**
+	 * Get value by key asynchronously.The returned future is completed by the
+	 * reactor thread when the response arrives,the value is transcoded in the
+	 * thread which calls Future.get().Future.get() waits at most the client's
+	 * operation timeout.
+	 * 
+	 * @param <T>
+	 * @param key
+	 *            Key
+	 * @param transcoder
+	 *            The value's transcoder
+	 * @return
+	 * @throws MemcachedException
+	 */
+	public <T> Future<T> getAsync(final String key,
+			final Transcoder<T> transcoder) throws MemcachedException;
+
+	public <T> Future<T> getAsync(final String key) throws MemcachedException;
+
+	/**
+	 * Just like getAsync,but the future's value is a GetsResponse,include cas
+	 * value for cas update.
+	 * 
+	 * @param <T>
+	 * @param key
+	 * @param transcoder
+	 * @return
+	 * @throws MemcachedException
+	 */
+	public <T> Future<GetsResponse<T>> getsAsync(final String key,
+			final Transcoder<T> transcoder) throws MemcachedException;
+
+	public <T> Future<GetsResponse<T>> getsAsync(final String key)
+			throws MemcachedException;
+
+	/**
+	 * Bulk get asynchronously,the future's value is a map which contains the
+	 * existing items.
+	 * 
+	 * @param <T>
+	 * @param keyCollections
+	 * @param transcoder
+	 * @return
+	 * @throws MemcachedException
+	 */
+	public <T> Future<Map<String, T>> getMultiAsync(
+			final Collection<String> keyCollections,
+			final Transcoder<T> transcoder) throws MemcachedException;
+
+	public <T> Future<Map<String, T>> getMultiAsync(
+			final Collection<String> keyCollections) throws MemcachedException;
+
+	/**
+	 * Store key-value item to memcached asynchronously
+	 * 
+	 * @param <T>
+	 * @param key
+	 *            stored key
+	 * @param exp
+	 *            expire time
+	 * @param value
+	 *            stored data
+	 * @param transcoder
+	 *            transocder
+	 * @return the future of the store result
+	 * @throws MemcachedException
+	 */
+	public <T> Future<Boolean> setAsync(String key, final int exp,
+			final T value, final Transcoder<T> transcoder)
+			throws MemcachedException;
+
+	public Future<Boolean> setAsync(final String key, final int exp,
+			final Object value) throws MemcachedException;
+
+	/**
+	 * Add key-value item to memcached asynchronously,success only when the key
+	 * is not exists in memcached.
+	 * 
+	 * @param <T>
+	 * @param key
+	 * @param exp
+	 * @param value
+	 * @param transcoder
+	 * @return
+	 * @throws MemcachedException
+	 */
+	public <T> Future<Boolean> addAsync(String key, final int exp,
+			final T value, final Transcoder<T> transcoder)
+			throws MemcachedException;
+
+	public Future<Boolean> addAsync(final String key, final int exp,
+			final Object value) throws MemcachedException;
+
+	/**
+	 * Replace the key's data item in memcached asynchronously,success only when
+	 * the key's data item is exists in memcached.
+	 * 
+	 * @param <T>
+	 * @param key
+	 * @param exp
+	 * @param value
+	 * @param transcoder
+	 * @return
+	 * @throws MemcachedException
+	 */
+	public <T> Future<Boolean> replaceAsync(String key, final int exp,
+			final T value, final Transcoder<T> transcoder)
+			throws MemcachedException;
+
+	public Future<Boolean> replaceAsync(final String key, final int exp,
+			final Object value) throws MemcachedException;
+
+	/**
+	 * Cas asynchronously,the future's value is false if the cas unique is
+	 * changed by others.
+	 * 
+	 * @param <T>
+	 * @param key
+	 * @param exp
+	 * @param value
+	 * @param transcoder
+	 * @param cas
+	 *            cas unique
+	 * @return
+	 * @throws MemcachedException
+	 */
+	public <T> Future<Boolean> casAsync(String key, final int exp,
+			final T value, final Transcoder<T> transcoder, final long cas)
+			throws MemcachedException;
+
+	public Future<Boolean> casAsync(final String key, final int exp,
+			final Object value, final long cas) throws MemcachedException;
+
+	/**
+	 * Delete key's data item from memcached asynchronously
+	 * 
+	 * @param key
+	 * @return
+	 * @throws MemcachedException
+	 */
+	public Future<Boolean> deleteAsync(String key) throws MemcachedException;
+
+	/**
+	 * Incr asynchronously,if the key is not found,the initValue is added in the
+	 * thread which calls Future.get().
+	 * 
+	 * @param key
+	 * @param delta
+	 * @param initValue
+	 * @return
+	 * @throws MemcachedException
+	 */
+	public Future<Long> incrAsync(String key, final long delta,
+			final long initValue) throws MemcachedException;
+
+	public Future<Long> incrAsync(final String key, final long delta)
+			throws MemcachedException;
+
+	/**
+	 * Decr asynchronously,if the key is not found,the initValue is added in the
+	 * thread which calls Future.get().
+	 * 
+	 * @param key
+	 * @param delta
+	 * @param initValue
+	 * @return
+	 * @throws MemcachedException
+	 */
+	public Future<Long> decrAsync(String key, final long delta,
+			final long initValue) throws MemcachedException;
+
+	public Future<Long> decrAsync(final String key, final long delta)
+			throws MemcachedException;
+
+	/**
+	 * Set the max number of pending operations with listener,if there are too
+	 * many pending listeners,new operations with listener will wait at most
+	 * operation timeout and then throw MemcachedException.It prevents slow
+	 * listeners from growing the listener dispatcher's queue without bound.
+	 * Operations with listener sent from a listener or a reactor thread never
+	 * wait,they throw MemcachedException at once.Default is 10000,it is
+	 * limited to the listener dispatcher's queue capacity,which is 1000 times
+	 * the dispatch thread count,so listeners are never rejected by the
+	 * dispatcher and run in reactor threads.
+	 * 
+	 * @param maxPendingListeners
+	 */
+	public void setMaxPendingListeners(int maxPendingListeners);
+
+	public int getMaxPendingListeners();
+
+	/**
+	 * Get value by key,the listener is notified when the operation is
+	 * done.Listener's executor determines where the listener runs,if it is
+	 * null,listener runs in the listener dispatcher which is configured by
+	 * Configuration.setDispatchMessageThreadCount(),or in the reactor thread if
+	 * the count is 0.
+	 * 
+	 * @param <T>
+	 * @param key
+	 * @param transcoder
+	 * @param listener
+	 * @throws MemcachedException
+	 */
+	public <T> void get(final String key, final Transcoder<T> transcoder,
+			final OperationListener<T> listener) throws MemcachedException;
+
+	public <T> void get(final String key, final OperationListener<T> listener)
+			throws MemcachedException;
+
+	/**
+	 * Bulk get with listener
+	 * 
+	 * @param <T>
+	 * @param keyCollections
+	 * @param transcoder
+	 * @param listener
+	 * @throws MemcachedException
+	 */
+	public <T> void get(final Collection<String> keyCollections,
+			final Transcoder<T> transcoder,
+			final OperationListener<Map<String, T>> listener)
+			throws MemcachedException;
+
+	public <T> void get(final Collection<String> keyCollections,
+			final OperationListener<Map<String, T>> listener)
+			throws MemcachedException;
+
+	/**
+	 * Set with listener
+	 * 
+	 * @param <T>
+	 * @param key
+	 * @param exp
+	 * @param value
+	 * @param transcoder
+	 * @param listener
+	 * @throws MemcachedException
+	 */
+	public <T> void set(final String key, final int exp, final T value,
+			final Transcoder<T> transcoder,
+			final OperationListener<Boolean> listener)
+			throws MemcachedException;
+
+	public void set(final String key, final int exp, final Object value,
+			final OperationListener<Boolean> listener)
+			throws MemcachedException;
+
+	/**
+	 * Add with listener
+	 * 
+	 * @param <T>
+	 * @param key
+	 * @param exp
+	 * @param value
+	 * @param transcoder
+	 * @param listener
+	 * @throws MemcachedException
+	 */
+	public <T> void add(final String key, final int exp, final T value,
+			final Transcoder<T> transcoder,
+			final OperationListener<Boolean> listener)
+			throws MemcachedException;
+
+	public void add(final String key, final int exp, final Object value,
+			final OperationListener<Boolean> listener)
+			throws MemcachedException;
+
+	/**
+	 * Replace with listener
+	 * 
+	 * @param <T>
+	 * @param key
+	 * @param exp
+	 * @param value
+	 * @param transcoder
+	 * @param listener
+	 * @throws MemcachedException
+	 */
+	public <T> void replace(final String key, final int exp, final T value,
+			final Transcoder<T> transcoder,
+			final OperationListener<Boolean> listener)
+			throws MemcachedException;
+
+	public void replace(final String key, final int exp, final Object value,
+			final OperationListener<Boolean> listener)
+			throws MemcachedException;
+
+	/**
+	 * Delete with listener
+	 * 
+	 * @param key
+	 * @param listener
+	 * @throws MemcachedException
+	 */
+	public void delete(final String key,
+			final OperationListener<Boolean> listener)
+			throws MemcachedException;
+
+	/**
+	 * Incr with listener,if the key is not found,the initValue is added without
+	 * blocking and then the listener is notified.
+	 * 
+	 * @param key
+	 * @param delta
+	 * @param initValue
+	 * @param listener
+	 * @throws MemcachedException
+	 */
+	public void incr(String key, final long delta, final long initValue,
+			final OperationListener<Long> listener) throws MemcachedException;
+
+	/**
+	 * Decr with listener,if the key is not found,the initValue is added without
+	 * blocking and then the listener is notified.
+	 * 
+	 * @param key
+	 * @param delta
+	 * @param initValue
+	 * @param listener
+	 * @throws MemcachedException
+	 */
+	public void decr(String key, final long delta, final long initValue,
+			final OperationListener<Long> listener) throws MemcachedException;
+
+	/**
+	 * Store many items in batch.Items are grouped by memcached server,the
+	 * commands for one server are written in one buffer and the client waits
+	 * only once for all servers.In binary protocol,quiet commands are used and
+	 * only failures are responded.
+	 * 
+	 * @param <T>
+	 * @param items
+	 *            key-value items to store
+	 * @param exp
+	 * @param transcoder
+	 * @param timeout
+	 *            operation timeout for the whole batch
+	 * @return stored status of every key
+	 * @throws TimeoutException
+	 * @throws InterruptedException
+	 * @throws MemcachedException
+	 */
+	public <T> Map<String, Boolean> setMulti(final Map<String, T> items,
+			final int exp, final Transcoder<T> transcoder, final long timeout)
+			throws TimeoutException, InterruptedException, MemcachedException;
+
+	public Map<String, Boolean> setMulti(final Map<String, ?> items,
+			final int exp) throws TimeoutException, InterruptedException,
+			MemcachedException;
+
+	/**
+	 * Add many items in batch
+	 * 
+	 * @see #setMulti(Map, int, Transcoder, long)
+	 * @param <T>
+	 * @param items
+	 * @param exp
+	 * @param transcoder
+	 * @param timeout
+	 * @return added status of every key
+	 * @throws TimeoutException
+	 * @throws InterruptedException
+	 * @throws MemcachedException
+	 */
+	public <T> Map<String, Boolean> addMulti(final Map<String, T> items,
+			final int exp, final Transcoder<T> transcoder, final long timeout)
+			throws TimeoutException, InterruptedException, MemcachedException;
+
+	public Map<String, Boolean> addMulti(final Map<String, ?> items,
+			final int exp) throws TimeoutException, InterruptedException,
+			MemcachedException;
+
+	/**
+	 * Delete many keys in batch
+	 * 
+	 * @see #setMulti(Map, int, Transcoder, long)
+	 * @param keys
+	 * @param timeout
+	 * @return deleted status of every key
+	 * @throws TimeoutException
+	 * @throws InterruptedException
+	 * @throws MemcachedException
+	 */
+	public Map<String, Boolean> deleteMulti(final Collection<String> keys,
+			final long timeout) throws TimeoutException, InterruptedException,
+			MemcachedException;
+
+	public Map<String, Boolean> deleteMulti(final Collection<String> keys)
+			throws TimeoutException, InterruptedException, MemcachedException;
+
+	/**
+	 * Incr many keys in batch,if a key is not found,it is initialized with the
+	 * initValue.Keys which failed to be increased are absent in the result.
+	 * 
+	 * @param keys
+	 * @param delta
+	 * @param initValue
+	 * @param timeout
+	 * @return the value of every key after increasing
+	 * @throws TimeoutException
+	 * @throws InterruptedException
+	 * @throws MemcachedException
+	 */
+	public Map<String, Long> incrMulti(final Collection<String> keys,
+			final long delta, final long initValue, final long timeout)
+			throws TimeoutException, InterruptedException, MemcachedException;
+
+	public Map<String, Long> incrMulti(final Collection<String> keys,
+			final long delta, final long initValue) throws TimeoutException,
+			InterruptedException, MemcachedException;
+
+	/**
+	 * Decr many keys in batch
+	 * 
+	 * @see #incrMulti(Collection, long, long, long)
+	 * @param keys
+	 * @param delta
+	 * @param initValue
+	 * @param timeout
+	 * @return the value of every key after decreasing
+	 * @throws TimeoutException
+	 * @throws InterruptedException
+	 * @throws MemcachedException
+	 */
+	public Map<String, Long> decrMulti(final Collection<String> keys,
+			final long delta, final long initValue, final long timeout)
+			throws TimeoutException, InterruptedException, MemcachedException;
+
+	public Map<String, Long> decrMulti(final Collection<String> keys,
+			final long delta, final long initValue) throws TimeoutException,
+			InterruptedException, MemcachedException;
+
+}
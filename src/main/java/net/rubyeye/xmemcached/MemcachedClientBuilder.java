@@ -29,7 +29,8 @@ public interface MemcachedClientBuilder {
 	/**
 	 * Set the XmemcachedClient's session locator.Use
 	 * ArrayMemcachedSessionLocator by default.If you want to choose consistent
-	 * hash strategy,set it to KetamaMemcachedSessionLocator
+	 * hash strategy,set it to KetamaMemcachedSessionLocator,or to
+	 * BoundedLoadMemcachedSessionLocator to cap the load of every node
 	 * 
 	 * @param sessionLocator
 	 */
@@ -12,6 +12,7 @@
 package net.rubyeye.xmemcached;
 
 import java.util.Collection;
+import java.util.List;
 
 import com.google.code.yanf4j.core.Session;
 
@@ -30,6 +31,27 @@ public interface MemcachedSessionLocator {
 	 */
 	public Session getSessionByKey(final String key);
 
+	/**
+	 * Returns a session by special key bytes which are encoded in utf-8,it
+	 * must return the same session as getSessionByKey(String).
+	 * 
+	 * @param keyBytes
+	 * @return
+	 */
+	public Session getSessionByKey(final byte[] keyBytes);
+
+	/**
+	 * Returns at most count sessions of distinct servers which hold the
+	 * replicas of the key,the primary server of the key is excluded.Locators
+	 * which don't support replicas return an empty list.
+	 * 
+	 * @param key
+	 * @param count
+	 * @return
+	 */
+	public List<Session> getReplicaSessionsByKey(final String key,
+			final int count);
+
 	/**
 	 * Update sessions when session was added or removed.
 	 * 
@@ -0,0 +1,295 @@
+/**
+ *Copyright [2009-2010] [dennis zhuang(killme2008@gmail.com)]
+ *Licensed under the Apache License, Version 2.0 (the "License");
+ *you may not use this file except in compliance with the License.
+ *You may obtain a copy of the License at
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *Unless required by applicable law or agreed to in writing,
+ *software distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ *either express or implied. See the License for the specific language governing permissions and limitations under the License
+ */
+package net.rubyeye.xmemcached;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import net.rubyeye.xmemcached.command.Command;
+import net.rubyeye.xmemcached.command.CompletionLatch;
+import net.rubyeye.xmemcached.exception.MemcachedException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.code.yanf4j.core.Dispatcher;
+import com.google.code.yanf4j.core.impl.DispatchBatch;
+import com.google.code.yanf4j.util.HashedWheelTimer;
+
+/**
+ * Future result of an asynchronous memcached operation.The commands are
+ * completed by the reactor(or dispatch) thread through
+ * Command.countDownLatch(),no caller thread is parked while the operation is
+ * in flight.The raw response is converted(transcoded) lazily in the thread
+ * which calls get() at the first time.If a deadline is scheduled on the
+ * timer,the future is completed with a TimeoutException by the timer thread
+ * when no response arrived in time.
+ *
+ * @author dennis
+ *
+ * @param <T>
+ */
+public abstract class OperationFuture<T> implements Future<T> {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(OperationFuture.class);
+
+	protected final List<Command> commands;
+	private final CountDownLatch latch;
+	private final long opTimeout;
+	private volatile boolean cancelled;
+	private volatile long expireTimeout;
+
+	private boolean resolved;
+	private T value;
+	private ExecutionException failure;
+
+	public OperationFuture(Command command, long opTimeout) {
+		this(Collections.singletonList(command), command.getLatch(), opTimeout);
+	}
+
+	/**
+	 *
+	 * @param commands
+	 *            commands which share the same latch
+	 * @param latch
+	 *            the latch count down by commands
+	 * @param opTimeout
+	 *            default operation timeout for get()
+	 */
+	public OperationFuture(List<Command> commands, CountDownLatch latch,
+			long opTimeout) {
+		super();
+		this.commands = commands;
+		this.latch = latch;
+		this.opTimeout = opTimeout;
+	}
+
+	/**
+	 * Convert commands' results to the future's value,it is called only once.
+	 *
+	 * @return
+	 * @throws Exception
+	 */
+	protected abstract T convert() throws Exception;
+
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		if (this.isDone()) {
+			return false;
+		}
+		this.cancelled = true;
+		for (Command command : this.commands) {
+			command.cancel();
+		}
+		return true;
+	}
+
+	public boolean isCancelled() {
+		return this.cancelled;
+	}
+
+	public boolean isDone() {
+		return this.cancelled || this.latch.getCount() == 0;
+	}
+
+	/**
+	 * Waits at most the client's operation timeout,if the operation is not
+	 * returned in this time,the operation will be cancelled and an
+	 * ExecutionException caused by TimeoutException will be thrown.
+	 */
+	public T get() throws InterruptedException, ExecutionException {
+		try {
+			return this.get(this.opTimeout, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			this.cancel(false);
+			throw new ExecutionException(e);
+		}
+	}
+
+	public T get(long timeout, TimeUnit unit) throws InterruptedException,
+			ExecutionException, TimeoutException {
+		if (this.cancelled) {
+			throw new CancellationException();
+		}
+		if (!this.latch.await(timeout, unit)) {
+			throw new TimeoutException("Timed out(" + unit.toMillis(timeout)
+					+ ") waiting for operation");
+		}
+		return this.resolve();
+	}
+
+	/**
+	 * Notify the listener when the operation is done.The listener is run by
+	 * it's own executor if it is not null,otherwise by the default
+	 * dispatcher,or in the thread which completes the operation when the
+	 * default dispatcher is null too.
+	 * 
+	 * @param listener
+	 * @param defaultDispatcher
+	 */
+	public void addListener(final OperationListener<T> listener,
+			final Dispatcher defaultDispatcher) {
+		if (!(this.latch instanceof CompletionLatch)) {
+			throw new IllegalStateException(
+					"Listener is only supported by commands with CompletionLatch");
+		}
+		final Runnable notifier = new Runnable() {
+			public void run() {
+				try {
+					OperationFuture.this.notifyListener(listener);
+				} catch (Throwable e) {
+					log.error("Notify operation listener error", e);
+				}
+			}
+		};
+		((CompletionLatch) this.latch).addCallback(new Runnable() {
+			public void run() {
+				Executor executor = listener.getExecutor();
+				try {
+					if (executor != null) {
+						executor.execute(notifier);
+					} else if (defaultDispatcher != null) {
+						// batched with other listeners completed in the same
+						// read pass
+						DispatchBatch.dispatch(defaultDispatcher, notifier);
+					} else {
+						notifier.run();
+					}
+				} catch (RejectedExecutionException e) {
+					// run it in current thread
+					notifier.run();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Schedule the operation's deadline on the timer,the timeout is cancelled
+	 * when the operation is completed before the deadline.
+	 * 
+	 * @param timer
+	 * @param timeout
+	 *            timeout in milliseconds
+	 */
+	public void expireAfter(final HashedWheelTimer timer, final long timeout) {
+		if (this.isDone() || !(this.latch instanceof CompletionLatch)) {
+			return;
+		}
+		this.expireTimeout = timeout;
+		final HashedWheelTimer.Timeout handle = timer.newTimeout(
+				new Runnable() {
+					public void run() {
+						OperationFuture.this.expire(timeout);
+					}
+				}, timeout, TimeUnit.MILLISECONDS);
+		((CompletionLatch) this.latch).addCallback(new Runnable() {
+			public void run() {
+				handle.cancel();
+			}
+		});
+	}
+
+	/**
+	 * Complete the operation with a TimeoutException if it is not done,the
+	 * commands are cancelled,so their responses will be discarded.The latch
+	 * is completed by one CAS and the commands are changed only if it wins,so
+	 * a response completed by the reactor concurrently is never overwritten.
+	 * 
+	 * @param timeout
+	 * @return true if the operation is expired by this call
+	 */
+	protected boolean expire(long timeout) {
+		if (!(this.latch instanceof CompletionLatch)) {
+			return false;
+		}
+		final TimeoutException e = new TimeoutException("Timed out("
+				+ timeout + ") waiting for operation");
+		return ((CompletionLatch) this.latch).forceComplete(new Runnable() {
+			public void run() {
+				for (Command command : OperationFuture.this.commands) {
+					command.setException(e);
+					command.cancel();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Whether the latch was completed by the deadline instead of responses
+	 * 
+	 * @return
+	 */
+	private boolean isExpired() {
+		return this.latch instanceof CompletionLatch
+				&& ((CompletionLatch) this.latch).isForceCompleted();
+	}
+
+	private void notifyListener(OperationListener<T> listener) {
+		T result;
+		try {
+			result = this.resolve();
+		} catch (ExecutionException e) {
+			listener.onFailure(e.getCause());
+			return;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			listener.onFailure(e);
+			return;
+		}
+		listener.onSuccess(result);
+	}
+
+	private synchronized T resolve() throws InterruptedException,
+			ExecutionException {
+		if (!this.resolved) {
+			try {
+				for (Command command : this.commands) {
+					if (command.getIoBuffer() != null) {
+						command.getIoBuffer().free();
+					}
+					Exception exception = command.getException();
+					if (exception instanceof TimeoutException) {
+						throw exception;
+					}
+					if (exception != null) {
+						throw new MemcachedException(exception);
+					}
+				}
+				// a spinning waiter may wake up before the exception is set by
+				// expire
+				if (this.isExpired()) {
+					throw new TimeoutException("Timed out("
+							+ this.expireTimeout + ") waiting for operation");
+				}
+				this.value = this.convert();
+			} catch (InterruptedException e) {
+				throw e;
+			} catch (Exception e) {
+				this.failure = new ExecutionException(e);
+			}
+			this.resolved = true;
+		}
+		if (this.failure != null) {
+			throw this.failure;
+		}
+		return this.value;
+	}
+
+}
@@ -0,0 +1,49 @@
+/**
+ *Copyright [2009-2010] [dennis zhuang(killme2008@gmail.com)]
+ *Licensed under the Apache License, Version 2.0 (the "License");
+ *you may not use this file except in compliance with the License.
+ *You may obtain a copy of the License at
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *Unless required by applicable law or agreed to in writing,
+ *software distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ *either express or implied. See the License for the specific language governing permissions and limitations under the License
+ */
+package net.rubyeye.xmemcached;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Listener of an asynchronous memcached operation
+ * 
+ * @author dennis
+ * 
+ * @param <T>
+ *            operation result type
+ */
+public interface OperationListener<T> {
+	/**
+	 * Returns the executor to run this listener.If it returns null,the
+	 * listener is run by the client's listener dispatcher(configured by
+	 * Configuration.setDispatchMessageThreadCount),or in the reactor thread
+	 * when the dispatch thread count is 0.Listeners run in reactor thread must
+	 * not block.
+	 * 
+	 * @return
+	 */
+	public Executor getExecutor();
+
+	/**
+	 * Operation is done successfully
+	 * 
+	 * @param result
+	 */
+	public void onSuccess(T result);
+
+	/**
+	 * Operation is failed
+	 * 
+	 * @param throwable
+	 */
+	public void onFailure(Throwable throwable);
+}
@@ -0,0 +1,36 @@
+/**
+ *Copyright [2009-2010] [dennis zhuang(killme2008@gmail.com)]
+ *Licensed under the Apache License, Version 2.0 (the "License");
+ *you may not use this file except in compliance with the License.
+ *You may obtain a copy of the License at
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *Unless required by applicable law or agreed to in writing,
+ *software distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ *either express or implied. See the License for the specific language governing permissions and limitations under the License
+ */
+package net.rubyeye.xmemcached;
+
+/**
+ * What to do when a connection's in flight commands or queued bytes exceed
+ * the bounds
+ * 
+ * @author dennis
+ * 
+ */
+public enum OverflowPolicy {
+	/**
+	 * Block the caller until the queue is drained or the operation timeout is
+	 * reached.Reactor and timer threads never block,they fail fast instead.
+	 */
+	BLOCK,
+	/**
+	 * Fail the new command at once
+	 */
+	FAIL_FAST,
+	/**
+	 * Fail the oldest commands which are not written yet to make room for the
+	 * new command
+	 */
+	SHED_OLDEST
+}
@@ -0,0 +1,49 @@
+/**
+ *Copyright [2009-2010] [dennis zhuang(killme2008@gmail.com)]
+ *Licensed under the Apache License, Version 2.0 (the "License");
+ *you may not use this file except in compliance with the License.
+ *You may obtain a copy of the License at
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *Unless required by applicable law or agreed to in writing,
+ *software distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ *either express or implied. See the License for the specific language governing permissions and limitations under the License
+ */
+package net.rubyeye.xmemcached;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Handler of a value which is streamed in chunks,see
+ * MemcachedClient.getStream.The value is never materialized by the client,so
+ * heap used by a large read is bounded by the read buffer.Handlers are called
+ * in the reactor thread as bytes arrive,they must not block.
+ *
+ * @author dennis
+ *
+ */
+public interface ValueChunkHandler {
+	/**
+	 * The value is found,it's chunks follow
+	 *
+	 * @param flags
+	 *            flags stored with the value
+	 * @param length
+	 *            value length in bytes
+	 */
+	public void onValue(int flags, int length);
+
+	/**
+	 * A chunk of the value from it's position to it's limit.The buffer is the
+	 * session's read buffer,it is only valid during this call and must not be
+	 * kept.
+	 *
+	 * @param chunk
+	 */
+	public void onChunk(ByteBuffer chunk);
+
+	/**
+	 * All chunks of the value were handled
+	 */
+	public void onComplete();
+}
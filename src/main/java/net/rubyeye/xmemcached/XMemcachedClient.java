@@ -30,7 +30,10 @@ import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -39,12 +42,16 @@ import net.rubyeye.xmemcached.auth.AuthInfo;
 import net.rubyeye.xmemcached.buffer.BufferAllocator;
 import net.rubyeye.xmemcached.buffer.SimpleBufferAllocator;
 import net.rubyeye.xmemcached.codec.MemcachedCodecFactory;
+import net.rubyeye.xmemcached.command.BulkCommand;
 import net.rubyeye.xmemcached.command.Command;
 import net.rubyeye.xmemcached.command.CommandType;
+import net.rubyeye.xmemcached.command.CompletionLatch;
 import net.rubyeye.xmemcached.command.ServerAddressAware;
 import net.rubyeye.xmemcached.command.TextCommandFactory;
 import net.rubyeye.xmemcached.exception.MemcachedException;
 import net.rubyeye.xmemcached.impl.ArrayMemcachedSessionLocator;
+import net.rubyeye.xmemcached.impl.HotKeyDetector;
+import net.rubyeye.xmemcached.impl.KeyPartition;
 import net.rubyeye.xmemcached.impl.KeyIteratorImpl;
 import net.rubyeye.xmemcached.impl.MemcachedClientStateListenerAdapter;
 import net.rubyeye.xmemcached.impl.MemcachedConnector;
@@ -68,8 +75,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.code.yanf4j.config.Configuration;
+import com.google.code.yanf4j.core.Dispatcher;
 import com.google.code.yanf4j.core.Session;
 import com.google.code.yanf4j.core.SocketOption;
+import com.google.code.yanf4j.core.impl.PoolDispatcher;
+import com.google.code.yanf4j.nio.impl.Reactor;
+import com.google.code.yanf4j.util.DispatcherFactory;
+import com.google.code.yanf4j.util.HashedWheelTimer;
 import com.google.code.yanf4j.util.SystemUtils;
 
 /**
@@ -104,6 +116,24 @@ public class XMemcachedClient implements XMemcachedClientMBean, MemcachedClient
 
 	private final CopyOnWriteArrayList<MemcachedClientStateListenerAdapter> stateListenerAdapters = new CopyOnWriteArrayList<MemcachedClientStateListenerAdapter>();
 
+	private Dispatcher listenerDispatcher; // run operation listeners
+
+	private volatile int maxPendingListeners = DEFAULT_MAX_PENDING_LISTENERS;
+
+	private final ListenerPermits listenerPermits = new ListenerPermits(
+			DEFAULT_MAX_PENDING_LISTENERS);
+
+	/**
+	 * Queue capacity of the listener dispatcher,pending listeners are bounded
+	 * by it
+	 */
+	private int listenerQueueCapacity = Integer.MAX_VALUE;
+
+	/**
+	 * Set while an operation listener is running in current thread
+	 */
+	private static final ThreadLocal<Boolean> IN_LISTENER = new ThreadLocal<Boolean>();
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -157,6 +187,18 @@ public class XMemcachedClient implements XMemcachedClientMBean, MemcachedClient
 		this.memcachedHandler.setEnableHeartBeat(enableHeartBeat);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#setUseBlockingRead(boolean)
+	 */
+	public void setUseBlockingRead(boolean useBlockingRead) {
+		this.memcachedHandler.setUseBlockingRead(useBlockingRead);
+		for (Session session : this.connector.getSessionSet()) {
+			session.setUseBlockingRead(useBlockingRead);
+		}
+	}
+
 	/**
 	 * get operation timeout setting
 	 * 
@@ -176,6 +218,9 @@ public class XMemcachedClient implements XMemcachedClientMBean, MemcachedClient
 			throw new IllegalArgumentException("opTimeout<0");
 		}
 		this.opTimeout = opTimeout;
+		if (null != this.connector) {
+			this.connector.setOverflowBlockTimeout(opTimeout);
+		}
 	}
 
 	public void setHealSessionInterval(long healConnectionInterval) {
@@ -219,6 +264,66 @@ public class XMemcachedClient implements XMemcachedClientMBean, MemcachedClient
 		this.connector.setOptimizeMergeBuffer(optimizeMergeBuffer);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * net.rubyeye.xmemcached.MemcachedClient#setOptimizeQuietPipeline(boolean)
+	 */
+	public final void setOptimizeQuietPipeline(
+			final boolean optimizeQuietPipeline) {
+		this.connector.setOptimizeQuietPipeline(optimizeQuietPipeline);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * net.rubyeye.xmemcached.MemcachedClient#setTimeoutBacklogThreshold(int)
+	 */
+	public final void setTimeoutBacklogThreshold(
+			final int timeoutBacklogThreshold) {
+		this.connector.setTimeoutBacklogThreshold(timeoutBacklogThreshold);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#setMaxInFlightCommands(int)
+	 */
+	public final void setMaxInFlightCommands(final int maxInFlightCommands) {
+		this.connector.setMaxInFlightCommands(maxInFlightCommands);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#setMaxQueuedBytes(long)
+	 */
+	public final void setMaxQueuedBytes(final long maxQueuedBytes) {
+		this.connector.setMaxQueuedBytes(maxQueuedBytes);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * net.rubyeye.xmemcached.MemcachedClient#setOverflowPolicy(net.rubyeye.
+	 * xmemcached.OverflowPolicy)
+	 */
+	public final void setOverflowPolicy(final OverflowPolicy overflowPolicy) {
+		this.connector.setOverflowPolicy(overflowPolicy);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#setHotKeyReplicas(int)
+	 */
+	public final void setHotKeyReplicas(final int hotKeyReplicas) {
+		this.connector.setHotKeyReplicas(hotKeyReplicas);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -425,6 +530,51 @@ public class XMemcachedClient implements XMemcachedClientMBean, MemcachedClient
 		return result;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.XMemcachedClientMBean#getPendingTimeouts()
+	 */
+	public final long getPendingTimeouts() {
+		final HashedWheelTimer timer = this.connector.getTimer();
+		return timer == null ? 0 : timer.getPendingTimeouts();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.XMemcachedClientMBean#getQueueDepths()
+	 */
+	public final List<String> getQueueDepths() {
+		final List<String> result = new ArrayList<String>();
+		for (Session session : this.connector.getSessionSet()) {
+			MemcachedTCPSession tcpSession = (MemcachedTCPSession) session;
+			InetSocketAddress socketAddress = session.getRemoteSocketAddress();
+			result.add(SystemUtils.getRawAddress(socketAddress) + ":"
+					+ socketAddress.getPort() + "(writeQueue="
+					+ tcpSession.getWriteQueue().size() + ",queuedBytes="
+					+ tcpSession.getScheduleWritenBytes() + ",inFlight="
+					+ tcpSession.getInFlightCommandCount() + ")");
+		}
+		return result;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.XMemcachedClientMBean#getHotKeys()
+	 */
+	public final List<String> getHotKeys() {
+		final List<String> result = new ArrayList<String>();
+		final HotKeyDetector detector = this.connector.getHotKeyDetector();
+		if (detector != null) {
+			for (HotKeyDetector.HotKey hotKey : detector.getHotKeys()) {
+				result.add(hotKey.toString());
+			}
+		}
+		return result;
+	}
+
 	public final void setServerWeight(String server, int weight) {
 		InetSocketAddress socketAddress = AddrUtil.getOneAddress(server);
 		Queue<Session> sessionQueue = this.connector
@@ -588,7 +738,6 @@ public class XMemcachedClient implements XMemcachedClientMBean, MemcachedClient
 		if (this.shutdown) {
 			this.shutdown = false;
 			this.connector.start();
-			this.memcachedHandler.start();
 			Runtime.getRuntime().addShutdownHook(new Thread() {
 				@Override
 				public void run() {
@@ -636,6 +785,22 @@ public class XMemcachedClient implements XMemcachedClientMBean, MemcachedClient
 		this.shutdown = true;
 		this.transcoder = transcoder;
 		this.sessionLocator = locator;
+		// dispatch thread count is used by listener dispatcher,connector's
+		// messages are always dispatched in reactor threads.
+		this.listenerDispatcher = DispatcherFactory.newDispatcher(
+				configuration.getDispatchMessageThreadCount(),
+				new ThreadPoolExecutor.CallerRunsPolicy(),
+				"xmemcached-listener-dispatcher");
+		if (this.listenerDispatcher != null) {
+			// rejected listeners run in the caller,which is a reactor
+			// thread,so the queue must hold all pending listeners
+			this.listenerQueueCapacity = configuration
+					.getDispatchMessageThreadCount()
+					* PoolDispatcher.POOL_QUEUE_SIZE_FACTOR;
+			if (this.maxPendingListeners > this.listenerQueueCapacity) {
+				this.setMaxPendingListeners(this.listenerQueueCapacity);
+			}
+		}
 		this.connector = this.newConnector(bufferAllocator, configuration,
 				this.sessionLocator, this.commandFactory,
 				this.connectionPoolSize);
@@ -928,6 +1093,42 @@ public class XMemcachedClient implements XMemcachedClientMBean, MemcachedClient
 		return (T) this.get(key, timeout, this.transcoder);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#getStream(java.lang.String,
+	 * long, net.rubyeye.xmemcached.ValueChunkHandler)
+	 */
+	public final boolean getStream(String key, final long timeout,
+			final ValueChunkHandler handler) throws TimeoutException,
+			InterruptedException, MemcachedException {
+		if (handler == null) {
+			throw new NullPointerException("Null handler");
+		}
+		key = this.sanitizeKey(key);
+		byte[] keyBytes = ByteUtils.getBytes(key);
+		ByteUtils.checkKey(keyBytes);
+		final Command command = this.commandFactory.createGetStreamCommand(
+				key, keyBytes, handler);
+		this.sendCommand(command);
+		this.latchWait(command, timeout);
+		command.getIoBuffer().free();
+		this.checkException(command);
+		return (Boolean) command.getResult();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#getStream(java.lang.String,
+	 * net.rubyeye.xmemcached.ValueChunkHandler)
+	 */
+	public final boolean getStream(final String key,
+			final ValueChunkHandler handler) throws TimeoutException,
+			InterruptedException, MemcachedException {
+		return this.getStream(key, this.opTimeout, handler);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -1117,6 +1318,31 @@ public class XMemcachedClient implements XMemcachedClientMBean, MemcachedClient
 		if (keys == null || keys.size() == 0) {
 			return null;
 		}
+		final List<Command> commands = this.sendGetMultiCommands(keys,
+				cmdType, transcoder);
+		final CountDownLatch latch = commands.get(0).getLatch();
+		if (!this.awaitLatch(latch, timeout)) {
+			for (Command getCmd : commands) {
+				getCmd.cancel();
+			}
+			throw new TimeoutException("Timed out waiting for operation");
+		}
+		return this.reduceResult(cmdType, transcoder, commands);
+	}
+
+	/**
+	 * Hash keys to servers and send get-multi commands,all the commands share
+	 * the same latch.
+	 * 
+	 * @param keys
+	 * @param cmdType
+	 * @param transcoder
+	 * @return
+	 * @throws MemcachedException
+	 */
+	private final <T> List<Command> sendGetMultiCommands(
+			final Collection<String> keys, final CommandType cmdType,
+			final Transcoder<T> transcoder) throws MemcachedException {
 		Collection<String> keyCollections = keys;
 		if (this.sanitizeKeys) {
 			keyCollections = new ArrayList<String>(keys.size());
@@ -1128,34 +1354,49 @@ public class XMemcachedClient implements XMemcachedClientMBean, MemcachedClient
 		final List<Command> commands;
 		if (this.connector.getSessionSet().size() <= 1) {
 			commands = new ArrayList<Command>(1);
-			latch = new CountDownLatch(1);
+			latch = new CompletionLatch(1);
 			commands.add(this.sendGetMultiCommand(keyCollections, latch,
 					cmdType, transcoder));
 
 		} else {
-			Collection<List<String>> catalogKeys = this
-					.catalogKeys(keyCollections);
-			commands = new ArrayList<Command>(catalogKeys.size());
-			latch = new CountDownLatch(catalogKeys.size());
-			for (List<String> catalogKeyCollection : catalogKeys) {
-				commands.add(this.sendGetMultiCommand(catalogKeyCollection,
-						latch, cmdType, transcoder));
-			}
-		}
-		if (!latch.await(timeout, TimeUnit.MILLISECONDS)) {
-			for (Command getCmd : commands) {
-				getCmd.cancel();
+			final KeyPartition partition = KeyPartition.get();
+			try {
+				partition.partition(keyCollections, this.sessionLocator);
+				final int sessionCount = partition.getSessionCount();
+				commands = new ArrayList<Command>(sessionCount);
+				latch = new CompletionLatch(sessionCount);
+				for (int slot = 0; slot < sessionCount; slot++) {
+					final Command command = this.commandFactory
+							.createGetMultiCommand(partition.getKeys(),
+									partition.getIndexes(), partition
+											.getOffset(slot), partition
+											.getCount(slot), latch, cmdType,
+									transcoder);
+					if (this.shutdown) {
+						throw new MemcachedException("Xmemcached is stopped");
+					}
+					this.connector.send(command, partition.getSession(slot));
+					commands.add(command);
+				}
+			} finally {
+				partition.clear();
 			}
-			throw new TimeoutException("Timed out waiting for operation");
 		}
-		return this.reduceResult(cmdType, transcoder, commands);
+		return commands;
 	}
 
 	@SuppressWarnings("unchecked")
 	private <T> Map<String, T> reduceResult(final CommandType cmdType,
 			final Transcoder<T> transcoder, final List<Command> commands)
 			throws MemcachedException {
-		final Map<String, T> result = new HashMap<String, T>(commands.size());
+		int size = 0;
+		for (Command getCmd : commands) {
+			Map<?, ?> map = (Map<?, ?>) getCmd.getResult();
+			if (map != null) {
+				size += map.size();
+			}
+		}
+		final Map<String, T> result = new HashMap<String, T>(size * 4 / 3 + 1);
 		for (Command getCmd : commands) {
 			getCmd.getIoBuffer().free();
 			this.checkException(getCmd);
@@ -1192,35 +1433,10 @@ public class XMemcachedClient implements XMemcachedClientMBean, MemcachedClient
 		return result;
 	}
 
-	/**
-	 * Hash key to servers
-	 * 
-	 * @param keyCollections
-	 * @return
-	 */
-	private final Collection<List<String>> catalogKeys(
-			final Collection<String> keyCollections) {
-		final Map<Session, List<String>> catalogMap = new HashMap<Session, List<String>>();
-
-		for (String key : keyCollections) {
-			Session index = this.sessionLocator.getSessionByKey(key);
-			if (!catalogMap.containsKey(index)) {
-				List<String> tmpKeys = new ArrayList<String>(100);
-				tmpKeys.add(key);
-				catalogMap.put(index, tmpKeys);
-			} else {
-				catalogMap.get(index).add(key);
-			}
-		}
-
-		Collection<List<String>> catalogKeys = catalogMap.values();
-		return catalogKeys;
-	}
-
 	private final <T> Command sendGetMultiCommand(
 			final Collection<String> keys, final CountDownLatch latch,
 			final CommandType cmdType, final Transcoder<T> transcoder)
-			throws InterruptedException, TimeoutException, MemcachedException {
+			throws MemcachedException {
 		final Command command = this.commandFactory.createGetMultiCommand(keys,
 				latch, cmdType, transcoder);
 		this.sendCommand(command);
@@ -1958,7 +2174,7 @@ public class XMemcachedClient implements XMemcachedClientMBean, MemcachedClient
 			int exptime) throws MemcachedException, InterruptedException,
 			TimeoutException {
 		final Collection<Session> sessions = this.connector.getSessionSet();
-		CountDownLatch latch = new CountDownLatch(sessions.size());
+		CountDownLatch latch = new CompletionLatch(sessions.size());
 		List<Command> commands = new ArrayList<Command>(sessions.size());
 		for (Session session : sessions) {
 			if (session != null && !session.isClosed()) {
@@ -1966,12 +2182,13 @@ public class XMemcachedClient implements XMemcachedClientMBean, MemcachedClient
 						latch, exptime, noreply);
 
 				session.write(command);
+				commands.add(command);
 			} else {
 				latch.countDown();
 			}
 		}
 		if (!noreply) {
-			if (!latch.await(timeout, TimeUnit.MILLISECONDS)) {
+			if (!this.awaitLatch(latch, timeout)) {
 				for (Command cmd : commands) {
 					cmd.cancel();
 				}
@@ -1992,7 +2209,7 @@ public class XMemcachedClient implements XMemcachedClientMBean, MemcachedClient
 		if (address == null) {
 			throw new IllegalArgumentException("Null adderss");
 		}
-		CountDownLatch latch = new CountDownLatch(1);
+		CountDownLatch latch = new CompletionLatch(1);
 
 		Queue<Session> sessionQueue = this.connector
 				.getSessionByAddress(address);
@@ -2056,7 +2273,7 @@ public class XMemcachedClient implements XMemcachedClientMBean, MemcachedClient
 		if (address == null) {
 			throw new IllegalArgumentException("Null adderss");
 		}
-		CountDownLatch latch = new CountDownLatch(1);
+		CountDownLatch latch = new CompletionLatch(1);
 
 		Queue<Session> sessionQueue = this.connector
 				.getSessionByAddress(address);
@@ -2108,7 +2325,7 @@ public class XMemcachedClient implements XMemcachedClientMBean, MemcachedClient
 		if (address == null) {
 			throw new IllegalArgumentException("Null inetSocketAddress");
 		}
-		CountDownLatch latch = new CountDownLatch(1);
+		CountDownLatch latch = new CompletionLatch(1);
 
 		Queue<Session> sessionQueue = this.connector
 				.getSessionByAddress(address);
@@ -2144,7 +2361,7 @@ public class XMemcachedClient implements XMemcachedClientMBean, MemcachedClient
 		if (sessionSet.size() == 0) {
 			return collectResult;
 		}
-		final CountDownLatch latch = new CountDownLatch(sessionSet.size());
+		final CountDownLatch latch = new CompletionLatch(sessionSet.size());
 		List<Command> commands = new ArrayList<Command>(sessionSet.size());
 		for (Session session : sessionSet) {
 			Command command = this.commandFactory.createStatsCommand(session
@@ -2154,7 +2371,7 @@ public class XMemcachedClient implements XMemcachedClientMBean, MemcachedClient
 			commands.add(command);
 
 		}
-		if (!latch.await(timeout, TimeUnit.MILLISECONDS)) {
+		if (!this.awaitLatch(latch, timeout)) {
 			for (Command command : commands) {
 				command.cancel();
 			}
@@ -2180,7 +2397,7 @@ public class XMemcachedClient implements XMemcachedClientMBean, MemcachedClient
 		if (sessionSet.size() == 0) {
 			return collectResult;
 		}
-		final CountDownLatch latch = new CountDownLatch(sessionSet.size());
+		final CountDownLatch latch = new CompletionLatch(sessionSet.size());
 		List<Command> commands = new ArrayList<Command>(sessionSet.size());
 		for (Session session : sessionSet) {
 			Command command = this.commandFactory.createVersionCommand(latch,
@@ -2190,7 +2407,7 @@ public class XMemcachedClient implements XMemcachedClientMBean, MemcachedClient
 
 		}
 
-		if (!latch.await(timeout, TimeUnit.MILLISECONDS)) {
+		if (!this.awaitLatch(latch, timeout)) {
 			for (Command command : commands) {
 				command.cancel();
 			}
@@ -2221,7 +2438,9 @@ public class XMemcachedClient implements XMemcachedClientMBean, MemcachedClient
 		this.shutdown = true;
 		this.connector.quitAllSessions();
 		this.connector.stop();
-		this.memcachedHandler.stop();
+		if (this.listenerDispatcher != null) {
+			this.listenerDispatcher.stop();
+		}
 		XMemcachedMbeanServer.getInstance().shutdown();
 	}
 
@@ -2330,13 +2549,1210 @@ public class XMemcachedClient implements XMemcachedClientMBean, MemcachedClient
 
 	private void latchWait(final Command cmd, final long timeout)
 			throws InterruptedException, TimeoutException {
-		if (!cmd.getLatch().await(timeout, TimeUnit.MILLISECONDS)) {
+		if (!this.awaitLatch(cmd.getLatch(), timeout)) {
 			cmd.cancel();
 			throw new TimeoutException("Timed out(" + timeout
 					+ ") waiting for operation");
 		}
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#getAsync(java.lang.String,
+	 * net.rubyeye.xmemcached.transcoders.Transcoder)
+	 */
+	@SuppressWarnings("unchecked")
+	public final <T> Future<T> getAsync(final String key,
+			final Transcoder<T> transcoder) throws MemcachedException {
+		return (Future<T>) this.fetchAsync0(key, CommandType.GET_ONE,
+				transcoder);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#getAsync(java.lang.String)
+	 */
+	@SuppressWarnings("unchecked")
+	public final <T> Future<T> getAsync(final String key)
+			throws MemcachedException {
+		return (Future<T>) this.getAsync(key, this.transcoder);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#getsAsync(java.lang.String,
+	 * net.rubyeye.xmemcached.transcoders.Transcoder)
+	 */
+	@SuppressWarnings("unchecked")
+	public final <T> Future<GetsResponse<T>> getsAsync(final String key,
+			final Transcoder<T> transcoder) throws MemcachedException {
+		return (Future<GetsResponse<T>>) this.fetchAsync0(key,
+				CommandType.GETS_ONE, transcoder);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#getsAsync(java.lang.String)
+	 */
+	@SuppressWarnings("unchecked")
+	public final <T> Future<GetsResponse<T>> getsAsync(final String key)
+			throws MemcachedException {
+		return (Future<GetsResponse<T>>) this.getsAsync(key, this.transcoder);
+	}
+
+	@SuppressWarnings("unchecked")
+	private final <T> Future<?> fetchAsync0(String key,
+			final CommandType cmdType, final Transcoder<T> transcoder)
+			throws MemcachedException {
+		key = this.sanitizeKey(key);
+		byte[] keyBytes = ByteUtils.getBytes(key);
+		ByteUtils.checkKey(keyBytes);
+		final Command command = this.commandFactory.createGetCommand(key,
+				keyBytes, cmdType, this.transcoder);
+		this.sendCommand(command);
+		final Transcoder<T> valueTranscoder = transcoder == null ? this.transcoder
+				: transcoder;
+		return this.withDeadline(new OperationFuture<Object>(command,
+				this.opTimeout) {
+			@Override
+			protected Object convert() {
+				CachedData data = (CachedData) command.getResult();
+				if (data == null) {
+					return null;
+				}
+				if (cmdType == CommandType.GETS_ONE) {
+					return new GetsResponse<T>(data.getCas(), valueTranscoder
+							.decode(data));
+				} else {
+					return valueTranscoder.decode(data);
+				}
+			}
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * net.rubyeye.xmemcached.MemcachedClient#getMultiAsync(java.util.Collection
+	 * , net.rubyeye.xmemcached.transcoders.Transcoder)
+	 */
+	public final <T> Future<Map<String, T>> getMultiAsync(
+			final Collection<String> keyCollections,
+			final Transcoder<T> transcoder) throws MemcachedException {
+		return this.getMultiAsync0(keyCollections, CommandType.GET_MANY,
+				transcoder);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * net.rubyeye.xmemcached.MemcachedClient#getMultiAsync(java.util.Collection
+	 * )
+	 */
+	@SuppressWarnings("unchecked")
+	public final <T> Future<Map<String, T>> getMultiAsync(
+			final Collection<String> keyCollections) throws MemcachedException {
+		return this.getMultiAsync(keyCollections, this.transcoder);
+	}
+
+	private final <T> Future<Map<String, T>> getMultiAsync0(
+			final Collection<String> keys, final CommandType cmdType,
+			final Transcoder<T> transcoder) throws MemcachedException {
+		if (keys == null || keys.size() == 0) {
+			return new OperationFuture<Map<String, T>>(
+					new ArrayList<Command>(0), new CompletionLatch(0),
+					this.opTimeout) {
+				@Override
+				protected Map<String, T> convert() {
+					return null;
+				}
+			};
+		}
+		final List<Command> commands = this.sendGetMultiCommands(keys,
+				cmdType, transcoder);
+		return this.withDeadline(new OperationFuture<Map<String, T>>(
+				commands, commands.get(0).getLatch(), this.opTimeout) {
+			@Override
+			protected Map<String, T> convert() throws MemcachedException {
+				return XMemcachedClient.this.reduceResult(cmdType, transcoder,
+						commands);
+			}
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#setAsync(java.lang.String,
+	 * int, T, net.rubyeye.xmemcached.transcoders.Transcoder)
+	 */
+	public final <T> Future<Boolean> setAsync(String key, final int exp,
+			final T value, final Transcoder<T> transcoder)
+			throws MemcachedException {
+		key = this.sanitizeKey(key);
+		byte[] keyBytes = this.checkStoreArguments(key, exp, value);
+		return this.sendStoreCommandAsync(this.commandFactory.createSetCommand(
+				key, keyBytes, exp, value, false, transcoder));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#setAsync(java.lang.String,
+	 * int, java.lang.Object)
+	 */
+	@SuppressWarnings("unchecked")
+	public final Future<Boolean> setAsync(final String key, final int exp,
+			final Object value) throws MemcachedException {
+		return this.setAsync(key, exp, value, this.transcoder);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#addAsync(java.lang.String,
+	 * int, T, net.rubyeye.xmemcached.transcoders.Transcoder)
+	 */
+	public final <T> Future<Boolean> addAsync(String key, final int exp,
+			final T value, final Transcoder<T> transcoder)
+			throws MemcachedException {
+		key = this.sanitizeKey(key);
+		byte[] keyBytes = this.checkStoreArguments(key, exp, value);
+		return this.sendStoreCommandAsync(this.commandFactory.createAddCommand(
+				key, keyBytes, exp, value, false, transcoder));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#addAsync(java.lang.String,
+	 * int, java.lang.Object)
+	 */
+	@SuppressWarnings("unchecked")
+	public final Future<Boolean> addAsync(final String key, final int exp,
+			final Object value) throws MemcachedException {
+		return this.addAsync(key, exp, value, this.transcoder);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#replaceAsync(java.lang.String,
+	 * int, T, net.rubyeye.xmemcached.transcoders.Transcoder)
+	 */
+	public final <T> Future<Boolean> replaceAsync(String key, final int exp,
+			final T value, final Transcoder<T> transcoder)
+			throws MemcachedException {
+		key = this.sanitizeKey(key);
+		byte[] keyBytes = this.checkStoreArguments(key, exp, value);
+		return this.sendStoreCommandAsync(this.commandFactory
+				.createReplaceCommand(key, keyBytes, exp, value, false,
+						transcoder));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#replaceAsync(java.lang.String,
+	 * int, java.lang.Object)
+	 */
+	@SuppressWarnings("unchecked")
+	public final Future<Boolean> replaceAsync(final String key, final int exp,
+			final Object value) throws MemcachedException {
+		return this.replaceAsync(key, exp, value, this.transcoder);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#casAsync(java.lang.String,
+	 * int, T, net.rubyeye.xmemcached.transcoders.Transcoder, long)
+	 */
+	public final <T> Future<Boolean> casAsync(String key, final int exp,
+			final T value, final Transcoder<T> transcoder, final long cas)
+			throws MemcachedException {
+		key = this.sanitizeKey(key);
+		byte[] keyBytes = this.checkStoreArguments(key, 0, value);
+		return this.sendStoreCommandAsync(this.commandFactory.createCASCommand(
+				key, keyBytes, exp, value, cas, false, transcoder));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#casAsync(java.lang.String,
+	 * int, java.lang.Object, long)
+	 */
+	@SuppressWarnings("unchecked")
+	public final Future<Boolean> casAsync(final String key, final int exp,
+			final Object value, final long cas) throws MemcachedException {
+		return this.casAsync(key, exp, value, this.transcoder, cas);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#deleteAsync(java.lang.String)
+	 */
+	public final Future<Boolean> deleteAsync(String key)
+			throws MemcachedException {
+		key = this.sanitizeKey(key);
+		final byte[] keyBytes = ByteUtils.getBytes(key);
+		ByteUtils.checkKey(keyBytes);
+		return this.sendStoreCommandAsync(this.commandFactory
+				.createDeleteCommand(key, keyBytes, 0, false));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#incrAsync(java.lang.String,
+	 * long, long)
+	 */
+	public final Future<Long> incrAsync(String key, final long delta,
+			final long initValue) throws MemcachedException {
+		key = this.sanitizeKey(key);
+		return this.sendIncrOrDecrCommandAsync(key, delta, initValue,
+				CommandType.INCR, 0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#incrAsync(java.lang.String,
+	 * long)
+	 */
+	public final Future<Long> incrAsync(final String key, final long delta)
+			throws MemcachedException {
+		return this.incrAsync(key, delta, 0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#decrAsync(java.lang.String,
+	 * long, long)
+	 */
+	public final Future<Long> decrAsync(String key, final long delta,
+			final long initValue) throws MemcachedException {
+		key = this.sanitizeKey(key);
+		return this.sendIncrOrDecrCommandAsync(key, delta, initValue,
+				CommandType.DECR, 0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#decrAsync(java.lang.String,
+	 * long)
+	 */
+	public final Future<Long> decrAsync(final String key, final long delta)
+			throws MemcachedException {
+		return this.decrAsync(key, delta, 0);
+	}
+
+	/**
+	 * The future is completed by the non-blocking chain of incr/decr and add
+	 * commands,so get() never sends commands itself.
+	 */
+	private Future<Long> sendIncrOrDecrCommandAsync(final String key,
+			final long delta, final long initValue, final CommandType cmdType,
+			final int exp) throws MemcachedException {
+		final IncrDecrFuture future = new IncrDecrFuture(this.opTimeout);
+		this.sendIncrOrDecrCommand(key, delta, initValue, cmdType, exp, future);
+		return this.withDeadline(future);
+	}
+
+	/**
+	 * Future of an incr/decr with initial value,it is completed as the
+	 * listener of the chained commands.
+	 * 
+	 * @author dennis
+	 * 
+	 */
+	private static final class IncrDecrFuture extends OperationFuture<Long>
+			implements OperationListener<Long> {
+		private final CompletionLatch latch;
+		private volatile Long value;
+		private volatile Throwable failure;
+
+		IncrDecrFuture(long opTimeout) {
+			this(new CompletionLatch(1), opTimeout);
+		}
+
+		private IncrDecrFuture(CompletionLatch latch, long opTimeout) {
+			super(Collections.<Command> emptyList(), latch, opTimeout);
+			this.latch = latch;
+		}
+
+		@Override
+		protected Long convert() throws Exception {
+			final Throwable failure = this.failure;
+			if (failure instanceof Exception) {
+				throw (Exception) failure;
+			}
+			if (failure != null) {
+				throw new MemcachedException(failure);
+			}
+			return this.value;
+		}
+
+		public Executor getExecutor() {
+			return null;
+		}
+
+		public void onSuccess(Long result) {
+			this.value = result;
+			this.latch.countDown();
+		}
+
+		public void onFailure(Throwable throwable) {
+			this.failure = throwable;
+			this.latch.countDown();
+		}
+	}
+
+	private final Future<Boolean> sendStoreCommandAsync(final Command command)
+			throws MemcachedException {
+		this.sendCommand(command);
+		return this.withDeadline(new OperationFuture<Boolean>(command,
+				this.opTimeout) {
+			@Override
+			protected Boolean convert() throws MemcachedException {
+				if (command.getResult() == null) {
+					throw new MemcachedException(
+							"Operation fail,may be caused by networking or timeout");
+				}
+				return (Boolean) command.getResult();
+			}
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#setMaxPendingListeners(int)
+	 */
+	public synchronized void setMaxPendingListeners(int maxPendingListeners) {
+		if (maxPendingListeners <= 0) {
+			throw new IllegalArgumentException("maxPendingListeners<=0");
+		}
+		if (maxPendingListeners > this.listenerQueueCapacity) {
+			log.warn("maxPendingListeners is limited to the listener dispatcher's queue capacity "
+					+ this.listenerQueueCapacity);
+			maxPendingListeners = this.listenerQueueCapacity;
+		}
+		// resize the semaphore,pending listeners release their permits to it
+		this.listenerPermits.resize(maxPendingListeners
+				- this.maxPendingListeners);
+		this.maxPendingListeners = maxPendingListeners;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#getMaxPendingListeners()
+	 */
+	public int getMaxPendingListeners() {
+		return this.maxPendingListeners;
+	}
+
+	/**
+	 * Acquire a permit before sending an operation with listener,so slow
+	 * listeners would block callers instead of growing the dispatcher's queue.
+	 * Reactor threads and listeners never wait,the permits they wait for may
+	 * be released only by themselves.
+	 * 
+	 * @return
+	 * @throws MemcachedException
+	 */
+	private final Semaphore acquireListenerPermit() throws MemcachedException {
+		final Semaphore permits = this.listenerPermits;
+		if (Thread.currentThread() instanceof Reactor
+				|| IN_LISTENER.get() != null) {
+			if (!permits.tryAcquire()) {
+				throw new MemcachedException(
+						"Too many pending listeners,could not wait in reactor or listener,max pending listeners is "
+								+ this.maxPendingListeners);
+			}
+			return permits;
+		}
+		try {
+			if (!permits.tryAcquire(this.opTimeout, TimeUnit.MILLISECONDS)) {
+				throw new MemcachedException(
+						"Timed out waiting for pending listeners,max pending listeners is "
+								+ this.maxPendingListeners);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MemcachedException(e);
+		}
+		return permits;
+	}
+
+	private final <T> OperationListener<T> wrapListener(
+			final OperationListener<T> listener, final Semaphore permits) {
+		return new OperationListener<T>() {
+			public Executor getExecutor() {
+				return listener.getExecutor();
+			}
+
+			public void onSuccess(T result) {
+				final Boolean inListener = IN_LISTENER.get();
+				IN_LISTENER.set(Boolean.TRUE);
+				try {
+					listener.onSuccess(result);
+				} finally {
+					IN_LISTENER.set(inListener);
+					permits.release();
+				}
+			}
+
+			public void onFailure(Throwable throwable) {
+				final Boolean inListener = IN_LISTENER.get();
+				IN_LISTENER.set(Boolean.TRUE);
+				try {
+					listener.onFailure(throwable);
+				} finally {
+					IN_LISTENER.set(inListener);
+					permits.release();
+				}
+			}
+		};
+	}
+
+	/**
+	 * Semaphore of pending listeners which could be resized
+	 * 
+	 * @author dennis
+	 * 
+	 */
+	private static final class ListenerPermits extends Semaphore {
+		private static final long serialVersionUID = 1L;
+
+		ListenerPermits(int permits) {
+			super(permits);
+		}
+
+		void resize(int delta) {
+			if (delta > 0) {
+				this.release(delta);
+			} else if (delta < 0) {
+				this.reducePermits(-delta);
+			}
+		}
+	}
+
+	/**
+	 * Let the timer own the operation's deadline,so the future is completed
+	 * with a TimeoutException even if no thread is waiting on it.
+	 * 
+	 * @param <T>
+	 * @param future
+	 * @return
+	 */
+	private final <T> OperationFuture<T> withDeadline(
+			final OperationFuture<T> future) {
+		final HashedWheelTimer timer = this.connector.getTimer();
+		if (timer != null && !timer.isStopped()) {
+			try {
+				future.expireAfter(timer, this.opTimeout);
+			} catch (IllegalStateException e) {
+				// timer is stopped concurrently,the caller waits with timeout
+			}
+		}
+		return future;
+	}
+
+	/**
+	 * Wait for the latch until the timeout.The deadline is scheduled on the
+	 * shared timer wheel and the caller parks without timeout,so thousands of
+	 * blocking callers don't arm thousands of timed parks.
+	 * 
+	 * @param latch
+	 * @param timeout
+	 * @return false if the deadline was reached
+	 * @throws InterruptedException
+	 */
+	private final boolean awaitLatch(final CountDownLatch latch,
+			final long timeout) throws InterruptedException {
+		if (latch.getCount() == 0) {
+			return true;
+		}
+		final HashedWheelTimer timer = this.connector.getTimer();
+		if (!(latch instanceof CompletionLatch) || timer == null
+				|| timer.isStopped()) {
+			return latch.await(timeout, TimeUnit.MILLISECONDS);
+		}
+		final DeadlineTask task = new DeadlineTask((CompletionLatch) latch);
+		final HashedWheelTimer.Timeout handle;
+		try {
+			handle = timer.newTimeout(task, timeout, TimeUnit.MILLISECONDS);
+		} catch (IllegalStateException e) {
+			return latch.await(timeout, TimeUnit.MILLISECONDS);
+		}
+		try {
+			latch.await();
+		} finally {
+			handle.cancel();
+		}
+		return !((CompletionLatch) latch).isForceCompleted();
+	}
+
+	/**
+	 * Completes the latch when the deadline is reached
+	 * 
+	 * @author dennis
+	 * 
+	 */
+	private static final class DeadlineTask implements Runnable {
+		private final CompletionLatch latch;
+
+		DeadlineTask(CompletionLatch latch) {
+			this.latch = latch;
+		}
+
+		public void run() {
+			// the waiter finds out it was expired by isForceCompleted
+			this.latch.forceComplete();
+		}
+	}
+
+	/**
+	 * Add listener to the future,release the permit if sending operation
+	 * failed(future is null).
+	 * 
+	 * @param <T>
+	 * @param future
+	 * @param listener
+	 * @param permits
+	 */
+	private final <T> void listen(final Future<T> future,
+			final OperationListener<T> listener, final Semaphore permits) {
+		if (future == null) {
+			permits.release();
+			return;
+		}
+		if (listener == null) {
+			permits.release();
+			throw new IllegalArgumentException("Null listener");
+		}
+		((OperationFuture<T>) future).addListener(this.wrapListener(listener,
+				permits), this.listenerDispatcher);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#get(java.lang.String,
+	 * net.rubyeye.xmemcached.transcoders.Transcoder,
+	 * net.rubyeye.xmemcached.OperationListener)
+	 */
+	public final <T> void get(final String key,
+			final Transcoder<T> transcoder, final OperationListener<T> listener)
+			throws MemcachedException {
+		final Semaphore permits = this.acquireListenerPermit();
+		Future<T> future = null;
+		try {
+			future = this.getAsync(key, transcoder);
+		} finally {
+			this.listen(future, listener, permits);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#get(java.lang.String,
+	 * net.rubyeye.xmemcached.OperationListener)
+	 */
+	@SuppressWarnings("unchecked")
+	public final <T> void get(final String key,
+			final OperationListener<T> listener) throws MemcachedException {
+		this.get(key, this.transcoder, listener);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#get(java.util.Collection,
+	 * net.rubyeye.xmemcached.transcoders.Transcoder,
+	 * net.rubyeye.xmemcached.OperationListener)
+	 */
+	public final <T> void get(final Collection<String> keyCollections,
+			final Transcoder<T> transcoder,
+			final OperationListener<Map<String, T>> listener)
+			throws MemcachedException {
+		final Semaphore permits = this.acquireListenerPermit();
+		Future<Map<String, T>> future = null;
+		try {
+			future = this.getMultiAsync(keyCollections, transcoder);
+		} finally {
+			this.listen(future, listener, permits);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#get(java.util.Collection,
+	 * net.rubyeye.xmemcached.OperationListener)
+	 */
+	@SuppressWarnings("unchecked")
+	public final <T> void get(final Collection<String> keyCollections,
+			final OperationListener<Map<String, T>> listener)
+			throws MemcachedException {
+		this.get(keyCollections, this.transcoder, listener);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#set(java.lang.String, int, T,
+	 * net.rubyeye.xmemcached.transcoders.Transcoder,
+	 * net.rubyeye.xmemcached.OperationListener)
+	 */
+	public final <T> void set(final String key, final int exp, final T value,
+			final Transcoder<T> transcoder,
+			final OperationListener<Boolean> listener)
+			throws MemcachedException {
+		final Semaphore permits = this.acquireListenerPermit();
+		Future<Boolean> future = null;
+		try {
+			future = this.setAsync(key, exp, value, transcoder);
+		} finally {
+			this.listen(future, listener, permits);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#set(java.lang.String, int,
+	 * java.lang.Object, net.rubyeye.xmemcached.OperationListener)
+	 */
+	@SuppressWarnings("unchecked")
+	public final void set(final String key, final int exp, final Object value,
+			final OperationListener<Boolean> listener)
+			throws MemcachedException {
+		this.set(key, exp, value, this.transcoder, listener);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#add(java.lang.String, int, T,
+	 * net.rubyeye.xmemcached.transcoders.Transcoder,
+	 * net.rubyeye.xmemcached.OperationListener)
+	 */
+	public final <T> void add(final String key, final int exp, final T value,
+			final Transcoder<T> transcoder,
+			final OperationListener<Boolean> listener)
+			throws MemcachedException {
+		final Semaphore permits = this.acquireListenerPermit();
+		Future<Boolean> future = null;
+		try {
+			future = this.addAsync(key, exp, value, transcoder);
+		} finally {
+			this.listen(future, listener, permits);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#add(java.lang.String, int,
+	 * java.lang.Object, net.rubyeye.xmemcached.OperationListener)
+	 */
+	@SuppressWarnings("unchecked")
+	public final void add(final String key, final int exp, final Object value,
+			final OperationListener<Boolean> listener)
+			throws MemcachedException {
+		this.add(key, exp, value, this.transcoder, listener);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#replace(java.lang.String, int,
+	 * T, net.rubyeye.xmemcached.transcoders.Transcoder,
+	 * net.rubyeye.xmemcached.OperationListener)
+	 */
+	public final <T> void replace(final String key, final int exp,
+			final T value, final Transcoder<T> transcoder,
+			final OperationListener<Boolean> listener)
+			throws MemcachedException {
+		final Semaphore permits = this.acquireListenerPermit();
+		Future<Boolean> future = null;
+		try {
+			future = this.replaceAsync(key, exp, value, transcoder);
+		} finally {
+			this.listen(future, listener, permits);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#replace(java.lang.String, int,
+	 * java.lang.Object, net.rubyeye.xmemcached.OperationListener)
+	 */
+	@SuppressWarnings("unchecked")
+	public final void replace(final String key, final int exp,
+			final Object value, final OperationListener<Boolean> listener)
+			throws MemcachedException {
+		this.replace(key, exp, value, this.transcoder, listener);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#delete(java.lang.String,
+	 * net.rubyeye.xmemcached.OperationListener)
+	 */
+	public final void delete(final String key,
+			final OperationListener<Boolean> listener)
+			throws MemcachedException {
+		final Semaphore permits = this.acquireListenerPermit();
+		Future<Boolean> future = null;
+		try {
+			future = this.deleteAsync(key);
+		} finally {
+			this.listen(future, listener, permits);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#incr(java.lang.String, long,
+	 * long, net.rubyeye.xmemcached.OperationListener)
+	 */
+	public final void incr(String key, final long delta, final long initValue,
+			final OperationListener<Long> listener) throws MemcachedException {
+		key = this.sanitizeKey(key);
+		this.incrOrDecr(key, delta, initValue, CommandType.INCR, listener);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#decr(java.lang.String, long,
+	 * long, net.rubyeye.xmemcached.OperationListener)
+	 */
+	public final void decr(String key, final long delta, final long initValue,
+			final OperationListener<Long> listener) throws MemcachedException {
+		key = this.sanitizeKey(key);
+		this.incrOrDecr(key, delta, initValue, CommandType.DECR, listener);
+	}
+
+	private void incrOrDecr(final String key, final long delta,
+			final long initValue, final CommandType cmdType,
+			final OperationListener<Long> listener) throws MemcachedException {
+		if (listener == null) {
+			throw new IllegalArgumentException("Null listener");
+		}
+		final Semaphore permits = this.acquireListenerPermit();
+		boolean sent = false;
+		try {
+			this.sendIncrOrDecrCommand(key, delta, initValue, cmdType, 0, this
+					.wrapListener(listener, permits));
+			sent = true;
+		} finally {
+			if (!sent) {
+				permits.release();
+			}
+		}
+	}
+
+	/**
+	 * Send incr/decr command without blocking,when the key is not found,add the
+	 * initial value and then notify the listener.
+	 */
+	private void sendIncrOrDecrCommand(final String key, final long delta,
+			final long initValue, final CommandType cmdType, final int exp,
+			final OperationListener<Long> listener) throws MemcachedException {
+		final byte[] keyBytes = ByteUtils.getBytes(key);
+		ByteUtils.checkKey(keyBytes);
+		final Command command = this.commandFactory.createIncrDecrCommand(key,
+				keyBytes, delta, initValue, exp, cmdType, false);
+		this.sendCommand(command);
+		OperationFuture<Object> future = new OperationFuture<Object>(command,
+				this.opTimeout) {
+			@Override
+			protected Object convert() throws MemcachedException {
+				if (command.getResult() == null) {
+					throw new MemcachedException(
+							"Operation fail,may be caused by networking or timeout");
+				}
+				return command.getResult();
+			}
+		};
+		this.withDeadline(future);
+		future.addListener(new OperationListener<Object>() {
+			public Executor getExecutor() {
+				return listener.getExecutor();
+			}
+
+			public void onFailure(Throwable throwable) {
+				listener.onFailure(throwable);
+			}
+
+			public void onSuccess(Object result) {
+				if (result instanceof Long) {
+					listener.onSuccess((Long) result);
+				} else if ("NOT_FOUND".equals(result)) {
+					XMemcachedClient.this.addInitValue(key, delta, initValue,
+							cmdType, exp, listener);
+				} else {
+					listener.onFailure(new MemcachedException(
+							"Unknown result type for incr/decr:"
+									+ result.getClass() + ",result=" + result));
+				}
+			}
+		}, this.listenerDispatcher);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void addInitValue(final String key, final long delta,
+			final long initValue, final CommandType cmdType, final int exp,
+			final OperationListener<Long> listener) {
+		try {
+			OperationFuture<Boolean> addFuture = (OperationFuture<Boolean>) this
+					.addAsync(key, exp, String.valueOf(initValue));
+			addFuture.addListener(new OperationListener<Boolean>() {
+				public Executor getExecutor() {
+					return listener.getExecutor();
+				}
+
+				public void onFailure(Throwable throwable) {
+					listener.onFailure(throwable);
+				}
+
+				public void onSuccess(Boolean added) {
+					if (added) {
+						listener.onSuccess(initValue);
+					} else {
+						// added by others,try again
+						try {
+							XMemcachedClient.this.sendIncrOrDecrCommand(key,
+									delta, initValue, cmdType, exp, listener);
+						} catch (MemcachedException e) {
+							listener.onFailure(e);
+						}
+					}
+				}
+			}, this.listenerDispatcher);
+		} catch (MemcachedException e) {
+			listener.onFailure(e);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#setMulti(java.util.Map, int,
+	 * net.rubyeye.xmemcached.transcoders.Transcoder, long)
+	 */
+	public final <T> Map<String, Boolean> setMulti(final Map<String, T> items,
+			final int exp, final Transcoder<T> transcoder, final long timeout)
+			throws TimeoutException, InterruptedException, MemcachedException {
+		return this.storeMulti0(items, exp, CommandType.SET, transcoder,
+				timeout);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#setMulti(java.util.Map, int)
+	 */
+	public final Map<String, Boolean> setMulti(final Map<String, ?> items,
+			final int exp) throws TimeoutException, InterruptedException,
+			MemcachedException {
+		return this.storeMulti0(items, exp, CommandType.SET, this.transcoder,
+				this.opTimeout);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#addMulti(java.util.Map, int,
+	 * net.rubyeye.xmemcached.transcoders.Transcoder, long)
+	 */
+	public final <T> Map<String, Boolean> addMulti(final Map<String, T> items,
+			final int exp, final Transcoder<T> transcoder, final long timeout)
+			throws TimeoutException, InterruptedException, MemcachedException {
+		return this.storeMulti0(items, exp, CommandType.ADD, transcoder,
+				timeout);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#addMulti(java.util.Map, int)
+	 */
+	public final Map<String, Boolean> addMulti(final Map<String, ?> items,
+			final int exp) throws TimeoutException, InterruptedException,
+			MemcachedException {
+		return this.storeMulti0(items, exp, CommandType.ADD, this.transcoder,
+				this.opTimeout);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#deleteMulti(java.util.Collection,
+	 * long)
+	 */
+	public final Map<String, Boolean> deleteMulti(
+			final Collection<String> keys, final long timeout)
+			throws TimeoutException, InterruptedException, MemcachedException {
+		if (keys == null || keys.size() == 0) {
+			return new HashMap<String, Boolean>(0);
+		}
+		final boolean quiet = this.commandFactory.getProtocol() == Protocol.Binary;
+		final List<Command> commands = new ArrayList<Command>(keys.size());
+		for (String key : keys) {
+			key = this.sanitizeKey(key);
+			final byte[] keyBytes = ByteUtils.getBytes(key);
+			ByteUtils.checkKey(keyBytes);
+			commands.add(this.commandFactory.createDeleteCommand(key,
+					keyBytes, 0, quiet));
+		}
+		this.sendBulkCommands(commands, CommandType.DELETE, quiet, timeout);
+		return this.reduceBulkResult(keys, commands);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#deleteMulti(java.util.Collection)
+	 */
+	public final Map<String, Boolean> deleteMulti(final Collection<String> keys)
+			throws TimeoutException, InterruptedException, MemcachedException {
+		return this.deleteMulti(keys, this.opTimeout);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#incrMulti(java.util.Collection,
+	 * long, long, long)
+	 */
+	public final Map<String, Long> incrMulti(final Collection<String> keys,
+			final long delta, final long initValue, final long timeout)
+			throws TimeoutException, InterruptedException, MemcachedException {
+		return this.incrOrDecrMulti0(keys, delta, initValue, CommandType.INCR,
+				timeout);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#incrMulti(java.util.Collection,
+	 * long, long)
+	 */
+	public final Map<String, Long> incrMulti(final Collection<String> keys,
+			final long delta, final long initValue) throws TimeoutException,
+			InterruptedException, MemcachedException {
+		return this.incrOrDecrMulti0(keys, delta, initValue, CommandType.INCR,
+				this.opTimeout);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#decrMulti(java.util.Collection,
+	 * long, long, long)
+	 */
+	public final Map<String, Long> decrMulti(final Collection<String> keys,
+			final long delta, final long initValue, final long timeout)
+			throws TimeoutException, InterruptedException, MemcachedException {
+		return this.incrOrDecrMulti0(keys, delta, initValue, CommandType.DECR,
+				timeout);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedClient#decrMulti(java.util.Collection,
+	 * long, long)
+	 */
+	public final Map<String, Long> decrMulti(final Collection<String> keys,
+			final long delta, final long initValue) throws TimeoutException,
+			InterruptedException, MemcachedException {
+		return this.incrOrDecrMulti0(keys, delta, initValue, CommandType.DECR,
+				this.opTimeout);
+	}
+
+	@SuppressWarnings("unchecked")
+	private final Map<String, Boolean> storeMulti0(final Map<String, ?> items,
+			final int exp, final CommandType cmdType,
+			final Transcoder transcoder, final long timeout)
+			throws TimeoutException, InterruptedException, MemcachedException {
+		if (items == null || items.size() == 0) {
+			return new HashMap<String, Boolean>(0);
+		}
+		final boolean quiet = this.commandFactory.getProtocol() == Protocol.Binary;
+		final List<String> keys = new ArrayList<String>(items.size());
+		final List<Command> commands = new ArrayList<Command>(items.size());
+		for (Map.Entry<String, ?> entry : items.entrySet()) {
+			final String key = this.sanitizeKey(entry.getKey());
+			final byte[] keyBytes = this.checkStoreArguments(key, exp, entry
+					.getValue());
+			if (cmdType == CommandType.ADD) {
+				commands.add(this.commandFactory.createAddCommand(key,
+						keyBytes, exp, entry.getValue(), quiet, transcoder));
+			} else {
+				commands.add(this.commandFactory.createSetCommand(key,
+						keyBytes, exp, entry.getValue(), quiet, transcoder));
+			}
+			keys.add(entry.getKey());
+		}
+		this.sendBulkCommands(commands, cmdType, quiet, timeout);
+		return this.reduceBulkResult(keys, commands);
+	}
+
+	private final Map<String, Long> incrOrDecrMulti0(
+			final Collection<String> keys, final long delta,
+			final long initValue, final CommandType cmdType, final long timeout)
+			throws TimeoutException, InterruptedException, MemcachedException {
+		if (keys == null || keys.size() == 0) {
+			return new HashMap<String, Long>(0);
+		}
+		final List<Command> commands = new ArrayList<Command>(keys.size());
+		for (String key : keys) {
+			key = this.sanitizeKey(key);
+			final byte[] keyBytes = ByteUtils.getBytes(key);
+			ByteUtils.checkKey(keyBytes);
+			commands.add(this.commandFactory.createIncrDecrCommand(key,
+					keyBytes, delta, initValue, 0, cmdType, false));
+		}
+		// incr/decr must return the value,so quiet commands are not used
+		this.sendBulkCommands(commands, cmdType, false, timeout);
+		final Map<String, Long> result = new HashMap<String, Long>(keys.size());
+		int index = 0;
+		for (String key : keys) {
+			final Command command = commands.get(index++);
+			if (command.getException() != null) {
+				log.warn("Bulk " + cmdType + " failed,key=" + key, command
+						.getException());
+				continue;
+			}
+			final Object value = command.getResult();
+			if (value instanceof Long) {
+				result.put(key, (Long) value);
+			} else if ("NOT_FOUND".equals(value)) {
+				result.put(key, this.sendIncrOrDecrCommand(command.getKey(),
+						delta, initValue, cmdType, false, timeout, 0));
+			}
+		}
+		return result;
+	}
+
+	private final Map<String, Boolean> reduceBulkResult(
+			final Collection<String> keys, final List<Command> commands) {
+		final Map<String, Boolean> result = new HashMap<String, Boolean>(keys
+				.size());
+		int index = 0;
+		for (String key : keys) {
+			final Command command = commands.get(index++);
+			if (command.getException() != null) {
+				result.put(key, Boolean.FALSE);
+			} else if (command.getResult() == null) {
+				// quiet command is responded only when it failed
+				result.put(key, Boolean.TRUE);
+			} else {
+				result.put(key, (Boolean) command.getResult());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Group commands by server,the commands for one server are sent in one
+	 * bulk command,then waits for all bulk commands at once.
+	 * 
+	 * @param commands
+	 * @param cmdType
+	 * @param quiet
+	 *            whether the commands are binary quiet commands,a noop command
+	 *            is appended to each bulk if it is true.
+	 * @param timeout
+	 * @throws MemcachedException
+	 * @throws InterruptedException
+	 * @throws TimeoutException
+	 */
+	private final void sendBulkCommands(final List<Command> commands,
+			final CommandType cmdType, final boolean quiet, final long timeout)
+			throws MemcachedException, InterruptedException, TimeoutException {
+		final Collection<List<Command>> catalogCommands;
+		if (this.connector.getSessionSet().size() <= 1) {
+			catalogCommands = Collections
+					.singletonList((List<Command>) new ArrayList<Command>(
+							commands));
+		} else {
+			catalogCommands = this.catalogCommands(commands);
+		}
+		final CountDownLatch latch = new CompletionLatch(catalogCommands
+				.size());
+		final List<Command> bulkCommands = new ArrayList<Command>(
+				catalogCommands.size());
+		for (List<Command> catalogCommandList : catalogCommands) {
+			if (quiet) {
+				catalogCommandList.add(this.commandFactory.createNoopCommand());
+			}
+			final Command bulkCommand = new BulkCommand(catalogCommandList
+					.get(0).getKey(), cmdType, latch, catalogCommandList);
+			this.sendCommand(bulkCommand);
+			bulkCommands.add(bulkCommand);
+		}
+		if (!this.awaitLatch(latch, timeout)) {
+			for (Command bulkCommand : bulkCommands) {
+				bulkCommand.cancel();
+			}
+			throw new TimeoutException("Timed out(" + timeout
+					+ ") waiting for operation");
+		}
+		for (Command bulkCommand : bulkCommands) {
+			bulkCommand.getIoBuffer().free();
+			this.checkException(bulkCommand);
+			if (bulkCommand.getResult() == null) {
+				throw new MemcachedException(
+						"Operation fail,may be caused by networking or timeout");
+			}
+		}
+	}
+
+	/**
+	 * Hash commands to servers
+	 * 
+	 * @param commands
+	 * @return
+	 */
+	private final Collection<List<Command>> catalogCommands(
+			final List<Command> commands) {
+		final Map<Session, List<Command>> catalogMap = new HashMap<Session, List<Command>>();
+		for (Command command : commands) {
+			Session index = command.getKeyBytes() != null ? this.sessionLocator
+					.getSessionByKey(command.getKeyBytes())
+					: this.sessionLocator.getSessionByKey(command.getKey());
+			List<Command> tmpCommands = catalogMap.get(index);
+			if (tmpCommands == null) {
+				tmpCommands = new ArrayList<Command>();
+				catalogMap.put(index, tmpCommands);
+			}
+			tmpCommands.add(command);
+		}
+		return catalogMap.values();
+	}
+
 	public final Collection<InetSocketAddress> getAvaliableServers() {
 		Set<Session> sessionSet = this.connector.getSessionSet();
 		Set<InetSocketAddress> result = new HashSet<InetSocketAddress>();
@@ -2432,11 +3848,11 @@ public class XMemcachedClient implements XMemcachedClientMBean, MemcachedClient
 							+ address);
 		}
 		Session session = sessions.peek();
-		CountDownLatch latch = new CountDownLatch(1);
+		CountDownLatch latch = new CompletionLatch(1);
 		Command command = this.commandFactory.createStatsCommand(session
 				.getRemoteSocketAddress(), latch, "items");
 		session.write(command);
-		if (!latch.await(5000, TimeUnit.MILLISECONDS)) {
+		if (!this.awaitLatch(latch, 5000)) {
 			throw new TimeoutException("Operation timeout");
 		}
 		Map<String, String> result = (Map<String, String>) command.getResult();
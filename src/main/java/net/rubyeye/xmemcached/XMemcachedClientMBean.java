@@ -62,4 +62,28 @@ public interface XMemcachedClientMBean {
 	 */
 	public String getName();
 
+	/**
+	 * Returns the number of pending timeouts in the timer wheel,including
+	 * operation deadlines,heartbeat checks,reconnect and idle checks.
+	 * 
+	 * @return
+	 */
+	public long getPendingTimeouts();
+
+	/**
+	 * Get queue depths of all connections
+	 * 
+	 * @return a list of string,every string is in the form of
+	 *         "[host]:[port](writeQueue=n,queuedBytes=n,inFlight=n)"
+	 */
+	public List<String> getQueueDepths();
+
+	/**
+	 * Get current hot keys
+	 * 
+	 * @return a list of string,every string is in the form of
+	 *         "[key](count=n,replicated=true|false)"
+	 */
+	public List<String> getHotKeys();
+
 }
\ No newline at end of file
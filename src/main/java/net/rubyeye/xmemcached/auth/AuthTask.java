@@ -13,6 +13,7 @@ import org.slf4j.LoggerFactory;
 import net.rubyeye.xmemcached.CommandFactory;
 
 import net.rubyeye.xmemcached.command.Command;
+import net.rubyeye.xmemcached.command.CompletionLatch;
 import net.rubyeye.xmemcached.command.binary.BaseBinaryCommand;
 import net.rubyeye.xmemcached.command.binary.ResponseStatus;
 import net.rubyeye.xmemcached.impl.MemcachedTCPSession;
@@ -60,7 +61,7 @@ public class AuthTask extends Thread {
 			final AtomicBoolean done = new AtomicBoolean(false);
 			byte[] response = saslClient.hasInitialResponse() ? saslClient
 					.evaluateChallenge(EMPTY_BYTES) : EMPTY_BYTES;
-			CountDownLatch latch = new CountDownLatch(1);
+			CountDownLatch latch = new CompletionLatch(1);
 			Command command = this.commandFactory.createAuthStartCommand(
 					saslClient.getMechanismName(), latch, response);
 			if (!this.memcachedTCPSession.isClosed())
@@ -109,7 +110,7 @@ public class AuthTask extends Thread {
 					String result = (String) command.getResult();
 					response = saslClient.evaluateChallenge(ByteUtils
 							.getBytes(result));
-					latch = new CountDownLatch(1);
+					latch = new CompletionLatch(1);
 					command = commandFactory.createAuthStepCommand(saslClient
 							.getMechanismName(), latch, response);
 					if (!this.memcachedTCPSession.isClosed())
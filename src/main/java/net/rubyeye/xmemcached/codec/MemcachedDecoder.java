@@ -11,6 +11,8 @@
  */
 package net.rubyeye.xmemcached.codec;
 
+import java.nio.ByteBuffer;
+
 import net.rubyeye.xmemcached.command.Command;
 import net.rubyeye.xmemcached.impl.MemcachedTCPSession;
 import net.rubyeye.xmemcached.utils.ByteUtils;
@@ -49,6 +51,14 @@ public class MemcachedDecoder implements Decoder {
 		MemcachedTCPSession session = (MemcachedTCPSession) origSession;
 		if (session.getCurrentCommand() != null) {
 			return decode0(buffer, session);
+		} else if (session.isOpaqueIndexed()) {
+			// correlate the binary response by it's opaque
+			ByteBuffer buf = buffer.buf();
+			if (buf.remaining() < 24) {
+				return null;
+			}
+			session.takeCurrentCommand(buf.getInt(buf.position() + 12));
+			return decode0(buffer, session);
 		} else {
 			session.takeCurrentCommand();
 			return decode0(buffer, session);
@@ -8,6 +8,7 @@ import java.util.List;
 import java.util.concurrent.CountDownLatch;
 
 import net.rubyeye.xmemcached.CommandFactory;
+import net.rubyeye.xmemcached.ValueChunkHandler;
 import net.rubyeye.xmemcached.buffer.BufferAllocator;
 import net.rubyeye.xmemcached.buffer.SimpleBufferAllocator;
 import net.rubyeye.xmemcached.command.binary.BinaryAppendPrependCommand;
@@ -19,7 +20,9 @@ import net.rubyeye.xmemcached.command.binary.BinaryDeleteCommand;
 import net.rubyeye.xmemcached.command.binary.BinaryFlushAllCommand;
 import net.rubyeye.xmemcached.command.binary.BinaryGetCommand;
 import net.rubyeye.xmemcached.command.binary.BinaryGetMultiCommand;
+import net.rubyeye.xmemcached.command.binary.BinaryGetStreamCommand;
 import net.rubyeye.xmemcached.command.binary.BinaryIncrDecrCommand;
+import net.rubyeye.xmemcached.command.binary.BinaryNoopCommand;
 import net.rubyeye.xmemcached.command.binary.BinaryQuitCommand;
 import net.rubyeye.xmemcached.command.binary.BinaryStatsCommand;
 import net.rubyeye.xmemcached.command.binary.BinaryStoreCommand;
@@ -27,6 +30,7 @@ import net.rubyeye.xmemcached.command.binary.BinaryVersionCommand;
 import net.rubyeye.xmemcached.command.binary.OpCode;
 import net.rubyeye.xmemcached.transcoders.Transcoder;
 import net.rubyeye.xmemcached.utils.ByteUtils;
+import net.rubyeye.xmemcached.utils.OpaqueGenerater;
 import net.rubyeye.xmemcached.utils.Protocol;
 
 import com.google.code.yanf4j.buffer.IoBuffer;
@@ -55,20 +59,20 @@ public class BinaryCommandFactory implements CommandFactory {
 	public Command createAppendCommand(String key, byte[] keyBytes,
 			Object value, boolean noreply, Transcoder transcoder) {
 		return new BinaryAppendPrependCommand(key, keyBytes,
-				CommandType.APPEND, new CountDownLatch(1), 0, 0, value,
+				CommandType.APPEND, new CompletionLatch(1), 0, 0, value,
 				noreply, transcoder);
 	}
 
 	public Command createCASCommand(String key, byte[] keyBytes, int exp,
 			Object value, long cas, boolean noreply, Transcoder transcoder) {
 		return new BinaryCASCommand(key, keyBytes, CommandType.CAS,
-				new CountDownLatch(1), exp, cas, value, noreply, transcoder);
+				new CompletionLatch(1), exp, cas, value, noreply, transcoder);
 	}
 
 	public Command createDeleteCommand(String key, byte[] keyBytes, int time,
 			boolean noreply) {
 		return new BinaryDeleteCommand(key, keyBytes, CommandType.DELETE,
-				new CountDownLatch(1), noreply);
+				new CompletionLatch(1), noreply);
 	}
 
 	public Command createFlushAllCommand(CountDownLatch latch, int delay,
@@ -78,7 +82,7 @@ public class BinaryCommandFactory implements CommandFactory {
 
 	public Command createGetCommand(String key, byte[] keyBytes,
 			CommandType cmdType, Transcoder transcoder) {
-		return new BinaryGetCommand(key, keyBytes, cmdType, new CountDownLatch(
+		return new BinaryGetCommand(key, keyBytes, cmdType, new CompletionLatch(
 				1), OpCode.GET, false);
 	}
 
@@ -102,7 +106,7 @@ public class BinaryCommandFactory implements CommandFactory {
 		}
 		// last key,create a get command
 		Command lastCommand = new BinaryGetCommand(key,
-				ByteUtils.getBytes(key), cmdType, new CountDownLatch(1),
+				ByteUtils.getBytes(key), cmdType, new CompletionLatch(1),
 				OpCode.GET_KEY, false);
 		lastCommand.encode();
 		bufferList.add(lastCommand.getIoBuffer());
@@ -118,6 +122,70 @@ public class BinaryCommandFactory implements CommandFactory {
 		return resultCommand;
 	}
 
+	/**
+	 * Binary header length
+	 */
+	private static final int HEADER_LENGTH = 24;
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * net.rubyeye.xmemcached.CommandFactory#createGetStreamCommand(java.lang
+	 * .String, byte[], net.rubyeye.xmemcached.ValueChunkHandler)
+	 */
+	public Command createGetStreamCommand(String key, byte[] keyBytes,
+			ValueChunkHandler handler) {
+		return new BinaryGetStreamCommand(key, keyBytes,
+				new CompletionLatch(1), handler);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * net.rubyeye.xmemcached.CommandFactory#createGetMultiCommand(java.lang
+	 * .String[], int[], int, int, java.util.concurrent.CountDownLatch,
+	 * net.rubyeye.xmemcached.command.CommandType,
+	 * net.rubyeye.xmemcached.transcoders.Transcoder)
+	 */
+	public <T> Command createGetMultiCommand(String[] keys, int[] indexes,
+			int offset, int count, CountDownLatch latch, CommandType cmdType,
+			Transcoder<T> transcoder) {
+		final int end = offset + count;
+		// exact for ASCII keys
+		int capacity = 0;
+		for (int i = offset; i < end; i++) {
+			capacity += HEADER_LENGTH + keys[indexes[i]].length();
+		}
+		IoBuffer buffer = IoBuffer.allocate(capacity);
+		for (int i = offset; i < end; i++) {
+			// first n-1 keys are sent by getkq,the last one by getk
+			OpCode opCode = i < end - 1 ? OpCode.GET_KEY_QUIETLY
+					: OpCode.GET_KEY;
+			int start = buffer.position();
+			buffer.put(Command.REQUEST_MAGIC_NUMBER);
+			buffer.put(opCode.fieldValue());
+			// key length and total body length are filled after the key
+			buffer.putShort((short) 0);
+			// extras length,data type and reserved
+			buffer.put((byte) 0);
+			buffer.put((byte) 0);
+			buffer.putShort((short) 0);
+			buffer.putInt(0);
+			buffer.putInt(OpaqueGenerater.getInstance().getNextValue());
+			buffer.putLong(0L);
+			int keyLength = ByteUtils.putKey(buffer, keys[indexes[i]]);
+			buffer.putShort(start + 2, (short) keyLength);
+			buffer.putInt(start + 8, keyLength);
+		}
+		buffer.flip();
+		Command resultCommand = new BinaryGetMultiCommand(keys[indexes[end - 1]],
+				cmdType, latch);
+		resultCommand.setIoBuffer(buffer);
+		return resultCommand;
+	}
+
 	public Command createIncrDecrCommand(String key, byte[] keyBytes,
 			long amount, long initial, int expTime, CommandType cmdType,
 			boolean noreply) {
@@ -128,7 +196,7 @@ public class BinaryCommandFactory implements CommandFactory {
 	public Command createPrependCommand(String key, byte[] keyBytes,
 			Object value, boolean noreply, Transcoder transcoder) {
 		return new BinaryAppendPrependCommand(key, keyBytes,
-				CommandType.PREPEND, new CountDownLatch(1), 0, 0, value,
+				CommandType.PREPEND, new CompletionLatch(1), 0, 0, value,
 				noreply, transcoder);
 	}
 
@@ -142,7 +210,7 @@ public class BinaryCommandFactory implements CommandFactory {
 			Object value, CommandType cmdType, boolean noreply,
 			Transcoder transcoder) {
 		return new BinaryStoreCommand(key, keyBytes, cmdType,
-				new CountDownLatch(1), exp, -1, value, noreply, transcoder);
+				new CompletionLatch(1), exp, -1, value, noreply, transcoder);
 	}
 
 	public Command createSetCommand(String key, byte[] keyBytes, int exp,
@@ -187,6 +255,10 @@ public class BinaryCommandFactory implements CommandFactory {
 		return new BinaryQuitCommand();
 	}
 
+	public Command createNoopCommand() {
+		return new BinaryNoopCommand(new CompletionLatch(1));
+	}
+
 	public Protocol getProtocol() {
 		return Protocol.Binary;
 	}
@@ -0,0 +1,91 @@
+/**
+ *Copyright [2009-2010] [dennis zhuang(killme2008@gmail.com)]
+ *Licensed under the Apache License, Version 2.0 (the "License");
+ *you may not use this file except in compliance with the License.
+ *You may obtain a copy of the License at
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *Unless required by applicable law or agreed to in writing,
+ *software distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ *either express or implied. See the License for the specific language governing permissions and limitations under the License
+ */
+package net.rubyeye.xmemcached.command;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import net.rubyeye.xmemcached.impl.MemcachedTCPSession;
+
+import com.google.code.yanf4j.buffer.IoBuffer;
+
+/**
+ * A batch of commands which are sent to the same memcached server.All the
+ * commands are encoded into one gather buffer and decoded in order,the latch
+ * is count down only once when the last command was decoded.
+ *
+ * For binary protocol,the commands could be quiet commands followed by a noop
+ * command,quiet commands which are not responded are skipped when decoding.
+ *
+ * @author dennis
+ *
+ */
+public class BulkCommand extends Command {
+
+	private final List<Command> commands;
+	private int index;
+
+	public BulkCommand(String key, CommandType cmdType, CountDownLatch latch,
+			List<Command> commands) {
+		super(key, cmdType, latch);
+		if (commands == null || commands.isEmpty()) {
+			throw new IllegalArgumentException("Empty commands");
+		}
+		this.commands = commands;
+	}
+
+	public final List<Command> getCommands() {
+		return this.commands;
+	}
+
+	/**
+	 * Whether all commands were decoded
+	 *
+	 * @return
+	 */
+	public final boolean isCompleted() {
+		return this.index == this.commands.size();
+	}
+
+	@Override
+	public void encode() {
+		int totalBytes = 0;
+		for (Command command : this.commands) {
+			if (command.getIoBuffer() == null) {
+				command.encode();
+			}
+			totalBytes += command.getIoBuffer().remaining();
+		}
+		IoBuffer gatherBuffer = IoBuffer.allocate(totalBytes);
+		for (Command command : this.commands) {
+			gatherBuffer.put(command.getIoBuffer());
+			command.getIoBuffer().free();
+		}
+		gatherBuffer.flip();
+		this.ioBuffer = gatherBuffer;
+	}
+
+	@Override
+	public boolean decode(MemcachedTCPSession session, ByteBuffer buffer) {
+		while (this.index < this.commands.size()) {
+			if (!this.commands.get(this.index).decode(session, buffer)) {
+				return false;
+			}
+			this.index++;
+		}
+		this.setResult(Boolean.TRUE);
+		this.countDownLatch();
+		return true;
+	}
+
+}
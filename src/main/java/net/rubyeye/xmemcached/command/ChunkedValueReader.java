@@ -0,0 +1,98 @@
+/**
+ *Copyright [2009-2010] [dennis zhuang(killme2008@gmail.com)]
+ *Licensed under the Apache License, Version 2.0 (the "License");
+ *you may not use this file except in compliance with the License.
+ *You may obtain a copy of the License at
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *Unless required by applicable law or agreed to in writing,
+ *software distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ *either express or implied. See the License for the specific language governing permissions and limitations under the License
+ */
+package net.rubyeye.xmemcached.command;
+
+import java.nio.ByteBuffer;
+
+import net.rubyeye.xmemcached.ValueChunkHandler;
+
+/**
+ * Feeds value bytes of a streaming get to it's handler as they are read.If
+ * the handler throws an exception,or the command is cancelled,the rest of the
+ * value is skipped and the handler is not called any more.
+ * 
+ * @author dennis
+ * 
+ */
+public final class ChunkedValueReader {
+	private final Command command;
+	private ValueChunkHandler handler;
+	private int remaining;
+
+	public ChunkedValueReader(Command command, ValueChunkHandler handler) {
+		this.command = command;
+		this.handler = handler;
+	}
+
+	/**
+	 * A value of length bytes follows
+	 * 
+	 * @param flags
+	 * @param length
+	 */
+	public void start(int flags, int length) {
+		this.remaining = length;
+		if (this.isActive()) {
+			try {
+				this.handler.onValue(flags, length);
+			} catch (RuntimeException e) {
+				this.fail(e);
+			}
+		}
+	}
+
+	/**
+	 * Feed available value bytes to the handler
+	 * 
+	 * @param buffer
+	 * @return true if all bytes of the value were read
+	 */
+	public boolean read(ByteBuffer buffer) {
+		if (this.remaining > 0) {
+			final int length = Math.min(buffer.remaining(), this.remaining);
+			final int position = buffer.position();
+			if (length > 0 && this.isActive()) {
+				final int limit = buffer.limit();
+				buffer.limit(position + length);
+				try {
+					this.handler.onChunk(buffer);
+				} catch (RuntimeException e) {
+					this.fail(e);
+				} finally {
+					buffer.limit(limit);
+				}
+			}
+			buffer.position(position + length);
+			this.remaining -= length;
+			if (this.remaining > 0) {
+				return false;
+			}
+		}
+		if (this.isActive()) {
+			try {
+				this.handler.onComplete();
+			} catch (RuntimeException e) {
+				this.fail(e);
+			}
+		}
+		return true;
+	}
+
+	private boolean isActive() {
+		return this.handler != null && !this.command.isCancelled();
+	}
+
+	private void fail(RuntimeException e) {
+		this.handler = null;
+		this.command.setException(e);
+	}
+}
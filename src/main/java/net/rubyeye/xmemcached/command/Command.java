@@ -14,6 +14,7 @@ package net.rubyeye.xmemcached.command;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import net.rubyeye.xmemcached.exception.MemcachedClientException;
 import net.rubyeye.xmemcached.exception.MemcachedDecodeException;
@@ -66,6 +67,19 @@ public abstract class Command implements WriteMessage {
 	protected Transcoder transcoder;
 	protected boolean noreply;
 	protected FutureImpl<Boolean> writeFuture;
+	/**
+	 * System.nanoTime() when the command was written to a session,zero if it
+	 * was not written by user code
+	 */
+	private long writeTime;
+	/**
+	 * The session which the command is waiting response from
+	 */
+	private volatile MemcachedTCPSession sentSession;
+
+	private static final AtomicReferenceFieldUpdater<Command, MemcachedTCPSession> SENT_SESSION_UPDATER = AtomicReferenceFieldUpdater
+			.newUpdater(Command.class, MemcachedTCPSession.class,
+					"sentSession");
 
 	public final byte[] getKeyBytes() {
 		return keyBytes;
@@ -198,6 +212,45 @@ public abstract class Command implements WriteMessage {
 		if (ioBuffer != null) {
 			ioBuffer.free();
 		}
+		MemcachedTCPSession session = SENT_SESSION_UPDATER.getAndSet(this,
+				null);
+		if (session != null) {
+			session.onSentCommandCancelled(this);
+		}
+	}
+
+	/**
+	 * Whether cancel() was called,the response of a cancelled command is
+	 * discarded
+	 * 
+	 * @return
+	 */
+	public final boolean isCancelled() {
+		return cancel;
+	}
+
+	/**
+	 * Bind the command to the session which it was sent through,the session
+	 * is notified if the command is cancelled before it's response arrives.
+	 * 
+	 * @param session
+	 */
+	public final void bindSentSession(MemcachedTCPSession session) {
+		this.sentSession = session;
+		if (cancel && SENT_SESSION_UPDATER.getAndSet(this, null) != null) {
+			// cancelled before binding
+			session.onSentCommandCancelled(this);
+		}
+	}
+
+	/**
+	 * Unbind the command when it's response arrives
+	 * 
+	 * @return true if the command was cancelled when waiting response,that
+	 *         means the session has counted it
+	 */
+	public final boolean unbindSentSession() {
+		return SENT_SESSION_UPDATER.getAndSet(this, null) == null;
 	}
 
 	public final CountDownLatch getLatch() {
@@ -290,6 +343,14 @@ public abstract class Command implements WriteMessage {
 		this.writeFuture = writeFuture;
 	}
 
+	public final long getWriteTime() {
+		return writeTime;
+	}
+
+	public final void setWriteTime(long writeTime) {
+		this.writeTime = writeTime;
+	}
+
 	public final boolean isWriting() {
 		return true;
 	}
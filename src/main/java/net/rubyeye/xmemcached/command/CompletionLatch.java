@@ -0,0 +1,318 @@
+/**
+ *Copyright [2009-2010] [dennis zhuang(killme2008@gmail.com)]
+ *Licensed under the Apache License, Version 2.0 (the "License");
+ *you may not use this file except in compliance with the License.
+ *You may obtain a copy of the License at
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *Unless required by applicable law or agreed to in writing,
+ *software distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ *either express or implied. See the License for the specific language governing permissions and limitations under the License
+ */
+package net.rubyeye.xmemcached.command;
+
+import java.util.LinkedList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lightweight completion latch for commands.It is optimized for the common
+ * case that only one thread waits for the command:the waiter spins a little
+ * and then parks itself,the reactor thread unparks it directly without AQS
+ * queueing.Other waiters fall back to the object monitor.Callbacks could be
+ * attached,they are run by the thread which counts the latch down to zero.
+ *
+ * It extends CountDownLatch to keep the CommandFactory and Command APIs
+ * compatible,the inherited synchronizer is never used but it is still
+ * allocated by the super constructor.So the allocation per command does not go
+ * down,only the wakeup latency of the waiting thread is improved.
+ *
+ * @author dennis
+ *
+ */
+public final class CompletionLatch extends CountDownLatch {
+
+	/**
+	 * Spin times before parking,spin only on multiprocessor
+	 */
+	static final int SPIN_TIMES = Runtime.getRuntime().availableProcessors() > 1 ? 256
+			: 0;
+
+	private static final Callback FIRED = new Callback(null, null);
+
+	/**
+	 * Count of a latch completed by forceComplete
+	 */
+	private static final int FORCED = -1;
+
+	private static final AtomicIntegerFieldUpdater<CompletionLatch> COUNT_UPDATER = AtomicIntegerFieldUpdater
+			.newUpdater(CompletionLatch.class, "count");
+
+	private static final AtomicReferenceFieldUpdater<CompletionLatch, Thread> WAITER_UPDATER = AtomicReferenceFieldUpdater
+			.newUpdater(CompletionLatch.class, Thread.class, "waiter");
+
+	private static final AtomicReferenceFieldUpdater<CompletionLatch, Callback> CALLBACK_UPDATER = AtomicReferenceFieldUpdater
+			.newUpdater(CompletionLatch.class, Callback.class, "callback");
+
+	/**
+	 * Immutable stack of callbacks
+	 */
+	private static final class Callback {
+		final Runnable runnable;
+		final Callback next;
+
+		Callback(Runnable runnable, Callback next) {
+			this.runnable = runnable;
+			this.next = next;
+		}
+	}
+
+	private volatile int count;
+	private volatile Thread waiter;
+	private volatile Callback callback;
+	private volatile int sharedWaiters;
+
+	public CompletionLatch(int count) {
+		super(0);
+		if (count < 0) {
+			throw new IllegalArgumentException("count < 0");
+		}
+		this.count = count;
+	}
+
+	@Override
+	public void countDown() {
+		for (;;) {
+			int c = this.count;
+			if (c <= 0) {
+				return;
+			}
+			if (COUNT_UPDATER.compareAndSet(this, c, c - 1)) {
+				if (c == 1) {
+					this.complete();
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Count the latch down to zero at once,it is used to wake up waiters when
+	 * the deadline of an operation is reached.
+	 * 
+	 * @return true if the latch is completed by this call
+	 */
+	public boolean forceComplete() {
+		return this.forceComplete(null);
+	}
+
+	/**
+	 * Count the latch down to zero at once,the action is run only if the
+	 * latch is completed by this call,before callbacks are run and the parked
+	 * waiters are woken up.
+	 * 
+	 * @param action
+	 * @return true if the latch is completed by this call
+	 */
+	public boolean forceComplete(Runnable action) {
+		for (;;) {
+			int c = this.count;
+			if (c <= 0) {
+				return false;
+			}
+			if (COUNT_UPDATER.compareAndSet(this, c, FORCED)) {
+				try {
+					if (action != null) {
+						action.run();
+					}
+				} finally {
+					this.complete();
+				}
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Whether the latch was completed by forceComplete instead of counting
+	 * down,it is decided by the same CAS which completes the latch,so waiters
+	 * never see a transient value.
+	 * 
+	 * @return
+	 */
+	public boolean isForceCompleted() {
+		return this.count == FORCED;
+	}
+
+	private void complete() {
+		Thread t = this.waiter;
+		if (t != null) {
+			LockSupport.unpark(t);
+		}
+		if (this.sharedWaiters > 0) {
+			synchronized (this) {
+				this.notifyAll();
+			}
+		}
+		Callback cb = CALLBACK_UPDATER.getAndSet(this, FIRED);
+		if (cb != null && cb != FIRED) {
+			runCallbacks(cb);
+		}
+	}
+
+	/**
+	 * Run callbacks in the order they were added
+	 * 
+	 * @param cb
+	 */
+	private static void runCallbacks(Callback cb) {
+		if (cb.next == null) {
+			cb.runnable.run();
+			return;
+		}
+		LinkedList<Runnable> runnables = new LinkedList<Runnable>();
+		for (; cb != null; cb = cb.next) {
+			runnables.addFirst(cb.runnable);
+		}
+		for (Runnable runnable : runnables) {
+			runnable.run();
+		}
+	}
+
+	/**
+	 * Set the callback which will be run when the count reaches zero.If the
+	 * latch is already completed,the callback is run in current thread.Only
+	 * one callback is allowed.
+	 *
+	 * @param cb
+	 */
+	public void setCallback(Runnable cb) {
+		if (cb == null) {
+			throw new NullPointerException("Null callback");
+		}
+		Callback node = new Callback(cb, null);
+		if (!CALLBACK_UPDATER.compareAndSet(this, null, node)) {
+			if (this.callback == FIRED) {
+				cb.run();
+				return;
+			}
+			throw new IllegalStateException("Callback has been set");
+		}
+		if (this.count <= 0 && CALLBACK_UPDATER.compareAndSet(this, node, FIRED)) {
+			cb.run();
+		}
+	}
+
+	/**
+	 * Add a callback which will be run when the count reaches zero,unlike
+	 * setCallback,many callbacks could be added.If the latch is already
+	 * completed,the callback is run in current thread.
+	 * 
+	 * @param cb
+	 */
+	public void addCallback(Runnable cb) {
+		if (cb == null) {
+			throw new NullPointerException("Null callback");
+		}
+		for (;;) {
+			Callback current = this.callback;
+			if (current == FIRED) {
+				cb.run();
+				return;
+			}
+			Callback node = new Callback(cb, current);
+			if (CALLBACK_UPDATER.compareAndSet(this, current, node)) {
+				if (this.count <= 0
+						&& CALLBACK_UPDATER.compareAndSet(this, node, FIRED)) {
+					runCallbacks(node);
+				}
+				return;
+			}
+		}
+	}
+
+	@Override
+	public long getCount() {
+		return Math.max(this.count, 0);
+	}
+
+	@Override
+	public void await() throws InterruptedException {
+		this.await0(false, 0L);
+	}
+
+	@Override
+	public boolean await(long timeout, TimeUnit unit)
+			throws InterruptedException {
+		return this.await0(true, unit.toNanos(timeout));
+	}
+
+	private boolean await0(boolean timed, long nanos)
+			throws InterruptedException {
+		if (Thread.interrupted()) {
+			throw new InterruptedException();
+		}
+		for (int i = 0; i < SPIN_TIMES; i++) {
+			if (this.count <= 0) {
+				return true;
+			}
+		}
+		if (this.count <= 0) {
+			return true;
+		}
+		final long deadline = timed ? System.nanoTime() + nanos : 0L;
+		final Thread current = Thread.currentThread();
+		if (!WAITER_UPDATER.compareAndSet(this, null, current)) {
+			return this.sharedAwait(timed, deadline);
+		}
+		try {
+			while (this.count > 0) {
+				if (timed) {
+					long left = deadline - System.nanoTime();
+					if (left <= 0) {
+						return false;
+					}
+					LockSupport.parkNanos(left);
+				} else {
+					LockSupport.park();
+				}
+				if (Thread.interrupted()) {
+					throw new InterruptedException();
+				}
+			}
+			return true;
+		} finally {
+			this.waiter = null;
+		}
+	}
+
+	private synchronized boolean sharedAwait(boolean timed, long deadline)
+			throws InterruptedException {
+		this.sharedWaiters++;
+		try {
+			while (this.count > 0) {
+				if (timed) {
+					long left = deadline - System.nanoTime();
+					if (left <= 0) {
+						return false;
+					}
+					TimeUnit.NANOSECONDS.timedWait(this, left);
+				} else {
+					this.wait();
+				}
+			}
+			return true;
+		} finally {
+			this.sharedWaiters--;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "CompletionLatch[Count = " + this.getCount() + "]";
+	}
+
+}
@@ -5,6 +5,7 @@ import java.util.Collection;
 import java.util.concurrent.CountDownLatch;
 
 import net.rubyeye.xmemcached.CommandFactory;
+import net.rubyeye.xmemcached.ValueChunkHandler;
 import net.rubyeye.xmemcached.buffer.BufferAllocator;
 import net.rubyeye.xmemcached.command.kestrel.KestrelDeleteCommand;
 import net.rubyeye.xmemcached.command.kestrel.KestrelFlushAllCommand;
@@ -49,7 +50,7 @@ public class KestrelCommandFactory implements CommandFactory {
 	public Command createDeleteCommand(String key, byte[] keyBytes, int time,
 			boolean noreply) {
 		return new KestrelDeleteCommand(key, keyBytes, -1,
-				new CountDownLatch(1), noreply);
+				new CompletionLatch(1), noreply);
 	}
 
 	public Command createFlushAllCommand(CountDownLatch latch, int delay,
@@ -60,7 +61,7 @@ public class KestrelCommandFactory implements CommandFactory {
 	public Command createGetCommand(String key, byte[] keyBytes,
 			CommandType cmdType, Transcoder transcoder) {
 		return new KestrelGetCommand(key, keyBytes, cmdType,
-				new CountDownLatch(1), transcoder);
+				new CompletionLatch(1), transcoder);
 	}
 
 	public <T> Command createGetMultiCommand(Collection<String> keys,
@@ -69,6 +70,19 @@ public class KestrelCommandFactory implements CommandFactory {
 				"Kestrel doesn't support this operation");
 	}
 
+	public <T> Command createGetMultiCommand(String[] keys, int[] indexes,
+			int offset, int count, CountDownLatch latch, CommandType cmdType,
+			Transcoder<T> transcoder) {
+		throw new UnsupportedOperationException(
+				"Kestrel doesn't support this operation");
+	}
+
+	public Command createGetStreamCommand(String key, byte[] keyBytes,
+			ValueChunkHandler handler) {
+		throw new UnsupportedOperationException(
+				"Kestrel doesn't support this operation");
+	}
+
 	public Command createIncrDecrCommand(String key, byte[] keyBytes,
 			long amount, long initial, int expTime, CommandType cmdType,
 			boolean noreply) {
@@ -91,7 +105,7 @@ public class KestrelCommandFactory implements CommandFactory {
 	public Command createSetCommand(String key, byte[] keyBytes, int exp,
 			Object value, boolean noreply, Transcoder transcoder) {
 		return new KestrelSetCommand(key, keyBytes, CommandType.SET,
-				new CountDownLatch(1), exp, -1, value, noreply, transcoder);
+				new CompletionLatch(1), exp, -1, value, noreply, transcoder);
 	}
 
 	public Command createStatsCommand(InetSocketAddress server,
@@ -119,6 +133,11 @@ public class KestrelCommandFactory implements CommandFactory {
 		return new TextQuitCommand();
 	}
 
+	public Command createNoopCommand() {
+		throw new UnsupportedOperationException(
+				"Kestrel doesn't support this operation");
+	}
+
 	public Protocol getProtocol() {
 		return Protocol.Kestrel;
 	}
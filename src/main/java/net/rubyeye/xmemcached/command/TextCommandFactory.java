@@ -5,22 +5,27 @@ import java.util.Collection;
 import java.util.concurrent.CountDownLatch;
 
 import net.rubyeye.xmemcached.CommandFactory;
+import net.rubyeye.xmemcached.ValueChunkHandler;
 import net.rubyeye.xmemcached.buffer.BufferAllocator;
 import net.rubyeye.xmemcached.command.text.TextCASCommand;
 import net.rubyeye.xmemcached.command.text.TextDeleteCommand;
 import net.rubyeye.xmemcached.command.text.TextFlushAllCommand;
 import net.rubyeye.xmemcached.command.text.TextGetMultiCommand;
 import net.rubyeye.xmemcached.command.text.TextGetOneCommand;
+import net.rubyeye.xmemcached.command.text.TextGetStreamCommand;
 import net.rubyeye.xmemcached.command.text.TextIncrDecrCommand;
 import net.rubyeye.xmemcached.command.text.TextQuitCommand;
 import net.rubyeye.xmemcached.command.text.TextStatsCommand;
 import net.rubyeye.xmemcached.command.text.TextStoreCommand;
 import net.rubyeye.xmemcached.command.text.TextVerbosityCommand;
 import net.rubyeye.xmemcached.command.text.TextVersionCommand;
+import net.rubyeye.xmemcached.monitor.Constants;
 import net.rubyeye.xmemcached.transcoders.Transcoder;
 import net.rubyeye.xmemcached.utils.ByteUtils;
 import net.rubyeye.xmemcached.utils.Protocol;
 
+import com.google.code.yanf4j.buffer.IoBuffer;
+
 /**
  * Command Factory for creating text protocol commands.
  * 
@@ -43,7 +48,7 @@ public final class TextCommandFactory implements CommandFactory {
 	public final Command createDeleteCommand(final String key,
 			final byte[] keyBytes, final int time, boolean noreply) {
 		return new TextDeleteCommand(key, keyBytes, time,
-				new CountDownLatch(1), noreply);
+				new CompletionLatch(1), noreply);
 	}
 
 	/*
@@ -106,7 +111,7 @@ public final class TextCommandFactory implements CommandFactory {
 			final byte[] keyBytes, final int exp, final Object value, long cas,
 			boolean noreply, Transcoder transcoder) {
 		return new TextCASCommand(key, keyBytes, CommandType.CAS,
-				new CountDownLatch(1), exp, cas, value, noreply, transcoder);
+				new CompletionLatch(1), exp, cas, value, noreply, transcoder);
 	}
 
 	@SuppressWarnings("unchecked")
@@ -153,7 +158,7 @@ public final class TextCommandFactory implements CommandFactory {
 	final Command createStoreCommand(String key, byte[] keyBytes, int exp,
 			Object value, CommandType cmdType, boolean noreply,
 			Transcoder transcoder) {
-		return new TextStoreCommand(key, keyBytes, cmdType, new CountDownLatch(
+		return new TextStoreCommand(key, keyBytes, cmdType, new CompletionLatch(
 				1), exp, -1, value, noreply, transcoder);
 	}
 
@@ -169,7 +174,7 @@ public final class TextCommandFactory implements CommandFactory {
 			final byte[] keyBytes, final CommandType cmdType,
 			Transcoder transcoder) {
 		return new TextGetOneCommand(key, keyBytes, cmdType,
-				new CountDownLatch(1));
+				new CompletionLatch(1));
 	}
 
 	/*
@@ -195,6 +200,53 @@ public final class TextCommandFactory implements CommandFactory {
 				cmdType, latch, transcoder);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * net.rubyeye.xmemcached.CommandFactory#createGetStreamCommand(java.lang
+	 * .String, byte[], net.rubyeye.xmemcached.ValueChunkHandler)
+	 */
+	public final Command createGetStreamCommand(final String key,
+			final byte[] keyBytes, ValueChunkHandler handler) {
+		return new TextGetStreamCommand(key, keyBytes, new CompletionLatch(1),
+				handler);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * net.rubyeye.xmemcached.CommandFactory#createGetMultiCommand(java.lang
+	 * .String[], int[], int, int, java.util.concurrent.CountDownLatch,
+	 * net.rubyeye.xmemcached.command.CommandType,
+	 * net.rubyeye.xmemcached.transcoders.Transcoder)
+	 */
+	public final <T> Command createGetMultiCommand(String[] keys,
+			int[] indexes, int offset, int count, CountDownLatch latch,
+			CommandType cmdType, Transcoder<T> transcoder) {
+		final byte[] cmdBytes = cmdType == CommandType.GET_MANY ? Constants.GET
+				: Constants.GETS;
+		final int end = offset + count;
+		// exact for ASCII keys
+		int capacity = cmdBytes.length + Constants.CRLF.length;
+		for (int i = offset; i < end; i++) {
+			capacity += 1 + keys[indexes[i]].length();
+		}
+		IoBuffer buffer = IoBuffer.allocate(capacity);
+		buffer.put(cmdBytes);
+		for (int i = offset; i < end; i++) {
+			buffer.put(Constants.SPACE);
+			ByteUtils.putKey(buffer, keys[indexes[i]]);
+		}
+		buffer.put(Constants.CRLF);
+		buffer.flip();
+		TextGetMultiCommand command = new TextGetMultiCommand(
+				keys[indexes[offset]], null, cmdType, latch, transcoder);
+		command.setIoBuffer(buffer);
+		return command;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -206,7 +258,7 @@ public final class TextCommandFactory implements CommandFactory {
 			final byte[] keyBytes, final long amount, long initial,
 			int exptime, CommandType cmdType, boolean noreply) {
 		return new TextIncrDecrCommand(key, keyBytes, cmdType,
-				new CountDownLatch(1), amount, initial, noreply);
+				new CompletionLatch(1), amount, initial, noreply);
 	}
 
 	public Command createAuthListMechanismsCommand(CountDownLatch latch) {
@@ -230,6 +282,11 @@ public final class TextCommandFactory implements CommandFactory {
 		return new TextQuitCommand();
 	}
 
+	public Command createNoopCommand() {
+		throw new UnsupportedOperationException(
+				"Noop is only supported by binary protocol");
+	}
+
 	public Protocol getProtocol() {
 		return Protocol.Text;
 	}
@@ -61,6 +61,7 @@ public abstract class BaseBinaryCommand extends Command {
 			responseTotalBodyLength;
 	protected ResponseStatus responseStatus;
 	protected int opaque;
+	protected boolean quiet;
 
 	@SuppressWarnings("unchecked")
 	public BaseBinaryCommand(String key, byte[] keyBytes, CommandType cmdType,
@@ -123,7 +124,20 @@ public abstract class BaseBinaryCommand extends Command {
 				continue;
 			case READ_HEADER:
 				readHeader(buffer);
+				if (this.cancel
+						&& this.decodeStatus == BinaryDecodeStatus.READ_EXTRAS
+						&& isResponseDiscardable()) {
+					// cancelled(timed out),nobody cares about the response
+					this.decodeStatus = BinaryDecodeStatus.DISCARD;
+				}
 				continue;
+			case DISCARD:
+				if (ByteUtils.stepBuffer(buffer, this.responseTotalBodyLength)) {
+					countDownLatch();
+					return true;
+				} else {
+					return false;
+				}
 			case READ_EXTRAS:
 				if (readExtras(buffer, this.responseExtrasLength)) {
 					this.decodeStatus = BinaryDecodeStatus.READ_KEY;
@@ -156,11 +170,27 @@ public abstract class BaseBinaryCommand extends Command {
 				}
 			case IGNORE:
 				buffer.reset();
+				if (this.quiet) {
+					// quiet command is not responded,it is successful
+					setResult(Boolean.TRUE);
+					countDownLatch();
+				}
 				return true;
 			}
 		}
 	}
 
+	/**
+	 * Whether the response of a cancelled command could be skipped without
+	 * decoding the body,commands which have many response packets must return
+	 * false.
+	 * 
+	 * @return
+	 */
+	protected boolean isResponseDiscardable() {
+		return true;
+	}
+
 	protected boolean finish() {
 		if (this.result == null) {
 			if (this.responseStatus == ResponseStatus.NO_ERROR) {
@@ -209,7 +239,7 @@ public abstract class BaseBinaryCommand extends Command {
 	}
 
 	protected boolean readOpaque(ByteBuffer buffer) {
-		if (this.noreply) {
+		if (this.noreply || this.quiet) {
 			int returnOpaque = buffer.getInt();
 			if (returnOpaque != this.opaque) {
 				return false;
@@ -267,6 +297,88 @@ public abstract class BaseBinaryCommand extends Command {
 		this.opCode = opCode;
 	}
 
+	/**
+	 * Returns the quiet opcode of current opcode,null if this command could not
+	 * be sent quietly.Only the commands whose result is a boolean could be
+	 * sent quietly.
+	 * 
+	 * @return
+	 */
+	protected OpCode getQuietOpCode() {
+		switch (this.opCode) {
+		case SET:
+			return OpCode.SET_QUIETLY;
+		case ADD:
+			return OpCode.ADD_QUIETLY;
+		case REPLACE:
+			return OpCode.REPLACE_QUIETLY;
+		case APPEND:
+			return OpCode.APPEND_QUIETLY;
+		case PREPEND:
+			return OpCode.PREPEND_QUIETLY;
+		case DELETE:
+			return OpCode.DELETE_QUIETLY;
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Whether this encoded command could be switched to it's quiet opcode
+	 * 
+	 * @return
+	 */
+	public final boolean canBeQuiet() {
+		return !this.noreply && !this.quiet && this.ioBuffer != null
+				&& getQuietOpCode() != null;
+	}
+
+	/**
+	 * Switch this encoded command to it's quiet opcode,the server responds
+	 * only when it failed.The error response is correlated by opaque.Caller
+	 * must ensure a non-quiet command is sent after it,if there is no response
+	 * for this command before the next command's response,it succeeded.
+	 */
+	public final void quietly() {
+		if (!canBeQuiet()) {
+			throw new IllegalStateException("Command " + this.opCode
+					+ " could not be sent quietly");
+		}
+		this.opCode = getQuietOpCode();
+		ByteBuffer buffer = this.ioBuffer.buf();
+		buffer.put(buffer.position() + 1, this.opCode.fieldValue());
+		this.quiet = true;
+	}
+
+	public final boolean isQuiet() {
+		return this.quiet;
+	}
+
+	/**
+	 * Called when a later command's response is arrived but this command was
+	 * not responded.A quiet command is successful in this case.
+	 * 
+	 * @return false if the command should be responded
+	 */
+	public final boolean completeWithoutResponse() {
+		if (this.quiet) {
+			setResult(Boolean.TRUE);
+			countDownLatch();
+			return true;
+		}
+		return this.noreply;
+	}
+
+	/**
+	 * Returns the opaque of this command,it is assigned when encoding,zero
+	 * means that the command has no opaque.
+	 * 
+	 * @return
+	 */
+	public final int getOpaque() {
+		return this.opaque;
+	}
+
 	public final ResponseStatus getResponseStatus() {
 		return this.responseStatus;
 	}
@@ -292,7 +404,7 @@ public abstract class BaseBinaryCommand extends Command {
 	protected boolean readOpCode(ByteBuffer buffer) {
 		byte op = buffer.get();
 		if (op != this.opCode.fieldValue()) {
-			if (this.noreply) {
+			if (this.noreply || this.quiet) {
 				return false;
 			} else {
 				throw new MemcachedDecodeException("Not a proper "
@@ -367,10 +479,8 @@ public abstract class BaseBinaryCommand extends Command {
 	}
 
 	private void fillOpaque() {
-		// Opaque
-		if (this.noreply) {
-			this.opaque = OpaqueGenerater.getInstance().getNextValue();
-		}
+		// Opaque,every command has an unique opaque to correlate it's response
+		this.opaque = OpaqueGenerater.getInstance().getNextValue();
 		this.ioBuffer.putInt(this.opaque);
 	}
 
@@ -88,6 +88,11 @@ public class BinaryGetMultiCommand extends BaseBinaryCommand implements
 		// do nothing
 	}
 
+	@Override
+	protected boolean isResponseDiscardable() {
+		return false;
+	}
+
 	@Override
 	protected boolean finish() {
 		final CachedData cachedData = ((Map<String, CachedData>) this.result)
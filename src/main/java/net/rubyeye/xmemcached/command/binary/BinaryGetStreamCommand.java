@@ -0,0 +1,77 @@
+/**
+ *Copyright [2009-2010] [dennis zhuang(killme2008@gmail.com)]
+ *Licensed under the Apache License, Version 2.0 (the "License");
+ *you may not use this file except in compliance with the License.
+ *You may obtain a copy of the License at
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *Unless required by applicable law or agreed to in writing,
+ *software distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ *either express or implied. See the License for the specific language governing permissions and limitations under the License
+ */
+package net.rubyeye.xmemcached.command.binary;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+
+import net.rubyeye.xmemcached.ValueChunkHandler;
+import net.rubyeye.xmemcached.command.ChunkedValueReader;
+import net.rubyeye.xmemcached.command.CommandType;
+import net.rubyeye.xmemcached.utils.ByteUtils;
+
+/**
+ * Get command for binary protocol which streams the value to a
+ * ValueChunkHandler instead of materializing it,the result is whether the
+ * value was found.
+ * 
+ * @author dennis
+ * 
+ */
+public class BinaryGetStreamCommand extends BinaryGetCommand {
+	private final ChunkedValueReader reader;
+	private int flags;
+	private boolean started;
+
+	public BinaryGetStreamCommand(String key, byte[] keyBytes,
+			CountDownLatch latch, ValueChunkHandler handler) {
+		super(key, keyBytes, CommandType.GET_STREAM, latch, OpCode.GET, false);
+		this.reader = new ChunkedValueReader(this, handler);
+	}
+
+	@Override
+	protected boolean finish() {
+		setResult(this.responseStatus == ResponseStatus.NO_ERROR);
+		countDownLatch();
+		return true;
+	}
+
+	@Override
+	protected boolean readExtras(ByteBuffer buffer, int extrasLength) {
+		if (buffer.remaining() < extrasLength) {
+			return false;
+		}
+		if (extrasLength > 0) {
+			this.flags = buffer.getInt();
+		}
+		return true;
+	}
+
+	@Override
+	protected boolean readKey(ByteBuffer buffer, int keyLength) {
+		return ByteUtils.stepBuffer(buffer, keyLength);
+	}
+
+	@Override
+	protected boolean readValue(ByteBuffer buffer, int bodyLength,
+			int keyLength, int extrasLength) {
+		if (this.responseStatus != ResponseStatus.NO_ERROR) {
+			return super.readValue(buffer, bodyLength, keyLength, extrasLength);
+		}
+		if (!this.started) {
+			this.started = true;
+			this.reader.start(this.flags, bodyLength - keyLength
+					- extrasLength);
+		}
+		return this.reader.read(buffer);
+	}
+}
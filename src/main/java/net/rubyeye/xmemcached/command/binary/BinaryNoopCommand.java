@@ -25,6 +25,7 @@ package net.rubyeye.xmemcached.command.binary;
 import java.util.concurrent.CountDownLatch;
 
 import net.rubyeye.xmemcached.command.CommandType;
+import net.rubyeye.xmemcached.transcoders.CachedData;
 
 /**
  * Implement noop protocol
@@ -39,4 +40,34 @@ public class BinaryNoopCommand extends BaseBinaryCommand {
 		this.opCode = OpCode.NOOP;
 	}
 
+	@Override
+	protected void fillExtras(CachedData data) {
+		// must not have extras
+	}
+
+	@Override
+	protected void fillValue(CachedData data) {
+		// must not have value
+	}
+
+	@Override
+	protected byte getExtrasLength() {
+		return 0;
+	}
+
+	@Override
+	protected void fillKey() {
+		// must not have key
+	}
+
+	@Override
+	protected int getKeyLength() {
+		return 0;
+	}
+
+	@Override
+	protected int getValueLength(CachedData data) {
+		return 0;
+	}
+
 }
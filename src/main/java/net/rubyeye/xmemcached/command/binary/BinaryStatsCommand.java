@@ -70,6 +70,11 @@ public class BinaryStatsCommand extends BaseBinaryCommand implements
 		this.result = new HashMap<String, String>();
 	}
 
+	@Override
+	protected boolean isResponseDiscardable() {
+		return false;
+	}
+
 	@Override
 	protected boolean finish() {
 		// last packet
@@ -51,6 +51,7 @@ public abstract class TextGetCommand extends Command implements
 		MergeCommandsAware, AssocCommandAware, MapReturnValueAware {
 	protected Map<String, CachedData> returnValues;
 	private String currentReturnKey;
+	private CachedData currentValue;
 	private int offset;
 	/**
 	 *When MemcachedClient merge get commands,those commans which have the same
@@ -139,31 +140,29 @@ public abstract class TextGetCommand extends Command implements
 					return false;
 				} else {
 					this.currentReturnKey = item;
+					this.currentValue = new CachedData();
 					this.returnValues.put(this.currentReturnKey,
-							new CachedData());
+							this.currentValue);
 					this.parseStatus = ParseStatus.FLAG;
 					continue;
 				}
 			case FLAG:
-				item = getItem(buffer, ' ');
-				if (item == null) {
+				// flags are unsigned 32 bits
+				long number = getNumber(buffer, ' ', ' ', 0xFFFFFFFFL);
+				if (number < 0) {
 					return false;
 				} else {
-					final CachedData cachedData = this.returnValues
-							.get(this.currentReturnKey);
-					cachedData.setFlag(Integer.parseInt(item));
+					this.currentValue.setFlag((int) number);
 					this.parseStatus = ParseStatus.DATA_LEN;
 					continue;
 				}
 			case DATA_LEN:
-				item = getItem(buffer, '\r', ' ');
-				if (item == null) {
+				number = getNumber(buffer, '\r', ' ', Integer.MAX_VALUE);
+				if (number < 0) {
 					return false;
 				} else {
-					final CachedData cachedData = this.returnValues
-							.get(this.currentReturnKey);
-					cachedData.setCapacity(Integer.parseInt(item));
-					assert (cachedData.getCapacity() >= 0);
+					final CachedData cachedData = this.currentValue;
+					cachedData.setCapacity((int) number);
 					cachedData.setData(new byte[cachedData.getCapacity()]);
 					this.parseStatus = ParseStatus.DATA_LEN_DONE;
 					continue;
@@ -186,13 +185,11 @@ public abstract class TextGetCommand extends Command implements
 				}
 			case CAS:
 				// has cas value
-				item = getItem(buffer, '\r');
-				if (item == null) {
+				number = getNumber(buffer, '\r', '\r', Long.MAX_VALUE);
+				if (number < 0) {
 					return false;
 				} else {
-					final CachedData cachedData = this.returnValues
-							.get(this.currentReturnKey);
-					cachedData.setCas(Long.parseLong(item));
+					this.currentValue.setCas(number);
 					this.parseStatus = ParseStatus.CAS_DONE;
 					continue;
 				}
@@ -206,8 +203,7 @@ public abstract class TextGetCommand extends Command implements
 					continue;
 				}
 			case DATA:
-				final CachedData value = this.returnValues
-						.get(this.currentReturnKey);
+				final CachedData value = this.currentValue;
 				int remaining = buffer.remaining();
 				int remainingCapacity = value.remainingCapacity();
 				assert (remainingCapacity >= 0);
@@ -245,6 +241,7 @@ public abstract class TextGetCommand extends Command implements
 					}
 				}
 				this.currentReturnKey = null;
+				this.currentValue = null;
 				this.parseStatus = ParseStatus.NULL;
 				continue;
 			default:
@@ -254,37 +251,88 @@ public abstract class TextGetCommand extends Command implements
 		}
 	}
 
-	private String getItem(ByteBuffer buffer, char token, char... others) {
+	/**
+	 * Returns the position of the first token or other from current
+	 * position,or -1 if there is no token yet,the scanned length is
+	 * remembered for the next call.
+	 */
+	private int indexOf(ByteBuffer buffer, char token, char other) {
 		int pos = buffer.position() + this.offset;
 		final int limit = buffer.limit();
 		for (; pos < limit; pos++) {
 			final byte b = buffer.get(pos);
-			if (b == token || isIn(b, others)) {
-				byte[] keyBytes = new byte[pos - buffer.position()];
-				buffer.get(keyBytes);
+			if (b == token || b == other) {
 				this.offset = 0;
-				assert (pos == buffer.position());
-				// skip token
-				buffer.position(pos + 1);
-				return getString(keyBytes);
+				return pos;
 			}
 		}
 		this.offset = pos - buffer.position();
-		return null;
+		return -1;
 	}
 
-	private boolean isIn(byte b, char[] others) {
-		for (int i = 0; i < others.length; i++) {
-			if (b == others[i]) {
-				return true;
+	private String getItem(ByteBuffer buffer, char token) {
+		int pos = indexOf(buffer, token, token);
+		if (pos < 0) {
+			return null;
+		}
+		String item = getString(buffer, pos - buffer.position());
+		// skip token
+		buffer.position(pos + 1);
+		return item;
+	}
+
+	/**
+	 * Parse a decimal number which ends with token or other from current
+	 * position
+	 * 
+	 * @return the number,or -1 if there is no token yet
+	 */
+	private long getNumber(ByteBuffer buffer, char token, char other,
+			long max) {
+		int pos = indexOf(buffer, token, other);
+		if (pos < 0) {
+			return -1;
+		}
+		long number = parseNumber(buffer, buffer.position(), pos, max);
+		// skip token
+		buffer.position(pos + 1);
+		return number;
+	}
+
+	/**
+	 * Parse a decimal number from the buffer bytes between start and end,no
+	 * string is created.A number greater than max is rejected,so a parsed
+	 * number is never negative and never mistaken for an incomplete token.
+	 */
+	static long parseNumber(ByteBuffer buffer, int start, int end, long max) {
+		if (end == start) {
+			throw new NumberFormatException("Empty number");
+		}
+		long number = 0;
+		for (int i = start; i < end; i++) {
+			final int digit = buffer.get(i) - '0';
+			if (digit < 0 || digit > 9) {
+				throw new NumberFormatException("Invalid number at " + i);
 			}
+			if (number > (max - digit) / 10) {
+				throw new NumberFormatException("Number is greater than "
+						+ max + " at " + i);
+			}
+			number = number * 10 + digit;
 		}
-		return false;
+		return number;
 	}
 
-	private String getString(byte[] keyBytes) {
+	private static String getString(ByteBuffer buffer, int length) {
 		try {
-			return new String(keyBytes, "utf-8");
+			if (buffer.hasArray()) {
+				return new String(buffer.array(), buffer.arrayOffset()
+						+ buffer.position(), length,
+						ByteUtils.DEFAULT_CHARSET_NAME);
+			}
+			byte[] bytes = new byte[length];
+			buffer.duplicate().get(bytes);
+			return new String(bytes, ByteUtils.DEFAULT_CHARSET_NAME);
 		} catch (UnsupportedEncodingException e) {
 			throw new RuntimeException(e);
 		}
@@ -40,6 +40,16 @@ public class TextGetMultiCommand extends TextGetCommand {
 		this.transcoder = transcoder;
 	}
 
+	/**
+	 * The buffer is filled by the command factory if keyBytes is null
+	 */
+	@Override
+	public void encode() {
+		if (this.keyBytes != null) {
+			super.encode();
+		}
+	}
+
 	@Override
 	public final void dispatch() {
 		setResult(this.returnValues);
@@ -0,0 +1,161 @@
+/**
+ *Copyright [2009-2010] [dennis zhuang(killme2008@gmail.com)]
+ *Licensed under the Apache License, Version 2.0 (the "License");
+ *you may not use this file except in compliance with the License.
+ *You may obtain a copy of the License at
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *Unless required by applicable law or agreed to in writing,
+ *software distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ *either express or implied. See the License for the specific language governing permissions and limitations under the License
+ */
+package net.rubyeye.xmemcached.command.text;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+
+import net.rubyeye.xmemcached.ValueChunkHandler;
+import net.rubyeye.xmemcached.command.ChunkedValueReader;
+import net.rubyeye.xmemcached.command.Command;
+import net.rubyeye.xmemcached.command.CommandType;
+import net.rubyeye.xmemcached.impl.MemcachedTCPSession;
+import net.rubyeye.xmemcached.monitor.Constants;
+import net.rubyeye.xmemcached.utils.ByteUtils;
+
+import com.google.code.yanf4j.buffer.IoBuffer;
+
+/**
+ * Get command for text protocol which streams the value to a
+ * ValueChunkHandler instead of materializing it,the result is whether the
+ * value was found.
+ * 
+ * @author dennis
+ * 
+ */
+public class TextGetStreamCommand extends Command {
+	private final ChunkedValueReader reader;
+	private ParseStatus parseStatus = ParseStatus.NULL;
+	private boolean found;
+	private int offset;
+
+	static enum ParseStatus {
+		NULL, VALUE, DATA, DATA_END, END
+	}
+
+	public TextGetStreamCommand(String key, byte[] keyBytes,
+			CountDownLatch latch, ValueChunkHandler handler) {
+		super(key, keyBytes, CommandType.GET_STREAM, latch);
+		this.reader = new ChunkedValueReader(this, handler);
+	}
+
+	@Override
+	public final boolean decode(MemcachedTCPSession session, ByteBuffer buffer) {
+		while (true) {
+			if (buffer == null || !buffer.hasRemaining()) {
+				return false;
+			}
+			switch (this.parseStatus) {
+			case NULL:
+				byte first = buffer.get(buffer.position());
+				if (first == 'E') {
+					this.parseStatus = ParseStatus.END;
+					continue;
+				} else if (first == 'V') {
+					this.parseStatus = ParseStatus.VALUE;
+					continue;
+				} else {
+					return decodeError(session, buffer);
+				}
+			case VALUE:
+				// VALUE <key> <flags> <bytes>\r\n
+				int end = lineEnd(buffer);
+				if (end < 0) {
+					return false;
+				}
+				this.found = true;
+				parseValueLine(buffer, end);
+				this.parseStatus = ParseStatus.DATA;
+				continue;
+			case DATA:
+				if (!this.reader.read(buffer)) {
+					return false;
+				}
+				this.parseStatus = ParseStatus.DATA_END;
+				continue;
+			case DATA_END:
+				// skip \r\n
+				if (!ByteUtils.stepBuffer(buffer, ByteUtils.SPLIT.remaining())) {
+					return false;
+				}
+				this.parseStatus = ParseStatus.NULL;
+				continue;
+			case END:
+				// END\r\n
+				if (!ByteUtils.stepBuffer(buffer, 5)) {
+					return false;
+				}
+				setResult(this.found);
+				countDownLatch();
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Returns the position of '\r' of the line,or -1 if the line is not
+	 * complete yet,the scanned length is remembered for the next call.
+	 */
+	private int lineEnd(ByteBuffer buffer) {
+		int pos = buffer.position() + this.offset;
+		final int limit = buffer.limit();
+		for (; pos < limit; pos++) {
+			if (buffer.get(pos) == '\n') {
+				this.offset = 0;
+				return pos - 1;
+			}
+		}
+		this.offset = pos - buffer.position();
+		return -1;
+	}
+
+	/**
+	 * Parse flags and data length of the VALUE line with the bounded parser
+	 * of TextGetCommand,no string is created.
+	 */
+	private void parseValueLine(ByteBuffer buffer, int end) {
+		// skip "VALUE <key> "
+		int start = indexOf(buffer, buffer.position() + 6, end, ' ') + 1;
+		int pos = indexOf(buffer, start, end, ' ');
+		if (start == 0 || pos < 0) {
+			decodeError();
+		}
+		// flags are unsigned 32 bits
+		int flag = (int) TextGetCommand.parseNumber(buffer, start, pos,
+				0xFFFFFFFFL);
+		start = pos + 1;
+		// a cas value could follow the data length
+		pos = indexOf(buffer, start, end, ' ');
+		int length = (int) TextGetCommand.parseNumber(buffer, start,
+				pos < 0 ? end : pos, Integer.MAX_VALUE);
+		// skip \r\n
+		buffer.position(end + 2);
+		this.reader.start(flag, length);
+	}
+
+	private static int indexOf(ByteBuffer buffer, int from, int to, char token) {
+		for (int pos = from; pos < to; pos++) {
+			if (buffer.get(pos) == token) {
+				return pos;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public void encode() {
+		this.ioBuffer = IoBuffer.allocate(Constants.GET.length
+				+ Constants.CRLF.length + 1 + this.keyBytes.length);
+		ByteUtils.setArguments(this.ioBuffer, Constants.GET, this.keyBytes);
+		this.ioBuffer.flip();
+	}
+}
@@ -1,6 +1,12 @@
 package net.rubyeye.xmemcached.impl;
 
+import java.util.Collections;
+import java.util.List;
+
 import net.rubyeye.xmemcached.MemcachedSessionLocator;
+import net.rubyeye.xmemcached.utils.ByteUtils;
+
+import com.google.code.yanf4j.core.Session;
 
 /**
  * Abstract session locator
@@ -18,4 +24,19 @@ public abstract class AbstractMemcachedSessionLocator implements
 
 	}
 
+	/**
+	 * Decode the key and locate it by string,locators should override it to
+	 * hash the bytes directly.
+	 */
+	public Session getSessionByKey(byte[] keyBytes) {
+		return this.getSessionByKey(ByteUtils.getString(keyBytes));
+	}
+
+	/**
+	 * Replicas are not supported by default
+	 */
+	public List<Session> getReplicaSessionsByKey(String key, int count) {
+		return Collections.emptyList();
+	}
+
 }
@@ -59,7 +59,27 @@ public class ArrayMemcachedSessionLocator extends
 		if (size == 0) {
 			return null;
 		}
-		long start = this.getHash(size, key);
+		return this.getSessionByHash(sessionList, this.getHash(size, key));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedSessionLocator#getSessionByKey(byte[])
+	 */
+	@Override
+	public final Session getSessionByKey(final byte[] keyBytes) {
+		List<Session> sessionList = this.sessions;
+		if (sessionList == null || sessionList.size() == 0) {
+			return null;
+		}
+		return this.getSessionByHash(sessionList, this.hashAlgorighm
+				.hash(keyBytes)
+				% sessionList.size());
+	}
+
+	private Session getSessionByHash(List<Session> sessionList, long start) {
+		int size = sessionList.size();
 		Session session = sessionList.get((int) start);
 		// If it is not failure mode,get next available session
 		if (!this.failureMode && (session == null || session.isClosed())) {
@@ -0,0 +1,308 @@
+/**
+ *Copyright [2009-2010] [dennis zhuang(killme2008@gmail.com)]
+ *Licensed under the Apache License, Version 2.0 (the "License");
+ *you may not use this file except in compliance with the License.
+ *You may obtain a copy of the License at
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *Unless required by applicable law or agreed to in writing,
+ *software distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ *either express or implied. See the License for the specific language governing permissions and limitations under the License
+ */
+package net.rubyeye.xmemcached.impl;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.rubyeye.xmemcached.HashAlgorithm;
+
+import com.google.code.yanf4j.core.Session;
+
+/**
+ * Consistent hashing with bounded loads(Mirrokni,Thorup and Zadimoghaddam).
+ * Keys are hashed into a fixed number of slots,every slot is placed on a
+ * ketama ring and is assigned to the first node clockwise whose load is below
+ * (1+epsilon) times it's weighted share of the total load.The assignment is
+ * computed when sessions are updated,so a lookup is a table read.
+ * <p>
+ * The load of a slot is it's key count estimate(every slot has the same
+ * number of keys on average),so all clients which have the same servers
+ * compute the same table and a key is never moved while the servers are not
+ * changed.Loads observed by one client are not used on purpose,they differ
+ * between clients,which then would read and write a key on different nodes.
+ * </p>
+ *
+ * @author dennis
+ *
+ */
+public class BoundedLoadMemcachedSessionLocator extends
+		AbstractMemcachedSessionLocator {
+
+	public static final double DEFAULT_EPSILON = 0.1;
+	static final int SLOT_BITS = 16;
+	static final int SLOT_COUNT = 1 << SLOT_BITS;
+
+	private final HashAlgorithm hashAlgorithm;
+	private final double epsilon;
+	private transient volatile Table table = Table.EMPTY;
+	/**
+	 * Ring points of every node,guarded by this
+	 */
+	private final Map<String, long[]> pointCache = new HashMap<String, long[]>();
+
+	public BoundedLoadMemcachedSessionLocator() {
+		this(HashAlgorithm.FNV1A_64_HASH, DEFAULT_EPSILON);
+	}
+
+	public BoundedLoadMemcachedSessionLocator(double epsilon) {
+		this(HashAlgorithm.FNV1A_64_HASH, epsilon);
+	}
+
+	/**
+	 *
+	 * @param hashAlgorithm
+	 *            algorithm to hash keys
+	 * @param epsilon
+	 *            a node's load is at most (1+epsilon) times it's share
+	 */
+	public BoundedLoadMemcachedSessionLocator(HashAlgorithm hashAlgorithm,
+			double epsilon) {
+		if (hashAlgorithm == null) {
+			throw new NullPointerException("Null hashAlgorithm");
+		}
+		if (epsilon <= 0) {
+			throw new IllegalArgumentException("epsilon<=0");
+		}
+		this.hashAlgorithm = hashAlgorithm;
+		this.epsilon = epsilon;
+	}
+
+	/**
+	 * Immutable assignment of slots to nodes
+	 *
+	 * @author dennis
+	 *
+	 */
+	static final class Table {
+		static final Table EMPTY = new Table(new SessionGroup[0], new long[0],
+				new int[0], new int[0]);
+
+		final SessionGroup[] nodes;
+		/**
+		 * Sorted ring points,owners[i] is the index of the node of hashes[i]
+		 */
+		final long[] hashes;
+		final int[] owners;
+		final int[] slots;
+
+		Table(SessionGroup[] nodes, long[] hashes, int[] owners, int[] slots) {
+			this.nodes = nodes;
+			this.hashes = hashes;
+			this.owners = owners;
+			this.slots = slots;
+		}
+
+		/**
+		 * Build the ring and assign every slot,the load of every slot is one
+		 *
+		 * @param nodes
+		 * @param nodePoints
+		 *            ring points of every node
+		 * @param epsilon
+		 * @return
+		 */
+		static Table build(SessionGroup[] nodes, long[][] nodePoints,
+				double epsilon) {
+			if (nodes.length == 0) {
+				return EMPTY;
+			}
+			// sort points with node index in low bits,so ties are broken by
+			// node order,the sign bit is flipped to sort 32 bits points as
+			// unsigned
+			long totalWeight = 0;
+			int size = 0;
+			for (int i = 0; i < nodes.length; i++) {
+				totalWeight += nodes[i].weight;
+				size += nodePoints[i].length;
+			}
+			long[] points = new long[size];
+			int n = 0;
+			for (int i = 0; i < nodes.length; i++) {
+				for (long point : nodePoints[i]) {
+					points[n++] = (point << 32 | i) ^ Long.MIN_VALUE;
+				}
+			}
+			Arrays.sort(points);
+			long[] hashes = new long[size];
+			int[] owners = new int[size];
+			for (int i = 0; i < size; i++) {
+				hashes[i] = (points[i] ^ Long.MIN_VALUE) >>> 32;
+				owners[i] = (int) points[i];
+			}
+
+			long totalLoad = SLOT_COUNT;
+			long[] caps = new long[nodes.length];
+			for (int i = 0; i < nodes.length; i++) {
+				caps[i] = (long) Math.ceil((1 + epsilon) * totalLoad
+						* nodes[i].weight / totalWeight);
+			}
+			long[] loads = new long[nodes.length];
+			int[] slots = new int[SLOT_COUNT];
+			// slot positions are ascending,so is the first point of a slot
+			int index = 0;
+			for (int slot = 0; slot < SLOT_COUNT; slot++) {
+				long position = slotPosition(slot);
+				while (index < size && hashes[index] < position) {
+					index++;
+				}
+				int owner = owners[index == size ? 0 : index];
+				for (int i = 0; i < size; i++) {
+					int candidate = owners[(index + i) % size];
+					if (loads[candidate] < caps[candidate]) {
+						owner = candidate;
+						break;
+					}
+				}
+				loads[owner]++;
+				slots[slot] = owner;
+			}
+			return new Table(nodes, hashes, owners, slots);
+		}
+
+		/**
+		 * Returns the ring index of the first point which is not less than
+		 * the hash,wraps to zero if there is no such point.
+		 *
+		 * @param hash
+		 * @return
+		 */
+		int indexOf(long hash) {
+			final long[] hashes = this.hashes;
+			int low = 0;
+			int high = hashes.length;
+			while (low < high) {
+				int mid = low + high >>> 1;
+				if (hashes[mid] < hash) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			return low == hashes.length ? 0 : low;
+		}
+	}
+
+	/**
+	 * Slots are evenly spaced on the 32 bits ring
+	 *
+	 * @param slot
+	 * @return
+	 */
+	static long slotPosition(int slot) {
+		return (long) slot << 32 - SLOT_BITS;
+	}
+
+	static int slotOf(long keyHash) {
+		return (int) (SessionGroup.mix(keyHash) >>> 64 - SLOT_BITS);
+	}
+
+	public final Session getSessionByKey(final String key) {
+		final Table table = this.table;
+		if (table.nodes.length == 0) {
+			return null;
+		}
+		return this.getSessionBySlot(table, slotOf(this.hashAlgorithm
+				.hash(key)));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.rubyeye.xmemcached.MemcachedSessionLocator#getSessionByKey(byte[])
+	 */
+	@Override
+	public final Session getSessionByKey(final byte[] keyBytes) {
+		final Table table = this.table;
+		if (table.nodes.length == 0) {
+			return null;
+		}
+		return this.getSessionBySlot(table, slotOf(this.hashAlgorithm
+				.hash(keyBytes)));
+	}
+
+	private Session getSessionBySlot(Table table, int slot) {
+		SessionGroup node = table.nodes[table.slots[slot]];
+		if (!this.failureMode && !node.isAvailable()) {
+			node = this.nextAvailableNode(table, slot, node);
+		}
+		return node.select();
+	}
+
+	/**
+	 * Walk the ring clockwise from the slot to find an available node
+	 */
+	private SessionGroup nextAvailableNode(Table table, int slot,
+			SessionGroup node) {
+		final int size = table.hashes.length;
+		int index = table.indexOf(slotPosition(slot));
+		for (int i = 0; i < size; i++) {
+			SessionGroup next = table.nodes[table.owners[(index + i) % size]];
+			if (next.isAvailable()) {
+				return next;
+			}
+		}
+		return node;
+	}
+
+	/**
+	 * Returns the number of slots assigned to every node,in the order of the
+	 * nodes
+	 *
+	 * @return
+	 */
+	public final int[] getSlotCounts() {
+		final Table table = this.table;
+		int[] counts = new int[table.nodes.length];
+		if (counts.length > 0) {
+			for (int owner : table.slots) {
+				counts[owner]++;
+			}
+		}
+		return counts;
+	}
+
+	public final double getEpsilon() {
+		return this.epsilon;
+	}
+
+	public final synchronized void updateSessions(
+			final Collection<Session> list) {
+		SessionGroup[] nodes = SessionGroup.group(list);
+		long[][] nodePoints = new long[nodes.length][];
+		for (int i = 0; i < nodes.length; i++) {
+			nodePoints[i] = this.getPoints(nodes[i]);
+		}
+		this.table = Table.build(nodes, nodePoints, this.epsilon);
+	}
+
+	/**
+	 * Points of a node are cached,so a flapping connection does not rehash
+	 * every node.
+	 *
+	 * @param node
+	 * @return
+	 */
+	private long[] getPoints(SessionGroup node) {
+		int numReps = KetamaMemcachedSessionLocator.NUM_REPS * node.weight;
+		long[] points = this.pointCache.get(node.address);
+		if (points != null && points.length == numReps) {
+			return points;
+		}
+		points = KetamaMemcachedSessionLocator.computePoints(node.address,
+				numReps, HashAlgorithm.KETAMA_HASH);
+		this.pointCache.put(node.address, points);
+		return points;
+	}
+}
@@ -22,6 +22,8 @@
  */
 package net.rubyeye.xmemcached.impl;
 
+import java.util.concurrent.atomic.AtomicReference;
+
 import net.rubyeye.xmemcached.utils.InetSocketAddressWrapper;
 
 import com.google.code.yanf4j.core.impl.FutureImpl;
@@ -34,7 +36,13 @@ import com.google.code.yanf4j.core.impl.FutureImpl;
  */
 public class ConnectFuture extends FutureImpl<Boolean> {
 
+	private static final Runnable NOTIFIED = new Runnable() {
+		public void run() {
+		}
+	};
+
 	private final InetSocketAddressWrapper inetSocketAddressWrapper;
+	private final AtomicReference<Runnable> callback = new AtomicReference<Runnable>();
 
 	public ConnectFuture(InetSocketAddressWrapper inetSocketAddressWrapper) {
 		super();
@@ -45,5 +53,31 @@ public class ConnectFuture extends FutureImpl<Boolean> {
 		return this.inetSocketAddressWrapper;
 	}
 
+	/**
+	 * Set a callback which is run when the future is done,it is run in current
+	 * thread if the future is already done.The callback must not block,it may
+	 * be run in reactor thread.
+	 * 
+	 * @param cb
+	 */
+	public void setCallback(Runnable cb) {
+		if (!this.callback.compareAndSet(null, cb)) {
+			if (this.callback.get() == NOTIFIED) {
+				cb.run();
+			} else {
+				throw new IllegalStateException("Callback has been set");
+			}
+		}
+	}
+
+	@Override
+	protected void notifyHaveResult() {
+		super.notifyHaveResult();
+		Runnable cb = this.callback.getAndSet(NOTIFIED);
+		if (cb != null && cb != NOTIFIED) {
+			cb.run();
+		}
+	}
+
 
 }
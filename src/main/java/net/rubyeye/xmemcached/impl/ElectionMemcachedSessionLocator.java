@@ -28,11 +28,14 @@ import java.util.List;
 
 import net.rubyeye.xmemcached.HashAlgorithm;
 import net.rubyeye.xmemcached.networking.MemcachedSession;
+import net.rubyeye.xmemcached.utils.ByteUtils;
 
 import com.google.code.yanf4j.core.Session;
 
 /**
- * Election hash strategy
+ * Election hash strategy.The candidates' prefixes(address or address-i for
+ * weighted sessions) are encoded when sessions are updated,a lookup hashes the
+ * prefixes followed by the key bytes without building strings.
  * 
  * @author dennis
  * 
@@ -40,7 +43,7 @@ import com.google.code.yanf4j.core.Session;
 public class ElectionMemcachedSessionLocator extends
 		AbstractMemcachedSessionLocator {
 
-	private transient volatile List<Session> sessions;
+	private transient volatile List<Candidate> candidates = new ArrayList<Candidate>();
 
 	private final HashAlgorithm hashAlgorithm;
 
@@ -53,51 +56,77 @@ public class ElectionMemcachedSessionLocator extends
 		this.hashAlgorithm = hashAlgorithm;
 	}
 
+	/**
+	 * A session with the prefixes which are hashed with keys
+	 * 
+	 * @author dennis
+	 * 
+	 */
+	static final class Candidate {
+		final Session session;
+		final byte[][] prefixes;
+
+		Candidate(Session session) {
+			this.session = session;
+			String address = session.getRemoteSocketAddress().toString();
+			if (session instanceof MemcachedTCPSession) {
+				int weight = ((MemcachedSession) session).getWeight();
+				this.prefixes = new byte[Math.max(weight, 0)][];
+				for (int i = 0; i < weight; i++) {
+					this.prefixes[i] = ByteUtils.getBytes(address + "-" + i);
+				}
+			} else {
+				this.prefixes = new byte[][] { ByteUtils.getBytes(address) };
+			}
+		}
+	}
+
 	public Session getSessionByKey(String key) {
-		// copy on write
-		List<Session> copySessionList = new ArrayList<Session>(this.sessions);
-		Session result = this.getSessionByElection(key, copySessionList);
-		while (!this.failureMode && (result == null || result.isClosed())
-				&& copySessionList.size() > 0) {
-			copySessionList.remove(result);
-			result = this.getSessionByElection(key, copySessionList);
+		return this.getSessionByKey(ByteUtils.getBytes(key));
+	}
+
+	@Override
+	public Session getSessionByKey(byte[] keyBytes) {
+		final List<Candidate> candidates = this.candidates;
+		Session result = this.getSessionByElection(keyBytes, candidates, null);
+		if (!this.failureMode && (result == null || result.isClosed())) {
+			// exclude closed sessions,copy only in this rare case
+			List<Session> excluded = new ArrayList<Session>();
+			while ((result == null || result.isClosed())
+					&& excluded.size() < candidates.size()) {
+				excluded.add(result);
+				result = this.getSessionByElection(keyBytes, candidates,
+						excluded);
+			}
 		}
 		return result;
 	}
 
-	private Session getSessionByElection(String key,
-			List<Session> copySessionList) {
+	private Session getSessionByElection(byte[] keyBytes,
+			List<Candidate> candidates, List<Session> excluded) {
 		Session result = null;
 		long highScore = 0;
-		for (Session session : copySessionList) {
-			long hash = 0;
-			if (session instanceof MemcachedTCPSession) {
-				MemcachedSession tcpSession = (MemcachedSession) session;
-				for (int i = 0; i < tcpSession.getWeight(); i++) {
-					hash = this.hashAlgorithm.hash(session
-							.getRemoteSocketAddress().toString()
-							+ "-" + i + key);
-					if (hash > highScore) {
-						highScore = hash;
-						result = session;
-					}
-				}
-			} else {
-				hash = this.hashAlgorithm.hash(session.getRemoteSocketAddress()
-						.toString()
-						+ key);
-
+		for (Candidate candidate : candidates) {
+			if (excluded != null && excluded.contains(candidate.session)) {
+				continue;
 			}
-			if (hash > highScore) {
-				highScore = hash;
-				result = session;
+			for (byte[] prefix : candidate.prefixes) {
+				long hash = this.hashAlgorithm.hash(prefix, keyBytes);
+				if (hash > highScore) {
+					highScore = hash;
+					result = candidate.session;
+				}
 			}
 		}
 		return result;
 	}
 
 	public void updateSessions(Collection<Session> list) {
-		this.sessions = new ArrayList<Session>(list);
+		List<Candidate> newCandidates = new ArrayList<Candidate>(list.size());
+		for (Session session : list) {
+			newCandidates.add(new Candidate(session));
+		}
+		this.candidates = newCandidates;
 	}
 
 }
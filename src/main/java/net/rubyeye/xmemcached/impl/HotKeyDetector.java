@@ -0,0 +1,312 @@
+/**
+ *Copyright [2009-2010] [dennis zhuang(killme2008@gmail.com)]
+ *Licensed under the Apache License, Version 2.0 (the "License");
+ *you may not use this file except in compliance with the License.
+ *You may obtain a copy of the License at
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *Unless required by applicable law or agreed to in writing,
+ *software distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ *either express or implied. See the License for the specific language governing permissions and limitations under the License
+ */
+package net.rubyeye.xmemcached.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import com.google.code.yanf4j.core.Session;
+
+/**
+ * Sampled hot key detector.One of every sampleInterval keys is counted in a
+ * count-min sketch,a key whose estimated share of the samples reaches
+ * hotRatio enters a bounded top-k table and is reported as hot.All counters
+ * are halved at the end of every window,so a key cools down and leaves the
+ * table when it's traffic drops.
+ *
+ * @author dennis
+ *
+ */
+public class HotKeyDetector {
+	public static final int DEFAULT_SAMPLE_INTERVAL = 16;
+	public static final int DEFAULT_TOP_K = 16;
+	public static final double DEFAULT_HOT_RATIO = 0.01;
+	public static final int DEFAULT_WINDOW_SAMPLES = 8192;
+
+	private static final int DEPTH = 4;
+	private static final int WIDTH = 2048;
+	/**
+	 * A key is never hot with less samples than this in the window
+	 */
+	static final int MIN_HOT_SAMPLES = 16;
+
+	private final int sampleMask;
+	private final int topK;
+	private final double hotRatio;
+	private final int windowSamples;
+
+	private final int[] sketch = new int[DEPTH * WIDTH];
+	private final Map<String, HotKey> candidates = new HashMap<String, HotKey>();
+	private int samples;
+	private int windowCount;
+	private volatile Map<String, HotKey> hotKeys = Collections.emptyMap();
+	/**
+	 * Sampling counter,it is racy on purpose,a lost increment only shifts
+	 * the sampling a little.
+	 */
+	private int sequence;
+
+	public HotKeyDetector() {
+		this(DEFAULT_SAMPLE_INTERVAL, DEFAULT_TOP_K, DEFAULT_HOT_RATIO,
+				DEFAULT_WINDOW_SAMPLES);
+	}
+
+	/**
+	 *
+	 * @param sampleInterval
+	 *            sample one of every sampleInterval keys,it is rounded up to
+	 *            a power of two
+	 * @param topK
+	 *            max number of hot keys
+	 * @param hotRatio
+	 *            min share of the sampled traffic of a hot key
+	 * @param windowSamples
+	 *            counters are halved after this many samples
+	 */
+	public HotKeyDetector(int sampleInterval, int topK, double hotRatio,
+			int windowSamples) {
+		if (sampleInterval <= 0) {
+			throw new IllegalArgumentException("sampleInterval<=0");
+		}
+		if (topK <= 0) {
+			throw new IllegalArgumentException("topK<=0");
+		}
+		if (hotRatio <= 0 || hotRatio > 1) {
+			throw new IllegalArgumentException("Invalid hotRatio:" + hotRatio);
+		}
+		if (windowSamples <= 0) {
+			throw new IllegalArgumentException("windowSamples<=0");
+		}
+		int interval = 1;
+		while (interval < sampleInterval) {
+			interval <<= 1;
+		}
+		this.sampleMask = interval - 1;
+		this.topK = topK;
+		this.hotRatio = hotRatio;
+		this.windowSamples = windowSamples;
+	}
+
+	/**
+	 * Record an access of the key,only sampled accesses are counted.
+	 *
+	 * @param key
+	 */
+	public final void record(String key) {
+		if ((++this.sequence & this.sampleMask) != 0) {
+			return;
+		}
+		this.sample(key);
+	}
+
+	/**
+	 * Count the key in the sketch and update the top-k table
+	 *
+	 * @param key
+	 */
+	final synchronized void sample(String key) {
+		long hash = SessionGroup.mix(key.hashCode());
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32) | 1;
+		int estimate = Integer.MAX_VALUE;
+		for (int i = 0; i < DEPTH; i++) {
+			int index = i * WIDTH + ((h1 + i * h2) & WIDTH - 1);
+			int count = ++this.sketch[index];
+			if (count < estimate) {
+				estimate = count;
+			}
+		}
+		this.samples++;
+		HotKey hotKey = this.candidates.get(key);
+		if (hotKey != null) {
+			hotKey.count = estimate;
+		} else if (this.isHot(estimate)) {
+			this.admit(key, estimate);
+		}
+		if (++this.windowCount >= this.windowSamples) {
+			this.decay();
+		}
+	}
+
+	private boolean isHot(int estimate) {
+		return estimate >= MIN_HOT_SAMPLES
+				&& estimate >= this.samples * this.hotRatio;
+	}
+
+	private void admit(String key, int estimate) {
+		if (this.candidates.size() >= this.topK) {
+			HotKey coolest = null;
+			for (HotKey hotKey : this.candidates.values()) {
+				if (coolest == null || hotKey.count < coolest.count) {
+					coolest = hotKey;
+				}
+			}
+			if (coolest.count >= estimate) {
+				return;
+			}
+			this.candidates.remove(coolest.key);
+		}
+		this.candidates.put(key, new HotKey(key, estimate));
+		this.publish();
+	}
+
+	private void decay() {
+		this.windowCount = 0;
+		this.samples >>>= 1;
+		for (int i = 0; i < this.sketch.length; i++) {
+			this.sketch[i] >>>= 1;
+		}
+		boolean changed = false;
+		Iterator<HotKey> it = this.candidates.values().iterator();
+		while (it.hasNext()) {
+			HotKey hotKey = it.next();
+			hotKey.count >>>= 1;
+			if (!this.isHot(hotKey.count)) {
+				it.remove();
+				changed = true;
+			}
+		}
+		if (changed) {
+			this.publish();
+		}
+	}
+
+	private void publish() {
+		this.hotKeys = this.candidates.isEmpty() ? Collections
+				.<String, HotKey> emptyMap() : Collections
+				.unmodifiableMap(new HashMap<String, HotKey>(this.candidates));
+	}
+
+	/**
+	 * Returns the hot key or null if the key is not hot
+	 *
+	 * @param key
+	 * @return
+	 */
+	public final HotKey get(String key) {
+		final Map<String, HotKey> hotKeys = this.hotKeys;
+		return hotKeys.isEmpty() ? null : hotKeys.get(key);
+	}
+
+	/**
+	 * Returns current hot keys
+	 *
+	 * @return
+	 */
+	public final List<HotKey> getHotKeys() {
+		return new ArrayList<HotKey>(this.hotKeys.values());
+	}
+
+	/**
+	 * Forget the cached replica sessions of all hot keys,it is called when
+	 * sessions are updated.
+	 */
+	public final void clearReplicas() {
+		for (HotKey hotKey : this.hotKeys.values()) {
+			hotKey.replicas = null;
+			hotKey.beginWrite();
+		}
+	}
+
+	/**
+	 * A hot key and it's replication state
+	 *
+	 * @author dennis
+	 *
+	 */
+	public static final class HotKey {
+		private static final AtomicIntegerFieldUpdater<HotKey> STATE_UPDATER = AtomicIntegerFieldUpdater
+				.newUpdater(HotKey.class, "state");
+
+		private final String key;
+		// guarded by the detector
+		int count;
+		/**
+		 * Write generation in high bits,the lowest bit tells whether the
+		 * replicas hold the value of current generation,reads are spread only
+		 * if it is set
+		 */
+		private volatile int state;
+		volatile List<Session> replicas;
+
+		HotKey(String key, int count) {
+			this.key = key;
+			this.count = count;
+		}
+
+		/**
+		 * Start a new write generation,reads go to the primary until the
+		 * replicas are refreshed by this generation
+		 * 
+		 * @return the new generation
+		 */
+		int beginWrite() {
+			for (;;) {
+				int current = this.state;
+				int generation = (current >>> 1) + 1;
+				if (STATE_UPDATER.compareAndSet(this, current, generation << 1)) {
+					return generation;
+				}
+			}
+		}
+
+		/**
+		 * Whether no newer write has begun since the generation
+		 * 
+		 * @param generation
+		 * @return
+		 */
+		boolean isCurrent(int generation) {
+			return this.state >>> 1 == generation;
+		}
+
+		/**
+		 * Mark the replicas refreshed,it fails if a newer write has begun
+		 * since,so the value of an older write is never published.
+		 * 
+		 * @param generation
+		 * @return
+		 */
+		boolean publish(int generation) {
+			return STATE_UPDATER.compareAndSet(this, generation << 1,
+					generation << 1 | 1);
+		}
+
+		public String getKey() {
+			return this.key;
+		}
+
+		/**
+		 * Returns the estimated sampled count in current window
+		 *
+		 * @return
+		 */
+		public int getCount() {
+			return this.count;
+		}
+
+		public boolean isReplicated() {
+			return (this.state & 1) != 0;
+		}
+
+		@Override
+		public String toString() {
+			return this.key + "(count=" + this.count + ",replicated="
+					+ this.isReplicated() + ")";
+		}
+	}
+}
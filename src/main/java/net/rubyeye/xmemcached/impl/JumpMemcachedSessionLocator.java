@@ -0,0 +1,196 @@
+/**
+ *Copyright [2009-2010] [dennis zhuang(killme2008@gmail.com)]
+ *Licensed under the Apache License, Version 2.0 (the "License");
+ *you may not use this file except in compliance with the License.
+ *You may obtain a copy of the License at
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *Unless required by applicable law or agreed to in writing,
+ *software distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ *either express or implied. See the License for the specific language governing permissions and limitations under the License
+ */
+package net.rubyeye.xmemcached.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.rubyeye.xmemcached.HashAlgorithm;
+
+import com.google.code.yanf4j.core.Session;
+
+/**
+ * Session locator based on Jump Consistent Hash(John Lamping and Eric
+ * Veach,"A Fast,Minimal Memory,Consistent Hash Algorithm").It needs no ring
+ * and computes the bucket in O(log n) with perfect balance.A node has as many
+ * buckets as it's weight,buckets are ordered by the order in which nodes
+ * were added,so adding a node only moves keys to the new node.A removed node
+ * keeps it's buckets as a tombstone and it's keys are rehashed to other
+ * nodes,so removing a node only moves it's own keys.
+ * 
+ * @author dennis
+ * 
+ */
+public class JumpMemcachedSessionLocator extends
+		AbstractMemcachedSessionLocator {
+
+	private final HashAlgorithm hashAlgorithm;
+	/**
+	 * Addresses of the nodes in the order they were added,and their weights.A
+	 * removed node is kept until it is the last one.
+	 */
+	private final List<String> addresses = new ArrayList<String>();
+	private final Map<String, Integer> weights = new HashMap<String, Integer>();
+	private transient volatile Buckets buckets = new Buckets(
+			new SessionGroup[0]);
+
+	/**
+	 * Immutable buckets,buckets[i] is the index of the node which owns bucket
+	 * i
+	 * 
+	 * @author dennis
+	 * 
+	 */
+	static final class Buckets {
+		final SessionGroup[] nodes;
+		final int[] buckets;
+
+		Buckets(SessionGroup[] nodes) {
+			int size = 0;
+			for (SessionGroup node : nodes) {
+				size += node.weight;
+			}
+			this.nodes = nodes;
+			this.buckets = new int[size];
+			int index = 0;
+			for (int i = 0; i < nodes.length; i++) {
+				for (int w = 0; w < nodes[i].weight; w++) {
+					this.buckets[index++] = i;
+				}
+			}
+		}
+
+		SessionGroup getNode(long hash) {
+			return this.nodes[this.buckets[jumpConsistentHash(hash,
+					this.buckets.length)]];
+		}
+	}
+
+	public JumpMemcachedSessionLocator() {
+		this.hashAlgorithm = HashAlgorithm.FNV1A_64_HASH;
+	}
+
+	public JumpMemcachedSessionLocator(HashAlgorithm hashAlgorithm) {
+		this.hashAlgorithm = hashAlgorithm;
+	}
+
+	/**
+	 * Jump consistent hash
+	 * 
+	 * @param key
+	 * @param buckets
+	 * @return the bucket in [0,buckets)
+	 */
+	public static int jumpConsistentHash(long key, int buckets) {
+		long b = -1;
+		long j = 0;
+		while (j < buckets) {
+			b = j;
+			key = key * 2862933555777941757L + 1;
+			j = (long) ((b + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+		}
+		return (int) b;
+	}
+
+	public final Session getSessionByKey(final String key) {
+		final Buckets buckets = this.buckets;
+		if (buckets.nodes.length == 0) {
+			return null;
+		}
+		return this.getSessionByHash(buckets, this.hashAlgorithm.hash(key));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedSessionLocator#getSessionByKey(byte[])
+	 */
+	@Override
+	public final Session getSessionByKey(final byte[] keyBytes) {
+		final Buckets buckets = this.buckets;
+		if (buckets.nodes.length == 0) {
+			return null;
+		}
+		return this.getSessionByHash(buckets, this.hashAlgorithm
+				.hash(keyBytes));
+	}
+
+	private Session getSessionByHash(Buckets buckets, long keyHash) {
+		long hash = SessionGroup.mix(keyHash);
+		SessionGroup node = buckets.getNode(hash);
+		if (node.sessions.length == 0 || !this.failureMode
+				&& !node.isAvailable()) {
+			node = this.nextAvailableNode(buckets, hash, node);
+		}
+		return node.select();
+	}
+
+	/**
+	 * Rehash to find an available node,scan the nodes at last
+	 */
+	private SessionGroup nextAvailableNode(Buckets buckets, long hash,
+			SessionGroup node) {
+		final SessionGroup[] nodes = buckets.nodes;
+		for (int tries = 1; tries <= nodes.length; tries++) {
+			hash = SessionGroup.mix(hash + tries);
+			SessionGroup next = buckets.getNode(hash);
+			if (next.isAvailable()) {
+				return next;
+			}
+		}
+		int start = (int) ((hash & Long.MAX_VALUE) % nodes.length);
+		for (int i = 0; i < nodes.length; i++) {
+			SessionGroup next = nodes[(start + i) % nodes.length];
+			if (next.isAvailable()) {
+				return next;
+			}
+		}
+		if (node.sessions.length > 0) {
+			return node;
+		}
+		// all sessions are closed and the node is removed
+		for (int i = 0; i < nodes.length; i++) {
+			SessionGroup next = nodes[(start + i) % nodes.length];
+			if (next.sessions.length > 0) {
+				return next;
+			}
+		}
+		return node;
+	}
+
+	public final synchronized void updateSessions(
+			final Collection<Session> list) {
+		Map<String, SessionGroup> groups = new HashMap<String, SessionGroup>();
+		for (SessionGroup group : SessionGroup.group(list)) {
+			groups.put(group.address, group);
+			if (this.weights.put(group.address, group.weight) == null) {
+				this.addresses.add(group.address);
+			}
+		}
+		// removed nodes at the end can be dropped,no other bucket follows them
+		int size = this.addresses.size();
+		while (size > 0 && !groups.containsKey(this.addresses.get(size - 1))) {
+			this.weights.remove(this.addresses.remove(--size));
+		}
+		SessionGroup[] nodes = new SessionGroup[size];
+		for (int i = 0; i < size; i++) {
+			String address = this.addresses.get(i);
+			SessionGroup group = groups.get(address);
+			nodes[i] = group != null ? group : SessionGroup.removed(address,
+					this.weights.get(address));
+		}
+		this.buckets = new Buckets(nodes);
+	}
+}
@@ -11,15 +11,20 @@
  */
 package net.rubyeye.xmemcached.impl;
 
+import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Random;
-import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.Map;
+import java.util.Set;
 
 import net.rubyeye.xmemcached.HashAlgorithm;
-import net.rubyeye.xmemcached.networking.MemcachedSession;
 
 import com.google.code.yanf4j.core.Session;
 
@@ -39,8 +44,10 @@ import com.google.code.yanf4j.core.Session;
  * </p>
  */
 /**
- * Consistent Hash Algorithm implementation,based on TreeMap.tailMap(hash)
- * method.
+ * Consistent Hash Algorithm implementation.The ring is flattened into sorted
+ * parallel arrays of hashes and sessions,a lookup is a binary search without
+ * boxing or allocation.The ring is immutable and swapped atomically when the
+ * sessions are updated.
  * 
  * @author dennis
  * 
@@ -49,10 +56,14 @@ public class KetamaMemcachedSessionLocator extends
 		AbstractMemcachedSessionLocator {
 
 	static final int NUM_REPS = 160;
-	private transient volatile TreeMap<Long, List<Session>> ketamaSessions = new TreeMap<Long, List<Session>>();
+	private transient volatile KetamaRing ketamaRing = KetamaRing.EMPTY;
 	private final HashAlgorithm hashAlg;
 	private volatile int maxTries;
-	private final Random random = new Random();
+	/**
+	 * Sorted points of every address which has been in the ring,guarded by
+	 * this
+	 */
+	private final Map<String, long[]> pointCache = new HashMap<String, long[]>();
 
 	public KetamaMemcachedSessionLocator() {
 		this.hashAlg = HashAlgorithm.KETAMA_HASH;
@@ -68,53 +79,273 @@ public class KetamaMemcachedSessionLocator extends
 		this.buildMap(list, alg);
 	}
 
-	private final void buildMap(Collection<Session> list, HashAlgorithm alg) {
-		TreeMap<Long, List<Session>> sessionMap = new TreeMap<Long, List<Session>>();
-
-		for (Session session : list) {
-			String sockStr = String.valueOf(session.getRemoteSocketAddress());
-			/**
-			 * Duplicate 160 X weight references
-			 */
-			int numReps = NUM_REPS;
-			if (session instanceof MemcachedTCPSession) {
-				numReps *= ((MemcachedSession) session).getWeight();
+	/**
+	 * Update the ring incrementally,entries of the nodes whose sessions and
+	 * weight were not changed are kept,entries of the changed nodes are removed from the
+	 * ring in one pass and their new runs are merged into it.Points of every
+	 * node are cached,so a flapping connection costs linear copying instead
+	 * of rehashing the whole ring.
+	 * 
+	 * @param list
+	 * @param alg
+	 */
+	private final synchronized void buildMap(Collection<Session> list,
+			HashAlgorithm alg) {
+		final KetamaRing oldRing = this.ketamaRing;
+		final Map<String, SessionGroup> nodes = new LinkedHashMap<String, SessionGroup>();
+		for (SessionGroup group : SessionGroup.group(list)) {
+			nodes.put(group.address, group);
+		}
+		// sessions whose entries are removed from the old ring
+		final Map<Session, Boolean> removed = new IdentityHashMap<Session, Boolean>();
+		final List<KetamaRing> runs = new ArrayList<KetamaRing>();
+		for (SessionGroup oldGroup : oldRing.nodes.values()) {
+			if (isChanged(oldGroup, nodes.get(oldGroup.address))) {
+				for (Session session : oldGroup.sessions) {
+					removed.put(session, Boolean.TRUE);
+				}
 			}
-			if (alg == HashAlgorithm.KETAMA_HASH) {
-				for (int i = 0; i < numReps / 4; i++) {
-					byte[] digest = HashAlgorithm.computeMd5(sockStr + "-" + i);
-					for (int h = 0; h < 4; h++) {
-						long k = (long) (digest[3 + h * 4] & 0xFF) << 24
-								| (long) (digest[2 + h * 4] & 0xFF) << 16
-								| (long) (digest[1 + h * 4] & 0xFF) << 8
-								| digest[h * 4] & 0xFF;
-						this.getSessionList(sessionMap, k).add(session);
-					}
+		}
+		for (SessionGroup group : nodes.values()) {
+			if (isChanged(oldRing.nodes.get(group.address), group)) {
+				runs.add(KetamaRing.run(this.getPoints(group, alg),
+						group.sessions));
+			}
+		}
+		if (runs.isEmpty() && removed.isEmpty()) {
+			return;
+		}
+		KetamaRing ring = KetamaRing.merge(runs);
+		if (nodes.size() > runs.size()) {
+			ring = KetamaRing.merge(oldRing.remove(removed), ring);
+		}
+		this.ketamaRing = new KetamaRing(ring.hashes, ring.sessions, nodes);
+		this.maxTries = list.size();
+	}
 
+	/**
+	 * Whether the node's entries in the ring must be rebuilt,the weight of a
+	 * node can be changed without changing it's sessions.
+	 * 
+	 * @param oldGroup
+	 * @param group
+	 * @return
+	 */
+	private static boolean isChanged(SessionGroup oldGroup, SessionGroup group) {
+		return oldGroup == null || group == null
+				|| oldGroup.weight != group.weight
+				|| !Arrays.equals(oldGroup.sessions, group.sessions);
+	}
+
+	/**
+	 * Returns the sorted points of the node,the points are computed once for
+	 * every address and weight.
+	 * 
+	 * @param group
+	 * @param alg
+	 * @return
+	 */
+	private long[] getPoints(SessionGroup group, HashAlgorithm alg) {
+		/**
+		 * Duplicate 160 X weight references
+		 */
+		int numReps = NUM_REPS * group.weight;
+		long[] points = this.pointCache.get(group.address);
+		if (points != null && points.length == numReps) {
+			return points;
+		}
+		points = computePoints(group.address, numReps, alg);
+		this.pointCache.put(group.address, points);
+		return points;
+	}
+
+	static long[] computePoints(String sockStr, int numReps, HashAlgorithm alg) {
+		long[] points = new long[numReps];
+		int n = 0;
+		if (alg == HashAlgorithm.KETAMA_HASH) {
+			for (int i = 0; i < numReps / 4; i++) {
+				byte[] digest = HashAlgorithm.computeMd5(sockStr + "-" + i);
+				for (int h = 0; h < 4; h++) {
+					long k = (long) (digest[3 + h * 4] & 0xFF) << 24
+							| (long) (digest[2 + h * 4] & 0xFF) << 16
+							| (long) (digest[1 + h * 4] & 0xFF) << 8
+							| digest[h * 4] & 0xFF;
+					points[n++] = k;
 				}
-			} else {
-				for (int i = 0; i < numReps; i++) {
-					long key = alg.hash(sockStr + "-" + i);
-					this.getSessionList(sessionMap, key).add(session);
-				}
+
+			}
+		} else {
+			for (int i = 0; i < numReps; i++) {
+				points[n++] = alg.hash(sockStr + "-" + i);
 			}
 		}
-		this.ketamaSessions = sessionMap;
-		this.maxTries = list.size();
+		Arrays.sort(points);
+		return points;
 	}
 
-	private List<Session> getSessionList(
-			TreeMap<Long, List<Session>> sessionMap, long k) {
-		List<Session> sessionList = sessionMap.get(k);
-		if (sessionList == null) {
-			sessionList = new ArrayList<Session>();
-			sessionMap.put(k, sessionList);
+	/**
+	 * Immutable ketama ring,hashes are sorted in ascending order and
+	 * sessions[i] is the session of hashes[i].Sessions which have the same
+	 * hash are adjacent.
+	 * 
+	 * @author dennis
+	 * 
+	 */
+	static final class KetamaRing {
+		static final KetamaRing EMPTY = new KetamaRing(new long[0],
+				new Session[0], Collections.<String, SessionGroup> emptyMap());
+
+		final long[] hashes;
+		final Session[] sessions;
+		/**
+		 * Sessions and weight of every node in the ring,keyed by address
+		 */
+		final Map<String, SessionGroup> nodes;
+
+		KetamaRing(long[] hashes, Session[] sessions,
+				Map<String, SessionGroup> nodes) {
+			this.hashes = hashes;
+			this.sessions = sessions;
+			this.nodes = nodes;
+		}
+
+		/**
+		 * Entries of a node,every point is shared by all sessions of the node
+		 * 
+		 * @param points
+		 *            sorted points
+		 * @param nodeSessions
+		 * @return
+		 */
+		static KetamaRing run(long[] points, Session[] nodeSessions) {
+			int size = points.length * nodeSessions.length;
+			long[] hashes = new long[size];
+			Session[] sessions = new Session[size];
+			int index = 0;
+			for (long point : points) {
+				for (Session session : nodeSessions) {
+					hashes[index] = point;
+					sessions[index] = session;
+					index++;
+				}
+			}
+			return new KetamaRing(hashes, sessions, null);
+		}
+
+		/**
+		 * Merge sorted runs pairwise,it takes O(n*log(runs))
+		 * 
+		 * @param runs
+		 * @return
+		 */
+		static KetamaRing merge(List<KetamaRing> runs) {
+			if (runs.isEmpty()) {
+				return EMPTY;
+			}
+			while (runs.size() > 1) {
+				List<KetamaRing> merged = new ArrayList<KetamaRing>(
+						(runs.size() + 1) / 2);
+				for (int i = 0; i < runs.size(); i += 2) {
+					merged.add(i + 1 < runs.size() ? merge(runs.get(i), runs
+							.get(i + 1)) : runs.get(i));
+				}
+				runs = merged;
+			}
+			return runs.get(0);
+		}
+
+		/**
+		 * Merge two sorted runs,entries of the left one go first if hashes are
+		 * equal
+		 * 
+		 * @param left
+		 * @param right
+		 * @return
+		 */
+		static KetamaRing merge(KetamaRing left, KetamaRing right) {
+			if (right.size() == 0) {
+				return left;
+			}
+			if (left.size() == 0) {
+				return right;
+			}
+			int size = left.size() + right.size();
+			long[] hashes = new long[size];
+			Session[] sessions = new Session[size];
+			int i = 0, j = 0;
+			for (int k = 0; k < size; k++) {
+				if (j == right.size()
+						|| (i < left.size() && left.hashes[i] <= right.hashes[j])) {
+					hashes[k] = left.hashes[i];
+					sessions[k] = left.sessions[i++];
+				} else {
+					hashes[k] = right.hashes[j];
+					sessions[k] = right.sessions[j++];
+				}
+			}
+			return new KetamaRing(hashes, sessions, null);
+		}
+
+		/**
+		 * Returns the entries whose sessions are not removed,in one pass
+		 * 
+		 * @param removed
+		 * @return
+		 */
+		KetamaRing remove(Map<Session, Boolean> removed) {
+			if (removed.isEmpty()) {
+				return this;
+			}
+			long[] hashes = new long[this.hashes.length];
+			Session[] sessions = new Session[this.sessions.length];
+			int size = 0;
+			for (int i = 0; i < this.hashes.length; i++) {
+				if (!removed.containsKey(this.sessions[i])) {
+					hashes[size] = this.hashes[i];
+					sessions[size] = this.sessions[i];
+					size++;
+				}
+			}
+			if (size < hashes.length) {
+				long[] tmpHashes = new long[size];
+				System.arraycopy(hashes, 0, tmpHashes, 0, size);
+				hashes = tmpHashes;
+				Session[] tmpSessions = new Session[size];
+				System.arraycopy(sessions, 0, tmpSessions, 0, size);
+				sessions = tmpSessions;
+			}
+			return new KetamaRing(hashes, sessions, null);
+		}
+
+		/**
+		 * Returns the index of the first hash which is not less than the
+		 * hash,wraps to zero if there is no such hash.
+		 * 
+		 * @param hash
+		 * @return
+		 */
+		int indexOf(long hash) {
+			final long[] hashes = this.hashes;
+			int low = 0;
+			int high = hashes.length;
+			while (low < high) {
+				int mid = low + high >>> 1;
+				if (hashes[mid] < hash) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			return low == hashes.length ? 0 : low;
+		}
+
+		int size() {
+			return this.hashes.length;
 		}
-		return sessionList;
 	}
 
 	public final Session getSessionByKey(final String key) {
-		if (this.ketamaSessions == null || this.ketamaSessions.size() == 0) {
+		if (this.ketamaRing.size() == 0) {
 			return null;
 		}
 		long hash = this.hashAlg.hash(key);
@@ -128,35 +359,69 @@ public class KetamaMemcachedSessionLocator extends
 		return rv;
 	}
 
-	public final Session getSessionByHash(final long hash) {
-		TreeMap<Long, List<Session>> sessionMap = this.ketamaSessions;
-		if (sessionMap.size() == 0) {
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedSessionLocator#getSessionByKey(byte[])
+	 */
+	@Override
+	public final Session getSessionByKey(final byte[] keyBytes) {
+		if (this.ketamaRing.size() == 0) {
 			return null;
 		}
-		Long resultHash = hash;
-		if (!sessionMap.containsKey(hash)) {
-			// Java 1.6 adds a ceilingKey method, but xmemcached is compatible
-			// with jdk5,So use tailMap method to do this.
-			SortedMap<Long, List<Session>> tailMap = sessionMap.tailMap(hash);
-			if (tailMap.isEmpty()) {
-				resultHash = sessionMap.firstKey();
-			} else {
-				resultHash = tailMap.firstKey();
-			}
+		long hash = this.hashAlg.hash(keyBytes);
+		Session rv = this.getSessionByHash(hash);
+		int tries = 0;
+		while (!this.failureMode && (rv == null || rv.isClosed())
+				&& tries++ < this.maxTries) {
+			hash = this.nextHash(hash, keyBytes, tries);
+			rv = this.getSessionByHash(hash);
 		}
-		//		
-		// if (!sessionMap.containsKey(resultHash)) {
-		// resultHash = sessionMap.ceilingKey(resultHash);
-		// if (resultHash == null && sessionMap.size() > 0) {
-		// resultHash = sessionMap.firstKey();
-		// }
-		// }
-		List<Session> sessionList = sessionMap.get(resultHash);
-		if (sessionList == null || sessionList.size() == 0) {
+		return rv;
+	}
+
+	public final Session getSessionByHash(final long hash) {
+		final KetamaRing ring = this.ketamaRing;
+		if (ring.size() == 0) {
 			return null;
 		}
-		int size = sessionList.size();
-		return sessionList.get(this.random.nextInt(size));
+		int index = ring.indexOf(hash);
+		// sessions of a connection pool have the same hash,pick the least
+		// loaded one of them
+		final long[] hashes = ring.hashes;
+		int end = index + 1;
+		while (end < hashes.length && hashes[end] == hashes[index]) {
+			end++;
+		}
+		if (end - index > 1) {
+			return LeastLoadedSelector.select(ring.sessions, index, end);
+		}
+		return ring.sessions[index];
+	}
+
+	/**
+	 * Walk the ring clockwise from the key's position,the servers met after
+	 * the primary one hold the replicas.Closed sessions are skipped.
+	 */
+	@Override
+	public final List<Session> getReplicaSessionsByKey(final String key,
+			final int count) {
+		final KetamaRing ring = this.ketamaRing;
+		final List<Session> result = new ArrayList<Session>(count);
+		if (ring.size() == 0 || count <= 0) {
+			return result;
+		}
+		final int start = ring.indexOf(this.hashAlg.hash(key));
+		final Set<InetSocketAddress> servers = new HashSet<InetSocketAddress>();
+		servers.add(ring.sessions[start].getRemoteSocketAddress());
+		for (int i = 1; i < ring.size() && result.size() < count; i++) {
+			Session session = ring.sessions[(start + i) % ring.size()];
+			if (!session.isClosed()
+					&& servers.add(session.getRemoteSocketAddress())) {
+				result.add(session);
+			}
+		}
+		return result;
 	}
 
 	public final long nextHash(long hashVal, String key, int tries) {
@@ -166,6 +431,13 @@ public class KetamaMemcachedSessionLocator extends
 		return hashVal;
 	}
 
+	public final long nextHash(long hashVal, byte[] keyBytes, int tries) {
+		long tmpKey = this.hashAlg.hash(tries, keyBytes);
+		hashVal += (int) (tmpKey ^ tmpKey >>> 32);
+		hashVal &= 0xffffffffL; /* truncate to 32-bits */
+		return hashVal;
+	}
+
 	public final void updateSessions(final Collection<Session> list) {
 		this.buildMap(list, this.hashAlg);
 	}
@@ -9,6 +9,7 @@ import java.util.concurrent.TimeoutException;
 
 import net.rubyeye.xmemcached.KeyIterator;
 import net.rubyeye.xmemcached.XMemcachedClient;
+import net.rubyeye.xmemcached.command.CompletionLatch;
 import net.rubyeye.xmemcached.command.text.TextCacheDumpCommand;
 import net.rubyeye.xmemcached.exception.MemcachedException;
 import net.rubyeye.xmemcached.utils.Protocol;
@@ -77,7 +78,7 @@ public final class KeyIteratorImpl implements KeyIterator {
 							+ this.inetSocketAddress);
 		}
 		Session session = sessions.peek();
-		CountDownLatch latch = new CountDownLatch(1);
+		CountDownLatch latch = new CompletionLatch(1);
 		if (this.memcachedClient.getProtocol() == Protocol.Text) {
 			TextCacheDumpCommand textCacheDumpCommand = new TextCacheDumpCommand(
 					latch, itemNumber);
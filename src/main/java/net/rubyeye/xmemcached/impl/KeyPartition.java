@@ -0,0 +1,243 @@
+/**
+ *Copyright [2009-2010] [dennis zhuang(killme2008@gmail.com)]
+ *Licensed under the Apache License, Version 2.0 (the "License");
+ *you may not use this file except in compliance with the License.
+ *You may obtain a copy of the License at
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *Unless required by applicable law or agreed to in writing,
+ *software distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ *either express or implied. See the License for the specific language governing permissions and limitations under the License
+ */
+package net.rubyeye.xmemcached.impl;
+
+import java.util.Collection;
+
+import net.rubyeye.xmemcached.MemcachedSessionLocator;
+import net.rubyeye.xmemcached.exception.MemcachedException;
+
+import com.google.code.yanf4j.core.Session;
+
+/**
+ * Partition of multi-get keys by session.Every session gets a slot number
+ * from a small identity table,then the keys are grouped by slot with a
+ * counting sort into a primitive index array,so no map or list is created
+ * per call.Partitions are reused by the thread,they must be cleared after
+ * use.
+ *
+ * @author dennis
+ *
+ */
+public final class KeyPartition {
+
+	private static final ThreadLocal<KeyPartition> LOCAL = new ThreadLocal<KeyPartition>() {
+		@Override
+		protected KeyPartition initialValue() {
+			return new KeyPartition();
+		}
+	};
+
+	/**
+	 * Returns the partition of current thread
+	 *
+	 * @return
+	 */
+	public static KeyPartition get() {
+		return LOCAL.get();
+	}
+
+	static final int DEFAULT_KEY_CAPACITY = 64;
+	/**
+	 * Key arrays larger than it are dropped by clear,so a rare huge multi-get
+	 * doesn't pin it's arrays in every thread
+	 */
+	static final int MAX_RETAINED_KEY_CAPACITY = 1024;
+
+	private String[] keys = new String[DEFAULT_KEY_CAPACITY];
+	// slot of every key
+	private int[] keySlots = new int[DEFAULT_KEY_CAPACITY];
+	// key indexes grouped by slot
+	private int[] indexes = new int[DEFAULT_KEY_CAPACITY];
+	private int keyCount;
+
+	private Session[] sessions = new Session[8];
+	private int[] offsets = new int[8];
+	private int[] counts = new int[8];
+	private int sessionCount;
+
+	// open addressing identity table from session to slot
+	private Session[] table = new Session[16];
+	private int[] tableSlots = new int[16];
+
+	KeyPartition() {
+	}
+
+	/**
+	 * Locate every key and group the keys by session,keys of a session keep
+	 * their order in the collection.
+	 *
+	 * @param keyCollection
+	 * @param locator
+	 * @throws MemcachedException
+	 *             if there is no session for a key
+	 */
+	public void partition(Collection<String> keyCollection,
+			MemcachedSessionLocator locator) throws MemcachedException {
+		this.clear();
+		final int size = keyCollection.size();
+		if (this.keys.length < size) {
+			int capacity = this.keys.length;
+			while (capacity < size) {
+				capacity <<= 1;
+			}
+			this.keys = new String[capacity];
+			this.keySlots = new int[capacity];
+			this.indexes = new int[capacity];
+		}
+		int n = 0;
+		for (String key : keyCollection) {
+			Session session = locator.getSessionByKey(key);
+			if (session == null) {
+				throw new MemcachedException(
+						"There is no available connection at this moment");
+			}
+			this.keys[n] = key;
+			this.keySlots[n] = this.slotOf(session);
+			n++;
+		}
+		this.keyCount = n;
+		// counting sort by slot
+		int offset = 0;
+		for (int slot = 0; slot < this.sessionCount; slot++) {
+			this.offsets[slot] = offset;
+			offset += this.counts[slot];
+			this.counts[slot] = 0;
+		}
+		for (int i = 0; i < n; i++) {
+			int slot = this.keySlots[i];
+			this.indexes[this.offsets[slot] + this.counts[slot]++] = i;
+		}
+	}
+
+	private int slotOf(Session session) {
+		int mask = this.table.length - 1;
+		int index = System.identityHashCode(session) & mask;
+		Session current;
+		while ((current = this.table[index]) != null) {
+			if (current == session) {
+				int slot = this.tableSlots[index];
+				this.counts[slot]++;
+				return slot;
+			}
+			index = (index + 1) & mask;
+		}
+		int slot = this.sessionCount++;
+		if (slot == this.sessions.length) {
+			this.growSessions();
+			// the table was rehashed
+			mask = this.table.length - 1;
+			index = System.identityHashCode(session) & mask;
+			while (this.table[index] != null) {
+				index = (index + 1) & mask;
+			}
+		}
+		this.table[index] = session;
+		this.tableSlots[index] = slot;
+		this.sessions[slot] = session;
+		this.counts[slot] = 1;
+		return slot;
+	}
+
+	private void growSessions() {
+		int capacity = this.sessions.length << 1;
+		Session[] newSessions = new Session[capacity];
+		System.arraycopy(this.sessions, 0, newSessions, 0, this.sessions.length);
+		this.sessions = newSessions;
+		int[] newCounts = new int[capacity];
+		System.arraycopy(this.counts, 0, newCounts, 0, this.counts.length);
+		this.counts = newCounts;
+		this.offsets = new int[capacity];
+		// keep load factor at most 0.5
+		this.table = new Session[capacity << 1];
+		this.tableSlots = new int[capacity << 1];
+		int mask = this.table.length - 1;
+		for (int slot = 0; slot < this.sessions.length; slot++) {
+			Session session = this.sessions[slot];
+			if (session == null) {
+				break;
+			}
+			int index = System.identityHashCode(session) & mask;
+			while (this.table[index] != null) {
+				index = (index + 1) & mask;
+			}
+			this.table[index] = session;
+			this.tableSlots[index] = slot;
+		}
+	}
+
+	/**
+	 * Release references to keys and sessions,shrink the key arrays to the
+	 * default capacity if they are too large
+	 */
+	public void clear() {
+		if (this.keys.length > MAX_RETAINED_KEY_CAPACITY) {
+			this.keys = new String[DEFAULT_KEY_CAPACITY];
+			this.keySlots = new int[DEFAULT_KEY_CAPACITY];
+			this.indexes = new int[DEFAULT_KEY_CAPACITY];
+		} else {
+			for (int i = 0; i < this.keyCount; i++) {
+				this.keys[i] = null;
+			}
+		}
+		this.keyCount = 0;
+		if (this.sessionCount > 0) {
+			for (int i = 0; i < this.sessionCount; i++) {
+				this.sessions[i] = null;
+			}
+			for (int i = 0; i < this.table.length; i++) {
+				this.table[i] = null;
+			}
+			this.sessionCount = 0;
+		}
+	}
+
+	public int getKeyCount() {
+		return this.keyCount;
+	}
+
+	public int getSessionCount() {
+		return this.sessionCount;
+	}
+
+	public Session getSession(int slot) {
+		return this.sessions[slot];
+	}
+
+	/**
+	 * Returns the keys in the original order
+	 *
+	 * @return
+	 */
+	public String[] getKeys() {
+		return this.keys;
+	}
+
+	/**
+	 * Returns key indexes grouped by slot,the indexes of a slot start at
+	 * getOffset(slot)
+	 *
+	 * @return
+	 */
+	public int[] getIndexes() {
+		return this.indexes;
+	}
+
+	public int getOffset(int slot) {
+		return this.offsets[slot];
+	}
+
+	public int getCount(int slot) {
+		return this.counts[slot];
+	}
+
+}
@@ -0,0 +1,116 @@
+/**
+ *Copyright [2009-2010] [dennis zhuang(killme2008@gmail.com)]
+ *Licensed under the Apache License, Version 2.0 (the "License");
+ *you may not use this file except in compliance with the License.
+ *You may obtain a copy of the License at
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *Unless required by applicable law or agreed to in writing,
+ *software distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ *either express or implied. See the License for the specific language governing permissions and limitations under the License
+ */
+package net.rubyeye.xmemcached.impl;
+
+import java.util.List;
+
+import com.google.code.yanf4j.core.Session;
+
+/**
+ * Select a session among equivalent sessions(connections of a pool or
+ * standby nodes).Up to SCAN_LIMIT sessions are all compared,starting at a
+ * slot derived from the current thread,so a thread keeps using the same
+ * connection while the loads are equal.In larger sets two sessions are
+ * compared(power of two choices).The healthy session with lower load is
+ * selected,see MemcachedTCPSession.getLoad(long).No shared random generator
+ * is used,so callers never contend on it.
+ * 
+ * @author dennis
+ * 
+ */
+public final class LeastLoadedSelector {
+	static final int SCAN_LIMIT = 8;
+
+	private LeastLoadedSelector() {
+	}
+
+	/**
+	 * Select one of sessions[from,to)
+	 * 
+	 * @param sessions
+	 * @param from
+	 * @param to
+	 * @return
+	 */
+	public static Session select(Session[] sessions, int from, int to) {
+		int n = to - from;
+		if (n == 1) {
+			return sessions[from];
+		}
+		long seed = threadSeed();
+		long now = System.nanoTime();
+		if (n <= SCAN_LIMIT) {
+			int start = (int) ((seed & Integer.MAX_VALUE) % n);
+			Session selected = sessions[from + start];
+			for (int i = 1; i < n; i++) {
+				selected = better(selected, sessions[from + (start + i) % n],
+						now);
+			}
+			return selected;
+		}
+		long hash = SessionGroup.mix(seed ^ now);
+		int i = (int) ((hash & Integer.MAX_VALUE) % n);
+		int j = (int) ((hash >>> 32) % (n - 1));
+		if (j >= i) {
+			j++;
+		}
+		return better(sessions[from + i], sessions[from + j], now);
+	}
+
+	/**
+	 * Select one of the sessions,see select(Session[],int,int)
+	 * 
+	 * @param sessions
+	 * @return
+	 */
+	public static Session select(List<Session> sessions) {
+		int n = sessions.size();
+		if (n == 1) {
+			return sessions.get(0);
+		}
+		return select(sessions.toArray(new Session[n]), 0, n);
+	}
+
+	private static long threadSeed() {
+		return SessionGroup.mix(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Returns the healthy one with lower load,or the first one if they are
+	 * equal or can't be compared
+	 * 
+	 * @param a
+	 * @param b
+	 * @param now
+	 * @return
+	 */
+	static Session better(Session a, Session b, long now) {
+		boolean healthyA = isHealthy(a);
+		if (healthyA != isHealthy(b)) {
+			return healthyA ? a : b;
+		}
+		if (a instanceof MemcachedTCPSession
+				&& b instanceof MemcachedTCPSession) {
+			return ((MemcachedTCPSession) b).getLoad(now) < ((MemcachedTCPSession) a)
+					.getLoad(now) ? b : a;
+		}
+		return a;
+	}
+
+	private static boolean isHealthy(Session session) {
+		if (session.isClosed()) {
+			return false;
+		}
+		return !(session instanceof MemcachedTCPSession)
+				|| !((MemcachedTCPSession) session).isAuthFailed();
+	}
+}
@@ -14,7 +14,6 @@ package net.rubyeye.xmemcached.impl;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.Random;
 import java.util.SortedMap;
 import java.util.TreeMap;
 
@@ -37,7 +36,6 @@ public class LibmemcachedMemcachedSessionLocator extends
 	private transient volatile TreeMap<Long, List<Session>> ketamaSessions = new TreeMap<Long, List<Session>>();
 	private volatile int maxTries;
 	private int numReps = DEFAULT_NUM_REPS;
-	private final Random random = new Random();
 	private HashAlgorithm hashAlgorithm = HashAlgorithm.ONE_AT_A_TIME;
 
 	public LibmemcachedMemcachedSessionLocator() {
@@ -95,6 +93,29 @@ public class LibmemcachedMemcachedSessionLocator extends
 		return rv;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedSessionLocator#getSessionByKey(byte[])
+	 */
+	@Override
+	public final Session getSessionByKey(final byte[] keyBytes) {
+		if (this.ketamaSessions == null || this.ketamaSessions.size() == 0) {
+			return null;
+		}
+		long hash = hashAlgorithm.hash(keyBytes);
+		Session rv = this.getSessionByHash(hash);
+		int tries = 0;
+		while (!this.failureMode && (rv == null || rv.isClosed())
+				&& tries++ < this.maxTries) {
+			long tmpKey = hashAlgorithm.hash(tries, keyBytes);
+			hash += (int) (tmpKey ^ tmpKey >>> 32);
+			hash &= 0xffffffffL; /* truncate to 32-bits */
+			rv = this.getSessionByHash(hash);
+		}
+		return rv;
+	}
+
 	public final Session getSessionByHash(final long hash) {
 		TreeMap<Long, List<Session>> sessionMap = this.ketamaSessions;
 		if (sessionMap.size() == 0) {
@@ -122,8 +143,7 @@ public class LibmemcachedMemcachedSessionLocator extends
 		if (sessionList == null || sessionList.size() == 0) {
 			return null;
 		}
-		int size = sessionList.size();
-		return sessionList.get(this.random.nextInt(size));
+		return LeastLoadedSelector.select(sessionList);
 	}
 
 	public final long nextHash(long hashVal, String key, int tries) {
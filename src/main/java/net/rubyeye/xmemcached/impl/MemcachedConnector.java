@@ -19,16 +19,19 @@ import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.DelayQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
@@ -38,8 +41,13 @@ import net.rubyeye.xmemcached.CommandFactory;
 import net.rubyeye.xmemcached.MemcachedClient;
 import net.rubyeye.xmemcached.MemcachedOptimizer;
 import net.rubyeye.xmemcached.MemcachedSessionLocator;
+import net.rubyeye.xmemcached.OverflowPolicy;
 import net.rubyeye.xmemcached.buffer.BufferAllocator;
 import net.rubyeye.xmemcached.command.Command;
+import net.rubyeye.xmemcached.command.CommandType;
+import net.rubyeye.xmemcached.command.CompletionLatch;
+import net.rubyeye.xmemcached.command.binary.BaseBinaryCommand;
+import net.rubyeye.xmemcached.command.text.TextStoreCommand;
 import net.rubyeye.xmemcached.exception.MemcachedException;
 import net.rubyeye.xmemcached.networking.Connector;
 import net.rubyeye.xmemcached.networking.MemcachedSession;
@@ -56,6 +64,7 @@ import com.google.code.yanf4j.nio.NioSession;
 import com.google.code.yanf4j.nio.NioSessionConfig;
 import com.google.code.yanf4j.nio.impl.SocketChannelController;
 import com.google.code.yanf4j.util.ConcurrentHashSet;
+import com.google.code.yanf4j.util.HashedWheelTimer;
 import com.google.code.yanf4j.util.SystemUtils;
 
 /**
@@ -66,7 +75,10 @@ import com.google.code.yanf4j.util.SystemUtils;
 public class MemcachedConnector extends SocketChannelController implements
 		Connector {
 
-	private final DelayQueue<ReconnectRequest> waitingQueue = new DelayQueue<ReconnectRequest>();
+	/**
+	 * Reconnect requests,they are scheduled on the timer
+	 */
+	private final Queue<ReconnectRequest> waitingQueue = new ConcurrentLinkedQueue<ReconnectRequest>();
 	private BufferAllocator bufferAllocator;
 
 	private final Set<InetSocketAddress> removedAddrSet = new ConcurrentHashSet<InetSocketAddress>();
@@ -78,6 +90,22 @@ public class MemcachedConnector extends SocketChannelController implements
 
 	private final CommandFactory commandFactory;
 	private volatile boolean failureMode;
+	private volatile int timeoutBacklogThreshold;
+	private volatile int maxInFlightCommands;
+	private volatile long maxQueuedBytes;
+	private volatile OverflowPolicy overflowPolicy = OverflowPolicy.FAIL_FAST;
+	private volatile long overflowBlockTimeout = MemcachedClient.DEFAULT_OP_TIMEOUT;
+	private volatile HotKeyDetector hotKeyDetector;
+	private volatile int hotKeyReplicas;
+
+	/**
+	 * Commands on a single key which are counted by the hot key detector
+	 */
+	private static final EnumSet<CommandType> HOT_KEY_COMMANDS = EnumSet.of(
+			CommandType.GET_ONE, CommandType.GETS_ONE, CommandType.SET,
+			CommandType.ADD, CommandType.REPLACE, CommandType.CAS,
+			CommandType.APPEND, CommandType.PREPEND, CommandType.INCR,
+			CommandType.DECR, CommandType.DELETE);
 
 	private final ConcurrentHashMap<InetSocketAddress/* Main node address */, List<Session>/*
 																						 * standby
@@ -89,79 +117,106 @@ public class MemcachedConnector extends SocketChannelController implements
 	}
 
 	/**
-	 * Session monitor for healing sessions.
+	 * Task for healing a session,it is run by the timer.It starts connecting
+	 * and checks the result when the connect future is done or timeout,no
+	 * thread is blocked while connecting.
 	 * 
 	 * @author dennis
 	 * 
 	 */
-	class SessionMonitor extends Thread {
-		public SessionMonitor() {
-			this.setName("Heal-Session-Thread");
+	final class ReconnectTask implements Runnable {
+		private final ReconnectRequest request;
+		private ConnectFuture future;
+		private HashedWheelTimer.Timeout connectTimeout;
+
+		public ReconnectTask(ReconnectRequest request) {
+			this.request = request;
 		}
 
-		@Override
 		public void run() {
-			while (MemcachedConnector.this.isStarted()) {
-
-				try {
-					ReconnectRequest request = MemcachedConnector.this.waitingQueue
-							.take();
+			if (!MemcachedConnector.this.isStarted()) {
+				return;
+			}
+			if (this.future == null) {
+				this.connect();
+			} else {
+				this.checkResult();
+			}
+		}
 
-					InetSocketAddress address = request
-							.getInetSocketAddressWrapper()
-							.getInetSocketAddress();
-
-					if (!MemcachedConnector.this.removedAddrSet
-							.contains(address)) {
-						boolean connected = false;
-						Future<Boolean> future = MemcachedConnector.this
-								.connect(request.getInetSocketAddressWrapper());
-						request.setTries(request.getTries() + 1);
-						try {
-							log.warn("Trying to connect to "
-									+ address.getAddress().getHostAddress()
-									+ ":" + address.getPort() + " for "
-									+ request.getTries() + " times");
-							if (!future.get(
-									MemcachedClient.DEFAULT_CONNECT_TIMEOUT,
-									TimeUnit.MILLISECONDS)) {
-								connected = false;
-							} else {
-								connected = true;
-								break;
-							}
-						} catch (TimeoutException e) {
-							future.cancel(true);
-						} catch (ExecutionException e) {
-							future.cancel(true);
-						} finally {
-							if (!connected) {
-								// update timestamp for next reconnecting
-								request
-										.updateNextReconnectTimeStamp(MemcachedConnector.this.healSessionInterval
-												* request.getTries());
-								log.error("Reconnect to "
-										+ address.getAddress().getHostAddress()
-										+ ":" + address.getPort() + " fail");
-								// add to tail
-								MemcachedConnector.this.waitingQueue
-										.offer(request);
-							} else {
-								continue;
-							}
-						}
-					} else {
-						log
-								.warn("Remove invalid reconnect task for "
-										+ address);
-						// remove reconnect task
+		private void connect() {
+			// removed by removeReconnectRequest
+			if (!MemcachedConnector.this.waitingQueue.contains(this.request)) {
+				return;
+			}
+			InetSocketAddress address = this.request
+					.getInetSocketAddressWrapper().getInetSocketAddress();
+			if (MemcachedConnector.this.removedAddrSet.contains(address)) {
+				log.warn("Remove invalid reconnect task for " + address);
+				MemcachedConnector.this.waitingQueue.remove(this.request);
+				return;
+			}
+			this.request.setTries(this.request.getTries() + 1);
+			log.warn("Trying to connect to "
+					+ address.getAddress().getHostAddress() + ":"
+					+ address.getPort() + " for " + this.request.getTries()
+					+ " times");
+			try {
+				this.future = (ConnectFuture) MemcachedConnector.this
+						.connect(this.request.getInetSocketAddressWrapper());
+			} catch (Exception e) {
+				log.error("Reconnect error", e);
+				this.retry();
+				return;
+			}
+			final HashedWheelTimer timer = MemcachedConnector.this.getTimer();
+			this.connectTimeout = timer.newTimeout(new Runnable() {
+				public void run() {
+					ReconnectTask.this.future.cancel(true);
+				}
+			}, MemcachedClient.DEFAULT_CONNECT_TIMEOUT, TimeUnit.MILLISECONDS);
+			// check the result in timer thread,the callback may be run by
+			// reactor
+			this.future.setCallback(new Runnable() {
+				public void run() {
+					try {
+						timer.newTimeout(ReconnectTask.this, 0,
+								TimeUnit.MILLISECONDS);
+					} catch (IllegalStateException e) {
+						// timer was stopped
 					}
-				} catch (InterruptedException e) {
-					// ignore,check status
-				} catch (Exception e) {
-					log.error("SessionMonitor connect error", e);
 				}
+			});
+		}
+
+		private void checkResult() {
+			this.connectTimeout.cancel();
+			boolean connected = false;
+			try {
+				connected = !this.future.isCancelled()
+						&& Boolean.TRUE.equals(this.future.get());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				// connect fail
 			}
+			if (connected) {
+				MemcachedConnector.this.waitingQueue.remove(this.request);
+			} else {
+				this.retry();
+			}
+		}
+
+		private void retry() {
+			InetSocketAddress address = this.request
+					.getInetSocketAddressWrapper().getInetSocketAddress();
+			log.error("Reconnect to " + address.getAddress().getHostAddress()
+					+ ":" + address.getPort() + " fail");
+			// update timestamp for next reconnecting
+			this.request
+					.updateNextReconnectTimeStamp(MemcachedConnector.this.healSessionInterval
+							* this.request.getTries());
+			MemcachedConnector.this.scheduleReconnect(this.request);
 		}
 	}
 
@@ -196,6 +251,105 @@ public class MemcachedConnector extends SocketChannelController implements
 				.setOptimizeMergeBuffer(optimizeMergeBuffer);
 	}
 
+	public void setOptimizeQuietPipeline(boolean optimizeQuietPipeline) {
+		((OptimizerMBean) this.optimiezer)
+				.setOptimizeQuietPipeline(optimizeQuietPipeline);
+	}
+
+	public void setTimeoutBacklogThreshold(int timeoutBacklogThreshold) {
+		if (timeoutBacklogThreshold < 0) {
+			throw new IllegalArgumentException("timeoutBacklogThreshold<0");
+		}
+		this.timeoutBacklogThreshold = timeoutBacklogThreshold;
+		for (Session session : this.sessionSet) {
+			((MemcachedTCPSession) session)
+					.setTimeoutBacklogThreshold(timeoutBacklogThreshold);
+		}
+	}
+
+	public int getTimeoutBacklogThreshold() {
+		return this.timeoutBacklogThreshold;
+	}
+
+	public void setMaxInFlightCommands(int maxInFlightCommands) {
+		if (maxInFlightCommands < 0) {
+			throw new IllegalArgumentException("maxInFlightCommands<0");
+		}
+		this.maxInFlightCommands = maxInFlightCommands;
+		for (Session session : this.sessionSet) {
+			((MemcachedTCPSession) session)
+					.setMaxInFlightCommands(maxInFlightCommands);
+		}
+	}
+
+	public int getMaxInFlightCommands() {
+		return this.maxInFlightCommands;
+	}
+
+	public void setMaxQueuedBytes(long maxQueuedBytes) {
+		if (maxQueuedBytes < 0) {
+			throw new IllegalArgumentException("maxQueuedBytes<0");
+		}
+		this.maxQueuedBytes = maxQueuedBytes;
+		for (Session session : this.sessionSet) {
+			((MemcachedTCPSession) session).setMaxQueuedBytes(maxQueuedBytes);
+		}
+	}
+
+	public long getMaxQueuedBytes() {
+		return this.maxQueuedBytes;
+	}
+
+	public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+		if (overflowPolicy == null) {
+			throw new NullPointerException("Null overflowPolicy");
+		}
+		this.overflowPolicy = overflowPolicy;
+		for (Session session : this.sessionSet) {
+			((MemcachedTCPSession) session).setOverflowPolicy(overflowPolicy);
+		}
+	}
+
+	public OverflowPolicy getOverflowPolicy() {
+		return this.overflowPolicy;
+	}
+
+	public void setOverflowBlockTimeout(long overflowBlockTimeout) {
+		this.overflowBlockTimeout = overflowBlockTimeout;
+		for (Session session : this.sessionSet) {
+			((MemcachedTCPSession) session)
+					.setOverflowBlockTimeout(overflowBlockTimeout);
+		}
+	}
+
+	/**
+	 * Set the number of replicas of a hot key,zero disables hot key
+	 * detection.A default detector is created if none was set.
+	 * 
+	 * @param hotKeyReplicas
+	 */
+	public void setHotKeyReplicas(int hotKeyReplicas) {
+		if (hotKeyReplicas < 0) {
+			throw new IllegalArgumentException("hotKeyReplicas<0");
+		}
+		if (hotKeyReplicas > 0 && this.hotKeyDetector == null) {
+			this.hotKeyDetector = new HotKeyDetector();
+		}
+		this.hotKeyReplicas = hotKeyReplicas;
+	}
+
+	public int getHotKeyReplicas() {
+		return this.hotKeyReplicas;
+	}
+
+	public void setHotKeyDetector(HotKeyDetector hotKeyDetector) {
+		this.hotKeyDetector = hotKeyDetector;
+	}
+
+	public HotKeyDetector getHotKeyDetector() {
+		return this.hotKeyDetector;
+	}
+
 	public Protocol getProtocol() {
 		return this.protocol;
 	}
@@ -255,6 +409,27 @@ public class MemcachedConnector extends SocketChannelController implements
 			((MemcachedSession) oldSession).setAllowReconnect(false);
 			oldSession.close();
 		}
+		this.updateStandbySessions(remoteSocketAddress);
+	}
+
+	/**
+	 * Publish the standby sessions of a main node to it's sessions,so the
+	 * send path finds them without map lookups
+	 * 
+	 * @param mainNodeAddr
+	 */
+	private void updateStandbySessions(InetSocketAddress mainNodeAddr) {
+		Queue<Session> mainSessions = this.sessionMap.get(mainNodeAddr);
+		if (mainSessions == null) {
+			return;
+		}
+		List<Session> sessionList = this.standbySessionMap.get(mainNodeAddr);
+		Session[] standbySessions = sessionList == null
+				|| sessionList.isEmpty() ? MemcachedTCPSession.NO_SESSIONS
+				: sessionList.toArray(new Session[sessionList.size()]);
+		for (Session session : mainSessions) {
+			((MemcachedTCPSession) session).setStandbySessions(standbySessions);
+		}
 	}
 
 	private void addStandbySession(Session session,
@@ -276,6 +451,7 @@ public class MemcachedConnector extends SocketChannelController implements
 			}
 		}
 		sessions.add(session);
+		this.updateStandbySessions(mainNodeAddress);
 	}
 
 	public List<Session> getSessionListBySocketAddress(
@@ -314,6 +490,10 @@ public class MemcachedConnector extends SocketChannelController implements
 		// sort the sessions to keep order
 		Collections.sort(sessionList, sessionComparator);
 		this.sessionLocator.updateSessions(sessionList);
+		final HotKeyDetector detector = this.hotKeyDetector;
+		if (detector != null) {
+			detector.clearReplicas();
+		}
 	}
 
 	public synchronized void removeSession(Session session) {
@@ -360,6 +540,7 @@ public class MemcachedConnector extends SocketChannelController implements
 			if (sessionList.size() == 0) {
 				this.standbySessionMap.remove(mainNodeAddr);
 			}
+			this.updateStandbySessions(mainNodeAddr);
 		}
 	}
 
@@ -419,6 +600,26 @@ public class MemcachedConnector extends SocketChannelController implements
 
 	public void addToWatingQueue(ReconnectRequest request) {
 		this.waitingQueue.add(request);
+		this.scheduleReconnect(request);
+	}
+
+	/**
+	 * Schedule the reconnect request on the timer,requests added before the
+	 * connector is ready are scheduled when it is ready.
+	 * 
+	 * @param request
+	 */
+	private void scheduleReconnect(ReconnectRequest request) {
+		HashedWheelTimer timer = this.getTimer();
+		if (timer == null || !this.isStarted()) {
+			return;
+		}
+		try {
+			timer.newTimeout(new ReconnectTask(request), request
+					.getDelay(TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS);
+		} catch (IllegalStateException e) {
+			// timer was stopped
+		}
 	}
 
 	public Future<Boolean> connect(InetSocketAddressWrapper addressWrapper)
@@ -448,8 +649,41 @@ public class MemcachedConnector extends SocketChannelController implements
 	private final Random random = new Random();
 
 	public void send(final Command msg) throws MemcachedException {
-		MemcachedTCPSession session = (MemcachedTCPSession) this
-				.findSessionByKey(msg.getKey());
+		final HotKeyDetector detector = this.hotKeyDetector;
+		if (detector != null && this.hotKeyReplicas > 0
+				&& msg.getKey() != null
+				&& HOT_KEY_COMMANDS.contains(msg.getCommandType())) {
+			detector.record(msg.getKey());
+			final HotKeyDetector.HotKey hotKey = detector.get(msg.getKey());
+			if (hotKey != null) {
+				this.sendHotKey(msg, hotKey);
+				return;
+			}
+		}
+		this.sendToPrimary(msg);
+	}
+
+	private void sendToPrimary(final Command msg) throws MemcachedException {
+		final byte[] keyBytes = msg.getKeyBytes();
+		// keyBytes of a text multi-get are all the keys
+		final boolean multiGet = msg.getCommandType() == CommandType.GET_MANY
+				|| msg.getCommandType() == CommandType.GETS_MANY;
+		this.send(msg, keyBytes != null && !multiGet ? this
+				.findSessionByKey(keyBytes) : this.findSessionByKey(msg
+				.getKey()));
+	}
+
+	/**
+	 * Send the command through the session which was located by the caller,a
+	 * standby session is used if it was closed.
+	 * 
+	 * @param msg
+	 * @param located
+	 * @throws MemcachedException
+	 */
+	public void send(final Command msg, final Session located)
+			throws MemcachedException {
+		MemcachedTCPSession session = (MemcachedTCPSession) located;
 		if (session == null) {
 			throw new MemcachedException(
 					"There is no available connection at this moment");
@@ -469,17 +703,187 @@ public class MemcachedConnector extends SocketChannelController implements
 			throw new MemcachedException("Auth failed to connection "
 					+ session.getRemoteSocketAddress());
 		}
+		if (this.connectionPoolSize > 1) {
+			session = this.keepOrder(msg, session);
+		}
 		session.write(msg);
 	}
 
+	/**
+	 * Noreply commands are never acknowledged,so later commands of the same
+	 * thread to the same node must use the same connection,otherwise they may
+	 * overtake them.The connection is pinned until a command with response is
+	 * sent through it,every node of the thread is pinned separately.
+	 */
+	private final ThreadLocal<Map<InetSocketAddress, MemcachedTCPSession>> noreplySessions = new ThreadLocal<Map<InetSocketAddress, MemcachedTCPSession>>();
+
+	private MemcachedTCPSession keepOrder(final Command msg,
+			MemcachedTCPSession session) {
+		Map<InetSocketAddress, MemcachedTCPSession> pinnedSessions = this.noreplySessions
+				.get();
+		if (pinnedSessions == null) {
+			if (!msg.isNoreply()) {
+				return session;
+			}
+			pinnedSessions = new HashMap<InetSocketAddress, MemcachedTCPSession>(
+					4);
+			this.noreplySessions.set(pinnedSessions);
+		}
+		final InetSocketAddress address = session.getRemoteSocketAddress();
+		MemcachedTCPSession pinned = pinnedSessions.get(address);
+		if (pinned != null && pinned.isClosed()) {
+			pinnedSessions.remove(address);
+			pinned = null;
+		}
+		if (pinned != null) {
+			session = pinned;
+			if (!msg.isNoreply()) {
+				pinnedSessions.remove(address);
+			}
+		} else if (msg.isNoreply()) {
+			pinnedSessions.put(address, session);
+		}
+		return session;
+	}
+
+	/**
+	 * Reads of a replicated hot key are spread across the primary and it's
+	 * replicas.Writes go to the primary,then the stored value is copied to
+	 * the replicas,or the replicas are invalidated if the write is not a
+	 * successful store.Reads go to the primary until the replicas are
+	 * refreshed by the latest write,every write starts a new generation and
+	 * a slower older write never marks the replicas refreshed.
+	 * 
+	 * @param msg
+	 * @param hotKey
+	 * @throws MemcachedException
+	 */
+	private void sendHotKey(final Command msg,
+			final HotKeyDetector.HotKey hotKey) throws MemcachedException {
+		switch (msg.getCommandType()) {
+		case GET_ONE:
+			if (hotKey.isReplicated()) {
+				List<Session> replicas = this.getReplicaSessions(hotKey);
+				int index = this.random.nextInt(replicas.size() + 1);
+				// the last index is the primary
+				if (index < replicas.size()) {
+					MemcachedTCPSession replica = (MemcachedTCPSession) replicas
+							.get(index);
+					if (!replica.isClosed() && !replica.isAuthFailed()) {
+						replica.write(msg);
+						return;
+					}
+				}
+			}
+			this.sendToPrimary(msg);
+			break;
+		case GETS_ONE:
+			// cas unique is only meaningful on the primary
+			this.sendToPrimary(msg);
+			break;
+		default:
+			final int generation = hotKey.beginWrite();
+			this.sendToPrimary(msg);
+			final CountDownLatch latch = msg.getLatch();
+			if (msg.isNoreply() || !(latch instanceof CompletionLatch)) {
+				this.replicate(msg, hotKey, generation,
+						msg.getCommandType() == CommandType.SET);
+			} else {
+				((CompletionLatch) latch).addCallback(new Runnable() {
+					public void run() {
+						MemcachedConnector.this.replicate(msg, hotKey,
+								generation, msg.getException() == null
+										&& Boolean.TRUE.equals(msg
+												.getResult()));
+					}
+				});
+			}
+			break;
+		}
+	}
+
+	private List<Session> getReplicaSessions(final HotKeyDetector.HotKey hotKey) {
+		List<Session> replicas = hotKey.replicas;
+		if (replicas == null) {
+			replicas = this.sessionLocator.getReplicaSessionsByKey(hotKey
+					.getKey(), this.hotKeyReplicas);
+			hotKey.replicas = replicas;
+		}
+		return replicas;
+	}
+
+	/**
+	 * Copy the stored value of the command to the replicas of the hot key,or
+	 * delete the key from the replicas
+	 * 
+	 * @param msg
+	 * @param hotKey
+	 * @param generation
+	 *            write generation of the command
+	 * @param stored
+	 *            whether the command stored a new value successfully
+	 */
+	final void replicate(final Command msg, final HotKeyDetector.HotKey hotKey,
+			final int generation, boolean stored) {
+		final List<Session> replicas = this.getReplicaSessions(hotKey);
+		// a newer write refreshes the replicas
+		if (replicas.isEmpty() || !hotKey.isCurrent(generation)) {
+			return;
+		}
+		final CommandType commandType = msg.getCommandType();
+		stored = stored
+				&& (commandType == CommandType.SET
+						|| commandType == CommandType.ADD
+						|| commandType == CommandType.REPLACE || commandType == CommandType.CAS);
+		for (Session session : replicas) {
+			if (session.isClosed()) {
+				continue;
+			}
+			Command copy = null;
+			if (stored) {
+				copy = this.newReplicaSetCommand(msg);
+			}
+			if (copy == null) {
+				stored = false;
+				copy = this.commandFactory.createDeleteCommand(msg.getKey(),
+						msg.getKeyBytes(), 0, true);
+			}
+			try {
+				session.write(copy);
+			} catch (RuntimeException e) {
+				log.error("Replicate hot key " + msg.getKey() + " to "
+						+ session.getRemoteSocketAddress() + " failed", e);
+				stored = false;
+			}
+		}
+		if (stored) {
+			hotKey.publish(generation);
+		}
+	}
+
+	private Command newReplicaSetCommand(final Command msg) {
+		if (msg instanceof TextStoreCommand) {
+			TextStoreCommand storeCommand = (TextStoreCommand) msg;
+			return this.commandFactory.createSetCommand(msg.getKey(), msg
+					.getKeyBytes(), storeCommand.getExpTime(), storeCommand
+					.getValue(), true, storeCommand.getTranscoder());
+		}
+		if (msg instanceof BaseBinaryCommand
+				&& ((BaseBinaryCommand) msg).getValue() != null) {
+			BaseBinaryCommand storeCommand = (BaseBinaryCommand) msg;
+			return this.commandFactory.createSetCommand(msg.getKey(), msg
+					.getKeyBytes(), storeCommand.getExpTime(), storeCommand
+					.getValue(), true, storeCommand.getTranscoder());
+		}
+		return null;
+	}
+
 	private MemcachedTCPSession findStandbySession(MemcachedTCPSession session) {
 		if (this.failureMode) {
-			List<Session> sessionList = this
-					.getStandbySessionListByMainNodeAddr(session
-							.getRemoteSocketAddress());
-			if (sessionList != null && !sessionList.isEmpty()) {
-				return (MemcachedTCPSession) sessionList.get(this.random
-						.nextInt(sessionList.size()));
+			final Session[] standbySessions = session.getStandbySessions();
+			if (standbySessions.length > 0) {
+				return (MemcachedTCPSession) LeastLoadedSelector.select(
+						standbySessions, 0, standbySessions.length);
 			}
 		}
 		return session;
@@ -497,13 +901,13 @@ public class MemcachedConnector extends SocketChannelController implements
 	}
 
 	/**
-	 * Inner state listenner,manage session monitor.
+	 * Inner state listenner,schedule reconnect requests which were added
+	 * before starting.
 	 * 
 	 * @author boyan
 	 * 
 	 */
 	class InnerControllerStateListener implements ControllerStateListener {
-		private final SessionMonitor sessionMonitor = new SessionMonitor();
 
 		public void onAllSessionClosed(Controller controller) {
 
@@ -514,15 +918,17 @@ public class MemcachedConnector extends SocketChannelController implements
 		}
 
 		public void onReady(Controller controller) {
-			this.sessionMonitor.start();
+
 		}
 
 		public void onStarted(Controller controller) {
-
+			for (ReconnectRequest request : MemcachedConnector.this.waitingQueue) {
+				MemcachedConnector.this.scheduleReconnect(request);
+			}
 		}
 
 		public void onStopped(Controller controller) {
-			this.sessionMonitor.interrupt();
+
 		}
 
 	}
@@ -531,6 +937,10 @@ public class MemcachedConnector extends SocketChannelController implements
 		return this.sessionLocator.getSessionByKey(key);
 	}
 
+	public final Session findSessionByKey(byte[] keyBytes) {
+		return this.sessionLocator.getSessionByKey(keyBytes);
+	}
+
 	/**
 	 * Get session by InetSocketAddress
 	 * 
@@ -568,6 +978,11 @@ public class MemcachedConnector extends SocketChannelController implements
 		((OptimizerMBean) this.optimiezer).setMergeFactor(mergeFactor);
 	}
 
+	@Override
+	protected Queue<WriteMessage> buildQueue() {
+		return new MemcachedTCPSession.WriteQueue();
+	}
+
 	@Override
 	protected NioSession buildSession(SocketChannel sc) {
 		Queue<WriteMessage> queue = this.buildQueue();
@@ -577,6 +992,11 @@ public class MemcachedConnector extends SocketChannelController implements
 				this.configuration.getSessionReadBufferSize(), this.optimiezer,
 				this.getReadThreadCount(), this.commandFactory);
 		session.setBufferAllocator(this.bufferAllocator);
+		session.setTimeoutBacklogThreshold(this.timeoutBacklogThreshold);
+		session.setMaxInFlightCommands(this.maxInFlightCommands);
+		session.setMaxQueuedBytes(this.maxQueuedBytes);
+		session.setOverflowPolicy(this.overflowPolicy);
+		session.setOverflowBlockTimeout(this.overflowBlockTimeout);
 		return session;
 	}
 
@@ -12,8 +12,6 @@
 package net.rubyeye.xmemcached.impl;
 
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -22,6 +20,7 @@ import net.rubyeye.xmemcached.MemcachedClientStateListener;
 import net.rubyeye.xmemcached.auth.AuthMemcachedConnectListener;
 import net.rubyeye.xmemcached.command.Command;
 import net.rubyeye.xmemcached.command.CommandType;
+import net.rubyeye.xmemcached.command.CompletionLatch;
 import net.rubyeye.xmemcached.command.MapReturnValueAware;
 import net.rubyeye.xmemcached.command.OperationStatus;
 import net.rubyeye.xmemcached.command.binary.BinaryGetCommand;
@@ -39,6 +38,7 @@ import org.slf4j.LoggerFactory;
 
 import com.google.code.yanf4j.core.Session;
 import com.google.code.yanf4j.core.impl.HandlerAdapter;
+import com.google.code.yanf4j.util.HashedWheelTimer;
 import com.google.code.yanf4j.util.SystemUtils;
 
 /**
@@ -52,8 +52,6 @@ public class MemcachedHandler extends HandlerAdapter {
 
 	private final StatisticsHandler statisticsHandler;
 
-	private ExecutorService heartBeatThreadPool;
-
 	private final MemcachedSessionConnectListener listener;
 
 	private final MemcachedClient client;
@@ -66,6 +64,7 @@ public class MemcachedHandler extends HandlerAdapter {
 	@Override
 	public final void onMessageReceived(final Session session, final Object msg) {
 		Command command = (Command) msg;
+		((MemcachedTCPSession) session).recordLatency(command);
 		if (this.statisticsHandler.isStatistics()) {
 			if (command.getMergeCount() > 0) {
 				int size = ((MapReturnValueAware) command).getReturnValues()
@@ -93,6 +92,16 @@ public class MemcachedHandler extends HandlerAdapter {
 		this.enableHeartBeat = enableHeartBeat;
 	}
 
+	private volatile boolean useBlockingRead = false;
+
+	public void setUseBlockingRead(boolean useBlockingRead) {
+		this.useBlockingRead = useBlockingRead;
+	}
+
+	public boolean isUseBlockingRead() {
+		return this.useBlockingRead;
+	}
+
 	/**
 	 * put command which have been sent to queue
 	 */
@@ -104,6 +113,8 @@ public class MemcachedHandler extends HandlerAdapter {
 				|| this.client.getProtocol() == Protocol.Binary) {
 			((MemcachedTCPSession) session).addCommand(command);
 		}
+		// queued bytes were drained
+		((MemcachedTCPSession) session).signalWriteCapacity();
 	}
 
 	@Override
@@ -116,7 +127,7 @@ public class MemcachedHandler extends HandlerAdapter {
 	 */
 	@Override
 	public void onSessionStarted(Session session) {
-		session.setUseBlockingRead(true);
+		session.setUseBlockingRead(this.useBlockingRead);
 		session.setAttribute(HEART_BEAT_FAIL_COUNT_ATTR, new AtomicInteger(0));
 		for (MemcachedClientStateListener listener : this.client
 				.getStateListeners()) {
@@ -156,7 +167,7 @@ public class MemcachedHandler extends HandlerAdapter {
 					.getRawAddress(session.getRemoteSocketAddress())
 					+ ":" + session.getRemoteSocketAddress().getPort());
 			Command versionCommand = null;
-			CountDownLatch latch = new CountDownLatch(1);
+			CountDownLatch latch = new CompletionLatch(1);
 			if (this.client.getProtocol() == Protocol.Binary) {
 				versionCommand = new BinaryVersionCommand(latch, session
 						.getRemoteSocketAddress());
@@ -166,10 +177,16 @@ public class MemcachedHandler extends HandlerAdapter {
 						.getRemoteSocketAddress());
 			}
 			session.write(versionCommand);
-			// Start a check thread,avoid blocking reactor thread
-			if (this.heartBeatThreadPool != null) {
-				this.heartBeatThreadPool.execute(new CheckHeartResultThread(
-						versionCommand, session));
+			// Check the result later on the timer,avoid blocking any thread
+			HashedWheelTimer timer = this.client.getConnector().getTimer();
+			if (timer != null) {
+				try {
+					timer.newTimeout(new CheckHeartResultTask(versionCommand,
+							session), HEART_BEAT_TIMEOUT,
+							TimeUnit.MILLISECONDS);
+				} catch (IllegalStateException e) {
+					// timer was stopped
+				}
 			}
 		}
 
@@ -177,50 +194,53 @@ public class MemcachedHandler extends HandlerAdapter {
 
 	private static final String HEART_BEAT_FAIL_COUNT_ATTR = "heartBeatFailCount";
 	private static final int MAX_HEART_BEAT_FAIL_COUNT = 5;
+	private static final long HEART_BEAT_TIMEOUT = 2000;
 
-	final static class CheckHeartResultThread implements Runnable {
+	/**
+	 * Check heartbeat result when it is timeout,it is run by the timer
+	 * 
+	 * @author dennis
+	 * 
+	 */
+	final static class CheckHeartResultTask implements Runnable {
 
 		private final Command versionCommand;
 		private final Session session;
 
-		public CheckHeartResultThread(Command versionCommand, Session session) {
+		public CheckHeartResultTask(Command versionCommand, Session session) {
 			super();
 			this.versionCommand = versionCommand;
 			this.session = session;
 		}
 
 		public void run() {
-			try {
-				AtomicInteger heartBeatFailCount = (AtomicInteger) this.session
-						.getAttribute(HEART_BEAT_FAIL_COUNT_ATTR);
-				if (heartBeatFailCount != null) {
-					if (!this.versionCommand.getLatch().await(2000,
-							TimeUnit.MILLISECONDS)) {
-						heartBeatFailCount.incrementAndGet();
-					}
-					if (this.versionCommand.getResult() == null) {
-						heartBeatFailCount.incrementAndGet();
-					} else {
-						// reset
-						heartBeatFailCount.set(0);
-					}
-					// 10 times fail
-					if (heartBeatFailCount.get() > MAX_HEART_BEAT_FAIL_COUNT) {
-						log
-								.warn("Session("
-										+ SystemUtils
-												.getRawAddress(this.session
-														.getRemoteSocketAddress())
-										+ ":"
-										+ this.session.getRemoteSocketAddress()
-												.getPort()
-										+ ") heartbeat fail 10 times,close session and try to heal it");
-						this.session.close();// close session
-						heartBeatFailCount.set(0);
-					}
+			AtomicInteger heartBeatFailCount = (AtomicInteger) this.session
+					.getAttribute(HEART_BEAT_FAIL_COUNT_ATTR);
+			if (heartBeatFailCount != null) {
+				if (this.versionCommand.getLatch().getCount() > 0) {
+					this.versionCommand.cancel();
+					heartBeatFailCount.incrementAndGet();
+				}
+				if (this.versionCommand.getResult() == null) {
+					heartBeatFailCount.incrementAndGet();
+				} else {
+					// reset
+					heartBeatFailCount.set(0);
+				}
+				// 10 times fail
+				if (heartBeatFailCount.get() > MAX_HEART_BEAT_FAIL_COUNT) {
+					log
+							.warn("Session("
+									+ SystemUtils
+											.getRawAddress(this.session
+													.getRemoteSocketAddress())
+									+ ":"
+									+ this.session.getRemoteSocketAddress()
+											.getPort()
+									+ ") heartbeat fail 10 times,close session and try to heal it");
+					this.session.close();// close session
+					heartBeatFailCount.set(0);
 				}
-			} catch (InterruptedException e) {
-				// ignore
 			}
 		}
 	}
@@ -248,17 +268,6 @@ public class MemcachedHandler extends HandlerAdapter {
 		}
 	}
 
-	public void stop() {
-		this.heartBeatThreadPool.shutdown();
-	}
-
-	public void start() {
-		int serverSize = this.client.getAvaliableServers().size();
-		this.heartBeatThreadPool = Executors
-				.newFixedThreadPool(serverSize == 0 ? Runtime.getRuntime()
-						.availableProcessors() : serverSize);
-	}
-
 	public MemcachedHandler(MemcachedClient client) {
 		super();
 		this.client = client;
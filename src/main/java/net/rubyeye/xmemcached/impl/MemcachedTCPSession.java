@@ -17,21 +17,32 @@ import java.net.SocketException;
 import java.nio.channels.SocketChannel;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import net.rubyeye.xmemcached.CommandFactory;
+import net.rubyeye.xmemcached.MemcachedClient;
 import net.rubyeye.xmemcached.MemcachedOptimizer;
+import net.rubyeye.xmemcached.OverflowPolicy;
 import net.rubyeye.xmemcached.buffer.BufferAllocator;
 import net.rubyeye.xmemcached.command.Command;
 import net.rubyeye.xmemcached.command.OperationStatus;
+import net.rubyeye.xmemcached.command.binary.BaseBinaryCommand;
+import net.rubyeye.xmemcached.exception.MemcachedDecodeException;
 import net.rubyeye.xmemcached.exception.MemcachedException;
 import net.rubyeye.xmemcached.networking.MemcachedSession;
 import net.rubyeye.xmemcached.utils.InetSocketAddressWrapper;
+import net.rubyeye.xmemcached.utils.IntHashMap;
+import net.rubyeye.xmemcached.utils.Protocol;
 
+import com.google.code.yanf4j.core.Session;
 import com.google.code.yanf4j.core.WriteMessage;
 import com.google.code.yanf4j.core.impl.FutureImpl;
 import com.google.code.yanf4j.nio.NioSessionConfig;
 import com.google.code.yanf4j.nio.impl.NioTCPSession;
+import com.google.code.yanf4j.nio.impl.Reactor;
+import com.google.code.yanf4j.util.HashedWheelTimer;
 import com.google.code.yanf4j.util.LinkedTransferQueue;
 import com.google.code.yanf4j.util.SystemUtils;
 
@@ -48,8 +59,66 @@ public class MemcachedTCPSession extends NioTCPSession implements
 	 */
 	protected BlockingQueue<Command> commandAlreadySent;
 
+	/**
+	 * Binary commands which are already sent,indexed by opaque
+	 */
+	private final IntHashMap<Command> inFlightCommands;
+
 	private final AtomicReference<Command> currentCommand = new AtomicReference<Command>();
 
+	/**
+	 * Number of cancelled(timed out) commands which are still waiting for
+	 * responses
+	 */
+	private final AtomicInteger cancelledCommandCount = new AtomicInteger();
+
+	private volatile int timeoutBacklogThreshold;
+
+	/**
+	 * Number of commands in commandAlreadySent
+	 */
+	private final AtomicInteger inFlightCommandCount = new AtomicInteger();
+
+	/**
+	 * Bounds of in flight commands and queued bytes,zero means unbounded
+	 */
+	private volatile int maxInFlightCommands;
+	private volatile long maxQueuedBytes;
+	private volatile OverflowPolicy overflowPolicy = OverflowPolicy.FAIL_FAST;
+	private volatile long overflowBlockTimeout = MemcachedClient.DEFAULT_OP_TIMEOUT;
+
+	/**
+	 * Callers blocked by overflow wait on it
+	 */
+	private final Object capacityLock = new Object();
+	private volatile int capacityWaiters;
+
+	/**
+	 * Blocked callers re-check the bounds in this interval,because queued
+	 * bytes are drained by yanf4j without notifying
+	 */
+	private static final long CAPACITY_RECHECK_NANOS = TimeUnit.MILLISECONDS
+			.toNanos(10);
+
+	/**
+	 * EWMA of the latency from writing a command to receiving it's response
+	 * in nanoseconds,weight of a new sample is 1/8.It is updated by the
+	 * thread which handles responses,a lost update under a dispatch pool only
+	 * delays it a little.
+	 */
+	private volatile long latencyEwma;
+	private volatile long latencyUpdateTime;
+	private static final int EWMA_SHIFT = 3;
+	/**
+	 * The EWMA is halved in every such interval without responses,so a
+	 * session which was slow is tried again
+	 */
+	private static final long EWMA_DECAY_NANOS = TimeUnit.SECONDS.toNanos(1);
+	/**
+	 * Queued bytes counted as one pending command,4K
+	 */
+	private static final int PENDING_BYTES_SHIFT = 12;
+
 	private SocketAddress remoteSocketAddress; // prevent channel is closed
 	private int sendBufferSize;
 	private final MemcachedOptimizer optimiezer;
@@ -57,6 +126,13 @@ public class MemcachedTCPSession extends NioTCPSession implements
 
 	private volatile boolean authFailed;
 
+	static final Session[] NO_SESSIONS = new Session[0];
+	/**
+	 * Snapshot of the standby sessions of this main session,it is replaced
+	 * by the connector when standby sessions are added or removed
+	 */
+	private volatile Session[] standbySessions = NO_SESSIONS;
+
 	private final CommandFactory commandFactory;
 
 	private InetSocketAddressWrapper inetSocketAddressWrapper;
@@ -77,8 +153,14 @@ public class MemcachedTCPSession extends NioTCPSession implements
 				this.sendBufferSize = 8 * 1024;
 			}
 		}
-		this.commandAlreadySent = new LinkedTransferQueue<Command>();
 		this.commandFactory = commandFactory;
+		if (commandFactory != null
+				&& commandFactory.getProtocol() == Protocol.Binary) {
+			this.inFlightCommands = new IntHashMap<Command>(64);
+		} else {
+			this.inFlightCommands = null;
+		}
+		this.commandAlreadySent = new InFlightCommandQueue();
 	}
 
 	public InetSocketAddressWrapper getInetSocketAddressWrapper() {
@@ -109,16 +191,290 @@ public class MemcachedTCPSession extends NioTCPSession implements
 		if (command != null) {
 			command.setException(new MemcachedException(
 					"Session has been closed"));
-			command.getLatch().countDown();
+			command.countDownLatch();
 		}
 		while ((command = this.commandAlreadySent.poll()) != null) {
 			command.setException(new MemcachedException(
 					"Session has been closed"));
-			if (command.getLatch() != null) {
-				command.getLatch().countDown();
+			command.countDownLatch();
+		}
+		this.inFlightCommandCount.set(0);
+		this.signalWriteCapacity();
+		if (this.inFlightCommands != null) {
+			synchronized (this.inFlightCommands) {
+				this.inFlightCommands.clear();
 			}
 		}
+		this.cancelledCommandCount.set(0);
+	}
+
+	/**
+	 * Called when a command which was sent through this session is cancelled
+	 * before it's response arrives.The response is still expected and will be
+	 * discarded,if too many responses are expected,the connection is closed
+	 * and reconnected,so that new commands are not queued behind them.
+	 * 
+	 * @param command
+	 */
+	public void onSentCommandCancelled(Command command) {
+		int count = this.cancelledCommandCount.incrementAndGet();
+		int threshold = this.timeoutBacklogThreshold;
+		if (threshold > 0 && count >= threshold && !this.isClosed()) {
+			log.warn("Too many cancelled commands(" + count
+					+ ") are waiting for responses from " + this
+					+ ",close the session and reconnect");
+			this.close();
+		}
+	}
 
+	/**
+	 * Returns the number of cancelled commands which are still waiting for
+	 * responses
+	 * 
+	 * @return
+	 */
+	public final int getCancelledCommandCount() {
+		return this.cancelledCommandCount.get();
+	}
+
+	public final int getTimeoutBacklogThreshold() {
+		return this.timeoutBacklogThreshold;
+	}
+
+	/**
+	 * Set the max number of cancelled commands waiting for responses before
+	 * the session is recycled,zero means never.
+	 * 
+	 * @param timeoutBacklogThreshold
+	 */
+	public final void setTimeoutBacklogThreshold(int timeoutBacklogThreshold) {
+		this.timeoutBacklogThreshold = timeoutBacklogThreshold;
+	}
+
+	public final int getMaxInFlightCommands() {
+		return this.maxInFlightCommands;
+	}
+
+	/**
+	 * Set the max number of commands which are waiting for responses,zero
+	 * means unbounded.
+	 * 
+	 * @param maxInFlightCommands
+	 */
+	public final void setMaxInFlightCommands(int maxInFlightCommands) {
+		this.maxInFlightCommands = maxInFlightCommands;
+		this.signalWriteCapacity();
+	}
+
+	public final long getMaxQueuedBytes() {
+		return this.maxQueuedBytes;
+	}
+
+	/**
+	 * Set the max bytes which are written by callers but not sent to the
+	 * socket yet,zero means unbounded.
+	 * 
+	 * @param maxQueuedBytes
+	 */
+	public final void setMaxQueuedBytes(long maxQueuedBytes) {
+		this.maxQueuedBytes = maxQueuedBytes;
+		this.signalWriteCapacity();
+	}
+
+	public final OverflowPolicy getOverflowPolicy() {
+		return this.overflowPolicy;
+	}
+
+	public final void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+		if (overflowPolicy == null) {
+			throw new NullPointerException("Null overflowPolicy");
+		}
+		this.overflowPolicy = overflowPolicy;
+	}
+
+	/**
+	 * Set the max time in milliseconds to block a caller with BLOCK policy
+	 * 
+	 * @param overflowBlockTimeout
+	 */
+	public final void setOverflowBlockTimeout(long overflowBlockTimeout) {
+		this.overflowBlockTimeout = overflowBlockTimeout;
+	}
+
+	/**
+	 * Write a command if the bounds are not exceeded,otherwise apply the
+	 * overflow policy.A rejected command is completed with an exception.
+	 */
+	@Override
+	public void write(Object packet) {
+		if (this.closed) {
+			return;
+		}
+		WriteMessage message = this.wrapMessage(packet, null);
+		((Command) message).setWriteTime(System.nanoTime());
+		int size = message.getWriteBuffer().remaining();
+		if (this.isOverflow(size) && !this.handleOverflow(size)) {
+			Command command = (Command) message;
+			command.setException(new MemcachedException(
+					"Too many commands are queued on "
+							+ this.remoteSocketAddress
+							+ ",inFlight=" + this.getInFlightCommandCount()
+							+ ",queued=" + this.getQueuedCommandCount()
+							+ ",queuedBytes=" + this.getScheduleWritenBytes()));
+			command.countDownLatch();
+			return;
+		}
+		this.scheduleWritenBytes.addAndGet(size);
+		this.writeFromUserCode(message);
+	}
+
+	private boolean isOverflow(int size) {
+		return this.isInFlightOverflow() || this.isQueuedBytesOverflow(size);
+	}
+
+	/**
+	 * Commands still in write queue are counted too,otherwise nothing is
+	 * bounded while the socket is not writable.
+	 * 
+	 * @return
+	 */
+	private boolean isInFlightOverflow() {
+		int maxInFlight = this.maxInFlightCommands;
+		return maxInFlight > 0
+				&& this.inFlightCommandCount.get()
+						+ this.getQueuedCommandCount() >= maxInFlight;
+	}
+
+	/**
+	 * Returns the number of commands in write queue
+	 * 
+	 * @return
+	 */
+	public final int getQueuedCommandCount() {
+		if (this.writeQueue instanceof WriteQueue) {
+			return ((WriteQueue) this.writeQueue).count.get();
+		}
+		return 0;
+	}
+
+	private boolean isQueuedBytesOverflow(int size) {
+		long maxBytes = this.maxQueuedBytes;
+		return maxBytes > 0
+				&& this.scheduleWritenBytes.get() + size > maxBytes;
+	}
+
+	/**
+	 * Apply the overflow policy
+	 * 
+	 * @param size
+	 * @return true if the command could be written
+	 */
+	private boolean handleOverflow(int size) {
+		switch (this.overflowPolicy) {
+		case BLOCK:
+			if (this.isBlockingAllowed()) {
+				return this.awaitWriteCapacity(size);
+			}
+			return false;
+		case SHED_OLDEST:
+			return this.shedOldest(size);
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Reactor and timer threads must not be blocked
+	 * 
+	 * @return
+	 */
+	private boolean isBlockingAllowed() {
+		if (Thread.currentThread() instanceof Reactor) {
+			return false;
+		}
+		if (this.selectorManager != null) {
+			HashedWheelTimer timer = this.selectorManager.getController()
+					.getTimer();
+			return timer == null || !timer.isWorkerThread();
+		}
+		return true;
+	}
+
+	private boolean awaitWriteCapacity(int size) {
+		final long deadline = System.nanoTime()
+				+ TimeUnit.MILLISECONDS.toNanos(this.overflowBlockTimeout);
+		synchronized (this.capacityLock) {
+			this.capacityWaiters++;
+			try {
+				while (this.isOverflow(size)) {
+					long left = deadline - System.nanoTime();
+					if (left <= 0 || this.closed) {
+						return false;
+					}
+					TimeUnit.NANOSECONDS.timedWait(this.capacityLock, Math.min(
+							left, CAPACITY_RECHECK_NANOS));
+				}
+				return true;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			} finally {
+				this.capacityWaiters--;
+			}
+		}
+	}
+
+	/**
+	 * Wake up callers blocked by overflow
+	 */
+	final void signalWriteCapacity() {
+		if (this.capacityWaiters > 0) {
+			synchronized (this.capacityLock) {
+				this.capacityLock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Fail the oldest commands in write queue until the new command fits.Sent
+	 * commands could not be recalled,so if the in flight bound is exceeded,the
+	 * oldest queued command is replaced by the new one.The write lock is held
+	 * so that the reactor does not take them concurrently.
+	 * 
+	 * @param size
+	 * @return true if the command could be written
+	 */
+	private boolean shedOldest(int size) {
+		this.writeLock.lock();
+		try {
+			while (this.isQueuedBytesOverflow(size)) {
+				if (!this.shedOne()) {
+					return false;
+				}
+			}
+			if (this.isInFlightOverflow()) {
+				return this.shedOne();
+			}
+			return true;
+		} finally {
+			this.writeLock.unlock();
+		}
+	}
+
+	private boolean shedOne() {
+		Command oldest = (Command) this.writeQueue.poll();
+		if (oldest == null) {
+			return false;
+		}
+		if (oldest.getIoBuffer() != null) {
+			this.scheduleWritenBytes.addAndGet(-oldest.getIoBuffer()
+					.remaining());
+		}
+		oldest.setException(new MemcachedException(
+				"Command was shed because too many commands are queued on "
+						+ this.remoteSocketAddress));
+		oldest.countDownLatch();
+		return true;
 	}
 
 	@Override
@@ -153,6 +509,14 @@ public class MemcachedTCPSession extends NioTCPSession implements
 		return this.authFailed;
 	}
 
+	public final Session[] getStandbySessions() {
+		return this.standbySessions;
+	}
+
+	final void setStandbySessions(Session[] standbySessions) {
+		this.standbySessions = standbySessions;
+	}
+
 	public void setAuthFailed(boolean authFailed) {
 		this.authFailed = authFailed;
 	}
@@ -185,13 +549,220 @@ public class MemcachedTCPSession extends NioTCPSession implements
 	 */
 	private Command takeExecutingCommand() {
 		try {
-			return this.commandAlreadySent.take();
+			Command command = this.commandAlreadySent.take();
+			this.inFlightCommandCount.decrementAndGet();
+			this.signalWriteCapacity();
+			if (this.inFlightCommands != null) {
+				this.removeInFlightCommand(command);
+			}
+			if (command.unbindSentSession()) {
+				this.cancelledCommandCount.decrementAndGet();
+			}
+			return command;
 		} catch (InterruptedException e) {
 			Thread.currentThread().interrupt();
 		}
 		return null;
 	}
 
+	/**
+	 * Whether the binary responses are correlated by opaque
+	 * 
+	 * @return
+	 */
+	public final boolean isOpaqueIndexed() {
+		return this.inFlightCommands != null;
+	}
+
+	/**
+	 * Returns the in flight command which has the opaque
+	 * 
+	 * @param opaque
+	 * @return
+	 */
+	public final Command getInFlightCommand(int opaque) {
+		synchronized (this.inFlightCommands) {
+			return this.inFlightCommands.get(opaque);
+		}
+	}
+
+	public final int getInFlightCommandCount() {
+		return this.inFlightCommandCount.get();
+	}
+
+	/**
+	 * Update the latency EWMA by a command whose response was received
+	 * 
+	 * @param command
+	 */
+	public final void recordLatency(Command command) {
+		long writeTime = command.getWriteTime();
+		if (writeTime == 0) {
+			return;
+		}
+		long now = System.nanoTime();
+		long latency = now - writeTime;
+		if (latency < 0) {
+			return;
+		}
+		long ewma = this.getLatencyEwma(now);
+		this.latencyEwma = ewma == 0 ? latency : ewma
+				+ (latency - ewma >> EWMA_SHIFT);
+		this.latencyUpdateTime = now;
+	}
+
+	/**
+	 * Returns the latency EWMA in nanoseconds
+	 * 
+	 * @param now
+	 *            System.nanoTime()
+	 * @return
+	 */
+	public final long getLatencyEwma(long now) {
+		long ewma = this.latencyEwma;
+		long idle = now - this.latencyUpdateTime;
+		if (ewma > 0 && idle >= EWMA_DECAY_NANOS) {
+			ewma >>>= Math.min(idle / EWMA_DECAY_NANOS, 63);
+		}
+		return ewma;
+	}
+
+	/**
+	 * Returns the number of commands which are waiting on this session,every
+	 * PENDING_BYTES_UNIT bytes not written yet count as one command,so a
+	 * connection stuck behind a large value looks busy.
+	 * 
+	 * @return
+	 */
+	public final long getPendingLoad() {
+		return this.getInFlightCommandCount()
+				+ (this.getScheduleWritenBytes() >> PENDING_BYTES_SHIFT);
+	}
+
+	/**
+	 * Returns the load of the session,it is the pending load weighted by the
+	 * latency EWMA rounded up to a power of two,lower is better.Connections
+	 * to one node have the same latency class,so they are compared by the
+	 * pending load only.
+	 * 
+	 * @param now
+	 *            System.nanoTime()
+	 * @return
+	 */
+	public final long getLoad(long now) {
+		int latencyClass = 64 - Long.numberOfLeadingZeros(this
+				.getLatencyEwma(now));
+		return this.getPendingLoad() + 1 << latencyClass;
+	}
+
+	private void removeInFlightCommand(Command command) {
+		if (command instanceof BaseBinaryCommand) {
+			int opaque = ((BaseBinaryCommand) command).getOpaque();
+			if (opaque != 0) {
+				synchronized (this.inFlightCommands) {
+					// the opaque may be reused after wrapping
+					if (this.inFlightCommands.get(opaque) == command) {
+						this.inFlightCommands.remove(opaque);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Take the command which the response belongs to.If the response's opaque
+	 * is indexed,the commands sent before it are not responded,they must be
+	 * quiet commands which were successful.Otherwise,take the next command in
+	 * order.
+	 * 
+	 * @param opaque
+	 *            the response's opaque
+	 */
+	public void takeCurrentCommand(int opaque) {
+		final Command command = this.getInFlightCommand(opaque);
+		if (command == null) {
+			this.takeCurrentCommand();
+			return;
+		}
+		Command head;
+		while ((head = this.takeExecutingCommand()) != command) {
+			if (head == null) {
+				return;
+			}
+			if (!(head instanceof BaseBinaryCommand)
+					|| !((BaseBinaryCommand) head).completeWithoutResponse()) {
+				head.setException(new MemcachedException(
+						"Command was not responded"));
+				head.countDownLatch();
+				throw new MemcachedDecodeException(
+						"Response out of order,opaque=" + opaque
+								+ ",expected command:" + head.getCommandType());
+			}
+		}
+		this.setCurrentCommand(command);
+	}
+
+	/**
+	 * Queue for commands already sent,it binds the commands to this session
+	 * and indexes binary commands by opaque when adding.
+	 * 
+	 * @author dennis
+	 * 
+	 */
+	private final class InFlightCommandQueue extends
+			LinkedTransferQueue<Command> {
+
+		@Override
+		public boolean offer(Command command) {
+			command.bindSentSession(MemcachedTCPSession.this);
+			if (MemcachedTCPSession.this.inFlightCommands != null
+					&& command instanceof BaseBinaryCommand) {
+				int opaque = ((BaseBinaryCommand) command).getOpaque();
+				if (opaque != 0) {
+					synchronized (MemcachedTCPSession.this.inFlightCommands) {
+						MemcachedTCPSession.this.inFlightCommands.put(opaque,
+								command);
+					}
+				}
+			}
+			MemcachedTCPSession.this.inFlightCommandCount.incrementAndGet();
+			return super.offer(command);
+		}
+
+		@Override
+		public void put(Command command) {
+			this.offer(command);
+		}
+	}
+
+	/**
+	 * Write queue which counts it's messages,size() has to traverse the
+	 * queue.Sessions only add messages by offer and take them by poll.
+	 * 
+	 * @author dennis
+	 * 
+	 */
+	public static final class WriteQueue extends
+			LinkedTransferQueue<WriteMessage> {
+		final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public boolean offer(WriteMessage message) {
+			// counted first,so a concurrent poll never makes it negative
+			this.count.incrementAndGet();
+			return super.offer(message);
+		}
+
+		@Override
+		public WriteMessage poll() {
+			WriteMessage message = super.poll();
+			if (message != null) {
+				this.count.decrementAndGet();
+			}
+			return message;
+		}
+	}
+
 	/**
 	 * is allow auto recconect if closed?
 	 * 
@@ -29,17 +29,18 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
-import java.util.concurrent.CountDownLatch;
 
 import net.rubyeye.xmemcached.MemcachedOptimizer;
 import net.rubyeye.xmemcached.buffer.BufferAllocator;
 import net.rubyeye.xmemcached.command.AssocCommandAware;
 import net.rubyeye.xmemcached.command.Command;
 import net.rubyeye.xmemcached.command.CommandType;
+import net.rubyeye.xmemcached.command.CompletionLatch;
 import net.rubyeye.xmemcached.command.OperationStatus;
 import net.rubyeye.xmemcached.command.binary.BaseBinaryCommand;
 import net.rubyeye.xmemcached.command.binary.BinaryGetCommand;
 import net.rubyeye.xmemcached.command.binary.BinaryGetMultiCommand;
+import net.rubyeye.xmemcached.command.binary.BinaryNoopCommand;
 import net.rubyeye.xmemcached.command.binary.OpCode;
 import net.rubyeye.xmemcached.command.text.TextGetOneCommand;
 import net.rubyeye.xmemcached.monitor.Constants;
@@ -66,6 +67,7 @@ public class Optimizer implements OptimizerMBean, MemcachedOptimizer {
 	private int mergeFactor = DEFAULT_MERGE_FACTOR; // default merge factor;
 	private boolean optimiezeGet = true;
 	private boolean optimiezeMergeBuffer = true;
+	private boolean optimiezeQuietPipeline = false;
 	private BufferAllocator bufferAllocator;
 	private static final Logger log = LoggerFactory.getLogger(Optimizer.class);
 	private Protocol protocol = Protocol.Binary;
@@ -118,6 +120,16 @@ public class Optimizer implements OptimizerMBean, MemcachedOptimizer {
 		this.optimiezeMergeBuffer = optimiezeMergeBuffer;
 	}
 
+	public boolean isOptimizeQuietPipeline() {
+		return optimiezeQuietPipeline;
+	}
+
+	public void setOptimizeQuietPipeline(boolean optimiezeQuietPipeline) {
+		log.warn(optimiezeQuietPipeline ? "Enable quiet commands pipeline"
+				: "Disable quiet commands pipeline");
+		this.optimiezeQuietPipeline = optimiezeQuietPipeline;
+	}
+
 	@SuppressWarnings("unchecked")
 	public Command optimize(final Command currentCommand,
 			final Queue writeQueue, final Queue<Command> executingCmds,
@@ -125,6 +137,8 @@ public class Optimizer implements OptimizerMBean, MemcachedOptimizer {
 		Command optimiezeCommand = currentCommand;
 		optimiezeCommand = optimiezeGet(writeQueue, executingCmds,
 				optimiezeCommand);
+		optimiezeCommand = optimiezeQuietPipeline(writeQueue, executingCmds,
+				optimiezeCommand, sendBufferSize);
 		optimiezeCommand = optimiezeMergeBuffer(optimiezeCommand, writeQueue,
 				executingCmds, sendBufferSize);
 		return optimiezeCommand;
@@ -175,6 +189,86 @@ public class Optimizer implements OptimizerMBean, MemcachedOptimizer {
 		return optimiezeCommand;
 	}
 
+	/**
+	 * Pipeline consecutive binary storage/delete commands with their quiet
+	 * opcodes,a noop command is appended as the fence.Only the failed commands
+	 * are responded,the others are successful when the fence's response is
+	 * arrived.
+	 * 
+	 * @param writeQueue
+	 * @param executingCmds
+	 * @param optimiezeCommand
+	 * @param sendBufferSize
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public final Command optimiezeQuietPipeline(final Queue writeQueue,
+			final Queue<Command> executingCmds, Command optimiezeCommand,
+			int sendBufferSize) {
+		if (optimiezeQuietPipeline && protocol == Protocol.Binary
+				&& canBeQuiet(optimiezeCommand)) {
+			optimiezeCommand = pipelineQuietCommands(optimiezeCommand,
+					writeQueue, executingCmds, sendBufferSize);
+		}
+		return optimiezeCommand;
+	}
+
+	private static boolean canBeQuiet(Command command) {
+		return command instanceof BaseBinaryCommand
+				&& ((BaseBinaryCommand) command).canBeQuiet();
+	}
+
+	@SuppressWarnings("unchecked")
+	private final Command pipelineQuietCommands(final Command currentCmd,
+			final Queue writeQueue, final Queue<Command> executingCmds,
+			final int sendBufferSize) {
+		final List<Command> commands = getLocalList();
+		currentCmd.setStatus(OperationStatus.WRITING);
+		commands.add(currentCmd);
+		int totalBytes = currentCmd.getIoBuffer().remaining();
+		while (commands.size() < mergeFactor && totalBytes < sendBufferSize) {
+			Command nextCmd = (Command) writeQueue.peek();
+			if (nextCmd == null) {
+				break;
+			}
+			if (nextCmd.getStatus() == OperationStatus.WRITING) {
+				break;
+			}
+			if (nextCmd.isCancel()) {
+				writeQueue.remove();
+				continue;
+			}
+			if (!canBeQuiet(nextCmd)) {
+				break;
+			}
+			nextCmd.setStatus(OperationStatus.WRITING);
+			writeQueue.remove();
+			commands.add(nextCmd);
+			totalBytes += nextCmd.getIoBuffer().remaining();
+		}
+		if (commands.size() == 1) {
+			return currentCmd;
+		}
+		if (log.isDebugEnabled()) {
+			log.debug("Pipeline " + commands.size() + " quiet commands");
+		}
+		final Command fenceCommand = new BinaryNoopCommand(
+				new CompletionLatch(1));
+		fenceCommand.encode();
+		fenceCommand.setWriteFuture(new FutureImpl<Boolean>());
+		final IoBuffer gatherBuffer = IoBuffer.allocate(totalBytes
+				+ fenceCommand.getIoBuffer().remaining());
+		for (Command command : commands) {
+			((BaseBinaryCommand) command).quietly();
+			gatherBuffer.put(command.getIoBuffer());
+			executingCmds.add(command);
+		}
+		gatherBuffer.put(fenceCommand.getIoBuffer());
+		gatherBuffer.flip();
+		fenceCommand.setIoBuffer(gatherBuffer);
+		return fenceCommand;
+	}
+
 	@SuppressWarnings("unchecked")
 	private final Command mergeBuffer(final Command firstCommand,
 			final Queue writeQueue, final Queue<Command> executingCmds,
@@ -298,7 +392,7 @@ public class Optimizer implements OptimizerMBean, MemcachedOptimizer {
 			}
 			mergedBuffer.flip();
 			BinaryGetMultiCommand resultCommand = new BinaryGetMultiCommand(
-					null, CommandType.GET_MANY, new CountDownLatch(1));
+					null, CommandType.GET_MANY, new CompletionLatch(1));
 			resultCommand.setIoBuffer(mergedBuffer);
 			return resultCommand;
 		}
@@ -322,7 +416,7 @@ public class Optimizer implements OptimizerMBean, MemcachedOptimizer {
 			// getq commands send response back
 			Command lastGetKCommand = new BinaryGetCommand(prevCommand
 					.getKey(), prevCommand.getKeyBytes(),
-					CommandType.GET_ONE, new CountDownLatch(1), OpCode.GET_KEY,
+					CommandType.GET_ONE, new CompletionLatch(1), OpCode.GET_KEY,
 					false);
 			lastGetKCommand.encode();
 			bufferList.add(lastGetKCommand.getIoBuffer());
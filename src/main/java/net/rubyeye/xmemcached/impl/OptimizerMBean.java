@@ -42,5 +42,9 @@ public interface OptimizerMBean {
 
 	public void setOptimizeMergeBuffer(boolean optimiezeMergeBuffer);
 
+	public boolean isOptimizeQuietPipeline();
+
+	public void setOptimizeQuietPipeline(boolean optimiezeQuietPipeline);
+
 
 }
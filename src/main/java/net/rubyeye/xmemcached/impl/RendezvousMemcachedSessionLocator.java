@@ -0,0 +1,145 @@
+/**
+ *Copyright [2009-2010] [dennis zhuang(killme2008@gmail.com)]
+ *Licensed under the Apache License, Version 2.0 (the "License");
+ *you may not use this file except in compliance with the License.
+ *You may obtain a copy of the License at
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *Unless required by applicable law or agreed to in writing,
+ *software distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ *either express or implied. See the License for the specific language governing permissions and limitations under the License
+ */
+package net.rubyeye.xmemcached.impl;
+
+import java.util.Collection;
+
+import net.rubyeye.xmemcached.HashAlgorithm;
+
+import com.google.code.yanf4j.core.Session;
+
+/**
+ * Weighted rendezvous(highest random weight) hash strategy.Every node has a
+ * seed which is computed from it's address when sessions are updated,a key is
+ * hashed only once and scored against the seeds,the node with the highest
+ * score wins.The score is -weight/ln(u),so a node receives keys in proportion
+ * to it's weight,and only the keys of a removed node are moved.
+ * 
+ * @author dennis
+ * 
+ */
+public class RendezvousMemcachedSessionLocator extends
+		AbstractMemcachedSessionLocator {
+
+	/**
+	 * 2^-53
+	 */
+	private static final double DOUBLE_UNIT = 1.0 / (1L << 53);
+
+	private final HashAlgorithm hashAlgorithm;
+	private transient volatile Nodes nodes = new Nodes(new SessionGroup[0]);
+
+	/**
+	 * Immutable nodes with precomputed seeds and weights
+	 * 
+	 * @author dennis
+	 * 
+	 */
+	static final class Nodes {
+		final SessionGroup[] groups;
+		final long[] seeds;
+		final double[] weights;
+		/**
+		 * If all weights are equal,the raw hash is the score
+		 */
+		final boolean weighted;
+
+		Nodes(SessionGroup[] groups) {
+			this.groups = groups;
+			this.seeds = new long[groups.length];
+			this.weights = new double[groups.length];
+			boolean weighted = false;
+			for (int i = 0; i < groups.length; i++) {
+				this.seeds[i] = SessionGroup.mix(HashAlgorithm.FNV1A_64_HASH
+						.hash(groups[i].address));
+				this.weights[i] = groups[i].weight;
+				if (groups[i].weight != groups[0].weight) {
+					weighted = true;
+				}
+			}
+			this.weighted = weighted;
+		}
+
+		double score(int i, long keyHash) {
+			long h = SessionGroup.mix(this.seeds[i] ^ keyHash);
+			if (!this.weighted) {
+				// unsigned comparing order
+				return (h >>> 11) * DOUBLE_UNIT;
+			}
+			// u is in (0,1)
+			double u = ((h >>> 11) + 0.5) * DOUBLE_UNIT;
+			return -this.weights[i] / Math.log(u);
+		}
+	}
+
+	public RendezvousMemcachedSessionLocator() {
+		this.hashAlgorithm = HashAlgorithm.FNV1A_64_HASH;
+	}
+
+	public RendezvousMemcachedSessionLocator(HashAlgorithm hashAlgorithm) {
+		this.hashAlgorithm = hashAlgorithm;
+	}
+
+	public final Session getSessionByKey(final String key) {
+		if (this.nodes.groups.length == 0) {
+			return null;
+		}
+		return this.getSessionByHash(this.hashAlgorithm.hash(key));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.rubyeye.xmemcached.MemcachedSessionLocator#getSessionByKey(byte[])
+	 */
+	@Override
+	public final Session getSessionByKey(final byte[] keyBytes) {
+		if (this.nodes.groups.length == 0) {
+			return null;
+		}
+		return this.getSessionByHash(this.hashAlgorithm.hash(keyBytes));
+	}
+
+	private Session getSessionByHash(long hash) {
+		final Nodes nodes = this.nodes;
+		final SessionGroup[] groups = nodes.groups;
+		if (groups.length == 0) {
+			return null;
+		}
+		final long keyHash = SessionGroup.mix(hash);
+		int best = -1;
+		double bestScore = -1;
+		// the best available node if it is not failure mode
+		int bestAvailable = -1;
+		double bestAvailableScore = -1;
+		for (int i = 0; i < groups.length; i++) {
+			double score = nodes.score(i, keyHash);
+			if (score > bestScore) {
+				best = i;
+				bestScore = score;
+			}
+			if (!this.failureMode && score > bestAvailableScore
+					&& groups[i].isAvailable()) {
+				bestAvailable = i;
+				bestAvailableScore = score;
+			}
+		}
+		if (!this.failureMode && bestAvailable >= 0) {
+			best = bestAvailable;
+		}
+		return groups[best].select();
+	}
+
+	public final void updateSessions(final Collection<Session> list) {
+		this.nodes = new Nodes(SessionGroup.group(list));
+	}
+}
@@ -0,0 +1,140 @@
+/**
+ *Copyright [2009-2010] [dennis zhuang(killme2008@gmail.com)]
+ *Licensed under the Apache License, Version 2.0 (the "License");
+ *you may not use this file except in compliance with the License.
+ *You may obtain a copy of the License at
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *Unless required by applicable law or agreed to in writing,
+ *software distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ *either express or implied. See the License for the specific language governing permissions and limitations under the License
+ */
+package net.rubyeye.xmemcached.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.rubyeye.xmemcached.networking.MemcachedSession;
+
+import com.google.code.yanf4j.core.Session;
+
+/**
+ * Sessions connected to the same memcached node,there are many sessions if
+ * connection pool is used.It is used by session locators which hash keys to
+ * nodes instead of sessions.
+ * 
+ * @author dennis
+ * 
+ */
+final class SessionGroup {
+	final String address;
+	final Session[] sessions;
+	final int weight;
+
+	private SessionGroup(String address, Session[] sessions, int weight) {
+		this.address = address;
+		this.sessions = sessions;
+		this.weight = weight;
+	}
+
+	private SessionGroup(String address, List<Session> sessions) {
+		this.address = address;
+		this.sessions = sessions.toArray(new Session[sessions.size()]);
+		Session first = this.sessions[0];
+		if (first instanceof MemcachedSession) {
+			this.weight = Math.max(((MemcachedSession) first).getWeight(), 1);
+		} else {
+			this.weight = 1;
+		}
+	}
+
+	/**
+	 * Group sessions by remote address,keep the order of the sessions
+	 * 
+	 * @param list
+	 * @return
+	 */
+	static SessionGroup[] group(Collection<Session> list) {
+		Map<String, List<Session>> groups = new LinkedHashMap<String, List<Session>>();
+		for (Session session : list) {
+			String address = String.valueOf(session.getRemoteSocketAddress());
+			List<Session> sessions = groups.get(address);
+			if (sessions == null) {
+				sessions = new ArrayList<Session>(1);
+				groups.put(address, sessions);
+			}
+			sessions.add(session);
+		}
+		SessionGroup[] result = new SessionGroup[groups.size()];
+		int i = 0;
+		for (Map.Entry<String, List<Session>> entry : groups.entrySet()) {
+			result[i++] = new SessionGroup(entry.getKey(), entry.getValue());
+		}
+		return result;
+	}
+
+	/**
+	 * A node whose sessions were removed,it has no session and is never
+	 * available.Locators keep it in place of the node,so that other nodes'
+	 * positions do not change.
+	 * 
+	 * @param address
+	 * @param weight
+	 * @return
+	 */
+	static SessionGroup removed(String address, int weight) {
+		return new SessionGroup(address, new Session[0], weight);
+	}
+
+	/**
+	 * Whether any session of this node is open
+	 * 
+	 * @return
+	 */
+	boolean isAvailable() {
+		for (Session session : this.sessions) {
+			if (!session.isClosed()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Select the least loaded session,prefer open sessions
+	 * 
+	 * @return
+	 */
+	Session select() {
+		final Session[] sessions = this.sessions;
+		if (sessions.length == 1) {
+			return sessions[0];
+		}
+		Session selected = LeastLoadedSelector.select(sessions, 0,
+				sessions.length);
+		if (!selected.isClosed()) {
+			return selected;
+		}
+		for (Session session : sessions) {
+			if (!session.isClosed()) {
+				return session;
+			}
+		}
+		return selected;
+	}
+
+	/**
+	 * 64 bits finalizer of SplitMix64,it spreads the hash bits
+	 * 
+	 * @param h
+	 * @return
+	 */
+	static long mix(long h) {
+		h = (h ^ h >>> 30) * 0xbf58476d1ce4e5b9L;
+		h = (h ^ h >>> 27) * 0x94d049bb133111ebL;
+		return h ^ h >>> 31;
+	}
+}
@@ -31,9 +31,11 @@ import java.util.Set;
 import java.util.concurrent.Future;
 
 import net.rubyeye.xmemcached.MemcachedSessionLocator;
+import net.rubyeye.xmemcached.OverflowPolicy;
 import net.rubyeye.xmemcached.buffer.BufferAllocator;
 import net.rubyeye.xmemcached.command.Command;
 import net.rubyeye.xmemcached.exception.MemcachedException;
+import net.rubyeye.xmemcached.impl.HotKeyDetector;
 import net.rubyeye.xmemcached.impl.ReconnectRequest;
 import net.rubyeye.xmemcached.utils.InetSocketAddressWrapper;
 
@@ -50,6 +52,22 @@ import com.google.code.yanf4j.core.SocketOption;
 public interface Connector extends Controller {
 	public void setOptimizeMergeBuffer(boolean optimiezeMergeBuffer);
 
+	public void setOptimizeQuietPipeline(boolean optimizeQuietPipeline);
+
+	public void setTimeoutBacklogThreshold(int timeoutBacklogThreshold);
+
+	public void setMaxInFlightCommands(int maxInFlightCommands);
+
+	public void setMaxQueuedBytes(long maxQueuedBytes);
+
+	public void setOverflowPolicy(OverflowPolicy overflowPolicy);
+
+	public void setOverflowBlockTimeout(long overflowBlockTimeout);
+
+	public void setHotKeyReplicas(int hotKeyReplicas);
+
+	public HotKeyDetector getHotKeyDetector();
+
 	public void setMergeFactor(int factor);
 
 	public void setOptimizeGet(boolean optimizeGet);
@@ -68,6 +86,9 @@ public interface Connector extends Controller {
 
 	public void send(Command packet) throws MemcachedException;
 
+	public void send(Command packet, Session session)
+			throws MemcachedException;
+
 	public void setConnectionPoolSize(int connectionPoolSize);
 
 	public void setBufferAllocator(BufferAllocator bufferAllocator);
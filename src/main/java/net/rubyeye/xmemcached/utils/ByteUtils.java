@@ -125,6 +125,47 @@ public final class ByteUtils {
 		}
 	}
 
+	/**
+	 * Check the key like checkKey(String) and put it into the buffer in
+	 * utf-8,ASCII keys are put char by char without being encoded.The buffer
+	 * is expected to reserve key.length() bytes for the key,it is expanded
+	 * for a non-ASCII key and the room after the key is kept.
+	 * 
+	 * @param buffer
+	 * @param key
+	 * @return the key length in bytes
+	 */
+	public static final int putKey(final IoBuffer buffer, final String key) {
+		if (key == null || key.length() == 0) {
+			throw new IllegalArgumentException("Key must not be blank");
+		}
+		final int length = key.length();
+		final boolean validate = memcachedProtocol == Protocol.Text || testing;
+		final int start = buffer.position();
+		final int reserved = buffer.remaining() - length;
+		for (int i = 0; i < length; i++) {
+			final char c = key.charAt(i);
+			if (c >= 0x80) {
+				byte[] keyBytes = getBytes(key);
+				checkKey(keyBytes);
+				buffer.position(start);
+				buffer.expand(keyBytes.length + Math.max(reserved, 0));
+				buffer.put(keyBytes);
+				return keyBytes.length;
+			}
+			if (validate && (c == ' ' || c == '\n' || c == '\r' || c == 0)) {
+				throw new IllegalArgumentException(
+						"Key contains invalid characters:\"" + key + "\"");
+			}
+			buffer.put((byte) c);
+		}
+		if (length > ByteUtils.maxKeyLength) {
+			throw new IllegalArgumentException("Key is too long (maxlen = "
+					+ ByteUtils.maxKeyLength + ")");
+		}
+		return length;
+	}
+
 	private static Protocol memcachedProtocol = Protocol.Text;
 
 	private static int maxKeyLength = 250;
@@ -0,0 +1,177 @@
+/**
+ *Copyright [2009-2010] [dennis zhuang(killme2008@gmail.com)]
+ *Licensed under the Apache License, Version 2.0 (the "License");
+ *you may not use this file except in compliance with the License.
+ *You may obtain a copy of the License at
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *Unless required by applicable law or agreed to in writing,
+ *software distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ *either express or implied. See the License for the specific language governing permissions and limitations under the License
+ */
+package net.rubyeye.xmemcached.utils;
+
+/**
+ * A hash map with primitive int keys,it uses open addressing with linear
+ * probing,keys are never boxed.Null values are not permitted.It is not thread
+ * safe.
+ *
+ * @author dennis
+ *
+ * @param <V>
+ */
+public final class IntHashMap<V> {
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private int[] keys;
+	private Object[] values;
+	private int mask;
+	private int size;
+	private int threshold;
+
+	public IntHashMap() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public IntHashMap(int initialCapacity) {
+		if (initialCapacity < 0) {
+			throw new IllegalArgumentException("Illegal capacity:"
+					+ initialCapacity);
+		}
+		int capacity = 2;
+		// load factor is 0.5
+		while (capacity < initialCapacity * 2) {
+			capacity <<= 1;
+		}
+		this.allocate(capacity);
+	}
+
+	private void allocate(int capacity) {
+		this.keys = new int[capacity];
+		this.values = new Object[capacity];
+		this.mask = capacity - 1;
+		this.threshold = capacity >>> 1;
+	}
+
+	private int indexOf(int key) {
+		int h = key * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & this.mask;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(int key) {
+		int index = this.indexOf(key);
+		Object value;
+		while ((value = this.values[index]) != null) {
+			if (this.keys[index] == key) {
+				return (V) value;
+			}
+			index = (index + 1) & this.mask;
+		}
+		return null;
+	}
+
+	public boolean containsKey(int key) {
+		return this.get(key) != null;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V put(int key, V value) {
+		if (value == null) {
+			throw new NullPointerException("Null value");
+		}
+		int index = this.indexOf(key);
+		Object old;
+		while ((old = this.values[index]) != null) {
+			if (this.keys[index] == key) {
+				this.values[index] = value;
+				return (V) old;
+			}
+			index = (index + 1) & this.mask;
+		}
+		this.keys[index] = key;
+		this.values[index] = value;
+		if (++this.size > this.threshold) {
+			this.rehash(this.keys.length << 1);
+		}
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V remove(int key) {
+		int index = this.indexOf(key);
+		Object value;
+		while ((value = this.values[index]) != null) {
+			if (this.keys[index] == key) {
+				this.size--;
+				this.shiftKeys(index);
+				return (V) value;
+			}
+			index = (index + 1) & this.mask;
+		}
+		return null;
+	}
+
+	/**
+	 * Backward shift deletion,so that no tombstone is needed
+	 *
+	 * @param index
+	 */
+	private void shiftKeys(int index) {
+		int last;
+		for (;;) {
+			last = index;
+			index = (index + 1) & this.mask;
+			for (;;) {
+				if (this.values[index] == null) {
+					this.values[last] = null;
+					return;
+				}
+				int slot = this.indexOf(this.keys[index]);
+				// move it if it's ideal slot is not in (last,index]
+				if (last <= index ? last >= slot || slot > index
+						: last >= slot && slot > index) {
+					break;
+				}
+				index = (index + 1) & this.mask;
+			}
+			this.keys[last] = this.keys[index];
+			this.values[last] = this.values[index];
+		}
+	}
+
+	private void rehash(int capacity) {
+		int[] oldKeys = this.keys;
+		Object[] oldValues = this.values;
+		this.allocate(capacity);
+		for (int i = 0; i < oldValues.length; i++) {
+			if (oldValues[i] != null) {
+				int index = this.indexOf(oldKeys[i]);
+				while (this.values[index] != null) {
+					index = (index + 1) & this.mask;
+				}
+				this.keys[index] = oldKeys[i];
+				this.values[index] = oldValues[i];
+			}
+		}
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	public void clear() {
+		if (this.size > 0) {
+			for (int i = 0; i < this.values.length; i++) {
+				this.values[i] = null;
+			}
+			this.size = 0;
+		}
+	}
+
+}
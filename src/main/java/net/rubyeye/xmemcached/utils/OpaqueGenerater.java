@@ -22,8 +22,13 @@
  */
 package net.rubyeye.xmemcached.utils;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
- * Opaque generator for memcached binary xxxq(getq,addq etc.) commands
+ * Opaque generator for memcached binary commands.It is lock free,every thread
+ * reserves a block of opaques from a global atomic sequence and hands them out
+ * locally,so threads only contend once per block.Opaques are positive and
+ * unique until the sequence wraps.
  * 
  * @author dennis
  * 
@@ -33,7 +38,23 @@ public final class OpaqueGenerater {
 
 	}
 
-	private int counter = 0;
+	static final int BLOCK_SIZE = 1024;
+
+	// BLOCK_SIZE*BLOCK_COUNT=2^31,all the opaques are non-negative
+	static final int BLOCK_COUNT = 1 << 21;
+
+	private final AtomicInteger blockSequence = new AtomicInteger();
+
+	/**
+	 * Current block of thread,block[0] is the next opaque and block[1] is the
+	 * end(exclusive)
+	 */
+	private final ThreadLocal<int[]> localBlock = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			return new int[2];
+		}
+	};
 
 	static final class SingletonHolder {
 		static final OpaqueGenerater opaqueGenerater = new OpaqueGenerater();
@@ -43,12 +64,18 @@ public final class OpaqueGenerater {
 		return SingletonHolder.opaqueGenerater;
 	}
 
-	public synchronized int getNextValue() {
-		int result = this.counter++;
-		if (result < 0) {
-			this.counter = 0;
+	public int getNextValue() {
+		final int[] block = this.localBlock.get();
+		if (block[0] == block[1]) {
+			int start = (this.blockSequence.getAndIncrement() & (BLOCK_COUNT - 1))
+					* BLOCK_SIZE;
+			// the end of last block overflows to Integer.MIN_VALUE,it is
+			// still reached by increasing
+			block[1] = start + BLOCK_SIZE;
+			// zero is reserved for commands which have no opaque
+			block[0] = start == 0 ? 1 : start;
 		}
-		return result;
+		return block[0]++;
 	}
 
 }
@@ -23,6 +23,9 @@ public class ConfigurationTest extends TestCase {
 		assertEquals(5 * 60 * 1000, this.configuration.getStatisticsInterval());
 		assertFalse(this.configuration.isStatisticsServer());
 		assertEquals(5000L, this.configuration.getSessionIdleTimeout());
+		assertFalse(this.configuration.isSharedReadBuffer());
+		this.configuration.setSharedReadBuffer(true);
+		assertTrue(this.configuration.isSharedReadBuffer());
 
 		this.configuration.setSessionReadBufferSize(8 * 1024);
 		assertEquals(8 * 1024, this.configuration.getSessionReadBufferSize());
@@ -0,0 +1,107 @@
+package com.google.code.yanf4j.test.unittest.core.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import junit.framework.TestCase;
+
+import com.google.code.yanf4j.core.Dispatcher;
+import com.google.code.yanf4j.core.impl.DispatchBatch;
+
+public class DispatchBatchUnitTest extends TestCase {
+
+	static class RecordingDispatcher implements Dispatcher {
+		final List<Runnable> tasks = new ArrayList<Runnable>();
+
+		public void dispatch(Runnable r) {
+			this.tasks.add(r);
+		}
+
+		public void stop() {
+		}
+	}
+
+	static class Task implements Runnable {
+		final int id;
+		final List<Integer> runs;
+
+		Task(int id, List<Integer> runs) {
+			this.id = id;
+			this.runs = runs;
+		}
+
+		public void run() {
+			this.runs.add(this.id);
+		}
+	}
+
+	public void testDispatchWithoutBatch() {
+		RecordingDispatcher dispatcher = new RecordingDispatcher();
+		List<Integer> runs = new ArrayList<Integer>();
+		DispatchBatch.dispatch(dispatcher, new Task(1, runs));
+		DispatchBatch.dispatch(dispatcher, new Task(2, runs));
+		assertEquals(2, dispatcher.tasks.size());
+	}
+
+	public void testBatch() {
+		RecordingDispatcher first = new RecordingDispatcher();
+		RecordingDispatcher second = new RecordingDispatcher();
+		List<Integer> runs = new ArrayList<Integer>();
+		DispatchBatch batch = DispatchBatch.begin();
+		assertNotNull(batch);
+		// nested batch is not allowed
+		assertNull(DispatchBatch.begin());
+		for (int i = 0; i < 40; i++) {
+			DispatchBatch.dispatch(first, new Task(i, runs));
+		}
+		Task single = new Task(100, runs);
+		DispatchBatch.dispatch(second, single);
+		assertTrue(first.tasks.isEmpty());
+		assertTrue(second.tasks.isEmpty());
+		batch.end();
+
+		assertEquals(1, first.tasks.size());
+		assertEquals(1, second.tasks.size());
+		// a single task is not wrapped
+		assertSame(single, second.tasks.get(0));
+		first.tasks.get(0).run();
+		assertEquals(40, runs.size());
+		for (int i = 0; i < 40; i++) {
+			assertEquals(i, (int) runs.get(i));
+		}
+
+		// closed
+		DispatchBatch.dispatch(first, new Task(1, runs));
+		assertEquals(2, first.tasks.size());
+		batch = DispatchBatch.begin();
+		assertNotNull(batch);
+		batch.end();
+		assertEquals(2, first.tasks.size());
+	}
+
+	public void testTaskErrorAndRejection() {
+		final List<Integer> runs = new ArrayList<Integer>();
+		Dispatcher rejecting = new Dispatcher() {
+			public void dispatch(Runnable r) {
+				throw new RejectedExecutionException();
+			}
+
+			public void stop() {
+			}
+		};
+		DispatchBatch batch = DispatchBatch.begin();
+		DispatchBatch.dispatch(rejecting, new Task(1, runs));
+		DispatchBatch.dispatch(rejecting, new Runnable() {
+			public void run() {
+				throw new IllegalStateException();
+			}
+		});
+		DispatchBatch.dispatch(rejecting, new Task(3, runs));
+		// rejected tasks run in current thread,an error does not stop others
+		batch.end();
+		assertEquals(2, runs.size());
+		assertEquals(1, (int) runs.get(0));
+		assertEquals(3, (int) runs.get(1));
+	}
+}
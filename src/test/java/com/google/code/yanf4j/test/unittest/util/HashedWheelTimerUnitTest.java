@@ -0,0 +1,100 @@
+package com.google.code.yanf4j.test.unittest.util;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import com.google.code.yanf4j.util.HashedWheelTimer;
+
+public class HashedWheelTimerUnitTest extends TestCase {
+	HashedWheelTimer timer;
+
+	@Override
+	protected void setUp() throws Exception {
+		this.timer = new HashedWheelTimer("test-timer", 10,
+				TimeUnit.MILLISECONDS, 8);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		this.timer.stop();
+	}
+
+	public void testExpire() throws Exception {
+		final CountDownLatch latch = new CountDownLatch(1);
+		long start = System.nanoTime();
+		HashedWheelTimer.Timeout timeout = this.timer.newTimeout(
+				new Runnable() {
+					public void run() {
+						latch.countDown();
+					}
+				}, 100, TimeUnit.MILLISECONDS);
+		assertTrue(latch.await(5000, TimeUnit.MILLISECONDS));
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS
+				.toNanos(100));
+		assertTrue(timeout.isExpired());
+		assertFalse(timeout.cancel());
+		assertEquals(0, this.timer.getPendingTimeouts());
+	}
+
+	public void testManyRounds() throws Exception {
+		// the wheel is 80ms per round
+		final CountDownLatch latch = new CountDownLatch(3);
+		for (int delay : new int[] { 5, 90, 250 }) {
+			this.timer.newTimeout(new Runnable() {
+				public void run() {
+					latch.countDown();
+				}
+			}, delay, TimeUnit.MILLISECONDS);
+		}
+		assertEquals(3, this.timer.getPendingTimeouts());
+		assertTrue(latch.await(5000, TimeUnit.MILLISECONDS));
+		assertEquals(0, this.timer.getPendingTimeouts());
+	}
+
+	public void testCancel() throws Exception {
+		final AtomicInteger counter = new AtomicInteger();
+		Runnable task = new Runnable() {
+			public void run() {
+				counter.incrementAndGet();
+			}
+		};
+		HashedWheelTimer.Timeout cancelled = this.timer.newTimeout(task, 50,
+				TimeUnit.MILLISECONDS);
+		this.timer.newTimeout(task, 50, TimeUnit.MILLISECONDS);
+		assertTrue(cancelled.cancel());
+		assertFalse(cancelled.cancel());
+		assertTrue(cancelled.isCancelled());
+		Thread.sleep(300);
+		assertEquals(1, counter.get());
+		assertEquals(0, this.timer.getPendingTimeouts());
+	}
+
+	public void testStop() throws Exception {
+		final CountDownLatch latch = new CountDownLatch(2);
+		Runnable task = new Runnable() {
+			public void run() {
+				latch.countDown();
+			}
+		};
+		this.timer.newTimeout(task, 10, TimeUnit.SECONDS);
+		Thread.sleep(50);
+		this.timer.newTimeout(task, 1, TimeUnit.HOURS);
+		this.timer.stop();
+		assertTrue(this.timer.isStopped());
+		// pending timeouts are expired at once
+		assertTrue(latch.await(5000, TimeUnit.MILLISECONDS));
+		assertEquals(0, this.timer.getPendingTimeouts());
+		try {
+			this.timer.newTimeout(new Runnable() {
+				public void run() {
+				}
+			}, 10, TimeUnit.MILLISECONDS);
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals("Timer has been stopped", e.getMessage());
+		}
+	}
+}
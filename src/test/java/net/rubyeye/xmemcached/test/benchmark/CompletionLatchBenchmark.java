@@ -0,0 +1,85 @@
+package net.rubyeye.xmemcached.test.benchmark;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.rubyeye.xmemcached.command.CompletionLatch;
+
+/**
+ * Compare CountDownLatch with CompletionLatch.A caller thread hands a fresh
+ * latch to a "reactor" thread and waits on it,just like a blocking memcached
+ * operation.
+ * 
+ * Usage:CompletionLatchBenchmark [rounds] [times]
+ * 
+ * @author dennis
+ * 
+ */
+public class CompletionLatchBenchmark {
+
+	interface LatchFactory {
+		CountDownLatch newLatch();
+	}
+
+	static final class Reactor extends Thread {
+		final AtomicReference<CountDownLatch> slot = new AtomicReference<CountDownLatch>();
+		volatile boolean stopped;
+
+		Reactor() {
+			super("benchmark-reactor");
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			while (!this.stopped) {
+				CountDownLatch latch = this.slot.getAndSet(null);
+				if (latch != null) {
+					latch.countDown();
+				}
+			}
+		}
+	}
+
+	static long run(Reactor reactor, LatchFactory factory, int times)
+			throws InterruptedException {
+		long start = System.nanoTime();
+		for (int i = 0; i < times; i++) {
+			CountDownLatch latch = factory.newLatch();
+			reactor.slot.set(latch);
+			if (!latch.await(1000, TimeUnit.MILLISECONDS)) {
+				throw new IllegalStateException("Timeout");
+			}
+		}
+		return System.nanoTime() - start;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+		int times = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+		LatchFactory jdk = new LatchFactory() {
+			public CountDownLatch newLatch() {
+				return new CountDownLatch(1);
+			}
+		};
+		LatchFactory completion = new LatchFactory() {
+			public CountDownLatch newLatch() {
+				return new CompletionLatch(1);
+			}
+		};
+		Reactor reactor = new Reactor();
+		reactor.start();
+		// warm up
+		run(reactor, jdk, times);
+		run(reactor, completion, times);
+		for (int i = 0; i < rounds; i++) {
+			long jdkTime = run(reactor, jdk, times);
+			long completionTime = run(reactor, completion, times);
+			System.out.println("round " + i + ":CountDownLatch "
+					+ (jdkTime / times) + " ns/op,CompletionLatch "
+					+ (completionTime / times) + " ns/op");
+		}
+		reactor.stopped = true;
+	}
+}
@@ -0,0 +1,141 @@
+package net.rubyeye.xmemcached.test.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import net.rubyeye.xmemcached.HashAlgorithm;
+import net.rubyeye.xmemcached.impl.KetamaMemcachedSessionLocator;
+import net.rubyeye.xmemcached.test.unittest.MockSession;
+
+import com.google.code.yanf4j.core.Session;
+
+/**
+ * Lookup throughput of the array based ketama ring and the TreeMap based ring
+ * which it replaces,for 10/100/1000 nodes.Hashes are computed before,so only
+ * the ring lookup is measured,then the whole getSessionByKey is measured.
+ * 
+ * Usage:KetamaLocatorBenchmark [times] [rounds]
+ * 
+ * @author dennis
+ * 
+ */
+public class KetamaLocatorBenchmark {
+
+	/**
+	 * The lookup of KetamaMemcachedSessionLocator before it used arrays
+	 */
+	static final class TreeMapRing {
+		private final TreeMap<Long, List<Session>> sessionMap = new TreeMap<Long, List<Session>>();
+		private final Random random = new Random();
+
+		TreeMapRing(List<Session> list) {
+			for (Session session : list) {
+				String sockStr = String.valueOf(session.getRemoteSocketAddress());
+				for (int i = 0; i < 160 / 4; i++) {
+					byte[] digest = HashAlgorithm.computeMd5(sockStr + "-" + i);
+					for (int h = 0; h < 4; h++) {
+						long k = (long) (digest[3 + h * 4] & 0xFF) << 24
+								| (long) (digest[2 + h * 4] & 0xFF) << 16
+								| (long) (digest[1 + h * 4] & 0xFF) << 8
+								| digest[h * 4] & 0xFF;
+						List<Session> sessionList = this.sessionMap.get(k);
+						if (sessionList == null) {
+							sessionList = new ArrayList<Session>();
+							this.sessionMap.put(k, sessionList);
+						}
+						sessionList.add(session);
+					}
+				}
+			}
+		}
+
+		Session getSessionByHash(long hash) {
+			Long resultHash = hash;
+			if (!this.sessionMap.containsKey(hash)) {
+				SortedMap<Long, List<Session>> tailMap = this.sessionMap
+						.tailMap(hash);
+				if (tailMap.isEmpty()) {
+					resultHash = this.sessionMap.firstKey();
+				} else {
+					resultHash = tailMap.firstKey();
+				}
+			}
+			List<Session> sessionList = this.sessionMap.get(resultHash);
+			return sessionList.get(this.random.nextInt(sessionList.size()));
+		}
+
+		Session getSessionByKey(String key) {
+			return this.getSessionByHash(HashAlgorithm.KETAMA_HASH.hash(key));
+		}
+	}
+
+	static volatile Object sink;
+
+	static void report(String name, int times, long nanos) {
+		System.out.println(name + ":" + (times * 1000000000L / nanos)
+				+ " ops/s," + (nanos / times) + " ns/op");
+	}
+
+	static void bench(int nodes, String[] keys, long[] hashes, int times) {
+		List<Session> sessions = new ArrayList<Session>(nodes);
+		for (int i = 0; i < nodes; i++) {
+			sessions.add(new MockSession(10000 + i));
+		}
+		KetamaMemcachedSessionLocator locator = new KetamaMemcachedSessionLocator();
+		locator.updateSessions(sessions);
+		TreeMapRing treeMapRing = new TreeMapRing(sessions);
+		int mask = hashes.length - 1;
+
+		long start = System.nanoTime();
+		for (int i = 0; i < times; i++) {
+			sink = treeMapRing.getSessionByHash(hashes[i & mask]);
+		}
+		report("  " + nodes + " nodes,TreeMap getSessionByHash", times,
+				System.nanoTime() - start);
+		start = System.nanoTime();
+		for (int i = 0; i < times; i++) {
+			sink = locator.getSessionByHash(hashes[i & mask]);
+		}
+		report("  " + nodes + " nodes,array getSessionByHash", times, System
+				.nanoTime()
+				- start);
+		start = System.nanoTime();
+		for (int i = 0; i < times; i++) {
+			sink = treeMapRing.getSessionByKey(keys[i & mask]);
+		}
+		report("  " + nodes + " nodes,TreeMap getSessionByKey", times,
+				System.nanoTime() - start);
+		start = System.nanoTime();
+		for (int i = 0; i < times; i++) {
+			sink = locator.getSessionByKey(keys[i & mask]);
+		}
+		report("  " + nodes + " nodes,array getSessionByKey", times, System
+				.nanoTime()
+				- start);
+	}
+
+	public static void main(String[] args) {
+		int times = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		String[] keys = new String[1 << 16];
+		long[] hashes = new long[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = "key" + i;
+			hashes[i] = HashAlgorithm.KETAMA_HASH.hash(keys[i]);
+		}
+		// warm up
+		for (int nodes : new int[] { 10, 100, 1000 }) {
+			bench(nodes, keys, hashes, times);
+		}
+		System.out.println("times=" + times);
+		for (int i = 0; i < rounds; i++) {
+			System.out.println("round " + i);
+			for (int nodes : new int[] { 10, 100, 1000 }) {
+				bench(nodes, keys, hashes, times);
+			}
+		}
+	}
+}
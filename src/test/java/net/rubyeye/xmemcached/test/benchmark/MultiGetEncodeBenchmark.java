@@ -0,0 +1,143 @@
+package net.rubyeye.xmemcached.test.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.rubyeye.xmemcached.CommandFactory;
+import net.rubyeye.xmemcached.HashAlgorithm;
+import net.rubyeye.xmemcached.MemcachedSessionLocator;
+import net.rubyeye.xmemcached.command.BinaryCommandFactory;
+import net.rubyeye.xmemcached.command.Command;
+import net.rubyeye.xmemcached.command.CommandType;
+import net.rubyeye.xmemcached.command.TextCommandFactory;
+import net.rubyeye.xmemcached.impl.KetamaMemcachedSessionLocator;
+import net.rubyeye.xmemcached.impl.KeyPartition;
+import net.rubyeye.xmemcached.test.unittest.MockSession;
+import net.rubyeye.xmemcached.transcoders.SerializingTranscoder;
+import net.rubyeye.xmemcached.transcoders.Transcoder;
+
+import com.google.code.yanf4j.core.Session;
+
+/**
+ * Partition and encode throughput of multi-get,the HashMap/ArrayList
+ * partition with string joined keys which was used before,and the
+ * KeyPartition with keys encoded straight into per-session buffers.The
+ * default hash is FNV1A_32_HASH,because the md5 of KETAMA_HASH takes most of
+ * the time of both.
+ * 
+ * Usage:MultiGetEncodeBenchmark [times] [rounds] [keys] [nodes] [hash]
+ * 
+ * @author dennis
+ * 
+ */
+public class MultiGetEncodeBenchmark {
+
+	static volatile Object sink;
+
+	static void report(String name, int times, long nanos) {
+		System.out.println(name + ":" + (times * 1000000000L / nanos)
+				+ " ops/s," + (nanos / times) + " ns/op");
+	}
+
+	/**
+	 * XMemcachedClient.catalogKeys before KeyPartition
+	 */
+	static List<Command> encodeByMap(List<String> keys,
+			MemcachedSessionLocator locator, CommandFactory commandFactory,
+			Transcoder<Object> transcoder) {
+		final Map<Session, List<String>> catalogMap = new HashMap<Session, List<String>>();
+		for (String key : keys) {
+			Session index = locator.getSessionByKey(key);
+			if (!catalogMap.containsKey(index)) {
+				List<String> tmpKeys = new ArrayList<String>(100);
+				tmpKeys.add(key);
+				catalogMap.put(index, tmpKeys);
+			} else {
+				catalogMap.get(index).add(key);
+			}
+		}
+		List<Command> commands = new ArrayList<Command>(catalogMap.size());
+		for (List<String> catalogKeys : catalogMap.values()) {
+			Command command = commandFactory.createGetMultiCommand(
+					catalogKeys, null, CommandType.GET_MANY, transcoder);
+			command.encode();
+			commands.add(command);
+		}
+		return commands;
+	}
+
+	static List<Command> encodeByPartition(List<String> keys,
+			MemcachedSessionLocator locator, CommandFactory commandFactory,
+			Transcoder<Object> transcoder) throws Exception {
+		KeyPartition partition = KeyPartition.get();
+		try {
+			partition.partition(keys, locator);
+			List<Command> commands = new ArrayList<Command>(partition
+					.getSessionCount());
+			for (int slot = 0; slot < partition.getSessionCount(); slot++) {
+				Command command = commandFactory.createGetMultiCommand(
+						partition.getKeys(), partition.getIndexes(), partition
+								.getOffset(slot), partition.getCount(slot),
+						null, CommandType.GET_MANY, transcoder);
+				command.encode();
+				commands.add(command);
+			}
+			return commands;
+		} finally {
+			partition.clear();
+		}
+	}
+
+	static void bench(String protocol, CommandFactory commandFactory,
+			List<String> keys, MemcachedSessionLocator locator, int times)
+			throws Exception {
+		Transcoder<Object> transcoder = new SerializingTranscoder();
+		long start = System.nanoTime();
+		for (int i = 0; i < times; i++) {
+			sink = encodeByMap(keys, locator, commandFactory, transcoder);
+		}
+		report("  " + protocol + ",HashMap partition", times, System
+				.nanoTime()
+				- start);
+		start = System.nanoTime();
+		for (int i = 0; i < times; i++) {
+			sink = encodeByPartition(keys, locator, commandFactory, transcoder);
+		}
+		report("  " + protocol + ",KeyPartition", times, System.nanoTime()
+				- start);
+	}
+
+	public static void main(String[] args) throws Exception {
+		int times = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		int keyCount = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+		int nodes = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+		HashAlgorithm hashAlg = args.length > 4 ? HashAlgorithm
+				.valueOf(args[4]) : HashAlgorithm.FNV1A_32_HASH;
+		List<String> keys = new ArrayList<String>(keyCount);
+		for (int i = 0; i < keyCount; i++) {
+			keys.add("user:session:" + i);
+		}
+		List<Session> sessions = new ArrayList<Session>(nodes);
+		for (int i = 0; i < nodes; i++) {
+			sessions.add(new MockSession(10000 + i));
+		}
+		MemcachedSessionLocator locator = new KetamaMemcachedSessionLocator(
+				hashAlg);
+		locator.updateSessions(sessions);
+		CommandFactory textFactory = new TextCommandFactory();
+		CommandFactory binaryFactory = new BinaryCommandFactory();
+		// warm up
+		bench("text", textFactory, keys, locator, times);
+		bench("binary", binaryFactory, keys, locator, times);
+		System.out.println("times=" + times + ",keys=" + keyCount + ",nodes="
+				+ nodes + ",hash=" + hashAlg);
+		for (int i = 0; i < rounds; i++) {
+			System.out.println("round " + i);
+			bench("text", textFactory, keys, locator, times);
+			bench("binary", binaryFactory, keys, locator, times);
+		}
+	}
+}
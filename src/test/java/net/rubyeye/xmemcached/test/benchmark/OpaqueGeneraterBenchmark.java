@@ -0,0 +1,119 @@
+package net.rubyeye.xmemcached.test.benchmark;
+
+import java.util.concurrent.CountDownLatch;
+
+import net.rubyeye.xmemcached.CommandFactory;
+import net.rubyeye.xmemcached.command.BinaryCommandFactory;
+import net.rubyeye.xmemcached.command.Command;
+import net.rubyeye.xmemcached.transcoders.StringTranscoder;
+import net.rubyeye.xmemcached.utils.OpaqueGenerater;
+
+/**
+ * Multi-threaded throughput of opaque generating and binary command
+ * construction.The synchronized generator is the implementation before it was
+ * lock free.
+ * 
+ * Usage:OpaqueGeneraterBenchmark [threads] [times] [rounds]
+ * 
+ * @author dennis
+ * 
+ */
+public class OpaqueGeneraterBenchmark {
+
+	interface Task {
+		void run();
+	}
+
+	static final class SynchronizedGenerater {
+		private int counter = 1;
+
+		public synchronized int getNextValue() {
+			int result = this.counter++;
+			if (this.counter <= 0) {
+				this.counter = 1;
+			}
+			return result;
+		}
+	}
+
+	static volatile int sink;
+
+	static long run(int threads, final int times, final Task task)
+			throws InterruptedException {
+		final CountDownLatch startLatch = new CountDownLatch(1);
+		final CountDownLatch endLatch = new CountDownLatch(threads);
+		for (int i = 0; i < threads; i++) {
+			new Thread() {
+				@Override
+				public void run() {
+					try {
+						startLatch.await();
+						for (int j = 0; j < times; j++) {
+							task.run();
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						endLatch.countDown();
+					}
+				}
+			}.start();
+		}
+		long start = System.nanoTime();
+		startLatch.countDown();
+		endLatch.await();
+		return System.nanoTime() - start;
+	}
+
+	static void report(String name, int threads, int times, long nanos) {
+		long total = (long) threads * times;
+		System.out.println(name + ":" + (total * 1000000000L / nanos)
+				+ " ops/s");
+	}
+
+	public static void main(String[] args) throws Exception {
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+		int times = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+		final SynchronizedGenerater synchronizedGenerater = new SynchronizedGenerater();
+		final OpaqueGenerater opaqueGenerater = OpaqueGenerater.getInstance();
+		final CommandFactory commandFactory = new BinaryCommandFactory();
+		final StringTranscoder transcoder = new StringTranscoder();
+		final byte[] keyBytes = "benchmark".getBytes();
+
+		Task synchronizedTask = new Task() {
+			public void run() {
+				sink = synchronizedGenerater.getNextValue();
+			}
+		};
+		Task lockFreeTask = new Task() {
+			public void run() {
+				sink = opaqueGenerater.getNextValue();
+			}
+		};
+		Task commandTask = new Task() {
+			public void run() {
+				Command command = commandFactory.createSetCommand("benchmark",
+						keyBytes, 0, "value", false, transcoder);
+				command.encode();
+				sink = command.getIoBuffer().remaining();
+			}
+		};
+
+		// warm up
+		run(threads, times, synchronizedTask);
+		run(threads, times, lockFreeTask);
+		run(threads, times, commandTask);
+		System.out.println("threads=" + threads + ",times=" + times);
+		for (int i = 0; i < rounds; i++) {
+			System.out.println("round " + i);
+			report("  synchronized generater", threads, times, run(threads,
+					times, synchronizedTask));
+			report("  lock free generater", threads, times, run(threads,
+					times, lockFreeTask));
+			report("  binary set command construction", threads, times, run(
+					threads, times, commandTask));
+		}
+	}
+}
@@ -0,0 +1,177 @@
+package net.rubyeye.xmemcached.test.benchmark;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import net.rubyeye.xmemcached.MemcachedClient;
+import net.rubyeye.xmemcached.XMemcachedClientBuilder;
+import net.rubyeye.xmemcached.impl.MemcachedConnector;
+import net.rubyeye.xmemcached.utils.AddrUtil;
+
+import com.google.code.yanf4j.core.EventType;
+import com.google.code.yanf4j.core.Session;
+import com.google.code.yanf4j.core.impl.HandlerAdapter;
+import com.google.code.yanf4j.core.impl.TextLineCodecFactory;
+import com.google.code.yanf4j.nio.TCPController;
+import com.google.code.yanf4j.nio.impl.SelectorManager;
+
+/**
+ * Latency of gets on many connections while reactors see spurious readable
+ * events,that is a readable event when there is nothing to read.It compares
+ * blocking read,which waits on a temporary selector in the reactor thread,
+ * with non-blocking read.A mock server on localhost answers the gets.
+ * 
+ * Usage:ReactorStallBenchmark [connections] [seconds] [spurious interval ms]
+ * 
+ * @author dennis
+ * 
+ */
+public class ReactorStallBenchmark {
+
+	static final int PORT = 4796;
+	static final int THREADS = 4;
+
+	private static final class MockHandler extends HandlerAdapter {
+		@Override
+		public void onMessageReceived(Session session, Object message) {
+			// gets may be merged,one write for a response,so that it is
+			// one segment
+			String[] keys = ((String) message).split(" ");
+			if (!keys[0].equals("get")) {
+				return;
+			}
+			StringBuilder response = new StringBuilder();
+			for (int i = 1; i < keys.length; i++) {
+				response.append("VALUE ").append(keys[i]).append(
+						" 0 5\r\nhello\r\n");
+			}
+			session.write(response.append("END").toString());
+		}
+	}
+
+	static long[] run(final MemcachedClient client, final long millis,
+			final long spuriousInterval) throws Exception {
+		final SelectorManager selectorManager = ((MemcachedConnector) client
+				.getConnector()).getSelectorManager();
+		final List<Session> sessions = new ArrayList<Session>(client
+				.getConnector().getSessionSet());
+		final long deadline = System.currentTimeMillis() + millis;
+		// fire a readable event on an idle connection,just like a spurious
+		// wakeup of the selector
+		Thread spurious = new Thread() {
+			@Override
+			public void run() {
+				Random random = new Random();
+				while (System.currentTimeMillis() < deadline) {
+					selectorManager.registerSession(sessions.get(random
+							.nextInt(sessions.size())), EventType.READABLE);
+					try {
+						Thread.sleep(spuriousInterval);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			}
+		};
+		final long[][] latencies = new long[THREADS][];
+		final CountDownLatch done = new CountDownLatch(THREADS);
+		for (int i = 0; i < THREADS; i++) {
+			final int index = i;
+			new Thread() {
+				@Override
+				public void run() {
+					long[] samples = new long[1024];
+					int n = 0;
+					try {
+						while (System.currentTimeMillis() < deadline) {
+							long start = System.nanoTime();
+							client.get("key" + n % 100, 5000);
+							if (n == samples.length) {
+								samples = Arrays.copyOf(samples, n * 2);
+							}
+							samples[n++] = System.nanoTime() - start;
+						}
+					} catch (Exception e) {
+						e.printStackTrace();
+					} finally {
+						latencies[index] = Arrays.copyOf(samples, n);
+						done.countDown();
+					}
+				}
+			}.start();
+		}
+		if (spuriousInterval > 0) {
+			spurious.start();
+		}
+		done.await();
+		if (spuriousInterval > 0) {
+			spurious.join();
+		}
+		int total = 0;
+		for (long[] samples : latencies) {
+			total += samples.length;
+		}
+		long[] result = new long[total];
+		int offset = 0;
+		for (long[] samples : latencies) {
+			System.arraycopy(samples, 0, result, offset, samples.length);
+			offset += samples.length;
+		}
+		Arrays.sort(result);
+		return result;
+	}
+
+	static void print(String name, long[] latencies) {
+		if (latencies.length == 0) {
+			System.out.println(name + ":no gets completed");
+			return;
+		}
+		System.out.println(name + ":" + latencies.length + " gets,p50 "
+				+ percentile(latencies, 0.5) / 1000 + " us,p99 "
+				+ percentile(latencies, 0.99) / 1000 + " us,p999 "
+				+ percentile(latencies, 0.999) / 1000 + " us,max "
+				+ latencies[latencies.length - 1] / 1000 + " us");
+	}
+
+	static long percentile(long[] sorted, double p) {
+		return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))];
+	}
+
+	public static void main(String[] args) throws Exception {
+		int connections = args.length > 0 ? Integer.parseInt(args[0]) : 4
+				* 2 * Runtime.getRuntime().availableProcessors();
+		long seconds = args.length > 1 ? Long.parseLong(args[1]) : 10;
+		long spuriousInterval = args.length > 2 ? Long.parseLong(args[2])
+				: 1000;
+
+		TCPController server = new TCPController();
+		server.setHandler(new MockHandler());
+		server.setCodecFactory(new TextLineCodecFactory());
+		server.bind(new InetSocketAddress(PORT));
+
+		XMemcachedClientBuilder builder = new XMemcachedClientBuilder(AddrUtil
+				.getAddresses("localhost:" + PORT));
+		builder.setConnectionPoolSize(connections);
+		MemcachedClient client = builder.build();
+		client.setEnableHeartBeat(false);
+		try {
+			// warm up
+			run(client, 2000, 0);
+			for (int i = 0; i < 2; i++) {
+				client.setUseBlockingRead(true);
+				print("blocking read    ", run(client, seconds * 1000,
+						spuriousInterval));
+				client.setUseBlockingRead(false);
+				print("non-blocking read", run(client, seconds * 1000,
+						spuriousInterval));
+			}
+		} finally {
+			client.shutdown();
+			server.stop();
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package net.rubyeye.xmemcached.test.unittest;
+
+import static org.junit.Assert.*;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Map;
+
+import net.rubyeye.xmemcached.MemcachedClient;
+import net.rubyeye.xmemcached.XMemcachedClientBuilder;
+import net.rubyeye.xmemcached.utils.AddrUtil;
+
+import org.junit.Test;
+
+import com.google.code.yanf4j.config.Configuration;
+import com.google.code.yanf4j.core.Session;
+import com.google.code.yanf4j.core.impl.HandlerAdapter;
+import com.google.code.yanf4j.core.impl.TextLineCodecFactory;
+import com.google.code.yanf4j.nio.TCPController;
+
+/**
+ * Unit test for reading into reactor's shared read buffer
+ * 
+ * @author dennis
+ * 
+ */
+public class SharedReadBufferUnitTest {
+
+	/**
+	 * Mock server,the value of a key is the key repeated
+	 * 
+	 * @author dennis
+	 * 
+	 */
+	private static final class MockHandler extends HandlerAdapter {
+		@Override
+		public void onMessageReceived(Session session, Object message) {
+			String line = (String) message;
+			String[] keys = line.split(" ");
+			for (int i = 1; i < keys.length; i++) {
+				String value = valueOf(keys[i]);
+				session.write("VALUE " + keys[i] + " 0 " + value.length());
+				session.write(value);
+			}
+			session.write("END");
+		}
+	}
+
+	static String valueOf(String key) {
+		int times = Integer.parseInt(key.substring(1));
+		StringBuilder sb = new StringBuilder(key.length() * times);
+		for (int i = 0; i < times; i++) {
+			sb.append(key);
+		}
+		return sb.toString();
+	}
+
+	@Test
+	public void testGetWithSharedReadBuffer() throws Exception {
+		TCPController memServer = new TCPController();
+		memServer.setHandler(new MockHandler());
+		memServer.setCodecFactory(new TextLineCodecFactory());
+		memServer.bind(new InetSocketAddress(4797));
+
+		XMemcachedClientBuilder builder = new XMemcachedClientBuilder(AddrUtil
+				.getAddresses("localhost:4797"));
+		Configuration configuration = XMemcachedClientBuilder
+				.getDefaultConfiguration();
+		configuration.setSharedReadBuffer(true);
+		// values are greater than the buffer,they are spilled
+		configuration.setSessionReadBufferSize(1024);
+		builder.setConfiguration(configuration);
+		builder.setConnectionPoolSize(4);
+		MemcachedClient client = builder.build();
+		client.setEnableHeartBeat(false);
+		try {
+			for (int i = 1; i < 2000; i += 97) {
+				String key = "k" + i;
+				assertEquals(valueOf(key), client.get(key));
+			}
+			Map<String, Object> values = client.get(Arrays.asList("k1",
+					"k300", "k2", "k1000"));
+			assertEquals(4, values.size());
+			for (Map.Entry<String, Object> entry : values.entrySet()) {
+				assertEquals(valueOf(entry.getKey()), entry.getValue());
+			}
+		} finally {
+			client.shutdown();
+			memServer.stop();
+		}
+	}
+}
@@ -4,10 +4,15 @@ import java.nio.ByteBuffer;
 import java.util.concurrent.CountDownLatch;
 
 import junit.framework.TestCase;
+import net.rubyeye.xmemcached.CommandFactory;
 import net.rubyeye.xmemcached.codec.MemcachedCodecFactory;
+import net.rubyeye.xmemcached.command.BinaryCommandFactory;
 import net.rubyeye.xmemcached.command.Command;
+import net.rubyeye.xmemcached.command.CommandType;
 import net.rubyeye.xmemcached.command.TextCommandFactory;
+import net.rubyeye.xmemcached.command.binary.BaseBinaryCommand;
 import net.rubyeye.xmemcached.impl.MemcachedTCPSession;
+import net.rubyeye.xmemcached.transcoders.StringTranscoder;
 
 import com.google.code.yanf4j.buffer.IoBuffer;
 import com.google.code.yanf4j.core.CodecFactory.Decoder;
@@ -30,11 +35,83 @@ public class MemcachedDecoderUnitTest extends TestCase {
 		assertEquals("1.28", decodedCommand.getResult());
 	}
 
+	public void testDecodeBinaryByOpaque() {
+		decoder = new MemcachedCodecFactory().getDecoder();
+		CommandFactory commandFactory = new BinaryCommandFactory();
+		MemcachedTCPSession session = buildSession(commandFactory);
+		assertTrue(session.isOpaqueIndexed());
+		BaseBinaryCommand setCommand = (BaseBinaryCommand) commandFactory
+				.createSetCommand("a", "a".getBytes(), 0, "v", false,
+						new StringTranscoder());
+		setCommand.encode();
+		setCommand.quietly();
+		Command deleteCommand = commandFactory.createDeleteCommand("b", "b"
+				.getBytes(), 0, false);
+		deleteCommand.encode();
+		session.addCommand(setCommand);
+		session.addCommand(deleteCommand);
+		assertEquals(2, session.getInFlightCommandCount());
+
+		// the quiet set command is not responded
+		int opaque = ((BaseBinaryCommand) deleteCommand).getOpaque();
+		ByteBuffer response = ByteBuffer.allocate(24);
+		response.put((byte) 0x81).put((byte) 0x04).putShort((short) 0).put(
+				(byte) 0).put((byte) 0).putShort((short) 0).putInt(0).putInt(
+				opaque).putLong(0L);
+		response.flip();
+		Command decodedCommand = (Command) decoder.decode(IoBuffer
+				.wrap(response), session);
+		assertSame(deleteCommand, decodedCommand);
+		assertEquals(Boolean.TRUE, deleteCommand.getResult());
+		assertEquals(Boolean.TRUE, setCommand.getResult());
+		assertEquals(0, setCommand.getLatch().getCount());
+		assertEquals(0, session.getInFlightCommandCount());
+	}
+
+	public void testDiscardCancelledBinaryResponse() {
+		decoder = new MemcachedCodecFactory().getDecoder();
+		CommandFactory commandFactory = new BinaryCommandFactory();
+		MemcachedTCPSession session = buildSession(commandFactory);
+		Command getCommand = commandFactory.createGetCommand("a", "a"
+				.getBytes(), CommandType.GET_ONE, new StringTranscoder());
+		getCommand.encode();
+		session.addCommand(getCommand);
+		assertEquals(0, session.getCancelledCommandCount());
+		// timed out
+		getCommand.cancel();
+		assertEquals(1, session.getCancelledCommandCount());
+
+		int opaque = ((BaseBinaryCommand) getCommand).getOpaque();
+		ByteBuffer response = ByteBuffer.allocate(24 + 9);
+		response.put((byte) 0x81).put((byte) 0x00).putShort((short) 0).put(
+				(byte) 4).put((byte) 0).putShort((short) 0).putInt(9).putInt(
+				opaque).putLong(0L);
+		response.putInt(0).put("hello".getBytes());
+		response.flip();
+		// the body is not arrived
+		response.limit(24 + 4);
+		assertNull(decoder.decode(IoBuffer.wrap(response), session));
+		assertEquals(24, response.position());
+
+		response.limit(24 + 9);
+		Command decodedCommand = (Command) decoder.decode(IoBuffer
+				.wrap(response), session);
+		assertSame(getCommand, decodedCommand);
+		assertNull(getCommand.getResult());
+		assertFalse(response.hasRemaining());
+		assertEquals(0, session.getCancelledCommandCount());
+		assertEquals(0, session.getInFlightCommandCount());
+	}
+
 	public MemcachedTCPSession buildSession() {
+		return buildSession(new TextCommandFactory());
+	}
+
+	public MemcachedTCPSession buildSession(CommandFactory commandFactory) {
 		NioSessionConfig sessionConfig = new NioSessionConfig(null,
 				new HandlerAdapter(), null, new ByteBufferCodecFactory(), null,
 				null, null, true, 0, 0);
 		return new MemcachedTCPSession(sessionConfig, 16 * 1024, null, 0,
-				new TextCommandFactory());
+				commandFactory);
 	}
 }
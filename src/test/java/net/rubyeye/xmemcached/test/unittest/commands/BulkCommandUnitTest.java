@@ -0,0 +1,97 @@
+package net.rubyeye.xmemcached.test.unittest.commands;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import net.rubyeye.xmemcached.CommandFactory;
+import net.rubyeye.xmemcached.command.BinaryCommandFactory;
+import net.rubyeye.xmemcached.command.BulkCommand;
+import net.rubyeye.xmemcached.command.Command;
+import net.rubyeye.xmemcached.command.CommandType;
+import net.rubyeye.xmemcached.command.CompletionLatch;
+import net.rubyeye.xmemcached.command.TextCommandFactory;
+import net.rubyeye.xmemcached.transcoders.StringTranscoder;
+
+public class BulkCommandUnitTest extends TestCase {
+
+	private BulkCommand newBulkCommand(List<Command> commands) {
+		return new BulkCommand(commands.get(0).getKey(), CommandType.SET,
+				new CompletionLatch(1), commands);
+	}
+
+	public void testTextBulkCommand() {
+		CommandFactory commandFactory = new TextCommandFactory();
+		List<Command> commands = new ArrayList<Command>();
+		commands.add(commandFactory.createSetCommand("a", "a".getBytes(), 0,
+				"1", false, new StringTranscoder()));
+		commands.add(commandFactory.createAddCommand("b", "b".getBytes(), 0,
+				"2", false, new StringTranscoder()));
+		BulkCommand bulkCommand = newBulkCommand(commands);
+		bulkCommand.encode();
+		assertEquals("set a 0 0 1\r\n1\r\nadd b 0 0 1\r\n2\r\n", new String(
+				bulkCommand.getIoBuffer().array(), 0, bulkCommand
+						.getIoBuffer().remaining()));
+
+		assertFalse(bulkCommand.decode(null, ByteBuffer.wrap("STORED\r\nNOT_"
+				.getBytes())));
+		assertEquals(1, bulkCommand.getLatch().getCount());
+		assertFalse(bulkCommand.isCompleted());
+		assertTrue(bulkCommand.decode(null, ByteBuffer.wrap("NOT_STORED\r\n"
+				.getBytes())));
+		assertTrue(bulkCommand.isCompleted());
+		assertEquals(0, bulkCommand.getLatch().getCount());
+		assertEquals(Boolean.TRUE, commands.get(0).getResult());
+		assertEquals(Boolean.FALSE, commands.get(1).getResult());
+	}
+
+	public void testBinaryQuietBulkCommand() {
+		CommandFactory commandFactory = new BinaryCommandFactory();
+		List<Command> commands = new ArrayList<Command>();
+		for (String key : new String[] { "a", "b", "c" }) {
+			Command command = commandFactory.createSetCommand(key, key
+					.getBytes(), 0, key, true, new StringTranscoder());
+			command.encode();
+			commands.add(command);
+		}
+		int opaque = commands.get(1).getIoBuffer().buf().getInt(12);
+		Command noop = commandFactory.createNoopCommand();
+		commands.add(noop);
+		int totalBytes = 24;
+		for (int i = 0; i < 3; i++) {
+			totalBytes += commands.get(i).getIoBuffer().remaining();
+		}
+		BulkCommand bulkCommand = newBulkCommand(commands);
+		bulkCommand.encode();
+		assertEquals(totalBytes, bulkCommand.getIoBuffer().remaining());
+
+		// only "b" failed,then the noop response
+		ByteBuffer response = ByteBuffer.allocate(48);
+		response.put(constructHeader((byte) 0x11, (short) 0x0005, opaque));
+		response.put(constructHeader((byte) 0x0a, (short) 0, 0));
+		response.flip();
+		assertTrue(bulkCommand.decode(null, response));
+		assertFalse(response.hasRemaining());
+		assertTrue(bulkCommand.isCompleted());
+		assertEquals(0, bulkCommand.getLatch().getCount());
+		assertNull(commands.get(0).getResult());
+		assertEquals(Boolean.FALSE, commands.get(1).getResult());
+		assertNull(commands.get(2).getResult());
+	}
+
+	private ByteBuffer constructHeader(byte opCode, short status, int opaque) {
+		ByteBuffer header = ByteBuffer.allocate(24);
+		header.put((byte) 0x81);
+		header.put(opCode);
+		header.putShort((short) 0);
+		header.put((byte) 0);
+		header.put((byte) 0);
+		header.putShort(status);
+		header.putInt(0);
+		header.putInt(opaque);
+		header.putLong(0L);
+		header.flip();
+		return header;
+	}
+}
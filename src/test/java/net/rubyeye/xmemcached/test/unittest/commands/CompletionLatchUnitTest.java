@@ -0,0 +1,134 @@
+package net.rubyeye.xmemcached.test.unittest.commands;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+import net.rubyeye.xmemcached.command.CompletionLatch;
+
+public class CompletionLatchUnitTest extends TestCase {
+
+	public void testCountDown() throws Exception {
+		CompletionLatch latch = new CompletionLatch(2);
+		assertEquals(2, latch.getCount());
+		latch.countDown();
+		assertEquals(1, latch.getCount());
+		assertFalse(latch.await(10, TimeUnit.MILLISECONDS));
+		latch.countDown();
+		assertEquals(0, latch.getCount());
+		latch.countDown();
+		assertEquals(0, latch.getCount());
+		assertTrue(latch.await(10, TimeUnit.MILLISECONDS));
+		latch.await();
+	}
+
+	public void testAwaitWakeUp() throws Exception {
+		final CompletionLatch latch = new CompletionLatch(1);
+		new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+				}
+				latch.countDown();
+			}
+		}.start();
+		assertTrue(latch.await(5000, TimeUnit.MILLISECONDS));
+	}
+
+	public void testManyWaiters() throws Exception {
+		final CompletionLatch latch = new CompletionLatch(1);
+		final AtomicInteger done = new AtomicInteger();
+		Thread[] waiters = new Thread[5];
+		for (int i = 0; i < waiters.length; i++) {
+			waiters[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						latch.await();
+						done.incrementAndGet();
+					} catch (InterruptedException e) {
+					}
+				}
+			};
+			waiters[i].start();
+		}
+		Thread.sleep(100);
+		latch.countDown();
+		for (Thread t : waiters) {
+			t.join(5000);
+		}
+		assertEquals(waiters.length, done.get());
+	}
+
+	public void testInterrupt() throws Exception {
+		CompletionLatch latch = new CompletionLatch(1);
+		Thread.currentThread().interrupt();
+		try {
+			latch.await();
+			fail();
+		} catch (InterruptedException e) {
+			assertFalse(Thread.currentThread().isInterrupted());
+		}
+	}
+
+	public void testCallback() throws Exception {
+		final AtomicInteger called = new AtomicInteger();
+		Runnable cb = new Runnable() {
+			public void run() {
+				called.incrementAndGet();
+			}
+		};
+		CompletionLatch latch = new CompletionLatch(1);
+		latch.setCallback(cb);
+		assertEquals(0, called.get());
+		latch.countDown();
+		assertEquals(1, called.get());
+		latch.countDown();
+		assertEquals(1, called.get());
+
+		// set callback after completion
+		latch.setCallback(cb);
+		assertEquals(2, called.get());
+
+		latch = new CompletionLatch(1);
+		latch.setCallback(cb);
+		try {
+			latch.setCallback(cb);
+			fail();
+		} catch (IllegalStateException e) {
+		}
+	}
+
+	public void testForceComplete() throws Exception {
+		final CompletionLatch latch = new CompletionLatch(3);
+		Thread waiter = new Thread() {
+			@Override
+			public void run() {
+				try {
+					latch.await();
+				} catch (InterruptedException e) {
+				}
+			}
+		};
+		waiter.start();
+		latch.countDown();
+		assertFalse(latch.isForceCompleted());
+		assertTrue(latch.forceComplete());
+		waiter.join(5000);
+		assertFalse(waiter.isAlive());
+		assertTrue(latch.isForceCompleted());
+		assertEquals(0, latch.getCount());
+		assertFalse(latch.forceComplete());
+		latch.countDown();
+		assertEquals(0, latch.getCount());
+		assertTrue(latch.isForceCompleted());
+
+		// completed by counting down
+		CompletionLatch completed = new CompletionLatch(1);
+		completed.countDown();
+		assertFalse(completed.forceComplete());
+		assertFalse(completed.isForceCompleted());
+	}
+}
@@ -0,0 +1,258 @@
+package net.rubyeye.xmemcached.test.unittest.commands;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import junit.framework.TestCase;
+import net.rubyeye.xmemcached.CommandFactory;
+import net.rubyeye.xmemcached.OperationFuture;
+import net.rubyeye.xmemcached.OperationListener;
+import net.rubyeye.xmemcached.command.Command;
+import net.rubyeye.xmemcached.command.TextCommandFactory;
+import net.rubyeye.xmemcached.exception.MemcachedException;
+import net.rubyeye.xmemcached.transcoders.StringTranscoder;
+
+import com.google.code.yanf4j.core.impl.PoolDispatcher;
+import com.google.code.yanf4j.util.HashedWheelTimer;
+
+public class OperationFutureUnitTest extends TestCase {
+	private CommandFactory commandFactory;
+
+	@Override
+	public void setUp() {
+		this.commandFactory = new TextCommandFactory();
+	}
+
+	private OperationFuture<Boolean> newStoreFuture(final Command command,
+			long opTimeout) {
+		return new OperationFuture<Boolean>(command, opTimeout) {
+			@Override
+			protected Boolean convert() throws Exception {
+				return (Boolean) command.getResult();
+			}
+		};
+	}
+
+	private Command newSetCommand() {
+		Command command = this.commandFactory.createSetCommand("test",
+				"test".getBytes(), 0, "value", false, new StringTranscoder());
+		command.encode();
+		return command;
+	}
+
+	public void testCompletedByDecode() throws Exception {
+		Command command = newSetCommand();
+		OperationFuture<Boolean> future = newStoreFuture(command, 1000);
+		assertFalse(future.isDone());
+		assertTrue(command.decode(null, ByteBuffer.wrap("STORED\r\n"
+				.getBytes())));
+		assertTrue(future.isDone());
+		assertTrue(future.get());
+		assertTrue(future.get(0, TimeUnit.MILLISECONDS));
+	}
+
+	public void testGetTimeout() throws Exception {
+		Command command = newSetCommand();
+		OperationFuture<Boolean> future = newStoreFuture(command, 100);
+		try {
+			future.get(10, TimeUnit.MILLISECONDS);
+			fail();
+		} catch (TimeoutException e) {
+			assertFalse(future.isCancelled());
+		}
+		try {
+			future.get();
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof TimeoutException);
+			assertTrue(future.isCancelled());
+			assertTrue(command.isCancel());
+		}
+	}
+
+	public void testCommandException() throws Exception {
+		Command command = newSetCommand();
+		OperationFuture<Boolean> future = newStoreFuture(command, 1000);
+		command.setException(new RuntimeException("test"));
+		command.countDownLatch();
+		try {
+			future.get();
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof MemcachedException);
+		}
+	}
+
+	static class RecordListener implements OperationListener<Boolean> {
+		final Executor executor;
+		final CountDownLatch done = new CountDownLatch(1);
+		volatile Boolean result;
+		volatile Throwable throwable;
+		volatile Thread thread;
+
+		RecordListener(Executor executor) {
+			this.executor = executor;
+		}
+
+		public Executor getExecutor() {
+			return this.executor;
+		}
+
+		public void onFailure(Throwable throwable) {
+			this.throwable = throwable;
+			this.thread = Thread.currentThread();
+			this.done.countDown();
+		}
+
+		public void onSuccess(Boolean result) {
+			this.result = result;
+			this.thread = Thread.currentThread();
+			this.done.countDown();
+		}
+	}
+
+	public void testListenerInline() throws Exception {
+		Command command = newSetCommand();
+		OperationFuture<Boolean> future = newStoreFuture(command, 1000);
+		RecordListener listener = new RecordListener(null);
+		future.addListener(listener, null);
+		assertEquals(1, listener.done.getCount());
+		command.decode(null, ByteBuffer.wrap("NOT_STORED\r\n".getBytes()));
+		assertEquals(0, listener.done.getCount());
+		assertEquals(Boolean.FALSE, listener.result);
+		assertSame(Thread.currentThread(), listener.thread);
+
+		// add listener after completion
+		listener = new RecordListener(null);
+		future.addListener(listener, null);
+		assertEquals(Boolean.FALSE, listener.result);
+	}
+
+	public void testListenerExecutor() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Command command = newSetCommand();
+			OperationFuture<Boolean> future = newStoreFuture(command, 1000);
+			RecordListener listener = new RecordListener(executor);
+			future.addListener(listener, null);
+			command.setException(new RuntimeException("test"));
+			command.countDownLatch();
+			assertTrue(listener.done.await(5000, TimeUnit.MILLISECONDS));
+			assertNotSame(Thread.currentThread(), listener.thread);
+			assertTrue(listener.throwable instanceof MemcachedException);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	public void testListenerDispatcher() throws Exception {
+		PoolDispatcher dispatcher = new PoolDispatcher(1);
+		try {
+			Command command = newSetCommand();
+			OperationFuture<Boolean> future = newStoreFuture(command, 1000);
+			RecordListener listener = new RecordListener(null);
+			future.addListener(listener, dispatcher);
+			command.decode(null, ByteBuffer.wrap("STORED\r\n".getBytes()));
+			assertTrue(listener.done.await(5000, TimeUnit.MILLISECONDS));
+			assertNotSame(Thread.currentThread(), listener.thread);
+			assertEquals(Boolean.TRUE, listener.result);
+		} finally {
+			dispatcher.stop();
+		}
+	}
+
+	public void testExpireAfter() throws Exception {
+		HashedWheelTimer timer = new HashedWheelTimer("test-timer", 10,
+				TimeUnit.MILLISECONDS, 64);
+		try {
+			Command command = newSetCommand();
+			OperationFuture<Boolean> future = newStoreFuture(command, 1000);
+			RecordListener listener = new RecordListener(null);
+			future.addListener(listener, null);
+			future.expireAfter(timer, 50);
+			assertTrue(listener.done.await(5000, TimeUnit.MILLISECONDS));
+			assertTrue(listener.throwable instanceof TimeoutException);
+			assertTrue(future.isDone());
+			assertFalse(future.isCancelled());
+			assertTrue(command.isCancelled());
+			try {
+				future.get();
+				fail();
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof TimeoutException);
+			}
+			// late response is ignored
+			command.decode(null, ByteBuffer.wrap("STORED\r\n".getBytes()));
+			assertTrue(listener.throwable instanceof TimeoutException);
+		} finally {
+			timer.stop();
+		}
+	}
+
+	public void testCompletedBeforeDeadline() throws Exception {
+		HashedWheelTimer timer = new HashedWheelTimer("test-timer", 10,
+				TimeUnit.MILLISECONDS, 64);
+		try {
+			Command command = newSetCommand();
+			OperationFuture<Boolean> future = newStoreFuture(command, 1000);
+			future.expireAfter(timer, 10000);
+			assertEquals(1, timer.getPendingTimeouts());
+			command.decode(null, ByteBuffer.wrap("STORED\r\n".getBytes()));
+			assertTrue(future.get());
+			// the timeout is removed from wheel in next tick
+			for (int i = 0; i < 100 && timer.getPendingTimeouts() > 0; i++) {
+				Thread.sleep(10);
+			}
+			assertEquals(0, timer.getPendingTimeouts());
+		} finally {
+			timer.stop();
+		}
+	}
+
+	public void testExpireCompleted() throws Exception {
+		final Command command = newSetCommand();
+		OperationFuture<Boolean> future = new OperationFuture<Boolean>(command,
+				1000) {
+			@Override
+			protected Boolean convert() throws Exception {
+				return (Boolean) command.getResult();
+			}
+
+			@Override
+			protected boolean expire(long timeout) {
+				// completed by the reactor before the deadline
+				command.decode(null, ByteBuffer.wrap("STORED\r\n".getBytes()));
+				return super.expire(timeout);
+			}
+		};
+		HashedWheelTimer timer = new HashedWheelTimer("test-timer", 10,
+				TimeUnit.MILLISECONDS, 64);
+		try {
+			RecordListener listener = new RecordListener(null);
+			future.addListener(listener, null);
+			future.expireAfter(timer, 50);
+			assertTrue(listener.done.await(5000, TimeUnit.MILLISECONDS));
+			assertNull(listener.throwable);
+			assertNull(command.getException());
+			assertFalse(command.isCancelled());
+			assertTrue(future.get());
+		} finally {
+			timer.stop();
+		}
+	}
+
+	public void testCancel() throws Exception {
+		Command command = newSetCommand();
+		OperationFuture<Boolean> future = newStoreFuture(command, 1000);
+		assertTrue(future.cancel(true));
+		assertTrue(future.isDone());
+		assertTrue(command.isCancel());
+		assertFalse(future.cancel(true));
+	}
+}
@@ -1,7 +1,9 @@
 package net.rubyeye.xmemcached.test.unittest.commands.binary;
 
+import java.io.ByteArrayOutputStream;
 import java.nio.ByteBuffer;
 
+import net.rubyeye.xmemcached.ValueChunkHandler;
 import net.rubyeye.xmemcached.command.Command;
 import net.rubyeye.xmemcached.command.CommandType;
 import net.rubyeye.xmemcached.command.binary.OpCode;
@@ -46,4 +48,65 @@ public class BinaryGetCommandUnitTest extends BaseBinaryCommandUnitTest {
 		assertEquals(0, buffer.remaining());
 	}
 
+	public void testGetStreamDecode() {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final int[] value = new int[2];
+		Command command = this.commandFactory.createGetStreamCommand(this.key,
+				this.keyBytes, new ValueChunkHandler() {
+					public void onValue(int flags, int length) {
+						value[0] = flags;
+						value[1] = length;
+					}
+
+					public void onChunk(ByteBuffer chunk) {
+						while (chunk.hasRemaining()) {
+							out.write(chunk.get());
+						}
+					}
+
+					public void onComplete() {
+						out.write('!');
+					}
+				});
+		command.encode();
+		assertEquals(OpCode.GET.fieldValue(), command.getIoBuffer().buf().get(
+				1));
+
+		ByteBuffer buffer = constructResponse(OpCode.GET.fieldValue(),
+				(short) 0, (byte) 0x04, (byte) 0, (short) 0, 0x00000009, 0, 1L,
+				this.transcoderUtils.encodeInt(7), null, "world".getBytes());
+		// header,extras and two bytes of the value,then the rest
+		ByteBuffer first = ByteBuffer.wrap(buffer.array(), 0, 30);
+		assertFalse(command.decode(null, first));
+		assertEquals(0, first.remaining());
+		ByteBuffer second = ByteBuffer.wrap(buffer.array(), 30, 3);
+		assertTrue(command.decode(null, second));
+		assertEquals(0, second.remaining());
+		assertEquals(7, value[0]);
+		assertEquals(5, value[1]);
+		assertEquals("world!", new String(out.toByteArray()));
+		assertEquals(Boolean.TRUE, command.getResult());
+
+		buffer = constructResponse(OpCode.GET.fieldValue(), (short) 0,
+				(byte) 0, (byte) 0, (short) 0x0001, 0x00000009, 0, 1L, null,
+				null, "Not found".getBytes());
+		command = this.commandFactory.createGetStreamCommand(this.key,
+				this.keyBytes, new ValueChunkHandler() {
+					public void onValue(int flags, int length) {
+						fail();
+					}
+
+					public void onChunk(ByteBuffer chunk) {
+						fail();
+					}
+
+					public void onComplete() {
+						fail();
+					}
+				});
+		assertTrue(command.decode(null, buffer));
+		assertEquals(Boolean.FALSE, command.getResult());
+		assertEquals(0, buffer.remaining());
+	}
+
 }
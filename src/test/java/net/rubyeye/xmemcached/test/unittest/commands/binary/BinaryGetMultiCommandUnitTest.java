@@ -14,6 +14,43 @@ import net.rubyeye.xmemcached.utils.ByteUtils;
 
 public class BinaryGetMultiCommandUnitTest extends BaseBinaryCommandUnitTest {
 
+	public void testEncodeByIndexes() {
+		List<String> keys = new ArrayList<String>();
+		String[] keyArray = new String[10];
+		int[] indexes = new int[10];
+		for (int i = 0; i < 10; i++) {
+			keyArray[i] = i == 3 ? "\u4e2d\u6587" : String.valueOf(i);
+			indexes[i] = 9 - i;
+		}
+		for (int i = 8; i >= 2; i--) {
+			keys.add(keyArray[i]);
+		}
+		Command expected = this.commandFactory.createGetMultiCommand(keys,
+				new CountDownLatch(1), CommandType.GET_MANY, this.transcoder);
+		expected.encode();
+		Command command = this.commandFactory.createGetMultiCommand(keyArray,
+				indexes, 1, 7, new CountDownLatch(1), CommandType.GET_MANY,
+				this.transcoder);
+		command.encode();
+		assertEquals("2", command.getKey());
+		ByteBuffer expectedBuffer = expected.getIoBuffer().buf();
+		ByteBuffer encodeBuffer = command.getIoBuffer().buf();
+		assertEquals(expectedBuffer.remaining(), encodeBuffer.remaining());
+		int position = 0;
+		while (position < encodeBuffer.limit()) {
+			int keyLength = encodeBuffer.getShort(position + 2);
+			// same header except the opaque
+			for (int i = 0; i < 24 + keyLength; i++) {
+				if (i < 12 || i >= 16) {
+					assertEquals(expectedBuffer.get(position + i), encodeBuffer
+							.get(position + i));
+				}
+			}
+			position += 24 + keyLength;
+		}
+		assertEquals(encodeBuffer.limit(), position);
+	}
+
 	public void testEncodeDecode() {
 		List<String> keys = new ArrayList<String>();
 		for (int i = 0; i < 10; i++) {
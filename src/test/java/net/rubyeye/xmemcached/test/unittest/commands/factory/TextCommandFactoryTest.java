@@ -117,4 +117,24 @@ public class TextCommandFactoryTest extends TestCase {
 		assertEquals(expectedStr, commandStr);
 	}
 
+	public void testCreateGetMultiCommandByIndexes() throws Exception {
+		String[] keys = { "a", "b", "\u4e2d\u6587", "c", "d" };
+		int[] indexes = { 4, 0, 2, 3, 1 };
+		Command cmd = this.commandFactory.createGetMultiCommand(keys, indexes,
+				1, 3, null, CommandType.GETS_MANY, null);
+		cmd.encode();
+		assertEquals(CommandType.GETS_MANY, cmd.getCommandType());
+		assertEquals("a", cmd.getKey());
+		assertEquals("gets a \u4e2d\u6587 c\r\n", new String(cmd.getIoBuffer()
+				.array(), 0, cmd.getIoBuffer().limit(), "utf-8"));
+
+		try {
+			this.commandFactory.createGetMultiCommand(
+					new String[] { "a", "b c" }, new int[] { 0, 1 }, 0, 2,
+					null, CommandType.GET_MANY, null);
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
 }
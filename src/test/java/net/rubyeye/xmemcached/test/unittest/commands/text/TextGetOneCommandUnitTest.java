@@ -1,7 +1,9 @@
 package net.rubyeye.xmemcached.test.unittest.commands.text;
 
+import java.io.ByteArrayOutputStream;
 import java.nio.ByteBuffer;
 
+import net.rubyeye.xmemcached.ValueChunkHandler;
 import net.rubyeye.xmemcached.command.Command;
 import net.rubyeye.xmemcached.command.CommandType;
 import net.rubyeye.xmemcached.transcoders.CachedData;
@@ -77,4 +79,195 @@ public class TextGetOneCommandUnitTest extends BaseTextCommandUnitTest {
 				.getData()));
 		assertEquals(999, ((CachedData) command.getResult()).getCas());
 	}
+
+	public void testDecodeSplitNumbers() {
+		Command command = this.commandFactory.createGetCommand("test", "test"
+				.getBytes(), CommandType.GETS_ONE, null);
+		String response = "VALUE test 4294967295 12 18446744073709551\r\nhello world!\r\nEND\r\n";
+		// feed one byte a time
+		ByteBuffer buffer = ByteBuffer.allocate(response.length());
+		for (int i = 0; i < response.length() - 1; i++) {
+			buffer.put((byte) response.charAt(i));
+			buffer.flip();
+			assertFalse(command.decode(null, buffer));
+			buffer.compact();
+		}
+		buffer.put((byte) response.charAt(response.length() - 1));
+		buffer.flip();
+		assertTrue(command.decode(null, buffer));
+		CachedData data = (CachedData) command.getResult();
+		assertEquals("hello world!", new String(data.getData()));
+		assertEquals(0xFFFFFFFF, data.getFlag());
+		assertEquals(18446744073709551L, data.getCas());
+	}
+
+	public void testDecodeDirectBuffer() {
+		Command command = this.commandFactory.createGetCommand("test", "test"
+				.getBytes(), CommandType.GET_ONE, null);
+		byte[] response = "VALUE test 2 3\r\nabc\r\nEND\r\n".getBytes();
+		ByteBuffer buffer = ByteBuffer.allocateDirect(response.length);
+		buffer.put(response);
+		buffer.flip();
+		assertTrue(command.decode(null, buffer));
+		CachedData data = (CachedData) command.getResult();
+		assertEquals("abc", new String(data.getData()));
+		assertEquals(2, data.getFlag());
+	}
+
+	public void testDecodeInvalidNumber() {
+		Command command = this.commandFactory.createGetCommand("test", "test"
+				.getBytes(), CommandType.GET_ONE, null);
+		try {
+			command.decode(null, ByteBuffer.wrap("VALUE test 0 1x\r\nabc\r\n"
+					.getBytes()));
+			fail();
+		} catch (NumberFormatException e) {
+		}
+	}
+
+	public void testDecodeNumberOverflow() {
+		Command command = this.commandFactory.createGetCommand("test", "test"
+				.getBytes(), CommandType.GETS_ONE, null);
+		assertTrue(command.decode(null, ByteBuffer
+				.wrap("VALUE test 0 3 9223372036854775807\r\nabc\r\nEND\r\n"
+						.getBytes())));
+		assertEquals(Long.MAX_VALUE, ((CachedData) command.getResult())
+				.getCas());
+
+		command = this.commandFactory.createGetCommand("test", "test"
+				.getBytes(), CommandType.GETS_ONE, null);
+		try {
+			command.decode(null, ByteBuffer
+					.wrap("VALUE test 0 3 18446744073709551615\r\nabc\r\nEND\r\n"
+							.getBytes()));
+			fail();
+		} catch (NumberFormatException e) {
+		}
+
+		command = this.commandFactory.createGetCommand("test", "test"
+				.getBytes(), CommandType.GET_ONE, null);
+		try {
+			command.decode(null, ByteBuffer
+					.wrap("VALUE test 4294967296 3\r\nabc\r\nEND\r\n"
+							.getBytes()));
+			fail();
+		} catch (NumberFormatException e) {
+		}
+	}
+
+	static class RecordingHandler implements ValueChunkHandler {
+		int flags = -1;
+		int length = -1;
+		int chunks;
+		boolean completed;
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		public void onValue(int flags, int length) {
+			this.flags = flags;
+			this.length = length;
+		}
+
+		public void onChunk(ByteBuffer chunk) {
+			this.chunks++;
+			while (chunk.hasRemaining()) {
+				this.out.write(chunk.get());
+			}
+		}
+
+		public void onComplete() {
+			this.completed = true;
+		}
+	}
+
+	public void testGetStreamEncode() {
+		Command command = this.commandFactory.createGetStreamCommand("test",
+				"test".getBytes(), new RecordingHandler());
+		command.encode();
+		checkByteBufferEquals(command, "get test\r\n");
+	}
+
+	public void testGetStreamDecode() {
+		RecordingHandler handler = new RecordingHandler();
+		Command command = this.commandFactory.createGetStreamCommand("test",
+				"test".getBytes(), handler);
+		assertFalse(command.decode(null, ByteBuffer
+				.wrap("VALUE test 3 11\r\nhell".getBytes())));
+		assertEquals(3, handler.flags);
+		assertEquals(11, handler.length);
+		assertFalse(command.decode(null, ByteBuffer.wrap("o wor".getBytes())));
+		assertFalse(handler.completed);
+		ByteBuffer buffer = ByteBuffer.wrap("ld\r\nEND\r\n".getBytes());
+		assertTrue(command.decode(null, buffer));
+		assertEquals(0, buffer.remaining());
+		assertEquals(3, handler.chunks);
+		assertTrue(handler.completed);
+		assertEquals("hello world", new String(handler.out.toByteArray()));
+		assertEquals(Boolean.TRUE, command.getResult());
+
+		handler = new RecordingHandler();
+		command = this.commandFactory.createGetStreamCommand("test", "test"
+				.getBytes(), handler);
+		checkDecodeValidLine(command, "END\r\n");
+		assertEquals(Boolean.FALSE, command.getResult());
+		assertEquals(-1, handler.length);
+		assertFalse(handler.completed);
+	}
+
+	public void testGetStreamDecodeValueLine() {
+		RecordingHandler handler = new RecordingHandler();
+		Command command = this.commandFactory.createGetStreamCommand("test",
+				"test".getBytes(), handler);
+		ByteBuffer buffer = ByteBuffer
+				.wrap("VALUE test 4294967295 3\r\nabc\r\nEND\r\n".getBytes());
+		// the line is not complete
+		buffer.limit(16);
+		assertFalse(command.decode(null, buffer));
+		assertEquals(-1, handler.length);
+		buffer.limit(buffer.capacity());
+		assertTrue(command.decode(null, buffer));
+		assertEquals(-1, handler.flags);
+		assertEquals(3, handler.length);
+		assertEquals("abc", new String(handler.out.toByteArray()));
+
+		command = this.commandFactory.createGetStreamCommand("test", "test"
+				.getBytes(), new RecordingHandler());
+		try {
+			command.decode(null, ByteBuffer
+					.wrap("VALUE test 4294967296 3\r\nabc\r\nEND\r\n"
+							.getBytes()));
+			fail();
+		} catch (NumberFormatException e) {
+		}
+
+		command = this.commandFactory.createGetStreamCommand("test", "test"
+				.getBytes(), new RecordingHandler());
+		try {
+			command.decode(null, ByteBuffer
+					.wrap("VALUE test 0 2147483648\r\nabc\r\nEND\r\n"
+							.getBytes()));
+			fail();
+		} catch (NumberFormatException e) {
+		}
+	}
+
+	public void testGetStreamHandlerException() {
+		final RuntimeException error = new RuntimeException("boom");
+		RecordingHandler handler = new RecordingHandler() {
+			@Override
+			public void onChunk(ByteBuffer chunk) {
+				super.onChunk(chunk);
+				throw error;
+			}
+		};
+		Command command = this.commandFactory.createGetStreamCommand("test",
+				"test".getBytes(), handler);
+		assertFalse(command.decode(null, ByteBuffer
+				.wrap("VALUE test 0 6\r\nabc".getBytes())));
+		// the rest of the value is skipped
+		assertTrue(command.decode(null, ByteBuffer.wrap("def\r\nEND\r\n"
+				.getBytes())));
+		assertSame(error, command.getException());
+		assertEquals(1, handler.chunks);
+		assertFalse(handler.completed);
+	}
 }
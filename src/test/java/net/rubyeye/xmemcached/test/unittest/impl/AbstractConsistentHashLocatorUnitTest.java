@@ -0,0 +1,135 @@
+package net.rubyeye.xmemcached.test.unittest.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.rubyeye.xmemcached.test.unittest.MockSession;
+
+import org.junit.Test;
+
+import com.google.code.yanf4j.core.Session;
+
+/**
+ * Tests for locators which move keys only from or to the changed node
+ */
+public abstract class AbstractConsistentHashLocatorUnitTest extends
+		AbstractMemcachedSessionLocatorUnitTest {
+
+	static final int KEY_COUNT = 10000;
+
+	protected List<Session> newSessions(int count) {
+		List<Session> list = new ArrayList<Session>();
+		for (int i = 0; i < count; i++) {
+			list.add(new MockSession(8080 + i));
+		}
+		return list;
+	}
+
+	protected Map<String, Session> locateAll() {
+		Map<String, Session> result = new HashMap<String, Session>();
+		for (int i = 0; i < KEY_COUNT; i++) {
+			String key = "key" + i;
+			result.put(key, this.locator.getSessionByKey(key));
+		}
+		return result;
+	}
+
+	@Test
+	public void testGetSessionByKey_Balance() {
+		List<Session> list = newSessions(4);
+		this.locator.updateSessions(list);
+		Map<Session, Integer> counts = new HashMap<Session, Integer>();
+		for (Session session : locateAll().values()) {
+			Integer count = counts.get(session);
+			counts.put(session, count == null ? 1 : count + 1);
+		}
+		assertEquals(4, counts.size());
+		for (Integer count : counts.values()) {
+			assertTrue(count > KEY_COUNT / 4 * 0.8);
+			assertTrue(count < KEY_COUNT / 4 * 1.2);
+		}
+		// stable
+		assertEquals(locateAll(), locateAll());
+	}
+
+	@Test
+	public void testGetSessionByKey_AddSession() {
+		List<Session> list = newSessions(4);
+		this.locator.updateSessions(list);
+		Map<String, Session> before = locateAll();
+		Session added = new MockSession(9000);
+		list.add(added);
+		this.locator.updateSessions(list);
+		Map<String, Session> after = locateAll();
+		int moved = 0;
+		for (Map.Entry<String, Session> entry : after.entrySet()) {
+			if (entry.getValue() != before.get(entry.getKey())) {
+				// keys are only moved to the new session
+				assertSame(added, entry.getValue());
+				moved++;
+			}
+		}
+		assertTrue(moved > KEY_COUNT / 5 * 0.8);
+		assertTrue(moved < KEY_COUNT / 5 * 1.2);
+	}
+
+	@Test
+	public void testGetSessionByKey_OneClosed() {
+		List<Session> list = newSessions(4);
+		this.locator.updateSessions(list);
+		Map<String, Session> before = locateAll();
+		Session closed = list.get(1);
+		closed.close();
+		Map<String, Session> after = locateAll();
+		for (Map.Entry<String, Session> entry : after.entrySet()) {
+			assertNotSame(closed, entry.getValue());
+			if (before.get(entry.getKey()) != closed) {
+				assertSame(before.get(entry.getKey()), entry.getValue());
+			}
+		}
+	}
+
+	@Test
+	public void testGetSessionByKey_RemoveMiddleSession() {
+		List<Session> list = newSessions(10);
+		this.locator.updateSessions(list);
+		Map<String, Session> before = locateAll();
+		// the connector removes a closed session from the list
+		Session removed = list.remove(2);
+		this.locator.updateSessions(list);
+		Map<String, Session> after = locateAll();
+		for (Map.Entry<String, Session> entry : after.entrySet()) {
+			assertNotSame(removed, entry.getValue());
+			if (before.get(entry.getKey()) != removed) {
+				assertSame(before.get(entry.getKey()), entry.getValue());
+			}
+		}
+		// added back,keys are moved back
+		list.add(2, removed);
+		this.locator.updateSessions(list);
+		assertEquals(before, locateAll());
+	}
+
+	@Test
+	public void testGetSessionByKey_OneClosed_FailureMode() {
+		this.locator.setFailureMode(true);
+		List<Session> list = newSessions(4);
+		this.locator.updateSessions(list);
+		Map<String, Session> before = locateAll();
+		list.get(1).close();
+		assertEquals(before, locateAll());
+	}
+
+	@Test
+	public void testGetSessionByKey_AllClosed() {
+		List<Session> list = newSessions(2);
+		this.locator.updateSessions(list);
+		list.get(0).close();
+		list.get(1).close();
+		assertNotNull(this.locator.getSessionByKey("a"));
+	}
+}
@@ -7,6 +7,7 @@ import java.util.List;
 
 import net.rubyeye.xmemcached.MemcachedSessionLocator;
 import net.rubyeye.xmemcached.test.unittest.MockSession;
+import net.rubyeye.xmemcached.utils.ByteUtils;
 
 import org.junit.Test;
 
@@ -32,4 +33,24 @@ public abstract class AbstractMemcachedSessionLocatorUnitTest {
 		assertSame(session, this.locator.getSessionByKey("c"));
 
 	}
+
+	@Test
+	public void testGetSessionByKeyBytes() {
+		List<Session> list = new ArrayList<Session>();
+		for (int i = 0; i < 5; i++) {
+			list.add(new MockSession(8080 + i));
+		}
+		this.locator.updateSessions(list);
+		for (int i = 0; i < 1000; i++) {
+			String key = "key" + i;
+			assertSame(this.locator.getSessionByKey(key), this.locator
+					.getSessionByKey(ByteUtils.getBytes(key)));
+		}
+		list.get(1).close();
+		for (int i = 0; i < 1000; i++) {
+			String key = "key" + i;
+			assertSame(this.locator.getSessionByKey(key), this.locator
+					.getSessionByKey(ByteUtils.getBytes(key)));
+		}
+	}
 }
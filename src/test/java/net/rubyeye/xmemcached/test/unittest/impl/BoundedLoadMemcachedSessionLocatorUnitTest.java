@@ -0,0 +1,139 @@
+package net.rubyeye.xmemcached.test.unittest.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.rubyeye.xmemcached.MemcachedSessionLocator;
+import net.rubyeye.xmemcached.impl.BoundedLoadMemcachedSessionLocator;
+import net.rubyeye.xmemcached.impl.KetamaMemcachedSessionLocator;
+import net.rubyeye.xmemcached.test.unittest.MockSession;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.code.yanf4j.core.Session;
+
+public class BoundedLoadMemcachedSessionLocatorUnitTest extends
+		AbstractMemcachedSessionLocatorUnitTest {
+
+	static final int NODE_COUNT = 20;
+	static final int KEY_COUNT = 200000;
+
+	@Before
+	public void setUp() {
+		this.locator = new BoundedLoadMemcachedSessionLocator();
+	}
+
+	private static List<Session> newSessions(int count) {
+		List<Session> list = new ArrayList<Session>();
+		for (int i = 0; i < count; i++) {
+			list.add(new MockSession(8080 + i));
+		}
+		return list;
+	}
+
+	private static Map<Session, Integer> distribution(
+			MemcachedSessionLocator locator, int keyCount) {
+		Map<Session, Integer> counts = new HashMap<Session, Integer>();
+		for (int i = 0; i < keyCount; i++) {
+			Session session = locator.getSessionByKey("key" + i);
+			Integer count = counts.get(session);
+			counts.put(session, count == null ? 1 : count + 1);
+		}
+		return counts;
+	}
+
+	private static double maxToAverage(Map<Session, Integer> counts,
+			int nodeCount, int total) {
+		int max = 0;
+		for (Integer count : counts.values()) {
+			max = Math.max(max, count);
+		}
+		return max / ((double) total / nodeCount);
+	}
+
+	/**
+	 * Simulate the key distribution of plain ketama and bounded loads
+	 */
+	@Test
+	public void testLoadDistribution() {
+		List<Session> list = newSessions(NODE_COUNT);
+		KetamaMemcachedSessionLocator ketama = new KetamaMemcachedSessionLocator();
+		ketama.updateSessions(list);
+		this.locator.updateSessions(list);
+		double ketamaRatio = maxToAverage(distribution(ketama, KEY_COUNT),
+				NODE_COUNT, KEY_COUNT);
+		double boundedRatio = maxToAverage(distribution(this.locator,
+				KEY_COUNT), NODE_COUNT, KEY_COUNT);
+		System.out.println("Max/average keys of " + NODE_COUNT
+				+ " nodes,ketama:" + ketamaRatio + ",bounded loads:"
+				+ boundedRatio);
+		// slots are capped exactly,keys per slot vary a little
+		int cap = (int) Math
+				.ceil((1 + BoundedLoadMemcachedSessionLocator.DEFAULT_EPSILON)
+						* 65536 / NODE_COUNT);
+		for (int count : ((BoundedLoadMemcachedSessionLocator) this.locator)
+				.getSlotCounts()) {
+			assertTrue(count <= cap);
+		}
+		assertTrue(boundedRatio < 1.15);
+		assertTrue(boundedRatio < ketamaRatio);
+	}
+
+	@Test
+	public void testAddSession() {
+		List<Session> list = newSessions(NODE_COUNT);
+		this.locator.updateSessions(list);
+		Map<String, Session> before = new HashMap<String, Session>();
+		for (int i = 0; i < KEY_COUNT; i++) {
+			before.put("key" + i, this.locator.getSessionByKey("key" + i));
+		}
+		Session added = new MockSession(9000);
+		list.add(added);
+		this.locator.updateSessions(list);
+		int moved = 0;
+		int movedToAdded = 0;
+		for (int i = 0; i < KEY_COUNT; i++) {
+			Session session = this.locator.getSessionByKey("key" + i);
+			if (session != before.get("key" + i)) {
+				moved++;
+				if (session == added) {
+					movedToAdded++;
+				}
+			}
+		}
+		System.out.println("Moved keys after adding a node:" + moved
+				+ ",to the new node:" + movedToAdded);
+		assertTrue(movedToAdded > KEY_COUNT / (NODE_COUNT + 1) * 0.8);
+		// keys overflowing capped nodes move too,but it's bounded
+		assertTrue(moved < KEY_COUNT / (NODE_COUNT + 1) * 1.5);
+	}
+
+	@Test
+	public void testGetSessionByKey_OneClosed() {
+		List<Session> list = newSessions(4);
+		this.locator.updateSessions(list);
+		Map<String, Session> before = new HashMap<String, Session>();
+		for (int i = 0; i < 1000; i++) {
+			before.put("key" + i, this.locator.getSessionByKey("key" + i));
+		}
+		Session closed = list.get(1);
+		closed.close();
+		for (int i = 0; i < 1000; i++) {
+			Session session = this.locator.getSessionByKey("key" + i);
+			assertNotSame(closed, session);
+			if (before.get("key" + i) != closed) {
+				assertSame(before.get("key" + i), session);
+			}
+		}
+		this.locator.setFailureMode(true);
+		for (int i = 0; i < 1000; i++) {
+			assertSame(before.get("key" + i), this.locator
+					.getSessionByKey("key" + i));
+		}
+	}
+}
@@ -0,0 +1,52 @@
+package net.rubyeye.xmemcached.test.unittest.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import net.rubyeye.xmemcached.impl.ElectionMemcachedSessionLocator;
+import net.rubyeye.xmemcached.test.unittest.MockSession;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.code.yanf4j.core.Session;
+
+public class ElectionMemcachedSessionLocatorUnitTest extends
+		AbstractMemcachedSessionLocatorUnitTest {
+
+	@Before
+	public void setUp() {
+		this.locator = new ElectionMemcachedSessionLocator();
+	}
+
+	@Test
+	public void testGetSessionByKey_MoreSessions_OneClosed() {
+		List<Session> list = new ArrayList<Session>();
+		for (int i = 0; i < 3; i++) {
+			list.add(new MockSession(8080 + i));
+		}
+		this.locator.updateSessions(list);
+		Set<Session> used = new HashSet<Session>();
+		for (int i = 0; i < 100; i++) {
+			used.add(this.locator.getSessionByKey("key" + i));
+		}
+		assertEquals(3, used.size());
+
+		list.get(0).close();
+		for (int i = 0; i < 100; i++) {
+			Session session = this.locator.getSessionByKey("key" + i);
+			assertNotSame(list.get(0), session);
+			assertFalse(session.isClosed());
+		}
+		this.locator.setFailureMode(true);
+		used.clear();
+		for (int i = 0; i < 100; i++) {
+			used.add(this.locator.getSessionByKey("key" + i));
+		}
+		assertTrue(used.contains(list.get(0)));
+	}
+}
@@ -0,0 +1,81 @@
+package net.rubyeye.xmemcached.test.unittest.impl;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+import net.rubyeye.xmemcached.impl.HotKeyDetector;
+
+public class HotKeyDetectorUnitTest extends TestCase {
+
+	public void testDetectHotKey() {
+		HotKeyDetector detector = new HotKeyDetector(1, 4, 0.05, 100000);
+		for (int i = 0; i < 10000; i++) {
+			detector.record("key" + i);
+			if (i % 10 == 0) {
+				detector.record("hot");
+			}
+		}
+		HotKeyDetector.HotKey hotKey = detector.get("hot");
+		assertNotNull(hotKey);
+		assertEquals("hot", hotKey.getKey());
+		assertTrue(hotKey.getCount() >= 1000);
+		assertFalse(hotKey.isReplicated());
+		assertNull(detector.get("key1"));
+		assertEquals(1, detector.getHotKeys().size());
+	}
+
+	public void testSampling() {
+		HotKeyDetector detector = new HotKeyDetector(16, 4, 0.05, 100000);
+		for (int i = 0; i < 160; i++) {
+			detector.record("hot");
+		}
+		// only 10 samples
+		assertNull(detector.get("hot"));
+		for (int i = 0; i < 1600; i++) {
+			detector.record("hot");
+		}
+		assertNotNull(detector.get("hot"));
+	}
+
+	public void testTopK() {
+		HotKeyDetector detector = new HotKeyDetector(1, 2, 0.01, 100000);
+		for (int i = 0; i < 100; i++) {
+			detector.record("a");
+			detector.record("b");
+			detector.record("c");
+		}
+		for (int i = 0; i < 100; i++) {
+			detector.record("c");
+		}
+		List<HotKeyDetector.HotKey> hotKeys = detector.getHotKeys();
+		assertEquals(2, hotKeys.size());
+		// the hottest key replaces the coolest one
+		assertNotNull(detector.get("c"));
+	}
+
+	public void testCoolDown() {
+		HotKeyDetector detector = new HotKeyDetector(1, 4, 0.05, 1000);
+		for (int i = 0; i < 1000; i++) {
+			detector.record(i % 5 == 0 ? "hot" : "key" + i);
+		}
+		assertNotNull(detector.get("hot"));
+		for (int i = 0; i < 10000; i++) {
+			detector.record("key" + i);
+		}
+		assertNull(detector.get("hot"));
+		assertTrue(detector.getHotKeys().isEmpty());
+	}
+
+	public void testIllegalArguments() {
+		try {
+			new HotKeyDetector(0, 4, 0.05, 1000);
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+		try {
+			new HotKeyDetector(1, 4, 1.5, 1000);
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+	}
+}
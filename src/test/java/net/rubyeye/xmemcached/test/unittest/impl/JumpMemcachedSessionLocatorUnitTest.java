@@ -0,0 +1,30 @@
+package net.rubyeye.xmemcached.test.unittest.impl;
+
+import static org.junit.Assert.*;
+
+import net.rubyeye.xmemcached.impl.JumpMemcachedSessionLocator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class JumpMemcachedSessionLocatorUnitTest extends
+		AbstractConsistentHashLocatorUnitTest {
+
+	@Before
+	public void setUp() {
+		this.locator = new JumpMemcachedSessionLocator();
+	}
+
+	@Test
+	public void testJumpConsistentHash() {
+		assertEquals(0, JumpMemcachedSessionLocator.jumpConsistentHash(0, 1));
+		for (long key = 0; key < 1000; key++) {
+			int bucket = JumpMemcachedSessionLocator.jumpConsistentHash(key,
+					10);
+			assertTrue(bucket >= 0 && bucket < 10);
+			// a key is either in the same bucket or moved to the new bucket
+			int next = JumpMemcachedSessionLocator.jumpConsistentHash(key, 11);
+			assertTrue(next == bucket || next == 10);
+		}
+	}
+}
@@ -2,16 +2,27 @@ package net.rubyeye.xmemcached.test.unittest.impl;
 
 import static org.junit.Assert.*;
 
+import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
+import net.rubyeye.xmemcached.command.TextCommandFactory;
 import net.rubyeye.xmemcached.impl.KetamaMemcachedSessionLocator;
+import net.rubyeye.xmemcached.impl.MemcachedTCPSession;
 import net.rubyeye.xmemcached.test.unittest.MockSession;
+import net.rubyeye.xmemcached.utils.InetSocketAddressWrapper;
 
 import org.junit.Before;
 import org.junit.Test;
 
 import com.google.code.yanf4j.core.Session;
+import com.google.code.yanf4j.core.WriteMessage;
+import com.google.code.yanf4j.core.impl.ByteBufferCodecFactory;
+import com.google.code.yanf4j.core.impl.HandlerAdapter;
+import com.google.code.yanf4j.nio.NioSessionConfig;
+import com.google.code.yanf4j.util.LinkedTransferQueue;
 
 public class KetamaMemcachedSessionLocatorUnitTest extends
 		AbstractMemcachedSessionLocatorUnitTest {
@@ -96,4 +107,150 @@ public class KetamaMemcachedSessionLocatorUnitTest extends
 		assertSame(session1, this.locator.getSessionByKey("a2"));
 		assertSame(session2, this.locator.getSessionByKey("a3"));
 	}
+
+	@Test
+	public void testGetSessionByHash_WrapAround() {
+		List<Session> list = new ArrayList<Session>();
+		for (int i = 0; i < 10; i++) {
+			list.add(new MockSession(8080 + i));
+		}
+		this.locator.updateSessions(list);
+		KetamaMemcachedSessionLocator ketamaLocator = (KetamaMemcachedSessionLocator) this.locator;
+		// the first node in the ring serves hashes beyond the last node
+		Session first = ketamaLocator.getSessionByHash(0);
+		assertSame(first, ketamaLocator.getSessionByHash(0xFFFFFFFFL));
+		for (long hash = 0; hash < 0xFFFFFFFFL; hash += 0xFFFFFFL) {
+			assertSame(ketamaLocator.getSessionByHash(hash), ketamaLocator
+					.getSessionByHash(hash));
+			assertTrue(list.contains(ketamaLocator.getSessionByHash(hash)));
+		}
+
+		this.locator.updateSessions(new ArrayList<Session>());
+		assertNull(ketamaLocator.getSessionByHash(0));
+		assertNull(this.locator.getSessionByKey("a1"));
+	}
+
+	@Test
+	public void testGetReplicaSessionsByKey() {
+		List<Session> list = new ArrayList<Session>();
+		for (int i = 0; i < 5; i++) {
+			list.add(new MockSession(8080 + i));
+		}
+		this.locator.updateSessions(list);
+		for (int i = 0; i < 100; i++) {
+			String key = "hot" + i;
+			Session primary = this.locator.getSessionByKey(key);
+			List<Session> replicas = this.locator.getReplicaSessionsByKey(key,
+					2);
+			assertEquals(2, replicas.size());
+			assertFalse(replicas.contains(primary));
+			assertNotSame(replicas.get(0), replicas.get(1));
+			assertEquals(replicas, this.locator.getReplicaSessionsByKey(key, 2));
+		}
+		// at most all other servers
+		assertEquals(4, this.locator.getReplicaSessionsByKey("hot", 10).size());
+
+		// closed servers are skipped
+		Session primary = this.locator.getSessionByKey("hot");
+		Set<Session> expected = new HashSet<Session>(list);
+		expected.remove(primary);
+		Session closed = this.locator.getReplicaSessionsByKey("hot", 1).get(0);
+		closed.close();
+		expected.remove(closed);
+		assertEquals(expected, new HashSet<Session>(this.locator
+				.getReplicaSessionsByKey("hot", 10)));
+
+		this.locator.updateSessions(new ArrayList<Session>());
+		assertTrue(this.locator.getReplicaSessionsByKey("hot", 2).isEmpty());
+	}
+
+	@Test
+	public void testIncrementalUpdate() {
+		KetamaMemcachedSessionLocator ketamaLocator = (KetamaMemcachedSessionLocator) this.locator;
+		List<Session> list = new ArrayList<Session>();
+		for (int i = 0; i < 10; i++) {
+			list.add(new MockSession(8080 + i));
+			ketamaLocator.updateSessions(list);
+			assertSameRing(list, ketamaLocator);
+		}
+		// a pool connection is added to a node
+		list.add(new MockSession(8083));
+		ketamaLocator.updateSessions(list);
+		assertSameRing(list, ketamaLocator);
+		// a connection flaps
+		Session removed = list.remove(3);
+		ketamaLocator.updateSessions(list);
+		assertSameRing(list, ketamaLocator);
+		list.add(3, removed);
+		ketamaLocator.updateSessions(list);
+		assertSameRing(list, ketamaLocator);
+		// a node is removed
+		list.remove(5);
+		ketamaLocator.updateSessions(list);
+		assertSameRing(list, ketamaLocator);
+		// nothing changed
+		ketamaLocator.updateSessions(new ArrayList<Session>(list));
+		assertSameRing(list, ketamaLocator);
+	}
+
+	@Test
+	public void testUpdateWeight() {
+		KetamaMemcachedSessionLocator ketamaLocator = (KetamaMemcachedSessionLocator) this.locator;
+		List<Session> list = new ArrayList<Session>();
+		for (int i = 0; i < 3; i++) {
+			list.add(newWeightedSession(8080 + i, 1));
+		}
+		MemcachedTCPSession session = (MemcachedTCPSession) list.get(0);
+		ketamaLocator.updateSessions(list);
+		assertSameRing(list, ketamaLocator);
+		int keys = countKeys(ketamaLocator, session);
+		// only the weight is changed,just like setServerWeight
+		session.getInetSocketAddressWrapper().setWeight(4);
+		ketamaLocator.updateSessions(list);
+		assertSameRing(list, ketamaLocator);
+		assertTrue(countKeys(ketamaLocator, session) > keys);
+	}
+
+	private static int countKeys(KetamaMemcachedSessionLocator ketamaLocator,
+			Session session) {
+		int count = 0;
+		for (int i = 0; i < 1000; i++) {
+			if (ketamaLocator.getSessionByKey("key" + i) == session) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private static MemcachedTCPSession newWeightedSession(int port, int weight) {
+		final InetSocketAddress address = new InetSocketAddress("localhost",
+				port);
+		NioSessionConfig sessionConfig = new NioSessionConfig(null,
+				new HandlerAdapter(), null, new ByteBufferCodecFactory(), null,
+				new LinkedTransferQueue<WriteMessage>(), null, true, 0, 0);
+		MemcachedTCPSession session = new MemcachedTCPSession(sessionConfig,
+				16 * 1024, null, 0, new TextCommandFactory()) {
+			@Override
+			public InetSocketAddress getRemoteSocketAddress() {
+				return address;
+			}
+		};
+		session.setInetSocketAddressWrapper(new InetSocketAddressWrapper(
+				address, 0, weight, null));
+		return session;
+	}
+
+	private static void assertSameRing(List<Session> list,
+			KetamaMemcachedSessionLocator ketamaLocator) {
+		KetamaMemcachedSessionLocator expected = new KetamaMemcachedSessionLocator();
+		expected.updateSessions(list);
+		for (long hash = 0; hash < 0xFFFFFFFFL; hash += 0xFFFFFL) {
+			assertSame(expected.getSessionByHash(hash), ketamaLocator
+					.getSessionByHash(hash));
+		}
+		for (int i = 0; i < 100; i++) {
+			assertSame(expected.getSessionByKey("key" + i), ketamaLocator
+					.getSessionByKey("key" + i));
+		}
+	}
 }
@@ -0,0 +1,104 @@
+package net.rubyeye.xmemcached.test.unittest.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+import net.rubyeye.xmemcached.MemcachedSessionLocator;
+import net.rubyeye.xmemcached.exception.MemcachedException;
+import net.rubyeye.xmemcached.impl.KetamaMemcachedSessionLocator;
+import net.rubyeye.xmemcached.impl.KeyPartition;
+import net.rubyeye.xmemcached.test.unittest.MockSession;
+
+import com.google.code.yanf4j.core.Session;
+
+public class KeyPartitionUnitTest extends TestCase {
+
+	private MemcachedSessionLocator newLocator(int nodes) {
+		List<Session> sessions = new ArrayList<Session>();
+		for (int i = 0; i < nodes; i++) {
+			sessions.add(new MockSession(8080 + i));
+		}
+		MemcachedSessionLocator locator = new KetamaMemcachedSessionLocator();
+		locator.updateSessions(sessions);
+		return locator;
+	}
+
+	private void assertPartition(int nodes, int keyCount) throws Exception {
+		MemcachedSessionLocator locator = this.newLocator(nodes);
+		List<String> keys = new ArrayList<String>();
+		for (int i = 0; i < keyCount; i++) {
+			keys.add("key" + i);
+		}
+		KeyPartition partition = KeyPartition.get();
+		partition.partition(keys, locator);
+		assertEquals(keyCount, partition.getKeyCount());
+		int total = 0;
+		for (int slot = 0; slot < partition.getSessionCount(); slot++) {
+			Session session = partition.getSession(slot);
+			int offset = partition.getOffset(slot);
+			int count = partition.getCount(slot);
+			assertTrue(count > 0);
+			int last = -1;
+			for (int i = offset; i < offset + count; i++) {
+				int index = partition.getIndexes()[i];
+				// keys keep their order
+				assertTrue(index > last);
+				last = index;
+				String key = partition.getKeys()[index];
+				assertEquals(keys.get(index), key);
+				assertSame(session, locator.getSessionByKey(key));
+			}
+			for (int other = 0; other < slot; other++) {
+				assertNotSame(session, partition.getSession(other));
+			}
+			total += count;
+		}
+		assertEquals(keyCount, total);
+		partition.clear();
+		assertEquals(0, partition.getKeyCount());
+		assertEquals(0, partition.getSessionCount());
+		assertNull(partition.getKeys()[0]);
+	}
+
+	public void testPartition() throws Exception {
+		this.assertPartition(1, 10);
+		this.assertPartition(3, 500);
+		// more sessions and keys than the initial capacity
+		this.assertPartition(50, 2000);
+		this.assertPartition(5, 1);
+	}
+
+	public void testShrinkAfterClear() throws Exception {
+		List<String> keys = new ArrayList<String>();
+		for (int i = 0; i < 5000; i++) {
+			keys.add("key" + i);
+		}
+		KeyPartition partition = KeyPartition.get();
+		partition.partition(keys, this.newLocator(3));
+		assertTrue(partition.getKeys().length >= 5000);
+		partition.clear();
+		assertEquals(64, partition.getKeys().length);
+
+		// small arrays are kept
+		partition.partition(keys.subList(0, 100), this.newLocator(3));
+		String[] retained = partition.getKeys();
+		partition.clear();
+		assertSame(retained, partition.getKeys());
+		assertNull(retained[0]);
+	}
+
+	public void testNoSession() throws Exception {
+		try {
+			KeyPartition.get().partition(Collections.singletonList("a"),
+					this.newLocator(0));
+			fail();
+		} catch (MemcachedException e) {
+			assertEquals("There is no available connection at this moment", e
+					.getMessage());
+		} finally {
+			KeyPartition.get().clear();
+		}
+	}
+}
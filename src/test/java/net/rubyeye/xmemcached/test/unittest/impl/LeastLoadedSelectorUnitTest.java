@@ -0,0 +1,170 @@
+package net.rubyeye.xmemcached.test.unittest.impl;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+import net.rubyeye.xmemcached.command.Command;
+import net.rubyeye.xmemcached.command.TextCommandFactory;
+import net.rubyeye.xmemcached.impl.LeastLoadedSelector;
+import net.rubyeye.xmemcached.impl.MemcachedTCPSession;
+import net.rubyeye.xmemcached.test.unittest.MockSession;
+import net.rubyeye.xmemcached.transcoders.StringTranscoder;
+
+import com.google.code.yanf4j.core.Session;
+import com.google.code.yanf4j.core.WriteMessage;
+import com.google.code.yanf4j.core.impl.ByteBufferCodecFactory;
+import com.google.code.yanf4j.core.impl.HandlerAdapter;
+import com.google.code.yanf4j.nio.NioSessionConfig;
+import com.google.code.yanf4j.util.LinkedTransferQueue;
+
+public class LeastLoadedSelectorUnitTest extends TestCase {
+	private TextCommandFactory commandFactory = new TextCommandFactory();
+
+	private MemcachedTCPSession newSession() {
+		NioSessionConfig sessionConfig = new NioSessionConfig(null,
+				new HandlerAdapter(), null, new ByteBufferCodecFactory(), null,
+				new LinkedTransferQueue<WriteMessage>(), null, true, 0, 0);
+		return new MemcachedTCPSession(sessionConfig, 16 * 1024, null, 0,
+				this.commandFactory) {
+			@Override
+			public void writeFromUserCode(WriteMessage message) {
+				this.writeQueue.offer(message);
+			}
+		};
+	}
+
+	private Command newCommand(long latencyMillis) {
+		Command command = this.commandFactory.createSetCommand("a", "a"
+				.getBytes(), 0, "value", false, new StringTranscoder());
+		command.setWriteTime(System.nanoTime()
+				- TimeUnit.MILLISECONDS.toNanos(latencyMillis));
+		return command;
+	}
+
+	public void testRecordLatency() {
+		MemcachedTCPSession session = this.newSession();
+		long now = System.nanoTime();
+		assertEquals(0, session.getLatencyEwma(now));
+		// not written by user code
+		session.recordLatency(this.commandFactory.createSetCommand("a", "a"
+				.getBytes(), 0, "value", false, new StringTranscoder()));
+		assertEquals(0, session.getLatencyEwma(now));
+
+		session.recordLatency(this.newCommand(80));
+		long ewma = session.getLatencyEwma(System.nanoTime());
+		assertTrue(ewma >= TimeUnit.MILLISECONDS.toNanos(80));
+		assertTrue(ewma < TimeUnit.MILLISECONDS.toNanos(100));
+		// weight of a new sample is 1/8
+		session.recordLatency(this.newCommand(0));
+		long newEwma = session.getLatencyEwma(System.nanoTime());
+		assertTrue(newEwma < ewma);
+		assertTrue(newEwma >= TimeUnit.MILLISECONDS.toNanos(70));
+
+		// halved every second without responses
+		now = System.nanoTime();
+		assertEquals(session.getLatencyEwma(now) >> 2, session
+				.getLatencyEwma(now + TimeUnit.MILLISECONDS.toNanos(2500)));
+	}
+
+	public void testSelectLeastLoaded() {
+		MemcachedTCPSession fast = this.newSession();
+		MemcachedTCPSession slow = this.newSession();
+		fast.recordLatency(this.newCommand(1));
+		slow.recordLatency(this.newCommand(50));
+		List<Session> sessions = new ArrayList<Session>();
+		sessions.add(slow);
+		sessions.add(fast);
+		for (int i = 0; i < 100; i++) {
+			assertSame(fast, LeastLoadedSelector.select(sessions));
+		}
+		// in flight commands weight the latency
+		for (int i = 0; i < 100; i++) {
+			fast.addCommand(this.newCommand(0));
+		}
+		long now = System.nanoTime();
+		assertTrue(fast.getLoad(now) > slow.getLoad(now));
+		Session[] array = sessions.toArray(new Session[2]);
+		for (int i = 0; i < 100; i++) {
+			assertSame(slow, LeastLoadedSelector.select(array, 0, 2));
+		}
+	}
+
+	public void testAvoidConnectionWithQueuedBytes() {
+		List<Session> pool = new ArrayList<Session>();
+		for (int i = 0; i < 4; i++) {
+			pool.add(this.newSession());
+		}
+		MemcachedTCPSession selected = (MemcachedTCPSession) LeastLoadedSelector
+				.select(pool);
+		// a large value is waiting to be written
+		selected.write(this.commandFactory.createSetCommand("a", "a"
+				.getBytes(), 0, new String(new char[64 * 1024]), false,
+				new StringTranscoder()));
+		assertTrue(selected.getScheduleWritenBytes() > 64 * 1024);
+		assertTrue(selected.getPendingLoad() >= 16);
+		for (int i = 0; i < 100; i++) {
+			assertNotSame(selected, LeastLoadedSelector.select(pool));
+		}
+	}
+
+	public void testThreadAffinity() throws Exception {
+		final List<Session> pool = new ArrayList<Session>();
+		for (int i = 0; i < 4; i++) {
+			pool.add(this.newSession());
+		}
+		Session selected = LeastLoadedSelector.select(pool);
+		for (int i = 0; i < 100; i++) {
+			assertSame(selected, LeastLoadedSelector.select(pool));
+		}
+		// threads are spread on the pool
+		final Set<Session> selectedByThreads = new HashSet<Session>();
+		for (int i = 0; i < 32; i++) {
+			Thread thread = new Thread() {
+				@Override
+				public void run() {
+					selectedByThreads.add(LeastLoadedSelector.select(pool));
+				}
+			};
+			thread.start();
+			thread.join();
+		}
+		assertTrue(selectedByThreads.size() > 1);
+	}
+
+	public void testPowerOfTwoChoices() {
+		List<Session> sessions = new ArrayList<Session>();
+		for (int i = 0; i < 16; i++) {
+			MemcachedTCPSession session = this.newSession();
+			session.recordLatency(this.newCommand(1 << i % 8));
+			for (int j = 0; j < i; j++) {
+				session.addCommand(this.newCommand(0));
+			}
+			sessions.add(session);
+		}
+		int[] counts = new int[16];
+		for (int i = 0; i < 10000; i++) {
+			counts[sessions.indexOf(LeastLoadedSelector.select(sessions))]++;
+		}
+		// the most loaded is never selected
+		assertEquals(0, counts[15]);
+		assertTrue(counts[0] > counts[14]);
+	}
+
+	public void testPreferOpenSession() {
+		MockSession closed = new MockSession(8080);
+		closed.close();
+		MockSession open = new MockSession(8081);
+		List<Session> sessions = new ArrayList<Session>();
+		sessions.add(closed);
+		sessions.add(open);
+		for (int i = 0; i < 100; i++) {
+			assertSame(open, LeastLoadedSelector.select(sessions));
+		}
+		sessions.remove(open);
+		assertSame(closed, LeastLoadedSelector.select(sessions));
+	}
+}
@@ -0,0 +1,180 @@
+package net.rubyeye.xmemcached.test.unittest.impl;
+
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+import net.rubyeye.xmemcached.OverflowPolicy;
+import net.rubyeye.xmemcached.command.Command;
+import net.rubyeye.xmemcached.command.TextCommandFactory;
+import net.rubyeye.xmemcached.exception.MemcachedException;
+import net.rubyeye.xmemcached.impl.MemcachedTCPSession;
+import net.rubyeye.xmemcached.transcoders.StringTranscoder;
+
+import com.google.code.yanf4j.core.WriteMessage;
+import com.google.code.yanf4j.core.impl.ByteBufferCodecFactory;
+import com.google.code.yanf4j.core.impl.HandlerAdapter;
+import com.google.code.yanf4j.nio.NioSessionConfig;
+
+public class MemcachedTCPSessionUnitTest extends TestCase {
+	private TextCommandFactory commandFactory;
+	private MemcachedTCPSession session;
+
+	@Override
+	protected void setUp() throws Exception {
+		this.commandFactory = new TextCommandFactory();
+		NioSessionConfig sessionConfig = new NioSessionConfig(null,
+				new HandlerAdapter(), null, new ByteBufferCodecFactory(), null,
+				new MemcachedTCPSession.WriteQueue(), null, true, 0, 0);
+		// commands are only queued,there is no reactor
+		this.session = new MemcachedTCPSession(sessionConfig, 16 * 1024, null,
+				0, this.commandFactory) {
+			@Override
+			public void writeFromUserCode(WriteMessage message) {
+				this.writeQueue.offer(message);
+			}
+		};
+	}
+
+	private Command newSetCommand(String key) {
+		return this.commandFactory.createSetCommand(key, key.getBytes(), 0,
+				"value", false, new StringTranscoder());
+	}
+
+	private void assertFailed(Command command) {
+		assertEquals(0, command.getLatch().getCount());
+		assertTrue(command.getException() instanceof MemcachedException);
+	}
+
+	public void testUnbounded() {
+		for (int i = 0; i < 100; i++) {
+			this.session.write(newSetCommand("a" + i));
+		}
+		assertEquals(100, this.session.getWriteQueue().size());
+		assertTrue(this.session.getScheduleWritenBytes() > 0);
+	}
+
+	public void testFailFastWhenInFlightExceeded() {
+		this.session.setMaxInFlightCommands(1);
+		this.session.addCommand(newSetCommand("a"));
+		assertEquals(1, this.session.getInFlightCommandCount());
+		Command command = newSetCommand("b");
+		this.session.write(command);
+		assertFailed(command);
+		assertTrue(this.session.getWriteQueue().isEmpty());
+		assertEquals(0, this.session.getScheduleWritenBytes());
+
+		// response arrived
+		this.session.takeCurrentCommand();
+		assertEquals(0, this.session.getInFlightCommandCount());
+		command = newSetCommand("c");
+		this.session.write(command);
+		assertEquals(1, command.getLatch().getCount());
+		assertEquals(1, this.session.getWriteQueue().size());
+	}
+
+	public void testFailFastWhenQueuedCommandsExceeded() {
+		// the socket is not writable,commands stay in write queue
+		this.session.setMaxInFlightCommands(2);
+		this.session.write(newSetCommand("a"));
+		this.session.write(newSetCommand("b"));
+		assertEquals(2, this.session.getQueuedCommandCount());
+		Command command = newSetCommand("c");
+		this.session.write(command);
+		assertFailed(command);
+		assertEquals(2, this.session.getWriteQueue().size());
+
+		// written and responded
+		this.session.getWriteQueue().poll();
+		assertEquals(1, this.session.getQueuedCommandCount());
+		command = newSetCommand("d");
+		this.session.write(command);
+		assertEquals(1, command.getLatch().getCount());
+		assertEquals(2, this.session.getQueuedCommandCount());
+	}
+
+	public void testFailFastWhenQueuedBytesExceeded() {
+		Command first = newSetCommand("a");
+		this.session.write(first);
+		long size = this.session.getScheduleWritenBytes();
+		this.session.setMaxQueuedBytes(size + 1);
+		Command command = newSetCommand("b");
+		this.session.write(command);
+		assertFailed(command);
+		assertEquals(size, this.session.getScheduleWritenBytes());
+		assertEquals(1, this.session.getWriteQueue().size());
+	}
+
+	public void testShedOldest() {
+		this.session.setOverflowPolicy(OverflowPolicy.SHED_OLDEST);
+		Command first = newSetCommand("a");
+		Command second = newSetCommand("b");
+		this.session.write(first);
+		this.session.write(second);
+		long size = this.session.getScheduleWritenBytes() / 2;
+		this.session.setMaxQueuedBytes(size * 2);
+		Command third = newSetCommand("c");
+		this.session.write(third);
+		assertFailed(first);
+		assertEquals(1, second.getLatch().getCount());
+		assertEquals(1, third.getLatch().getCount());
+		assertEquals(size * 2, this.session.getScheduleWritenBytes());
+		assertSame(second, this.session.getWriteQueue().poll());
+		assertSame(third, this.session.getWriteQueue().poll());
+	}
+
+	public void testShedOldestWhenInFlightExceeded() {
+		this.session.setOverflowPolicy(OverflowPolicy.SHED_OLDEST);
+		this.session.setMaxInFlightCommands(1);
+		this.session.addCommand(newSetCommand("a"));
+		// nothing to shed
+		Command command = newSetCommand("b");
+		this.session.write(command);
+		assertFailed(command);
+
+		this.session.setMaxInFlightCommands(0);
+		Command queued = newSetCommand("c");
+		this.session.write(queued);
+		this.session.setMaxInFlightCommands(1);
+		command = newSetCommand("d");
+		this.session.write(command);
+		assertFailed(queued);
+		assertEquals(1, command.getLatch().getCount());
+		assertSame(command, this.session.getWriteQueue().peek());
+	}
+
+	public void testBlockTimeout() {
+		this.session.setOverflowPolicy(OverflowPolicy.BLOCK);
+		this.session.setOverflowBlockTimeout(100);
+		this.session.setMaxInFlightCommands(1);
+		this.session.addCommand(newSetCommand("a"));
+		Command command = newSetCommand("b");
+		long start = System.currentTimeMillis();
+		this.session.write(command);
+		assertTrue(System.currentTimeMillis() - start >= 100);
+		assertFailed(command);
+	}
+
+	public void testBlockUntilResponded() throws Exception {
+		this.session.setOverflowPolicy(OverflowPolicy.BLOCK);
+		this.session.setOverflowBlockTimeout(5000);
+		this.session.setMaxInFlightCommands(1);
+		this.session.addCommand(newSetCommand("a"));
+		final CountDownLatch started = new CountDownLatch(1);
+		new Thread() {
+			@Override
+			public void run() {
+				started.countDown();
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+				}
+				MemcachedTCPSessionUnitTest.this.session.takeCurrentCommand();
+			}
+		}.start();
+		started.await();
+		Command command = newSetCommand("b");
+		this.session.write(command);
+		assertEquals(1, command.getLatch().getCount());
+		assertSame(command, this.session.getWriteQueue().peek());
+	}
+}
@@ -7,6 +7,7 @@ import java.util.concurrent.BlockingQueue;
 import junit.framework.TestCase;
 import net.rubyeye.xmemcached.CommandFactory;
 import net.rubyeye.xmemcached.buffer.SimpleBufferAllocator;
+import net.rubyeye.xmemcached.command.BinaryCommandFactory;
 import net.rubyeye.xmemcached.command.Command;
 import net.rubyeye.xmemcached.command.CommandType;
 import net.rubyeye.xmemcached.command.TextCommandFactory;
@@ -14,6 +15,7 @@ import net.rubyeye.xmemcached.command.text.TextGetOneCommand;
 import net.rubyeye.xmemcached.impl.Optimizer;
 import net.rubyeye.xmemcached.transcoders.CachedData;
 import net.rubyeye.xmemcached.transcoders.SerializingTranscoder;
+import net.rubyeye.xmemcached.transcoders.StringTranscoder;
 import net.rubyeye.xmemcached.transcoders.Transcoder;
 import net.rubyeye.xmemcached.utils.Protocol;
 
@@ -265,4 +267,66 @@ public class OptimezerTest extends TestCase {
 		assertEquals(0, this.writeQueue.size());
 		assertNull(this.writeQueue.peek());
 	}
+
+	public void testOptimiezeQuietPipeline() {
+		Optimizer binaryOptimizer = new Optimizer(Protocol.Binary);
+		// disabled by default
+		assertFalse(binaryOptimizer.isOptimizeQuietPipeline());
+		binaryOptimizer.setOptimizeQuietPipeline(true);
+		CommandFactory binaryCommandFactory = new BinaryCommandFactory();
+		this.writeQueue.clear();
+		Command[] commands = new Command[4];
+		for (int i = 0; i < 4; i++) {
+			if (i < 3) {
+				commands[i] = binaryCommandFactory.createSetCommand(String
+						.valueOf(i), String.valueOf(i).getBytes(), 0, "v",
+						false, new StringTranscoder());
+			} else {
+				// incr could not be quiet,pipeline is stopped
+				commands[i] = binaryCommandFactory.createIncrDecrCommand("3",
+						"3".getBytes(), 1, 0, 0, CommandType.INCR, false);
+			}
+			commands[i].encode();
+			commands[i].setWriteFuture(new FutureImpl<Boolean>());
+			if (i > 0) {
+				this.writeQueue.add(commands[i]);
+			}
+		}
+		int setLength = commands[0].getIoBuffer().remaining();
+		Command fenceCommand = binaryOptimizer.optimiezeQuietPipeline(
+				this.writeQueue, this.executingCmds, commands[0], 16 * 1024);
+		assertSame(CommandType.NOOP, fenceCommand.getCommandType());
+		assertEquals(1, this.writeQueue.size());
+		assertSame(commands[3], this.writeQueue.peek());
+		assertEquals(3, this.executingCmds.size());
+		ByteBuffer mergeBuffer = fenceCommand.getIoBuffer().buf();
+		assertEquals(3 * setLength + 24, mergeBuffer.remaining());
+		for (int i = 0; i < 3; i++) {
+			// SETQ
+			assertEquals(0x11, mergeBuffer.get(i * setLength + 1));
+		}
+		assertEquals(0x0a, mergeBuffer.get(3 * setLength + 1));
+
+		// only the second command failed,then the fence's response
+		int opaque = commands[1].getIoBuffer().buf().getInt(12);
+		ByteBuffer response = ByteBuffer.allocate(48);
+		response.put((byte) 0x81).put((byte) 0x11).putShort((short) 0).put(
+				(byte) 0).put((byte) 0).putShort((short) 0x0005).putInt(0)
+				.putInt(opaque).putLong(0L);
+		response.put((byte) 0x81).put((byte) 0x0a).putShort((short) 0).put(
+				(byte) 0).put((byte) 0).putShort((short) 0).putInt(0).putInt(0)
+				.putLong(0L);
+		response.flip();
+		for (int i = 0; i < 3; i++) {
+			assertTrue(this.executingCmds.poll().decode(null, response));
+		}
+		assertTrue(fenceCommand.decode(null, response));
+		assertFalse(response.hasRemaining());
+		assertEquals(Boolean.TRUE, commands[0].getResult());
+		assertEquals(Boolean.FALSE, commands[1].getResult());
+		assertEquals(Boolean.TRUE, commands[2].getResult());
+		for (int i = 0; i < 3; i++) {
+			assertEquals(0, commands[i].getLatch().getCount());
+		}
+	}
 }
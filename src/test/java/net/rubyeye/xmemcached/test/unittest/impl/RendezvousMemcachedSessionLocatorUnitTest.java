@@ -0,0 +1,38 @@
+package net.rubyeye.xmemcached.test.unittest.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Map;
+
+import net.rubyeye.xmemcached.impl.RendezvousMemcachedSessionLocator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.code.yanf4j.core.Session;
+
+public class RendezvousMemcachedSessionLocatorUnitTest extends
+		AbstractConsistentHashLocatorUnitTest {
+
+	@Before
+	public void setUp() {
+		this.locator = new RendezvousMemcachedSessionLocator();
+	}
+
+	@Test
+	public void testGetSessionByKey_RemoveSession() {
+		List<Session> list = newSessions(4);
+		this.locator.updateSessions(list);
+		Map<String, Session> before = locateAll();
+		Session removed = list.remove(2);
+		this.locator.updateSessions(list);
+		Map<String, Session> after = locateAll();
+		for (Map.Entry<String, Session> entry : after.entrySet()) {
+			// only keys of the removed session are moved
+			if (before.get(entry.getKey()) != removed) {
+				assertSame(before.get(entry.getKey()), entry.getValue());
+			}
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package net.rubyeye.xmemcached.test.unittest.utils;
+
+import junit.framework.TestCase;
+import net.rubyeye.xmemcached.HashAlgorithm;
+import net.rubyeye.xmemcached.utils.ByteUtils;
+
+public class HashAlgorithmUnitTest extends TestCase {
+	static final String[] KEYS = { "a", "test", "hello world",
+			"localhost/127.0.0.1:11211-0key", "\u4e2d\u6587key", "key-\u00f1" };
+
+	public void testHashBytesEqualsHashString() {
+		for (HashAlgorithm alg : HashAlgorithm.values()) {
+			for (String key : KEYS) {
+				byte[] keyBytes = ByteUtils.getBytes(key);
+				assertEquals(alg + ":" + key, alg.hash(key), alg
+						.hash(keyBytes));
+				byte[] padded = new byte[keyBytes.length + 4];
+				System.arraycopy(keyBytes, 0, padded, 2, keyBytes.length);
+				assertEquals(alg + ":" + key, alg.hash(key), alg.hash(padded,
+						2, keyBytes.length));
+			}
+		}
+	}
+
+	public void testHashConcatenation() {
+		for (HashAlgorithm alg : HashAlgorithm.values()) {
+			for (String key : KEYS) {
+				byte[] keyBytes = ByteUtils.getBytes(key);
+				assertEquals(alg.hash("server-1" + key), alg.hash(ByteUtils
+						.getBytes("server-1"), keyBytes));
+				for (int tries : new int[] { 0, 1, 9, 10, 123, 100000 }) {
+					assertEquals(alg.hash(tries + key), alg.hash(tries,
+							keyBytes));
+				}
+			}
+		}
+		// long keys grow the thread confined buffer
+		StringBuilder longKey = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			longKey.append("long key ");
+		}
+		String key = longKey.toString();
+		assertEquals(HashAlgorithm.KETAMA_HASH.hash("prefix" + key),
+				HashAlgorithm.KETAMA_HASH.hash(ByteUtils.getBytes("prefix"),
+						ByteUtils.getBytes(key)));
+	}
+}
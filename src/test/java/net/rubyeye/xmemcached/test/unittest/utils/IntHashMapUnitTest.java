@@ -0,0 +1,60 @@
+package net.rubyeye.xmemcached.test.unittest.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import net.rubyeye.xmemcached.utils.IntHashMap;
+
+public class IntHashMapUnitTest extends TestCase {
+
+	public void testPutGetRemove() {
+		IntHashMap<String> map = new IntHashMap<String>();
+		assertTrue(map.isEmpty());
+		assertNull(map.put(0, "zero"));
+		assertNull(map.put(-1, "minus"));
+		assertNull(map.put(Integer.MAX_VALUE, "max"));
+		assertEquals("zero", map.put(0, "0"));
+		assertEquals(3, map.size());
+		assertEquals("0", map.get(0));
+		assertEquals("minus", map.get(-1));
+		assertEquals("max", map.get(Integer.MAX_VALUE));
+		assertNull(map.get(1));
+		assertEquals("minus", map.remove(-1));
+		assertNull(map.remove(-1));
+		assertFalse(map.containsKey(-1));
+		assertEquals(2, map.size());
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertNull(map.get(0));
+	}
+
+	public void testNullValue() {
+		try {
+			new IntHashMap<String>().put(1, null);
+			fail();
+		} catch (NullPointerException e) {
+			assertEquals("Null value", e.getMessage());
+		}
+	}
+
+	public void testRandomOperations() {
+		IntHashMap<Integer> map = new IntHashMap<Integer>(4);
+		Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+		Random random = new Random(0);
+		for (int i = 0; i < 100000; i++) {
+			// small key range to make collisions and removals
+			int key = random.nextInt(2048) - 1024;
+			if (random.nextInt(3) == 0) {
+				assertEquals(expected.remove(key), map.remove(key));
+			} else {
+				assertEquals(expected.put(key, i), map.put(key, i));
+			}
+			assertEquals(expected.size(), map.size());
+		}
+		for (int key = -1024; key < 1024; key++) {
+			assertEquals(expected.get(key), map.get(key));
+		}
+	}
+}
@@ -0,0 +1,40 @@
+package net.rubyeye.xmemcached.test.unittest.utils;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+import net.rubyeye.xmemcached.utils.OpaqueGenerater;
+
+public class OpaqueGeneraterUnitTest extends TestCase {
+
+	public void testUniqueInThreads() throws Exception {
+		final int threads = 8;
+		final int times = 5000;
+		final int[][] results = new int[threads][times];
+		final CountDownLatch latch = new CountDownLatch(threads);
+		for (int i = 0; i < threads; i++) {
+			final int index = i;
+			new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < times; j++) {
+						results[index][j] = OpaqueGenerater.getInstance()
+								.getNextValue();
+					}
+					latch.countDown();
+				}
+			}.start();
+		}
+		latch.await();
+		Set<Integer> set = new HashSet<Integer>();
+		for (int[] result : results) {
+			for (int opaque : result) {
+				assertTrue(opaque > 0);
+				assertTrue(set.add(opaque));
+			}
+		}
+		assertEquals(threads * times, set.size());
+	}
+}